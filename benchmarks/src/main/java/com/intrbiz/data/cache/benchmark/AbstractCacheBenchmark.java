@@ -0,0 +1,188 @@
+package com.intrbiz.data.cache.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.intrbiz.data.cache.Cache;
+
+/**
+ * <p>
+ * The operations benchmarked against every cache, each cache benchmark
+ * only needs to create the cache.
+ * </p>
+ *
+ * <p>
+ * The cache is filled with the key space before the trial, along with a
+ * pointer list for every {@link #LIST_SIZE} keys.  Gets and puts are of
+ * random keys in the key space, so that larger key spaces show the cost
+ * of a working set which no longer fits in the processor caches.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public abstract class AbstractCacheBenchmark
+{
+    /**
+     * The number of keys in each pointer list
+     */
+    public static final int LIST_SIZE = 10;
+
+    /**
+     * The number of keys put under each prefix which is removed
+     */
+    public static final int PREFIX_SIZE = 10;
+
+    @Param({ "1000", "10000", "100000" })
+    public int keySpace;
+
+    protected Cache cache;
+
+    protected String[] keys;
+
+    protected String[] values;
+
+    protected String[] lists;
+
+    private final AtomicLong prefixes = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setupCache() throws Exception
+    {
+        this.cache = this.createCache();
+        this.keys = new String[this.keySpace];
+        this.values = new String[this.keySpace];
+        for (int i = 0; i < this.keySpace; i++)
+        {
+            this.keys[i] = "get_entity." + i;
+            this.values[i] = "entity-" + i;
+        }
+        this.lists = new String[Math.max(1, this.keySpace / LIST_SIZE)];
+        for (int i = 0; i < this.lists.length; i++)
+        {
+            this.lists[i] = "get_entities." + i;
+        }
+        this.populate();
+    }
+
+    /**
+     * Fill the cache with the key space and the pointer lists
+     */
+    protected void populate()
+    {
+        this.populate(this.cache);
+    }
+
+    protected void populate(Cache into)
+    {
+        Map<String, String> entries = new HashMap<String, String>();
+        for (int i = 0; i < this.keySpace; i++)
+        {
+            entries.put(this.keys[i], this.values[i]);
+            if (entries.size() == 1000)
+            {
+                into.putAll(entries);
+                entries.clear();
+            }
+        }
+        if (! entries.isEmpty()) into.putAll(entries);
+        for (int i = 0; i < this.lists.length; i++)
+        {
+            int from = (i * LIST_SIZE) % this.keySpace;
+            into.putPointerList(this.lists[i], new ArrayList<String>(Arrays.asList(this.keys).subList(from, Math.min(from + LIST_SIZE, this.keySpace))));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardownCache() throws Exception
+    {
+        try
+        {
+            this.cache.clear();
+            this.cache.close();
+        }
+        finally
+        {
+            this.destroyCache();
+        }
+    }
+
+    /**
+     * Create the cache to benchmark
+     */
+    protected abstract Cache createCache() throws Exception;
+
+    /**
+     * Release anything used by the cache, once the trial is complete
+     */
+    protected void destroyCache() throws Exception
+    {
+    }
+
+    /**
+     * The key read by the get benchmark
+     */
+    protected String getKey()
+    {
+        return this.keys[ThreadLocalRandom.current().nextInt(this.keySpace)];
+    }
+
+    @Benchmark
+    public Object get()
+    {
+        return this.cache.get(this.getKey());
+    }
+
+    @Benchmark
+    public void put()
+    {
+        int i = ThreadLocalRandom.current().nextInt(this.keySpace);
+        this.cache.put(this.keys[i], this.values[i]);
+    }
+
+    @Benchmark
+    public List<Object> getAndFollowList()
+    {
+        return this.cache.getAndFollowList(this.lists[ThreadLocalRandom.current().nextInt(this.lists.length)]);
+    }
+
+    /**
+     * Put {@link #PREFIX_SIZE} keys under a new prefix and remove the prefix, 
+     * the put is included so that the removal always has keys to remove
+     */
+    @Benchmark
+    public void removePrefix()
+    {
+        String prefix = "get_entity_by_group." + this.prefixes.incrementAndGet() + ".";
+        Map<String, String> entries = new HashMap<String, String>();
+        for (int i = 0; i < PREFIX_SIZE; i++)
+        {
+            entries.put(prefix + i, this.values[i % this.keySpace]);
+        }
+        this.cache.putAll(entries);
+        this.cache.removePrefix(prefix);
+    }
+}
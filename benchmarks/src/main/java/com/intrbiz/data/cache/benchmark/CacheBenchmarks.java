@@ -0,0 +1,33 @@
+package com.intrbiz.data.cache.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Run the cache benchmarks, taking the usual JMH command line options.
+ * </p>
+ *
+ * <p>
+ * Unless given otherwise, every benchmark in this package is run and the 
+ * results are written as JSON to cache-benchmarks.json, so that runs can 
+ * be compared to track regressions.
+ * </p>
+ */
+public class CacheBenchmarks
+{
+    public static final String DEFAULT_RESULT = "cache-benchmarks.json";
+
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) options.include(CacheBenchmarks.class.getPackage().getName() + ".*");
+        if (! commandLine.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+        if (! commandLine.getResult().hasValue()) options.result(DEFAULT_RESULT);
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,116 @@
+package com.intrbiz.data.cache.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.core.HazelcastInstance;
+import com.intrbiz.data.cache.HazelcastCacheProvider;
+
+/**
+ * <p>
+ * A Hazelcast cluster of several members embedded in this JVM, which
+ * join each other over loopback, so that a cache on one member has to
+ * make real network round trips for keys owned by the other members.
+ * </p>
+ *
+ * <p>
+ * Each cluster has a unique name, so that clusters started at the same
+ * time, or a cluster on the local network, are never joined.
+ * </p>
+ */
+public class EmbeddedHazelcastCluster implements AutoCloseable
+{
+    /**
+     * How long to wait for the members to find each other
+     */
+    public static final long JOIN_TIMEOUT_SECONDS = 60;
+
+    private final String name = "intrbiz-cache-" + UUID.randomUUID();
+
+    private final List<HazelcastCacheProvider> members = new ArrayList<HazelcastCacheProvider>();
+
+    public EmbeddedHazelcastCluster(int size, InMemoryFormat inMemoryFormat)
+    {
+        super();
+        try
+        {
+            for (int i = 0; i < size; i++)
+            {
+                this.members.add(new HazelcastCacheProvider(this.config(inMemoryFormat), this.name + "-" + i));
+            }
+            this.awaitMembers(size);
+        }
+        catch (RuntimeException e)
+        {
+            this.close();
+            throw e;
+        }
+    }
+
+    private Config config(InMemoryFormat inMemoryFormat)
+    {
+        Config config = new Config();
+        config.setClusterName(this.name);
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        config.getNetworkConfig().setPortAutoIncrement(true);
+        config.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        return HazelcastCacheProvider.configureCacheMaps(config, inMemoryFormat);
+    }
+
+    private void awaitMembers(int size)
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(JOIN_TIMEOUT_SECONDS);
+        for (HazelcastCacheProvider member : this.members)
+        {
+            while (member.getHazelcastInstance().getCluster().getMembers().size() < size)
+            {
+                if (System.nanoTime() - deadline > 0) throw new IllegalStateException("Timed out waiting for " + size + " members to join cluster " + this.name);
+                try
+                {
+                    Thread.sleep(100);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for cluster " + this.name, e);
+                }
+            }
+        }
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * The cache providers of each member
+     */
+    public List<HazelcastCacheProvider> getMembers()
+    {
+        return Collections.unmodifiableList(this.members);
+    }
+
+    public HazelcastCacheProvider getMember(int index)
+    {
+        return this.members.get(index);
+    }
+
+    @Override
+    public void close()
+    {
+        for (HazelcastCacheProvider member : this.members)
+        {
+            HazelcastInstance instance = member.getHazelcastInstance();
+            if (instance != null) instance.shutdown();
+        }
+        this.members.clear();
+    }
+}
@@ -0,0 +1,33 @@
+package com.intrbiz.data.cache.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+import com.hazelcast.config.InMemoryFormat;
+import com.intrbiz.data.cache.Cache;
+
+/**
+ * A Hazelcast cache on the first member of a two member cluster, 
+ * so that roughly half the keys are owned by the other member
+ */
+public class HazelcastCacheBenchmark extends AbstractCacheBenchmark
+{
+    public static final int MEMBERS = 2;
+
+    @Param({ "OBJECT", "BINARY" })
+    public InMemoryFormat inMemoryFormat;
+
+    private EmbeddedHazelcastCluster cluster;
+
+    @Override
+    protected Cache createCache()
+    {
+        this.cluster = new EmbeddedHazelcastCluster(MEMBERS, this.inMemoryFormat);
+        return this.cluster.getMember(0).getCache("bench-hazelcast");
+    }
+
+    @Override
+    protected void destroyCache()
+    {
+        if (this.cluster != null) this.cluster.close();
+    }
+}
@@ -0,0 +1,16 @@
+package com.intrbiz.data.cache.benchmark;
+
+import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.memory.local.LocalMemoryCache;
+
+/**
+ * An unbounded local memory cache
+ */
+public class LocalMemoryCacheBenchmark extends AbstractCacheBenchmark
+{
+    @Override
+    protected Cache createCache()
+    {
+        return new LocalMemoryCache("bench-local");
+    }
+}
@@ -0,0 +1,17 @@
+package com.intrbiz.data.cache.benchmark;
+
+import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.memory.shared.SharedMemoryCache;
+import com.intrbiz.data.cache.memory.shared.SharedMemoryCache.ReferenceType;
+
+/**
+ * A shared memory cache using soft references, as a level 2 cache would
+ */
+public class SharedMemoryCacheBenchmark extends AbstractCacheBenchmark
+{
+    @Override
+    protected Cache createCache()
+    {
+        return new SharedMemoryCache("bench-shared", ReferenceType.SOFT);
+    }
+}
@@ -0,0 +1,66 @@
+package com.intrbiz.data.cache.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Param;
+
+import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.memory.local.LocalMemoryCache;
+import com.intrbiz.data.cache.memory.shared.SharedMemoryCache;
+import com.intrbiz.data.cache.memory.shared.SharedMemoryCache.ReferenceType;
+import com.intrbiz.data.cache.tiered.TieredCache;
+
+/**
+ * A tiered cache of a local memory cache over a shared memory cache, 
+ * without promotion, so that reads stay where the scenario puts them
+ */
+public class TieredCacheBenchmark extends AbstractCacheBenchmark
+{
+    public enum Scenario
+    {
+        /**
+         * Every key is in level 1
+         */
+        L1_HIT,
+        /**
+         * Every key is only in level 2
+         */
+        L2_HIT,
+        /**
+         * No key read is in either level
+         */
+        MISS
+    }
+
+    @Param({ "L1_HIT", "L2_HIT", "MISS" })
+    public Scenario scenario;
+
+    private TieredCache tiered;
+
+    @Override
+    protected Cache createCache()
+    {
+        this.tiered = new TieredCache("bench-tiered", new LocalMemoryCache("bench-tiered-1"), new SharedMemoryCache("bench-tiered-2", ReferenceType.SOFT), false);
+        return this.tiered;
+    }
+
+    @Override
+    protected void populate()
+    {
+        if (this.scenario == Scenario.L2_HIT)
+        {
+            this.populate(this.tiered.getLevel2());
+        }
+        else if (this.scenario == Scenario.L1_HIT)
+        {
+            this.populate(this.tiered);
+        }
+    }
+
+    @Override
+    protected String getKey()
+    {
+        if (this.scenario == Scenario.MISS) return "get_missing." + ThreadLocalRandom.current().nextInt(this.keySpace);
+        return super.getKey();
+    }
+}
@@ -0,0 +1,46 @@
+package com.intrbiz.data.cache;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+/**
+ * Serialize pointer lists in their compact form, rather than 
+ * by Java serialization
+ */
+public class CachePointerListSerializer implements StreamSerializer<CachePointerList>
+{
+    public static final int TYPE_ID = 7001;
+
+    public CachePointerListSerializer()
+    {
+        super();
+    }
+
+    @Override
+    public int getTypeId()
+    {
+        return TYPE_ID;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, CachePointerList list) throws IOException
+    {
+        list.writeTo(out);
+    }
+
+    @Override
+    public CachePointerList read(ObjectDataInput in) throws IOException
+    {
+        CachePointerList list = new CachePointerList();
+        list.readFrom(in);
+        return list;
+    }
+
+    @Override
+    public void destroy()
+    {
+    }
+}
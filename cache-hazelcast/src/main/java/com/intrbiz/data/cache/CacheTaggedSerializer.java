@@ -0,0 +1,48 @@
+package com.intrbiz.data.cache;
+
+import java.io.IOException;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+/**
+ * Serialize tagged entries, writing the value with Hazelcast 
+ * serialization so that it may still use its own serializer
+ */
+public class CacheTaggedSerializer implements StreamSerializer<CacheTagged>
+{
+    public static final int TYPE_ID = 7003;
+
+    public CacheTaggedSerializer()
+    {
+        super();
+    }
+
+    @Override
+    public int getTypeId()
+    {
+        return TYPE_ID;
+    }
+
+    @Override
+    public void write(ObjectDataOutput out, CacheTagged tagged) throws IOException
+    {
+        out.writeUTFArray(tagged.getTags());
+        out.writeLongArray(tagged.getGenerations());
+        out.writeObject(tagged.getValue());
+    }
+
+    @Override
+    public CacheTagged read(ObjectDataInput in) throws IOException
+    {
+        String[] tags = in.readUTFArray();
+        long[] generations = in.readLongArray();
+        return new CacheTagged(in.readObject(), tags, generations);
+    }
+
+    @Override
+    public void destroy()
+    {
+    }
+}
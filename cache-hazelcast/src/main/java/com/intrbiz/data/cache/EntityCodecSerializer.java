@@ -0,0 +1,170 @@
+package com.intrbiz.data.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.UncheckedIOException;
+
+import org.apache.log4j.Logger;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import com.intrbiz.data.cache.codec.EntityCodec;
+import com.intrbiz.data.cache.codec.EntityCodecRegistry;
+import com.intrbiz.data.cache.codec.EntityInput;
+import com.intrbiz.data.cache.codec.EntityOutput;
+
+/**
+ * <p>
+ * A global serializer which encodes entities using the codecs
+ * from the {@link EntityCodecRegistry}.
+ * </p>
+ *
+ * <p>
+ * Codecs are looked up for every object, so that codecs registered
+ * after the Hazelcast instance has started are used.  Objects without
+ * a codec are written using Java serialization, as Hazelcast would.
+ * </p>
+ *
+ * <p>
+ * An entity written by a codec which this node does not have, for
+ * example during a rolling upgrade, is read as null, a cache miss.
+ * </p>
+ */
+public class EntityCodecSerializer implements StreamSerializer<Object>
+{
+    public static final int TYPE_ID = 7002;
+
+    private static final Logger logger = Logger.getLogger(EntityCodecSerializer.class);
+
+    private static final int JAVA_SERIALIZATION = 0;
+
+    private final EntityCodecRegistry registry;
+
+    public EntityCodecSerializer(EntityCodecRegistry registry)
+    {
+        super();
+        this.registry = registry;
+    }
+
+    public EntityCodecSerializer()
+    {
+        this(EntityCodecRegistry.get());
+    }
+
+    @Override
+    public int getTypeId()
+    {
+        return TYPE_ID;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void write(ObjectDataOutput out, Object object) throws IOException
+    {
+        EntityCodec<Object> codec = (EntityCodec<Object>) this.registry.getCodec(object.getClass());
+        if (codec != null)
+        {
+            // the encoded entity is length prefixed, so a node without the codec can skip it
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try
+            {
+                codec.write(new EntityOutput(new DataOutputStream(buffer)), object);
+            }
+            catch (UncheckedIOException e)
+            {
+                throw e.getCause();
+            }
+            out.writeInt(codec.getTypeId());
+            out.writeByteArray(buffer.toByteArray());
+        }
+        else
+        {
+            out.writeInt(JAVA_SERIALIZATION);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(buffer))
+            {
+                oos.writeObject(object);
+            }
+            out.writeByteArray(buffer.toByteArray());
+        }
+    }
+
+    @Override
+    public Object read(ObjectDataInput in) throws IOException
+    {
+        int typeId = in.readInt();
+        if (typeId == JAVA_SERIALIZATION)
+        {
+            try (ObjectInputStream ois = new ClassLoaderObjectInputStream(new ByteArrayInputStream(in.readByteArray()), in.getClassLoader()))
+            {
+                return ois.readObject();
+            }
+            catch (ClassNotFoundException e)
+            {
+                throw new IOException("Failed to deserialize cache entry", e);
+            }
+        }
+        byte[] encoded = in.readByteArray();
+        EntityCodec<?> codec = this.registry.getCodec(typeId);
+        if (codec == null)
+        {
+            // the entity is a different version on this node, treat it as a miss
+            if (logger.isDebugEnabled()) logger.debug("No entity codec is registered with type id " + typeId + ", ignoring cache entry");
+            return null;
+        }
+        try
+        {
+            ByteArrayInputStream buffer = new ByteArrayInputStream(encoded);
+            Object entity = codec.read(new EntityInput(new DataInputStream(buffer)));
+            // a codec of a different layout with the same type id will rarely read exactly the encoded entity
+            if (buffer.available() == 0) return entity;
+            if (logger.isDebugEnabled()) logger.debug("The entity codec with type id " + typeId + " did not read the whole cache entry, ignoring cache entry");
+        }
+        catch (RuntimeException e)
+        {
+            if (logger.isDebugEnabled()) logger.debug("The entity codec with type id " + typeId + " failed to read the cache entry, ignoring cache entry", e);
+        }
+        return null;
+    }
+
+    @Override
+    public void destroy()
+    {
+    }
+
+    private static class ClassLoaderObjectInputStream extends ObjectInputStream
+    {
+        private final ClassLoader classLoader;
+
+        public ClassLoaderObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException
+        {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+        {
+            if (this.classLoader != null)
+            {
+                try
+                {
+                    return Class.forName(desc.getName(), false, this.classLoader);
+                }
+                catch (ClassNotFoundException e)
+                {
+                    // fall back to the default resolution
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -1,31 +1,52 @@
 package com.intrbiz.data.cache;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
 import com.codahale.metrics.Timer;
 import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.cp.IAtomicLong;
 import com.hazelcast.map.IMap;
 import com.hazelcast.map.listener.EntryAddedListener;
 import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
 import com.hazelcast.map.listener.EntryMergedListener;
 import com.hazelcast.map.listener.EntryRemovedListener;
 import com.hazelcast.map.listener.EntryUpdatedListener;
-import com.hazelcast.transaction.TransactionContext;
-import com.hazelcast.transaction.TransactionOptions;
-import com.hazelcast.transaction.TransactionOptions.TransactionType;
-import com.hazelcast.transaction.TransactionalMap;
+import com.intrbiz.data.cache.util.CacheExecutors;
+import com.intrbiz.data.cache.util.CacheListenerDispatcher;
+import com.intrbiz.data.cache.util.CacheStatsCounter;
+import com.intrbiz.data.cache.util.CacheWriteJournal;
+import com.intrbiz.data.cache.util.TagGenerations;
 import com.intrbiz.gerald.source.IntelligenceSource;
 import com.intrbiz.gerald.witchcraft.Witchcraft;
 
 public final class HazelcastCache implements Cache
 {
+    /**
+     * How long to wait for another node to finish loading a key
+     */
+    public static final long LOAD_LOCK_WAIT_SECONDS = 10;
+    
+    /**
+     * How long a node may hold a key locked while loading it
+     */
+    public static final long LOAD_LOCK_LEASE_SECONDS = 60;
+    
     private Logger logger = Logger.getLogger(HazelcastCache.class);
 
     private final String name;
@@ -33,35 +54,67 @@ public final class HazelcastCache implements Cache
     private final HazelcastInstance hazelcastInstance;
     
     private final IMap<String, Object> cache;
+    
+    private final IMap<String, Object> locks;
 
-    private final ConcurrentMap<CacheListener, Object> listeners = new ConcurrentHashMap<>();
+    private final CacheListenerDispatcher listeners;
 
     private final Set<UUID> listenerIds = new HashSet<>();
     
-    // transaction support
+    private final boolean loadLocking;
+    
+    // transaction support, writes are journaled until commit
     
-    private TransactionContext transaction;
+    private CacheWriteJournal journal;
     
-    private TransactionalMap<String, Object> transactionCache;
+    // tag generations, shared by every node
+    
+    private final ClusterTagGenerations tags = new ClusterTagGenerations();
 
     // metrics
 
     private final Timer getTimer;
 
+    private final Timer getAllTimer;
+
     private final Timer putTimer;
 
+    private final Timer putAllTimer;
+
     private final Timer removeTimer;
 
+    private final Timer removeAllTimer;
+
+    private final Timer removePrefixTimer;
+
     private final Timer keySetTimer;
     
     private final Timer containsTimer;
+    
+    private final Timer commitTimer;
+    
+    private final Timer invalidateTagTimer;
+    
+    private final CacheStatsCounter stats;
 
     public HazelcastCache(String name, HazelcastInstance hazelcastInstance)
+    {
+        this(name, hazelcastInstance, false);
+    }
+
+    /**
+     * @param loadLocking lock keys cluster wide while they are being loaded
+     */
+    public HazelcastCache(String name, HazelcastInstance hazelcastInstance, boolean loadLocking)
     {
         this.name = name;
         this.hazelcastInstance = hazelcastInstance;
+        this.loadLocking = loadLocking;
         // the map
         this.cache = this.hazelcastInstance.getMap(HazelcastCacheProvider.MAP_PREFIX + this.name);
+        // keys are locked for loading in an empty map, locking a key of the cache map would block writes to it
+        this.locks = loadLocking ? this.hazelcastInstance.getMap(HazelcastCacheProvider.LOCK_PREFIX + this.name) : null;
+        this.listeners = new CacheListenerDispatcher("com.intrbiz.cache.hazelcast", HazelcastCache.class, name);
         // setup our listeners
         this.listenerIds.add(this.cache.addEntryListener(new EntryAddedListener<String, Object>() {
         	@Override
@@ -88,9 +141,18 @@ public final class HazelcastCache implements Cache
         	@Override
             public void entryEvicted(EntryEvent<String, Object> event)
             {
+                stats.eviction();
         		fireRemoval(event.getKey(), event.getValue());
             }
         }, true));
+        this.listenerIds.add(this.cache.addEntryListener(new EntryExpiredListener<String, Object>() {
+            @Override
+            public void entryExpired(EntryEvent<String, Object> event)
+            {
+                stats.eviction();
+                fireRemoval(event.getKey(), event.getValue());
+            }
+        }, true));
         this.listenerIds.add(this.cache.addEntryListener(new EntryMergedListener<String, Object>() {
         	@Override
             public void entryMerged(EntryEvent<String, Object> event)
@@ -101,11 +163,20 @@ public final class HazelcastCache implements Cache
         // the source to register metrics on
         IntelligenceSource source = Witchcraft.get().source("com.intrbiz.cache.hazelcast");
         // metrics
-        this.getTimer      = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "get",      name));
-        this.putTimer      = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "put",      name));
-        this.removeTimer   = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "remove",   name));
-        this.keySetTimer   = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "key_set",  name));
-        this.containsTimer = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "contains", name));
+        this.getTimer       = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "get",        name));
+        this.getAllTimer    = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "get_all",    name));
+        this.putTimer       = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "put",        name));
+        this.putAllTimer    = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "put_all",    name));
+        this.removeTimer    = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "remove",     name));
+        this.removeAllTimer = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "remove_all", name));
+        this.removePrefixTimer = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "remove_prefix", name));
+        this.keySetTimer    = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "key_set",    name));
+        this.containsTimer  = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "contains",   name));
+        this.commitTimer    = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "commit",     name));
+        this.invalidateTagTimer = source.getRegistry().timer(Witchcraft.scoped(HazelcastCache.class, "invalidate_tag", name));
+        // statistics are of this instance's use of the map, the size is of the whole 
+        // map, which every instance shares, so the size metric only counts it once
+        this.stats = new CacheStatsCounter("com.intrbiz.cache.hazelcast", HazelcastCache.class, name, this.cache.getName(), this.cache::size);
     }
 
     @Override
@@ -114,41 +185,87 @@ public final class HazelcastCache implements Cache
         return this.name;
     }
     
+    public boolean isLoadLocking()
+    {
+        return this.loadLocking;
+    }
+    
+    @Override
+    public boolean lockKey(String key)
+    {
+        if (! this.loadLocking) return false;
+        try
+        {
+            // the lease ensures a key is not locked forever should a node die while loading
+            boolean locked = this.locks.tryLock(key, LOAD_LOCK_WAIT_SECONDS, TimeUnit.SECONDS, LOAD_LOCK_LEASE_SECONDS, TimeUnit.SECONDS);
+            if ((! locked) && logger.isDebugEnabled()) logger.debug("Timed out waiting for load lock on " + key + ", loading anyway");
+            return locked;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    @Override
+    public void unlockKey(String key)
+    {
+        if (this.locks != null) this.locks.unlock(key);
+    }
+    
+    @Override
+    public boolean isDistributed()
+    {
+        return true;
+    }
+    
     @Override
     public boolean isTransactional()
     {
         return true;
     }
         
+    /**
+     * Start journaling writes, rather than using a Hazelcast transaction, 
+     * nested calls join the current transaction
+     */
     @Override
     public void begin()
     {
-        // start a transaction
-        if (this.transaction != null)
+        if (this.journal == null)
         {
-            // the transaction context
-            this.transaction = this.hazelcastInstance.newTransactionContext(new TransactionOptions().setTransactionType(TransactionType.ONE_PHASE));
-            this.transaction.beginTransaction();
-            // get the map
-            this.transactionCache = this.transaction.getMap(HazelcastCacheProvider.MAP_PREFIX + this.name);
+            this.journal = new CacheWriteJournal();
         }
     }
 
+    /**
+     * Apply the journaled writes to the map, the transaction continues 
+     * journaling until it ends
+     */
     @Override
     public void commit()
     {
-        if (this.transaction != null)
+        if (this.journal != null && (! this.journal.isEmpty()))
         {
-            this.transaction.commitTransaction();
+            try
+            {
+                this.applyJournal(this.journal);
+            }
+            finally
+            {
+                this.journal.reset();
+            }
         }
     }
 
     @Override
     public void rollback()
     {
-        if (this.transaction != null)
+        if (this.journal != null)
         {
-            this.transaction.rollbackTransaction();
+            if (logger.isTraceEnabled()) logger.trace("Rollback: discarding " + this.journal);
+            this.journal.reset();
         }
     }
 
@@ -156,8 +273,47 @@ public final class HazelcastCache implements Cache
     public void end()
     {
         this.rollback();
-        this.transaction = null;
-        this.transactionCache = null;
+        this.journal = null;
+    }
+
+    /**
+     * Apply the removed prefixes, then the removals and puts, 
+     * pipelining everything which cannot be applied in bulk
+     */
+    private void applyJournal(CacheWriteJournal journal)
+    {
+        Timer.Context tctx = this.commitTimer.time();
+        try
+        {
+            if (logger.isTraceEnabled()) logger.trace("Commit: applying " + journal);
+            for (String keyPrefix : journal.getRemovedPrefixes())
+            {
+                this.cache.removeAll(KeyPrefixPredicate.indexed(keyPrefix));
+            }
+            Map<String, Object> puts = new HashMap<String, Object>();
+            List<CompletableFuture<?>> pending = new LinkedList<CompletableFuture<?>>();
+            for (CacheWriteJournal.Write write : journal.getWrites())
+            {
+                if (write.isRemoval())
+                {
+                    pending.add(this.cache.removeAsync(write.getKey()).toCompletableFuture());
+                }
+                else if (write.isExpiring())
+                {
+                    pending.add(this.cache.setAsync(write.getKey(), write.getValue(), write.getTtl(), write.getUnit()).toCompletableFuture());
+                }
+                else
+                {
+                    puts.put(write.getKey(), write.getValue());
+                }
+            }
+            if (! puts.isEmpty()) this.cache.putAll(puts);
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[pending.size()])).join();
+        }
+        finally
+        {
+            tctx.stop();
+        }
     }
 
     @Override
@@ -168,14 +324,15 @@ public final class HazelcastCache implements Cache
         try
         {
             T entry = null;
-            if (this.transactionCache == null)
+            if (this.journal != null && this.journal.isWritten(key))
             {
-                entry = (T) this.cache.get(key);
+                entry = (T) this.current(key, this.journal.get(key));
             }
             else
             {
-                entry = (T) this.transactionCache.get(key);
+                entry = (T) this.current(key, this.cache.get(key));
             }
+            this.stats.get(entry);
             if (logger.isTraceEnabled()) logger.trace("Get: " + key + " => " + entry);
             return entry;
         }
@@ -185,6 +342,88 @@ public final class HazelcastCache implements Cache
         }
     }
 
+    /**
+     * Get the value of a stored entry, a tagged entry whose tags have 
+     * been invalidated is a miss and is removed, unless it has since 
+     * been replaced
+     */
+    private Object current(String key, Object stored)
+    {
+        if (this.tags.isStale(stored))
+        {
+            if (logger.isTraceEnabled()) logger.trace("Stale: " + key);
+            if (this.journal == null || (! this.journal.isWritten(key))) this.cache.remove(key, stored);
+            return null;
+        }
+        return CacheTagged.unwrap(stored);
+    }
+
+    /**
+     * Get without blocking the calling thread on the round trip, 
+     * within a transaction the get must consult the journal.  Checking 
+     * the tags of a tagged entry needs further round trips, which are 
+     * made on the refresh executor rather than a Hazelcast thread.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletionStage<T> getAsync(String key)
+    {
+        if (this.journal != null) return Cache.super.getAsync(key);
+        Timer.Context tctx = this.getTimer.time();
+        return this.cache.getAsync(key).thenCompose((stored) -> {
+            if (stored instanceof CacheTagged) return CompletableFuture.supplyAsync(() -> this.current(key, stored), CacheExecutors.refresh());
+            return CompletableFuture.completedFuture(stored);
+        }).thenApply((entry) -> {
+            tctx.stop();
+            this.stats.get(entry);
+            if (logger.isTraceEnabled()) logger.trace("GetAsync: " + key + " => " + entry);
+            return (T) entry;
+        });
+    }
+
+    /**
+     * Fetch all the keys in one operation per partition, rather than one round trip per key
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Map<String, T> getAll(Collection<String> keys)
+    {
+        Timer.Context tctx = this.getAllTimer.time();
+        try
+        {
+            Map<String, T> entries = new HashMap<String, T>();
+            Set<String> fetch = new HashSet<String>(keys);
+            if (this.journal != null)
+            {
+                // keys written by this transaction come from the journal
+                for (String key : keys)
+                {
+                    if (this.journal.isWritten(key))
+                    {
+                        fetch.remove(key);
+                        T entry = (T) this.current(key, this.journal.get(key));
+                        if (entry != null) entries.put(key, entry);
+                    }
+                }
+            }
+            if (! fetch.isEmpty())
+            {
+                for (Map.Entry<String, Object> entry : this.cache.getAll(fetch).entrySet())
+                {
+                    T value = (T) this.current(entry.getKey(), entry.getValue());
+                    if (value != null) entries.put(entry.getKey(), value);
+                }
+            }
+            this.stats.getAll(keys.size(), entries.size());
+            if (logger.isTraceEnabled()) logger.trace("GetAll: " + keys + " => " + entries);
+            return entries;
+        }
+        finally
+        {
+            tctx.stop();
+        }
+    }
+
     @Override
     public <T> void put(String key, T entry)
     {
@@ -192,14 +431,124 @@ public final class HazelcastCache implements Cache
         try
         {
             if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry);
-            if (this.transactionCache == null)
+            if (this.journal == null)
             {
                 this.cache.put(key, entry);
             }
             else
             {
-                this.transactionCache.put(key, entry);
+                this.journal.put(key, entry);
             }
+            this.stats.put();
+        }
+        finally
+        {
+            tctx.stop();
+        }
+    }
+
+    /**
+     * Put without blocking the calling thread on the round trip, using set 
+     * as the previous value is not needed, within a transaction the put is 
+     * journaled
+     */
+    @Override
+    public <T> CompletionStage<Void> putAsync(String key, T entry)
+    {
+        if (this.journal != null) return Cache.super.putAsync(key, entry);
+        if (logger.isTraceEnabled()) logger.trace("PutAsync: " + key + " => " + entry);
+        Timer.Context tctx = this.putTimer.time();
+        return this.cache.setAsync(key, entry).thenRun(() -> {
+            tctx.stop();
+            this.stats.put();
+        });
+    }
+
+    @Override
+    public <T> void putAll(Map<String, T> entries)
+    {
+        Timer.Context tctx = this.putAllTimer.time();
+        try
+        {
+            if (logger.isTraceEnabled()) logger.trace("PutAll: " + entries);
+            if (this.journal == null)
+            {
+                this.cache.putAll(entries);
+            }
+            else
+            {
+                for (Map.Entry<String, T> entry : entries.entrySet())
+                {
+                    this.journal.put(entry.getKey(), entry.getValue());
+                }
+            }
+            this.stats.put(entries.size());
+        }
+        finally
+        {
+            tctx.stop();
+        }
+    }
+
+    @Override
+    public <T> void put(String key, T entry, long ttl, TimeUnit unit)
+    {
+        if (ttl <= 0)
+        {
+            this.put(key, entry);
+            return;
+        }
+        Timer.Context tctx = this.putTimer.time();
+        try
+        {
+            if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry + " ttl " + ttl + " " + unit);
+            if (this.journal == null)
+            {
+                this.cache.put(key, entry, ttl, unit);
+            }
+            else
+            {
+                this.journal.put(key, entry, ttl, unit);
+            }
+            this.stats.put();
+        }
+        finally
+        {
+            tctx.stop();
+        }
+    }
+
+    @Override
+    public <T> void put(String key, T entry, String... tags)
+    {
+        this.put(key, this.tags.tag(entry, tags));
+    }
+
+    @Override
+    public CacheTagged readTags(String... tags)
+    {
+        return this.tags.tag(null, tags);
+    }
+
+    @Override
+    public <T> void put(String key, T entry, CacheTagged tags)
+    {
+        this.put(key, tags.withValue(entry));
+    }
+
+    /**
+     * Invalidate the tag on every node, this is applied immediately 
+     * even within a transaction, as an early invalidation only causes 
+     * extra misses
+     */
+    @Override
+    public void invalidateTag(String tag)
+    {
+        Timer.Context tctx = this.invalidateTagTimer.time();
+        try
+        {
+            if (logger.isTraceEnabled()) logger.trace("InvalidateTag: " + tag);
+            this.tags.invalidate(tag);
         }
         finally
         {
@@ -214,14 +563,65 @@ public final class HazelcastCache implements Cache
         try
         {
             if (logger.isTraceEnabled()) logger.trace("Remove: " + key);
-            if (this.transactionCache == null)
+            if (this.journal == null)
             {
                 this.cache.remove(key);
             }
             else
             {
-                this.transactionCache.remove(key);
+                this.journal.remove(key);
+            }
+            this.stats.remove();
+        }
+        finally
+        {
+            tctx.stop();
+        }
+    }
+    
+    /**
+     * Remove without blocking the calling thread on the round trip, 
+     * within a transaction the remove is journaled
+     */
+    @Override
+    public CompletionStage<Void> removeAsync(String key)
+    {
+        if (this.journal != null) return Cache.super.removeAsync(key);
+        if (logger.isTraceEnabled()) logger.trace("RemoveAsync: " + key);
+        Timer.Context tctx = this.removeTimer.time();
+        return this.cache.removeAsync(key).thenRun(() -> {
+            tctx.stop();
+            this.stats.remove();
+        });
+    }
+    
+    /**
+     * Remove all the keys, pipelining the removals rather than waiting on each in turn
+     */
+    @Override
+    public void removeAll(Collection<String> keys)
+    {
+        Timer.Context tctx = this.removeAllTimer.time();
+        try
+        {
+            if (logger.isTraceEnabled()) logger.trace("RemoveAll: " + keys);
+            if (this.journal == null)
+            {
+                List<CompletableFuture<Object>> removals = new LinkedList<CompletableFuture<Object>>();
+                for (String key : keys)
+                {
+                    removals.add(this.cache.removeAsync(key).toCompletableFuture());
+                }
+                CompletableFuture.allOf(removals.toArray(new CompletableFuture<?>[removals.size()])).join();
+            }
+            else
+            {
+                for (String key : keys)
+                {
+                    this.journal.remove(key);
+                }
             }
+            this.stats.remove(keys.size());
         }
         finally
         {
@@ -235,13 +635,14 @@ public final class HazelcastCache implements Cache
         Timer.Context tctx = this.containsTimer.time();
         try
         {
-            if (this.transactionCache == null)
+            if (this.journal != null && this.journal.isWritten(key))
             {
-                return this.cache.containsKey(key);
+                return this.journal.get(key) != null;
             }
             else
             {
-                return this.transactionCache.containsKey(key);
+                // the tags of a tagged entry are not checked, it is a miss when read
+                return this.cache.containsKey(key);
             }
         }
         finally
@@ -250,19 +651,26 @@ public final class HazelcastCache implements Cache
         }
     }
 
+    /**
+     * Remove all keys with the given prefix, the removal is executed by 
+     * each partition using the key index, rather than fetching the keys 
+     * and removing each in turn, within a transaction the prefix is journaled
+     */
     @Override
-    public Set<String> keySet(String keyPrefix)
+    public void removePrefix(String keyPrefix)
     {
-        Timer.Context tctx = this.keySetTimer.time();
+        Timer.Context tctx = this.removePrefixTimer.time();
         try
         {
-            if (this.transactionCache == null)
+            if (logger.isTraceEnabled()) logger.trace("RemovePrefix: " + keyPrefix);
+            this.stats.prefixScan();
+            if (this.journal == null)
             {
-                return this.cache.keySet(new KeyPrefixPredicate(keyPrefix));
+                this.cache.removeAll(KeyPrefixPredicate.indexed(keyPrefix));
             }
             else
             {
-                return this.transactionCache.keySet(new KeyPrefixPredicate(keyPrefix));   
+                this.journal.removePrefix(keyPrefix);
             }
         }
         finally
@@ -270,6 +678,28 @@ public final class HazelcastCache implements Cache
             tctx.stop();
         }
     }
+
+    @Override
+    public Set<String> keySet(String keyPrefix)
+    {
+        Timer.Context tctx = this.keySetTimer.time();
+        try
+        {
+            this.stats.prefixScan();
+            Set<String> keys = this.cache.keySet(KeyPrefixPredicate.indexed(keyPrefix));
+            return this.journal == null ? keys : this.journal.keySet(keyPrefix, keys);
+        }
+        finally
+        {
+            tctx.stop();
+        }
+    }
+    
+    @Override
+    public CacheStats stats()
+    {
+        return this.stats.snapshot();
+    }
     
     public void clear()
     {
@@ -285,33 +715,55 @@ public final class HazelcastCache implements Cache
     		this.cache.removeEntryListener(listenerId);
     	}
     	this.listenerIds.clear();
+    	this.stats.close();
     }
 
     @Override
     public void addListener(CacheListener listener)
     {
-        this.listeners.put(listener, this);
+        this.listeners.addListener(listener);
     }
     
     @Override
     public void removeListener(CacheListener listener)
     {
-        this.listeners.remove(listener);
+        this.listeners.removeListener(listener);
     }
     
     protected void fireRemoval(String key, Object entry)
     {
-        for (CacheListener listener : this.listeners.keySet())
-        {
-            listener.onRemove(key, entry);
-        }
+        this.listeners.fireRemoval(key, CacheTagged.unwrap(entry));
     }
     
     protected void firePut(String key, Object entry)
     {
-        for (CacheListener listener : this.listeners.keySet())
+        this.listeners.firePut(key, CacheTagged.unwrap(entry));
+    }
+    
+    /**
+     * The generation of each tag is held in an atomic long named after 
+     * this cache and the tag, so checking the tags of an entry costs a 
+     * round trip per tag, the atomic longs are looked up once per tag
+     */
+    private final class ClusterTagGenerations implements TagGenerations
+    {
+        private final ConcurrentMap<String, IAtomicLong> generations = new ConcurrentHashMap<String, IAtomicLong>();
+        
+        private IAtomicLong generationOf(String tag)
+        {
+            return this.generations.computeIfAbsent(tag, (t) -> hazelcastInstance.getCPSubsystem().getAtomicLong(HazelcastCacheProvider.TAG_PREFIX + name + "." + t));
+        }
+        
+        @Override
+        public long generation(String tag)
+        {
+            return this.generationOf(tag).get();
+        }
+
+        @Override
+        public long invalidate(String tag)
         {
-            listener.onPut(key, entry);
+            return this.generationOf(tag).incrementAndGet();
         }
     }
 }
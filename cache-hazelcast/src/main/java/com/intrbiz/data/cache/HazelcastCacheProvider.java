@@ -3,22 +3,51 @@ package com.intrbiz.data.cache;
 import com.hazelcast.config.Config;
 import com.hazelcast.config.EvictionConfig;
 import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.GlobalSerializerConfig;
 import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.IndexConfig;
+import com.hazelcast.config.IndexType;
 import com.hazelcast.config.MapConfig;
 import com.hazelcast.config.MaxSizePolicy;
 import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.config.SerializerConfig;
 import com.hazelcast.config.XmlConfigBuilder;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.intrbiz.Util;
 import com.intrbiz.data.DataException;
 import com.intrbiz.data.DataManager.CacheProvider;
+import com.intrbiz.data.cache.codec.EntityCodecRegistry;
 
+/**
+ * <p>
+ * Provide caches which are backed by Hazelcast maps.
+ * </p>
+ * 
+ * <p>
+ * By default entries are held in <code>OBJECT</code> form.  Alternatively 
+ * entries can be held in <code>BINARY</code> form, which is more compact 
+ * and avoids deserializing on the owning member for every remote get, in 
+ * which case a near cache in <code>OBJECT</code> form, which also caches 
+ * locally owned entries, keeps repeated gets from deserializing.  Entities 
+ * are serialized using the codecs of the {@link EntityCodecRegistry}.
+ * </p>
+ */
 public class HazelcastCacheProvider implements CacheProvider
 {
     private HazelcastInstance hazelcastInstance;
     
+    private boolean loadLocking = false;
+    
     public static final String MAP_PREFIX = "intrbiz.cache.";
+    
+    public static final String TAG_PREFIX = "intrbiz.cache.tag.";
+    
+    /**
+     * Load locks are held in a map of their own, outside of the cache map 
+     * config, so that loading a key never blocks writes to it
+     */
+    public static final String LOCK_PREFIX = "intrbiz.cache-lock.";
 
     public HazelcastCacheProvider(HazelcastInstance hazelcastInstance)
     {
@@ -35,7 +64,25 @@ public class HazelcastCacheProvider implements CacheProvider
         this(null, null);
     }
 
+    /**
+     * Create a provider with the default config, holding entries in the given format
+     */
+    public HazelcastCacheProvider(InMemoryFormat inMemoryFormat)
+    {
+        this(null, null, inMemoryFormat);
+    }
+
     public HazelcastCacheProvider(Config config, String instanceName)
+    {
+        this(config, instanceName, InMemoryFormat.OBJECT);
+    }
+
+    /**
+     * @param config the config to use, or null for the default config
+     * @param instanceName the name of the instance to get or create
+     * @param inMemoryFormat the format to hold entries in, which only applies to the default config
+     */
+    public HazelcastCacheProvider(Config config, String instanceName, InMemoryFormat inMemoryFormat)
     {
         try
         {
@@ -51,36 +98,9 @@ public class HazelcastCacheProvider implements CacheProvider
                 {
                     config = new Config();
                 }
-                // add update configuration for our maps
-                MapConfig cacheMapConfig = config.getMapConfig(HazelcastCacheProvider.MAP_PREFIX + "*");
-                // add default config for cache maps
-                cacheMapConfig.setMaxIdleSeconds(1 * 60 * 60); /* Objects are removed if they are idle for 1 hour */
-                cacheMapConfig.setEvictionConfig(
-                    new EvictionConfig()
-                    .setEvictionPolicy(EvictionPolicy.LRU)
-                    .setSize(30)
-                    .setMaxSizePolicy(MaxSizePolicy.FREE_HEAP_PERCENTAGE)
-                );
-                cacheMapConfig.setTimeToLiveSeconds(12 * 60 * 60); /* Objects are always refreshed every 12 hours */
-                cacheMapConfig.setBackupCount(0); /* We're a cache we don't care if we need to visit the backing store */
-                cacheMapConfig.setAsyncBackupCount(0); /* We're a cache we don't care if we need to visit the backing store */
-                cacheMapConfig.setInMemoryFormat(InMemoryFormat.OBJECT); /* Store the objects in object form, we want retrival to be fast and consitent */
-                // setup nearline cache
-                NearCacheConfig cacheMapNLConfig = new NearCacheConfig();
-                cacheMapNLConfig.setCacheLocalEntries(false);
-                cacheMapNLConfig.setEvictionConfig(
-                    new EvictionConfig()
-                    .setEvictionPolicy(EvictionPolicy.LRU)
-                    .setSize(10_000)
-                    .setMaxSizePolicy(MaxSizePolicy.ENTRY_COUNT)
-                );
-                cacheMapNLConfig.setInMemoryFormat(InMemoryFormat.OBJECT);
-                cacheMapNLConfig.setInvalidateOnChange(true);
-                cacheMapNLConfig.setMaxIdleSeconds(10 * 60); /* 10 minute idle time */
-                cacheMapNLConfig.setTimeToLiveSeconds(1 * 60 * 60); /* 1 hour TTL */
-                cacheMapConfig.setNearCacheConfig(cacheMapNLConfig);
-                config.addMapConfig(cacheMapConfig);
+                configureCacheMaps(config, inMemoryFormat);
             }
+            configureSerialization(config);
             // create the hazel cast instance
             if (instanceName == null)
             {
@@ -100,14 +120,92 @@ public class HazelcastCacheProvider implements CacheProvider
         }
     }
 
+    /**
+     * Add the default config for the cache maps, holding entries in the 
+     * given format, with a near cache in object form and a sorted index 
+     * of the keys.  Without the index prefix queries still work, but 
+     * must scan every entry.
+     */
+    public static Config configureCacheMaps(Config config, InMemoryFormat inMemoryFormat)
+    {
+        // add update configuration for our maps
+        MapConfig cacheMapConfig = config.getMapConfig(HazelcastCacheProvider.MAP_PREFIX + "*");
+        // add default config for cache maps
+        cacheMapConfig.setMaxIdleSeconds(1 * 60 * 60); /* Objects are removed if they are idle for 1 hour */
+        cacheMapConfig.setEvictionConfig(
+            new EvictionConfig()
+            .setEvictionPolicy(EvictionPolicy.LRU)
+            .setSize(30)
+            .setMaxSizePolicy(MaxSizePolicy.FREE_HEAP_PERCENTAGE)
+        );
+        cacheMapConfig.setTimeToLiveSeconds(12 * 60 * 60); /* Objects are always refreshed every 12 hours */
+        cacheMapConfig.setBackupCount(0); /* We're a cache we don't care if we need to visit the backing store */
+        cacheMapConfig.setAsyncBackupCount(0); /* We're a cache we don't care if we need to visit the backing store */
+        cacheMapConfig.setInMemoryFormat(inMemoryFormat); /* By default store the objects in object form, we want retrival to be fast and consitent */
+        cacheMapConfig.addIndexConfig(new IndexConfig(IndexType.SORTED, KeyPrefixPredicate.KEY_ATTRIBUTE)); /* Index the keys once for the cluster, so that prefix queries need not scan every entry */
+        // setup nearline cache
+        NearCacheConfig cacheMapNLConfig = new NearCacheConfig();
+        cacheMapNLConfig.setCacheLocalEntries(inMemoryFormat == InMemoryFormat.BINARY); /* Binary entries we own must be deserialized on every get */
+        cacheMapNLConfig.setEvictionConfig(
+            new EvictionConfig()
+            .setEvictionPolicy(EvictionPolicy.LRU)
+            .setSize(10_000)
+            .setMaxSizePolicy(MaxSizePolicy.ENTRY_COUNT)
+        );
+        cacheMapNLConfig.setInMemoryFormat(InMemoryFormat.OBJECT);
+        cacheMapNLConfig.setInvalidateOnChange(true);
+        cacheMapNLConfig.setMaxIdleSeconds(10 * 60); /* 10 minute idle time */
+        cacheMapNLConfig.setTimeToLiveSeconds(1 * 60 * 60); /* 1 hour TTL */
+        cacheMapConfig.setNearCacheConfig(cacheMapNLConfig);
+        config.addMapConfig(cacheMapConfig);
+        return config;
+    }
+
+    /**
+     * Register the serializers for the cache's own types and for entities 
+     * with a registered codec, this must be applied to the config of any 
+     * Hazelcast instance given to this provider.  Entity codecs are used 
+     * via the global serializer, unless one is already configured.
+     */
+    public static Config configureSerialization(Config config)
+    {
+        config.getSerializationConfig().addSerializerConfig(new SerializerConfig().setTypeClass(CachePointerList.class).setImplementation(new CachePointerListSerializer()));
+        config.getSerializationConfig().addSerializerConfig(new SerializerConfig().setTypeClass(CacheTagged.class).setImplementation(new CacheTaggedSerializer()));
+        GlobalSerializerConfig global = config.getSerializationConfig().getGlobalSerializerConfig();
+        if (global == null || (global.getImplementation() == null && global.getClassName() == null))
+        {
+            config.getSerializationConfig().setGlobalSerializerConfig(
+                new GlobalSerializerConfig()
+                .setImplementation(new EntityCodecSerializer())
+                .setOverrideJavaSerialization(true) /* Entities are Serializable, we want to use their codecs first */
+            );
+        }
+        return config;
+    }
+
     public HazelcastInstance getHazelcastInstance()
     {
         return hazelcastInstance;
     }
 
+    public boolean isLoadLocking()
+    {
+        return this.loadLocking;
+    }
+
+    /**
+     * Lock keys cluster wide while they are being loaded, so that 
+     * concurrent cache misses on different nodes share a single load
+     */
+    public HazelcastCacheProvider setLoadLocking(boolean loadLocking)
+    {
+        this.loadLocking = loadLocking;
+        return this;
+    }
+
     @Override
     public Cache getCache(String name)
     {
-        return new HazelcastCache(name, this.hazelcastInstance);
+        return new HazelcastCache(name, this.hazelcastInstance, this.loadLocking);
     }
 }
@@ -3,11 +3,27 @@ package com.intrbiz.data.cache;
 import java.util.Map.Entry;
 
 import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
 
+/**
+ * <p>
+ * Match entries whose key starts with a prefix.
+ * </p>
+ * 
+ * <p>
+ * This predicate must be applied to every entry, use {@link #indexed(String)} 
+ * for a predicate which can be answered from a sorted index on the key.
+ * </p>
+ */
 public class KeyPrefixPredicate implements Predicate<String, Object>
 {
     private static final long serialVersionUID = 1L;
     
+    /**
+     * The attribute of the key of a map entry
+     */
+    public static final String KEY_ATTRIBUTE = "__key";
+    
     private String prefix;
     
     public KeyPrefixPredicate()
@@ -36,4 +52,31 @@ public class KeyPrefixPredicate implements Predicate<String, Object>
     {
         return mapEntry.getKey().startsWith(this.prefix);
     }
+    
+    /**
+     * Match keys starting with the given prefix as a range of keys, 
+     * which a sorted index on {@link #KEY_ATTRIBUTE} can answer 
+     * without scanning every entry of a partition
+     */
+    public static Predicate<String, Object> indexed(String prefix)
+    {
+        if (prefix.isEmpty()) return Predicates.alwaysTrue();
+        String upperBound = upperBound(prefix);
+        if (upperBound == null) return Predicates.greaterEqual(KEY_ATTRIBUTE, prefix);
+        return Predicates.and(Predicates.greaterEqual(KEY_ATTRIBUTE, prefix), Predicates.lessThan(KEY_ATTRIBUTE, upperBound));
+    }
+    
+    /**
+     * The least string which is greater than every string starting with 
+     * the given prefix, or null if there is no such string
+     */
+    static String upperBound(String prefix)
+    {
+        for (int i = prefix.length() - 1; i >= 0; i--)
+        {
+            char c = prefix.charAt(i);
+            if (c != Character.MAX_VALUE) return prefix.substring(0, i) + ((char) (c + 1));
+        }
+        return null;
+    }
 }
@@ -2,6 +2,12 @@ package com.intrbiz.data.cache.hazelcast;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -51,6 +57,35 @@ public class HazelcastCacheTest
         assertThat(this.cache.get("key_1"), is(nullValue()));
     }
     
+    @Test
+    public void testBulk()
+    {
+        Map<String, String> entries = new HashMap<String, String>();
+        entries.put("key_1", "value_1");
+        entries.put("key_2", "value_2");
+        entries.put("key_3", "value_3");
+        this.cache.putAll(entries);
+        Map<String, String> got = this.cache.getAll(Arrays.asList("key_1", "key_2", "key_3", "key_4"));
+        assertThat(got, is(equalTo(entries)));
+        this.cache.removeAll(Arrays.asList("key_1", "key_2"));
+        assertThat(this.cache.get("key_1"), is(nullValue()));
+        assertThat(this.cache.get("key_2"), is(nullValue()));
+        assertThat(this.cache.get("key_3"), is(equalTo("value_3")));
+    }
+    
+    @Test
+    public void testFollowList()
+    {
+        this.cache.put("key_1", "value_1");
+        this.cache.put("key_2", "value_2");
+        this.cache.putPointerList("list", Arrays.asList("key_2", "key_1"));
+        List<String> list = this.cache.getAndFollowList("list");
+        assertThat(list, is(equalTo(Arrays.asList("value_2", "value_1"))));
+        this.cache.remove("key_1");
+        assertThat(this.cache.getAndFollowList("list"), is(nullValue()));
+        assertThat(this.cache.contains("list"), is(equalTo(false)));
+    }
+    
     @Test
     public void testKeyset()
     {
@@ -69,6 +104,46 @@ public class HazelcastCacheTest
         assertThat(keySet.contains("key3"), is(equalTo(false)));
     }
     
+    @Test
+    public void testRemovePrefix()
+    {
+        this.cache.put("key_1", "value_1");
+        this.cache.put("key_2", "value_2");
+        this.cache.put("key1", "value1");
+        this.cache.put("kez_1", "value_1");
+        this.cache.removePrefix("key_");
+        assertThat(this.cache.get("key_1"), is(nullValue()));
+        assertThat(this.cache.get("key_2"), is(nullValue()));
+        assertThat(this.cache.get("key1"), is(equalTo("value1")));
+        assertThat(this.cache.get("kez_1"), is(equalTo("value_1")));
+        assertThat(this.cache.keySet("key").size(), is(equalTo(1)));
+    }
+
+    @Test
+    public void testTags() throws Exception
+    {
+        this.cache.put("get_user.1", "user_1", "users", "user.1");
+        this.cache.put("get_user.2", "user_2", "users");
+        this.cache.put("get_group.1", "group_1", "groups");
+        // the tags are shared with other instances of the cache
+        Cache other = provider.getCache(this.cache.name());
+        other.invalidateTag("user.1");
+        assertThat(this.cache.get("get_user.1"), is(nullValue()));
+        assertThat(this.cache.get("get_user.2"), is(equalTo("user_2")));
+        this.cache.invalidateTag("users");
+        assertThat(this.cache.<String>getAsync("get_user.2").toCompletableFuture().get(), is(nullValue()));
+        assertThat(this.cache.getAll(Arrays.asList("get_user.2", "get_group.1")).keySet(), is(equalTo(Collections.singleton("get_group.1"))));
+    }
+    
+    @Test
+    public void testAsync() throws Exception
+    {
+        this.cache.putAsync("key_1", "value_1").toCompletableFuture().get();
+        assertThat(this.cache.<String>getAsync("key_1").toCompletableFuture().get(), is(equalTo("value_1")));
+        this.cache.removeAsync("key_1").toCompletableFuture().get();
+        assertThat(this.cache.<String>getAsync("key_1").toCompletableFuture().get(), is(nullValue()));
+    }
+    
     @Test
     public void testTransactionPut()
     {
@@ -110,4 +185,54 @@ public class HazelcastCacheTest
         }
         assertThat(this.cache.get("key_1"), is(nullValue()));
     }
+    
+    @Test
+    public void testTransactionIsolated()
+    {
+        Cache other = provider.getCache(this.cache.name());
+        this.cache.put("key_1", "value_1");
+        this.cache.put("prefix.1", "value_1");
+        this.cache.begin();
+        try
+        {
+            this.cache.put("key_2", "value_2");
+            this.cache.removePrefix("prefix.");
+            this.cache.put("prefix.2", "value_2");
+            // the transaction sees its own writes, other users of the cache do not
+            assertThat(this.cache.get("key_2"), is(equalTo("value_2")));
+            assertThat(this.cache.get("prefix.1"), is(nullValue()));
+            assertThat(this.cache.keySet("prefix."), is(equalTo(new HashSet<String>(Arrays.asList("prefix.2")))));
+            assertThat(other.get("key_2"), is(nullValue()));
+            assertThat(other.get("prefix.1"), is(equalTo("value_1")));
+            this.cache.commit();
+        }
+        finally
+        {
+            this.cache.end();
+        }
+        assertThat(other.get("key_1"), is(equalTo("value_1")));
+        assertThat(other.get("key_2"), is(equalTo("value_2")));
+        assertThat(other.get("prefix.1"), is(nullValue()));
+        assertThat(other.get("prefix.2"), is(equalTo("value_2")));
+    }
+    
+    @Test
+    public void testTransactionRollback()
+    {
+        this.cache.put("key_1", "value_1");
+        this.cache.begin();
+        try
+        {
+            this.cache.put("key_2", "value_2");
+            this.cache.remove("key_1");
+            assertThat(this.cache.get("key_1"), is(nullValue()));
+            this.cache.rollback();
+        }
+        finally
+        {
+            this.cache.end();
+        }
+        assertThat(this.cache.get("key_1"), is(equalTo("value_1")));
+        assertThat(this.cache.get("key_2"), is(nullValue()));
+    }
 }
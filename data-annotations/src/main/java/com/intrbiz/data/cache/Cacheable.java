@@ -12,4 +12,9 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 public @interface Cacheable
 {
+    /**
+     * Cache a getter which returns null for the given number of seconds, 
+     * zero (the default) disables negative caching
+     */
+    int negative() default 0;
 }
@@ -1,19 +1,29 @@
 package com.intrbiz.data.db.compiler;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
 
@@ -22,6 +32,10 @@ import com.codahale.metrics.Timer;
 import com.intrbiz.data.DataException;
 import com.intrbiz.data.DataManager;
 import com.intrbiz.data.DataManager.DatabaseAdapterFactory;
+import com.intrbiz.data.cache.codec.EntityCodec;
+import com.intrbiz.data.cache.codec.EntityCodecRegistry;
+import com.intrbiz.data.cache.codec.EntityInput;
+import com.intrbiz.data.cache.codec.EntityOutput;
 import com.intrbiz.data.db.DatabaseAdapter;
 import com.intrbiz.data.db.DatabaseConnection;
 import com.intrbiz.data.db.DatabaseConnection.DatabaseCall;
@@ -50,6 +64,7 @@ import com.intrbiz.data.db.compiler.model.Version;
 import com.intrbiz.data.db.compiler.util.SQLCommand;
 import com.intrbiz.data.db.compiler.util.SQLScript;
 import com.intrbiz.data.db.compiler.util.SQLScriptSet;
+import com.intrbiz.data.db.util.CopyQuery;
 import com.intrbiz.data.db.util.DBUtil;
 import com.intrbiz.express.DefaultContext;
 import com.intrbiz.express.operator.Add;
@@ -94,6 +109,8 @@ public class DatabaseAdapterCompiler
 
     private boolean withMetrics = true;
 
+    private boolean withEntityCodecs = true;
+
     private DatabaseAdapterCompiler(SQLDialect dialect, SQLIntrospector introspector)
     {
         super();
@@ -180,6 +197,21 @@ public class DatabaseAdapterCompiler
         return this;
     }
 
+    public boolean isWithEntityCodecs()
+    {
+        return this.withEntityCodecs;
+    }
+
+    /**
+     * Generate and register cache codecs for the entities of an adapter 
+     * when the adapter factory is compiled
+     */
+    public DatabaseAdapterCompiler setWithEntityCodecs(boolean withEntityCodecs)
+    {
+        this.withEntityCodecs = withEntityCodecs;
+        return this;
+    }
+
     // schema
     public String compileInstallSchemaToString(Class<? extends DatabaseAdapter> cls)
     {
@@ -260,10 +292,11 @@ public class DatabaseAdapterCompiler
                 set.add(patch.getScript());
             }
         }
-        // load functions
+        // load functions, batch variants share the function of their single variant
+        Set<String> functions = new HashSet<String>();
         for (Function function : schema.getFunctions())
         {
-            set.add(this.dialect.writeCreateFunction(function));
+            if (functions.add(function.getSignature())) set.add(this.dialect.writeCreateFunction(function));
         }
         // add any last install patches for this version
         for (Patch patch : schema.getPatches())
@@ -400,10 +433,11 @@ public class DatabaseAdapterCompiler
                 set.add(patch.getScript());
             }
         }
-        // update or install functions
+        // update or install functions, batch variants share the function of their single variant
+        Set<String> functions = new HashSet<String>();
         for (Function function : schema.getFunctions())
         {
-            set.add(this.dialect.writeCreateFunction(function));
+            if (functions.add(function.getSignature())) set.add(this.dialect.writeCreateFunction(function));
         }
         // run any late table / type upgrade scripts
         for (Patch patch : schema.getPatches())
@@ -544,6 +578,9 @@ public class DatabaseAdapterCompiler
     @SuppressWarnings("unchecked")
     public <T extends DatabaseAdapter> DatabaseAdapterFactory<T> compileAdapterFactory(Class<T> cls)
     {
+        // codecs for the entities we will cache
+        if (this.isWithEntityCodecs())
+            this.registerEntityCodecs(cls);
         // look for a precompiled factory first
         DatabaseAdapterFactory<T> precompiled = this.loadPrecompiledAdapterFactory(cls);
         if (precompiled != null)
@@ -624,6 +661,7 @@ public class DatabaseAdapterCompiler
         impl.addImport(SQLException.class.getCanonicalName());
         impl.addImport(Exception.class.getCanonicalName());
         impl.addImport(DBUtil.class.getCanonicalName());
+        impl.addImport(Collectors.class.getCanonicalName());
         // impl.addImport(Cache.class.getCanonicalName());
         impl.addImport(DataManager.class.getCanonicalName());
         // super class
@@ -647,15 +685,31 @@ public class DatabaseAdapterCompiler
             {
                 JavaMethod method = impl.newMethod(function.getDefinition());
                 // fixup generics
-                if (function.isReturnsList() && function.getReturnType() != null)
+                if (function.isPipelined() && function.getReturnType() != null)
+                {
+                    String objType = function.getReturnType().getDefaultJavaType().getSimpleName();
+                    method.setReturnType(method.getReturnType() + "<" + (function.isReturnsList() ? "List<" + objType + ">" : objType) + ">");
+                    impl.addImport(function.getReturnType().getDefaultJavaType().getCanonicalName());
+                }
+                else if (function.isReturnsList() && function.getReturnType() != null)
                 {
                     method.setReturnType("List<" + function.getReturnType().getDefaultJavaType().getSimpleName() + ">");
                     impl.addImport(function.getReturnType().getDefaultJavaType().getCanonicalName());
                 }
+                else if (function.isStreaming() && function.getReturnType() != null)
+                {
+                    method.setReturnType(method.getReturnType() + "<" + function.getReturnType().getDefaultJavaType().getSimpleName() + ">");
+                    impl.addImport(function.getReturnType().getDefaultJavaType().getCanonicalName());
+                }
                 // compile the binding
                 this.compileMethodBinding(method, function);
             }
         }
+        // the bulk loads
+        for (Table table : schema.getTables())
+        {
+            this.compileCopy(impl, cls, schema, table);
+        }
         // compile!
         try
         {
@@ -669,6 +723,277 @@ public class DatabaseAdapterCompiler
         }
     }
 
+    // entity codecs
+    
+    /**
+     * Compile and register a cache codec for every entity of the given adapter, 
+     * entities which cannot be encoded are left to Java serialization
+     */
+    public <T extends DatabaseAdapter> void registerEntityCodecs(Class<T> cls)
+    {
+        Schema schema = this.introspector.buildSchema(this.dialect, cls);
+        Set<Class<?>> entities = new HashSet<Class<?>>();
+        for (Table table : schema.getTables())
+        {
+            if (table.getDefinition() == null || (! entities.add(table.getDefinition()))) continue;
+            try
+            {
+                EntityCodec<?> codec = this.compileEntityCodec(table);
+                if (codec != null) EntityCodecRegistry.get().register(codec);
+            }
+            catch (Exception e)
+            {
+                logger.warn("Failed to compile cache codec for entity " + table.getDefinition().getName() + ", it will use Java serialization", e);
+            }
+        }
+    }
+    
+    private String getEntityCodecClassName(Class<?> entity)
+    {
+        return entity.getSimpleName() + "CacheCodec";
+    }
+    
+    public EntityCodec<?> loadPrecompiledEntityCodec(Class<?> entity)
+    {
+        String codecClassName = entity.getPackage().getName() + "." + this.getEntityCodecClassName(entity);
+        try
+        {
+            return (EntityCodec<?>) Class.forName(codecClassName).newInstance();
+        }
+        catch (InstantiationException | IllegalAccessException | ClassNotFoundException e)
+        {
+            if (logger.isDebugEnabled()) logger.debug("Failed to load precompiled entity codec: " + codecClassName);
+        }
+        return null;
+    }
+    
+    /**
+     * Compile the cache codec for the entity of the given table, 
+     * returning null if the entity has a column which cannot be encoded, 
+     * or state other than its columns which a codec would lose
+     */
+    public EntityCodec<?> compileEntityCodec(Table table) throws ClassNotFoundException, InstantiationException, IllegalAccessException
+    {
+        Class<?> entity = table.getDefinition();
+        if (! isEntityCodecComplete(table))
+        {
+            if (logger.isDebugEnabled()) logger.debug("Cannot use a cache codec for entity " + entity.getName() + ", it has fields which are not columns");
+            return null;
+        }
+        // try the precompiled class first
+        EntityCodec<?> precompiled = this.loadPrecompiledEntityCodec(entity);
+        if (precompiled != null)
+            return precompiled;
+        // we need to be able to construct the entity
+        if (! Modifier.isPublic(entity.getModifiers())) return null;
+        try
+        {
+            if (! Modifier.isPublic(entity.getConstructor().getModifiers())) return null;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return null;
+        }
+        String type = entity.getSimpleName();
+        JavaClass codec = new JavaClass(entity.getPackage().getName(), this.getEntityCodecClassName(entity));
+        codec.addImport(entity.getCanonicalName());
+        codec.addImport(EntityCodec.class.getCanonicalName());
+        codec.addImport(EntityInput.class.getCanonicalName());
+        codec.addImport(EntityOutput.class.getCanonicalName());
+        codec.addSuperInterface(EntityCodec.class.getSimpleName() + "<" + type + ">");
+        JavaMethod write = codec.newMethod("void", "write", new JavaParameter("EntityOutput", "out"), new JavaParameter(type, "entity"));
+        JavaMethod read = codec.newMethod(type, "read", new JavaParameter("EntityInput", "in"));
+        read.append(type + " entity = new " + type + "();\r\n");
+        // the type id changes whenever the encoded columns change
+        StringBuilder layout = new StringBuilder(entity.getName());
+        for (Column column : table.getColumns())
+        {
+            Field field = column.getDefinition();
+            if (field == null) return null;
+            String[] accessors = entityCodecAccessors(codec, field);
+            if (accessors == null)
+            {
+                if (logger.isDebugEnabled()) logger.debug("Cannot generate cache codec for entity " + entity.getName() + ", field " + field.getName() + " of type " + field.getGenericType() + " is not supported");
+                return null;
+            }
+            write.append("out." + accessors[0] + "(entity." + JavaUtil.getterName(field) + "());\r\n");
+            read.append("entity." + JavaUtil.setterName(field) + "(in." + accessors[1] + ");\r\n");
+            layout.append(";").append(field.getName()).append(":").append(field.getGenericType().getTypeName());
+        }
+        read.append("return entity;\r\n");
+        int typeId = layout.toString().hashCode();
+        codec.newMethod("Class<" + type + ">", "getType").append("return " + type + ".class;\r\n");
+        codec.newMethod("int", "getTypeId").append("return " + (typeId == 0 ? 1 : typeId) + ";\r\n");
+        // compile!
+        Class<?> codecCls = CompilerTool.getInstance().defineClass(codec);
+        if (codecCls == null) throw new RuntimeException("Failed to compile entity codec class");
+        return (EntityCodec<?>) codecCls.newInstance();
+    }
+    
+    /**
+     * Does a codec of the columns of the given table encode every serialized field of its entity
+     */
+    private static boolean isEntityCodecComplete(Table table)
+    {
+        Set<Field> columns = new HashSet<Field>();
+        for (Column column : table.getColumns())
+        {
+            if (column.getDefinition() != null) columns.add(column.getDefinition());
+        }
+        for (Class<?> c = table.getDefinition(); c != null && c != Object.class; c = c.getSuperclass())
+        {
+            for (Field field : c.getDeclaredFields())
+            {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers()) || field.isSynthetic()) continue;
+                if (! columns.contains(field)) return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * The write method and read expression to encode the given field, or null if the field cannot be encoded
+     */
+    private static String[] entityCodecAccessors(JavaClass codec, Field field)
+    {
+        Class<?> type = field.getType();
+        if (String.class == type)         return new String[] { "writeString",    "readString()" };
+        else if (UUID.class == type)      return new String[] { "writeUUID",      "readUUID()" };
+        else if (boolean.class == type)   return new String[] { "writeBoolean",   "readBoolean()" };
+        else if (Boolean.class == type)   return new String[] { "writeBoolean",   "readNullableBoolean()" };
+        else if (short.class == type)     return new String[] { "writeShort",     "readShort()" };
+        else if (Short.class == type)     return new String[] { "writeShort",     "readNullableShort()" };
+        else if (int.class == type)       return new String[] { "writeInt",       "readInt()" };
+        else if (Integer.class == type)   return new String[] { "writeInt",       "readNullableInt()" };
+        else if (long.class == type)      return new String[] { "writeLong",      "readLong()" };
+        else if (Long.class == type)      return new String[] { "writeLong",      "readNullableLong()" };
+        else if (float.class == type)     return new String[] { "writeFloat",     "readFloat()" };
+        else if (Float.class == type)     return new String[] { "writeFloat",     "readNullableFloat()" };
+        else if (double.class == type)    return new String[] { "writeDouble",    "readDouble()" };
+        else if (Double.class == type)    return new String[] { "writeDouble",    "readNullableDouble()" };
+        else if (byte[].class == type)    return new String[] { "writeBytes",     "readBytes()" };
+        else if (Date.class == type)      return new String[] { "writeDate",      "readDate()" };
+        else if (Timestamp.class == type) return new String[] { "writeTimestamp", "readTimestamp()" };
+        else if (type.isEnum() && Modifier.isPublic(type.getModifiers()))
+        {
+            codec.addImport(type.getCanonicalName());
+            return new String[] { "writeEnum", "readEnum(" + type.getSimpleName() + ".class)" };
+        }
+        else if (List.class == type && field.getGenericType() instanceof ParameterizedType)
+        {
+            java.lang.reflect.Type element = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+            if (String.class == element)    return new String[] { "writeStringList", "readStringList()" };
+            else if (UUID.class == element) return new String[] { "writeUUIDList",   "readUUIDList()" };
+        }
+        return null;
+    }
+
+    /**
+     * Compile the bulk load methods of the given table, should the dialect be able to 
+     * copy every column of the table: <code>long copyEntity(Stream&lt;Entity&gt; values)</code>
+     * and for tables with a primary key <code>long copyEntity(Stream&lt;Entity&gt; values, boolean upsert)</code>.
+     * 
+     * These are only generated for tables whose bulk load is declared as an abstract 
+     * method of the adapter, so that adapters which never bulk load do not carry the 
+     * copy queries.  Tables which have a concrete method of the same name are skipped.
+     */
+    protected void compileCopy(JavaClass impl, Class<?> cls, Schema schema, Table table)
+    {
+        String name = "copy" + table.getDefinition().getSimpleName();
+        boolean declared = false;
+        for (Method method : cls.getMethods())
+        {
+            if (name.equals(method.getName()))
+            {
+                if (! Modifier.isAbstract(method.getModifiers())) return;
+                declared = true;
+            }
+        }
+        if (! declared) return;
+        // can every column be copied
+        CopyQuery copy = this.dialect.getCopyQuery(table, false);
+        List<String> bindings = new LinkedList<String>();
+        if (copy != null)
+        {
+            for (Column col : table.getColumns())
+            {
+                String binding = this.dialect.getCopyBinding(col.getType(), applyAdapter(impl, col.getAdapter(), false, "e." + JavaUtil.getterName(col.getDefinition()) + "()"));
+                if (binding == null)
+                {
+                    copy = null;
+                    break;
+                }
+                bindings.add(binding);
+            }
+        }
+        if (copy == null)
+        {
+            throw new RuntimeException("Cannot generate bulk load " + name + " as the table " + table.getName() + " cannot be copied by the " + this.dialect.getDialectName() + " dialect");
+        }
+        CopyQuery upsert = this.dialect.getCopyQuery(table, true);
+        String entity = table.getDefinition().getSimpleName();
+        impl.addImport(table.getDefinition().getCanonicalName());
+        impl.addImport(Stream.class.getCanonicalName());
+        impl.addImport(CopyQuery.class.getCanonicalName());
+        JavaField copyField = impl.newUniqueField(CopyQuery.class.getSimpleName(), name + "_query").setValue(compileCopyQuery(copy));
+        JavaField upsertField = upsert == null ? null : impl.newUniqueField(CopyQuery.class.getSimpleName(), name + "_upsert_query").setValue(compileCopyQuery(upsert));
+        // metrics
+        JavaField metricField = null;
+        if (this.isWithMetrics())
+        {
+            impl.addImport(Timer.class.getCanonicalName());
+            impl.addImport(Witchcraft.class.getCanonicalName());
+            metricField = impl.newUniqueField(Timer.class.getSimpleName(), name).setValue("this.intelligenceSource.getRegistry().timer(Witchcraft.name(" + schema.getDefinition().getSimpleName() + ".class, \"copy." + JavaUtil.escapeString(table.getName()) + "\"))");
+        }
+        // the copy
+        StringBuilder s = new StringBuilder();
+        s.append("if (p0 == null) return 0L;\r\n");
+        s.append("long rows = this.");
+        if (metricField != null) s.append("copyTimed(this.").append(metricField.getName()).append(", ");
+        else s.append("copy(");
+        s.append(upsertField == null ? "this." + copyField.getName() : "p1 ? this." + upsertField.getName() + " : this." + copyField.getName());
+        s.append(", p0, (out, e) -> {\r\n");
+        for (String binding : bindings)
+        {
+            s.append("    ").append(binding).append(";\r\n");
+        }
+        s.append("});\r\n");
+        // a bulk load can change any cached entry of the schema
+        s.append("this.cacheClear();\r\n");
+        s.append("return rows;\r\n");
+        if (upsertField == null)
+        {
+            impl.newMethod("long", name, new JavaParameter("Stream<" + entity + ">", "p0")).setCode(s);
+        }
+        else
+        {
+            impl.newMethod("long", name, new JavaParameter("Stream<" + entity + ">", "p0")).append("return this." + name + "(p0, false);\r\n");
+            impl.newMethod("long", name, new JavaParameter("Stream<" + entity + ">", "p0"), new JavaParameter("boolean", "p1")).setCode(s);
+        }
+    }
+    
+    private static String compileCopyQuery(CopyQuery query)
+    {
+        StringBuilder sb = new StringBuilder("new CopyQuery(new String[] {");
+        boolean ns = false;
+        for (String sql : query.getBefore())
+        {
+            if (ns) sb.append(", ");
+            sb.append("\"").append(JavaUtil.escapeString(sql)).append("\"");
+            ns = true;
+        }
+        sb.append("}, \"").append(JavaUtil.escapeString(query.getCopy())).append("\", new String[] {");
+        ns = false;
+        for (String sql : query.getAfter())
+        {
+            if (ns) sb.append(", ");
+            sb.append("\"").append(JavaUtil.escapeString(sql)).append("\"");
+            ns = true;
+        }
+        sb.append("}, ").append(query.getColumns()).append(")");
+        return sb.toString();
+    }
+
     protected void compileSchemaName(JavaClass impl, Schema schema)
     {
         JavaMethod jm = impl.newMethod("String", "getDatabaseModuleName");
@@ -694,7 +1019,7 @@ public class DatabaseAdapterCompiler
         method.getJavaClass().addImport(Timer.class.getCanonicalName());
         method.getJavaClass().addImport(Witchcraft.class.getCanonicalName());
         method.getJavaClass().addImport(TimeUnit.class.getCanonicalName());
-        JavaField metricField = method.getJavaClass().newUniqueField(Timer.class.getSimpleName(), function.getName()).setValue("this.intelligenceSource.getRegistry().timer(Witchcraft.name(" + function.getSchema().getDefinition().getSimpleName() + ".class, \"" + JavaUtil.escapeString(function.getSignature()) + "\"))");
+        JavaField metricField = method.getJavaClass().newUniqueField(Timer.class.getSimpleName(), function.getName()).setValue("this.intelligenceSource.getRegistry().timer(Witchcraft.name(" + function.getSchema().getDefinition().getSimpleName() + ".class, \"" + (function.isBatch() ? "batch." : (function.isStreaming() ? "cursor." : "")) + JavaUtil.escapeString(function.getSignature()) + "\"))");
         return metricField;
     }
     
@@ -707,6 +1032,22 @@ public class DatabaseAdapterCompiler
         return metricField;
     }
 
+    public static JavaField addCacheCoalescedMetricField(JavaMethod method, Function function)
+    {
+        method.getJavaClass().addImport(Meter.class.getCanonicalName());
+        method.getJavaClass().addImport(Witchcraft.class.getCanonicalName());
+        JavaField metricField = method.getJavaClass().newUniqueField(Meter.class.getSimpleName(), "cache_coalesced_" + function.getName()).setValue("this.intelligenceSource.getRegistry().meter(Witchcraft.name(" + function.getSchema().getDefinition().getSimpleName() + ".class, \"cache_coalesced." + JavaUtil.escapeString(function.getSignature()) + "\"))");
+        return metricField;
+    }
+
+    public static JavaField addCacheNegativeHitMetricField(JavaMethod method, Function function)
+    {
+        method.getJavaClass().addImport(Meter.class.getCanonicalName());
+        method.getJavaClass().addImport(Witchcraft.class.getCanonicalName());
+        JavaField metricField = method.getJavaClass().newUniqueField(Meter.class.getSimpleName(), "cache_negative_hit_" + function.getName()).setValue("this.intelligenceSource.getRegistry().meter(Witchcraft.name(" + function.getSchema().getDefinition().getSimpleName() + ".class, \"cache_negative_hit." + JavaUtil.escapeString(function.getSignature()) + "\"))");
+        return metricField;
+    }
+
     public static String applyAdapter(JavaClass cls, Class<?> adapter, boolean from, String value)
     {
         if (adapter != null)
@@ -735,6 +1076,83 @@ public class DatabaseAdapterCompiler
         return sb.toString();
     }
     
+    /**
+     * Invalidate any negative cache entries for getters of the given table, 
+     * as writing a row may create a row which was previously missing
+     * @param s the code to append to
+     * @param function the function which writes to the table
+     * @param entity the expression for the entity being written
+     */
+    public static void compileNegativeCacheInvalidation(StringBuilder s, Function function, String entity)
+    {
+        compileNegativeCacheInvalidation(s, function, entity, false);
+    }
+    
+    /**
+     * Invalidate any negative cache entries for getters of the given table, 
+     * as writing a row may create a row which was previously missing
+     * @param s the code to append to
+     * @param function the function which writes to the table
+     * @param entity the expression for the entity being written, or the list of entities for a batch
+     * @param batch are a list of entities being written
+     */
+    public static void compileNegativeCacheInvalidation(StringBuilder s, Function function, String entity, boolean batch)
+    {
+        boolean primaryKeyInvalidated = function.isCacheable();
+        for (Function getter : function.getSchema().getFunctions())
+        {
+            if (getter.getFunctionType() instanceof SQLGetter && getter.isNegativeCacheable() && function.getTable() != null && function.getTable().equals(getter.getTable()))
+            {
+                if (getter.isAllArgumentsPrimaryKey())
+                {
+                    // a cacheable setter has already replaced the entry for the primary key
+                    if ((! primaryKeyInvalidated) && batch) s.append("this.getAdapterCache().removeAll(").append(entity).append(".stream().map(").append(tableCacheKey(function.getTable())).append(").collect(Collectors.toList()));\r\n");
+                    else if (! primaryKeyInvalidated) s.append("this.getAdapterCache().remove(").append(entity).append(", ").append(tableCacheKey(function.getTable())).append(");\r\n");
+                    primaryKeyInvalidated = true;
+                }
+                else if (getter.getArguments().isEmpty())
+                {
+                    s.append("this.getAdapterCache().remove(\"").append(JavaUtil.escapeString(getter.getName())).append("\");\r\n");
+                }
+                else
+                {
+                    s.append("this.getAdapterCache().removePrefix(\"").append(JavaUtil.escapeString(getter.getName())).append(".\");\r\n");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Apply the cache invalidations of the given batch function once for the whole batch, 
+     * keys are removed in one go and each distinct prefix is removed once
+     * @param s the code to append to
+     * @param function the batch function
+     * @param values the expression for the list of values, each value is available as <code>e</code>
+     * @param lookupColumn get the expression for a column of the value <code>e</code>
+     */
+    public static void compileBatchCacheInvalidation(StringBuilder s, Function function, String values, java.util.function.Function<String, String> lookupColumn)
+    {
+        for (final String invalidate : function.getCacheInvalidate())
+        {
+            // prefix?
+            boolean isPrefix = invalidate.endsWith("*");
+            final String expression = isPrefix ? invalidate.substring(0, invalidate.length() - 1) : invalidate;
+            String key = compileCacheInvalidationExpression(expression, (col) -> {
+                String value = lookupColumn.apply(col);
+                if (value == null) throw new RuntimeException("Could not find column " + col + ", used by cache invalidation key: " + invalidate);
+                return value;
+            });
+            if (isPrefix)
+            {
+                s.append("for (String prefix : ").append(values).append(".stream().map((e) -> ").append(key).append(").collect(Collectors.toSet())) this.getAdapterCache().removePrefix(prefix);\r\n");
+            }
+            else
+            {
+                s.append("this.getAdapterCache().removeAll(").append(values).append(".stream().map((e) -> ").append(key).append(").collect(Collectors.toSet()));\r\n");
+            }
+        }
+    }
+    
     public static String compileCacheInvalidationExpression(String expression, java.util.function.Function<String, String> lookupColumn)
     {
         return compileCacheInvalidationExpression(new ValueExpression(new DefaultContext(), expression).getOperator(), lookupColumn);
@@ -16,6 +16,8 @@ import com.intrbiz.data.db.compiler.model.Table;
 import com.intrbiz.data.db.compiler.model.Type;
 import com.intrbiz.data.db.compiler.util.SQLCommand;
 import com.intrbiz.data.db.compiler.util.SQLScript;
+import com.intrbiz.data.db.util.CopyQuery;
+import com.intrbiz.data.db.util.MultiRowQuery;
 
 public abstract class SQLDialect
 {
@@ -119,4 +121,24 @@ public abstract class SQLDialect
     // Function call SQL
     
     public abstract SQLCommand getFunctionCallQuery(Function function);
+    
+    /**
+     * The query to call the given function for many rows in one statement, 
+     * or null if the function must be called once per row
+     */
+    public abstract MultiRowQuery getMultiRowFunctionCallQuery(Function function);
+    
+    // Bulk loading
+    
+    /**
+     * The bulk load of the given table, or null if the table cannot be bulk loaded
+     * @param table the table to load
+     * @param upsert should the rows be merged into the table, replacing existing rows with the same primary key
+     */
+    public abstract CopyQuery getCopyQuery(Table table, boolean upsert);
+    
+    /**
+     * The code to write the given value to a bulk load, or null if the type cannot be bulk loaded
+     */
+    public abstract String getCopyBinding(SQLType type, String value);
 }
@@ -1,6 +1,7 @@
 package com.intrbiz.data.db.compiler.dialect.function;
 
 import com.intrbiz.data.db.compiler.dialect.SQLDialect;
+import com.intrbiz.data.db.util.MultiRowQuery;
 import com.intrbiz.data.db.compiler.model.Function;
 import com.intrbiz.data.db.compiler.util.SQLCommand;
 
@@ -9,4 +10,13 @@ public interface SQLFunctionGenerator
     void writeCreateFunctionBody(SQLDialect dialect, SQLCommand to, Function function);
     
     SQLCommand writefunctionBindingSQL(SQLDialect dialect, Function function);
+    
+    /**
+     * The query to call the function for many rows in one statement, or null 
+     * if the function can only be called once per statement
+     */
+    default MultiRowQuery writeMultiRowBindingSQL(SQLDialect dialect, Function function)
+    {
+        return null;
+    }
 }
@@ -2,6 +2,8 @@ package com.intrbiz.data.db.compiler.dialect.pgsql;
 
 import java.sql.Date;
 import java.sql.Timestamp;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -37,6 +39,8 @@ import com.intrbiz.data.db.compiler.model.Unique;
 import com.intrbiz.data.db.compiler.model.function.UserDefinedInfo;
 import com.intrbiz.data.db.compiler.util.SQLCommand;
 import com.intrbiz.data.db.compiler.util.SQLScript;
+import com.intrbiz.data.db.util.CopyQuery;
+import com.intrbiz.data.db.util.MultiRowQuery;
 
 public class PGSQLDialect extends SQLDialect
 {
@@ -638,4 +642,145 @@ public class PGSQLDialect extends SQLDialect
         if (generator != null) return generator.writefunctionBindingSQL(this, function);
         throw new RuntimeException("Cannot generate calling SQL query for method: " + function.getDefinition());
     }
+    
+    @Override
+    public MultiRowQuery getMultiRowFunctionCallQuery(Function function)
+    {
+        SQLFunctionGenerator generator = this.getFunctionGenerator(function.getFunctionType().annotationType());
+        if (generator != null) return generator.writeMultiRowBindingSQL(this, function);
+        return null;
+    }
+    
+    /**
+     * Call the given function once for every row of a VALUES list, 
+     * laterally joining the function so that it is always executed
+     */
+    public static MultiRowQuery writeMultiRowFunctionCall(Function function)
+    {
+        SQLCommand row = new SQLCommand("(");
+        SQLCommand suffix = new SQLCommand(") AS \"v\"(");
+        SQLCommand call = new SQLCommand(" CROSS JOIN LATERAL ").writeid(function.getSchema(), function.getName()).write("(");
+        int idx = 0;
+        for (Argument arg : function.getArguments())
+        {
+            if (idx > 0)
+            {
+                row.write(", ");
+                suffix.write(", ");
+                call.write(", ");
+            }
+            row.write("?::").write(arg.getType().getSQLType());
+            suffix.writeid("c" + idx);
+            call.writeid("v").write(".").writeid("c" + idx);
+            idx++;
+        }
+        row.write(")");
+        suffix.write(")").write(call.toString()).write(")");
+        return new MultiRowQuery("SELECT count(*) FROM (VALUES ", row.toString(), suffix.toString(), idx);
+    }
+    
+    /**
+     * Bulk load using a binary copy, an upsert copies into a temporary staging 
+     * table, which is then merged into the table, the last row of a primary key wins
+     */
+    @Override
+    public CopyQuery getCopyQuery(Table table, boolean upsert)
+    {
+        if (table.isVirtual() || table.getColumns().isEmpty()) return null;
+        if (! upsert)
+        {
+            SQLCommand copy = new SQLCommand("COPY ").writeid(table.getSchema(), table.getName()).write(" (").writeColumnNameList(table.getColumns()).write(") FROM STDIN (FORMAT binary)");
+            return new CopyQuery(copy.toString(), table.getColumns().size());
+        }
+        if (table.getPrimaryKey() == null) return null;
+        String staging = "copy_" + table.getName();
+        List<String> after = new LinkedList<String>();
+        // the rows to merge, one per primary key
+        SQLCommand rows = new SQLCommand("(SELECT DISTINCT ON (").writeColumnNameList(table.getPrimaryKey().getColumns()).write(") ").writeColumnNameList(table.getColumns());
+        rows.write(" FROM ").writeid(staging).write(" ORDER BY ").writeColumnNameList(table.getPrimaryKey().getColumns()).write(", ctid DESC) AS ").writeid("s");
+        if (table.getPartitioning() == null || table.getPartitioning().isParentPrimaryKey(table.getPrimaryKey()))
+        {
+            SQLCommand merge = new SQLCommand("INSERT INTO ").writeid(table.getSchema(), table.getName()).write(" (").writeColumnNameList(table.getColumns()).write(") ");
+            merge.write("SELECT * FROM ").write(rows.toString());
+            merge.write(" ON CONFLICT (").writeColumnNameList(table.getPrimaryKey().getColumns()).write(") ");
+            if (table.getNonPrimaryColumns().isEmpty())
+            {
+                merge.write("DO NOTHING");
+            }
+            else
+            {
+                merge.write("DO UPDATE SET ");
+                boolean ns = false;
+                for (Column col : table.getNonPrimaryColumns())
+                {
+                    if (ns) merge.write(", ");
+                    merge.writeid(col.getName()).write(" = EXCLUDED.").writeid(col.getName());
+                    ns = true;
+                }
+            }
+            after.add(merge.toString());
+        }
+        else
+        {
+            // the primary key cannot be defined upon the top level partitioned table, so update then insert
+            if (! table.getNonPrimaryColumns().isEmpty())
+            {
+                SQLCommand update = new SQLCommand("UPDATE ").writeid(table.getSchema(), table.getName()).write(" AS ").writeid("t").write(" SET ");
+                boolean ns = false;
+                for (Column col : table.getNonPrimaryColumns())
+                {
+                    if (ns) update.write(", ");
+                    update.writeid(col.getName()).write(" = ").writeid("s").write(".").writeid(col.getName());
+                    ns = true;
+                }
+                update.write(" FROM ").write(rows.toString()).write(" WHERE ").write(primaryKeyJoin(table));
+                after.add(update.toString());
+            }
+            SQLCommand insert = new SQLCommand("INSERT INTO ").writeid(table.getSchema(), table.getName()).write(" (").writeColumnNameList(table.getColumns()).write(") ");
+            insert.write("SELECT * FROM ").write(rows.toString());
+            insert.write(" WHERE NOT EXISTS (SELECT 1 FROM ").writeid(table.getSchema(), table.getName()).write(" AS ").writeid("t").write(" WHERE ").write(primaryKeyJoin(table)).write(")");
+            after.add(insert.toString());
+        }
+        after.add(new SQLCommand("DROP TABLE ").writeid(staging).toString());
+        SQLCommand create = new SQLCommand("CREATE TEMPORARY TABLE ").writeid(staging).write(" (LIKE ").writeid(table.getSchema(), table.getName()).write(" INCLUDING DEFAULTS) ON COMMIT DROP");
+        SQLCommand copy = new SQLCommand("COPY ").writeid(staging).write(" (").writeColumnNameList(table.getColumns()).write(") FROM STDIN (FORMAT binary)");
+        return new CopyQuery(new String[] { create.toString() }, copy.toString(), after.toArray(new String[after.size()]), table.getColumns().size());
+    }
+    
+    private static String primaryKeyJoin(Table table)
+    {
+        SQLCommand to = new SQLCommand();
+        boolean ns = false;
+        for (Column col : table.getPrimaryKey().getColumns())
+        {
+            if (ns) to.write(" AND ");
+            to.writeid("t").write(".").writeid(col.getName()).write(" = ").writeid("s").write(".").writeid(col.getName());
+            ns = true;
+        }
+        return to.toString();
+    }
+    
+    @Override
+    public String getCopyBinding(SQLType type, String value)
+    {
+        String writer = null;
+        if (type == TYPE_TEXT || type == TYPE_JSON) writer = "writeString";
+        else if (type == TYPE_INTEGER) writer = "writeInt";
+        else if (type == TYPE_BIGINT) writer = "writeLong";
+        else if (type == TYPE_FLOAT) writer = "writeFloat";
+        else if (type == TYPE_DOUBLE) writer = "writeDouble";
+        else if (type == TYPE_BOOLEAN) writer = "writeBoolean";
+        else if (type == TYPE_DATE) writer = "writeDate";
+        else if (type == TYPE_TIMESTAMP) writer = "writeTimestamp";
+        else if (type == TYPE_UUID) writer = "writeUUID";
+        else if (type == TYPE_BYTEA) writer = "writeBytes";
+        else if (type == TYPE_JSONB) writer = "writeJSONB";
+        else if (type == TYPE_MACADDR) writer = "writeMacAddr";
+        else if (type == TYPE_INET) writer = "writeInet";
+        else if (type == TYPE_CIDR) writer = "writeCidr";
+        else if (type == TYPE_TEXT_ARRAY) writer = "writeStringArray";
+        else if (type == TYPE_UUID_ARRAY) writer = "writeUUIDArray";
+        else if (type instanceof SQLEnumType) writer = "writeEnum";
+        return writer == null ? null : "out." + writer + "(" + value + ")";
+    }
 }
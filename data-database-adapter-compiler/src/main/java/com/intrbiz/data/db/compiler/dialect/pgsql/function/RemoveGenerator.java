@@ -3,11 +3,13 @@ package com.intrbiz.data.db.compiler.dialect.pgsql.function;
 import com.intrbiz.Util;
 import com.intrbiz.data.db.compiler.dialect.SQLDialect;
 import com.intrbiz.data.db.compiler.dialect.function.SQLFunctionGenerator;
+import com.intrbiz.data.db.compiler.dialect.pgsql.PGSQLDialect;
 import com.intrbiz.data.db.compiler.model.Argument;
 import com.intrbiz.data.db.compiler.model.Function;
 import com.intrbiz.data.db.compiler.model.Table;
 import com.intrbiz.data.db.compiler.model.function.RemoveInfo;
 import com.intrbiz.data.db.compiler.util.SQLCommand;
+import com.intrbiz.data.db.util.MultiRowQuery;
 
 public class RemoveGenerator implements SQLFunctionGenerator
 {
@@ -68,4 +70,10 @@ public class RemoveGenerator implements SQLFunctionGenerator
         to.write(")");
         return to;
     }
+    
+    @Override
+    public MultiRowQuery writeMultiRowBindingSQL(SQLDialect dialect, Function function)
+    {
+        return PGSQLDialect.writeMultiRowFunctionCall(function);
+    }
 }
@@ -2,12 +2,14 @@ package com.intrbiz.data.db.compiler.dialect.pgsql.function;
 
 import com.intrbiz.data.db.compiler.dialect.SQLDialect;
 import com.intrbiz.data.db.compiler.dialect.function.SQLFunctionGenerator;
+import com.intrbiz.data.db.compiler.dialect.pgsql.PGSQLDialect;
 import com.intrbiz.data.db.compiler.model.Argument;
 import com.intrbiz.data.db.compiler.model.Column;
 import com.intrbiz.data.db.compiler.model.Function;
 import com.intrbiz.data.db.compiler.model.Table;
 import com.intrbiz.data.db.compiler.model.function.SetterInfo;
 import com.intrbiz.data.db.compiler.util.SQLCommand;
+import com.intrbiz.data.db.util.MultiRowQuery;
 
 public class SetterGenerator implements SQLFunctionGenerator
 {
@@ -161,4 +163,10 @@ public class SetterGenerator implements SQLFunctionGenerator
         to.write(")");
         return to;
     }
+    
+    @Override
+    public MultiRowQuery writeMultiRowBindingSQL(SQLDialect dialect, Function function)
+    {
+        return PGSQLDialect.writeMultiRowFunctionCall(function);
+    }
 }
@@ -68,7 +68,7 @@ public class SQLArrayType implements SQLType
         imports.add(this.javaElementType.getCanonicalName());
     }
     
-    public String setBinding(int idx, String value)
+    public String setBinding(String idx, String value)
     {
         return "DBUtil.setArray(stmt, " + idx + ", \"" + this.elementType + "\", " + value + ")";
     }
@@ -48,7 +48,7 @@ public class SQLCompositeType implements SQLType
     {
     }
     
-    public String setBinding(int idx, String value)
+    public String setBinding(String idx, String value)
     {
         throw new RuntimeException("Cannot bind a composite type");
     }
@@ -39,7 +39,7 @@ public class SQLEnumType implements SQLType
         imports.add(this.type.getCanonicalName());
     }
     
-    public String setBinding(int idx, String value)
+    public String setBinding(String idx, String value)
     {
         return "DBUtil.setEnum(stmt, " + idx + ", " + value + ")";
     }
@@ -49,7 +49,7 @@ public class SQLSimpleType implements SQLType
     {
     }
     
-    public String setBinding(int idx, String value)
+    public String setBinding(String idx, String value)
     {
         return "stmt.set" + this.jdbcAccessor + "(" + idx + ", " + value + ")";
     }
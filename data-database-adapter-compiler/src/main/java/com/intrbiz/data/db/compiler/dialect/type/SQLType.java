@@ -16,7 +16,15 @@ public interface SQLType
     
     void addImports(Set<String> imports);
     
-    String setBinding(int idx, String value);
+    default String setBinding(int idx, String value)
+    {
+        return this.setBinding(String.valueOf(idx), value);
+    }
+    
+    /**
+     * Bind the given value to the parameter at the given index, which may be an expression
+     */
+    String setBinding(String idx, String value);
     
     String getBinding(int idx);
 }
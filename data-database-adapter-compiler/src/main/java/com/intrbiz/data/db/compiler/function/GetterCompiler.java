@@ -1,5 +1,7 @@
 package com.intrbiz.data.db.compiler.function;
 
+import java.util.stream.Stream;
+
 import com.intrbiz.Util;
 import com.intrbiz.data.db.compiler.DatabaseAdapterCompiler;
 import com.intrbiz.data.db.compiler.model.Argument;
@@ -15,11 +17,25 @@ public class GetterCompiler implements FunctionCompiler
     @Override
     public void compileFunctionBinding(DatabaseAdapterCompiler compiler, JavaMethod method, Function function)
     {
+        if (function.isStreaming())
+        {
+            this.compileStreamingFunctionBinding(compiler, method, function);
+            return;
+        }
+        if (function.isPipelined())
+        {
+            this.compilePipelinedFunctionBinding(compiler, method, function);
+            return;
+        }
         // metrics
         JavaField  metricField = null;
         JavaField  cacheMissMetricField = null;
+        JavaField  cacheCoalescedMetricField = null;
+        JavaField  cacheNegativeHitMetricField = null;
         if (compiler.isWithMetrics()) metricField = DatabaseAdapterCompiler.addMetricField(method, function);
         if (compiler.isWithMetrics() && function.isCacheable()) cacheMissMetricField = DatabaseAdapterCompiler.addCacheMissMetricField(method, function);
+        if (compiler.isWithMetrics() && function.isCacheable()) cacheCoalescedMetricField = DatabaseAdapterCompiler.addCacheCoalescedMetricField(method, function);
+        if (compiler.isWithMetrics() && function.isNegativeCacheable()) cacheNegativeHitMetricField = DatabaseAdapterCompiler.addCacheNegativeHitMetricField(method, function);
         //
         StringBuilder s = method.getCode();
         //
@@ -38,44 +54,11 @@ public class GetterCompiler implements FunctionCompiler
         if (function.isCacheable())
         {
             if (compiler.isWithMetrics()) s.append(cacheMissMetricField.getName()).append(",\r\n");
-            // optimise for lookup by primary key
-            if (function.isAllArgumentsPrimaryKey())
-            {
-                s.append("\"").append(JavaUtil.escapeString(function.getTable().getName())).append(".\"");
-                boolean ns = false;
-                for (Column column : function.getTable().getPrimaryKey().getColumns())
-                {
-                    int idx = 0;
-                    for (Argument arg : function.getArguments())
-                    {
-                        if (column.equals(arg.getShadowOf()))
-                        {
-                            if (ns) s.append(" + \".\"");
-                            s.append(" + p").append(idx);
-                            ns = true;
-                            break;
-                        }
-                        idx++;
-                    }
-                }
-                s.append(",\r\n");
-                // the entity key lambda
-                // as we are a looking up by the primary cache key we do not need to xref
-                s.append("null,\r\n");
-            }
-            else
-            {
-            // build the cache key, function_name.arg0[.argN]
-            s.append("\"").append(JavaUtil.escapeString(function.getName())).append(function.getArguments().size() > 0 ? "." : "").append("\"");
-            for (int i = 0; i < function.getArguments().size(); i++)
-            {
-                if (i > 0) s.append(" + \".\"");
-                s.append(" + p" + i);
-            }
-            s.append(",\r\n");
-            // the entity key lambda
-            s.append(DatabaseAdapterCompiler.tableCacheKey(function.getTable())).append(",\r\n");
-            }
+            if (compiler.isWithMetrics()) s.append(cacheCoalescedMetricField.getName()).append(",\r\n");
+            if (compiler.isWithMetrics() && function.isNegativeCacheable()) s.append(cacheNegativeHitMetricField.getName()).append(",\r\n");
+            this.compileCacheKey(s, function, 0);
+            // how long to cache a null result for
+            if (function.isNegativeCacheable()) s.append(function.getNegativeCacheTTL()).append("L,\r\n");
         }
         //
         /* s.append("new DatabaseCall<").append(method.getReturnType()).append(">() {\r\n"); */
@@ -127,5 +110,143 @@ public class GetterCompiler implements FunctionCompiler
         // close use()
         s.append(");\r\n");
     }
+    
+    /**
+     * Read the results through a cursor, rather than into a list, returning 
+     * either the cursor or a stream of it
+     */
+    protected void compileStreamingFunctionBinding(DatabaseAdapterCompiler compiler, JavaMethod method, Function function)
+    {
+        // metrics
+        JavaField  metricField = null;
+        if (compiler.isWithMetrics()) metricField = DatabaseAdapterCompiler.addMetricField(method, function);
+        //
+        StringBuilder s = method.getCode();
+        //
+        String objType = function.getReturnType().getDefaultJavaType().getSimpleName();
+        method.getJavaClass().addImport(function.getReturnType().getDefaultJavaType().getCanonicalName());
+        //
+        s.append("return this.useCursor");
+        if (compiler.isWithMetrics()) s.append("Timed(").append(metricField.getName()).append(", ");
+        else s.append("(");
+        s.append("\"").append(JavaUtil.escapeString(compiler.getDialect().getFunctionCallQuery(function).toString())).append("\", ");
+        // bind params
+        s.append("(stmt) -> {\r\n");
+        int idx = 0;
+        for (Argument arg : function.getArguments())
+        {
+            arg.getType().addImports(method.getJavaClass().getImports());
+            s.append("    ").append(arg.getType().setBinding(idx + 1, DatabaseAdapterCompiler.applyAdapter(method.getJavaClass(), Util.nullable(arg.getShadowOf(), Column::getAdapter), false, "p" + idx))).append(";\r\n");
+            idx++;
+        }
+        s.append("}, ");
+        // bind the result
+        s.append("(rs) -> {\r\n");
+        s.append("    ").append(objType).append(" obj = new ").append(objType).append("();\r\n");
+        idx = 0;
+        for (Column col : function.getTable().getColumns())
+        {
+            col.getType().addImports(method.getJavaClass().getImports());
+            s.append("    obj.").append(JavaUtil.setterName(col.getDefinition())).append("(").append(DatabaseAdapterCompiler.applyAdapter(method.getJavaClass(), col.getAdapter(), true, col.getType().getBinding(idx + 1))).append(");\r\n");
+            idx++;
+        }
+        s.append("    return obj;\r\n");
+        s.append("})");
+        if (Stream.class == function.getDefinition().getReturnType()) s.append(".stream()");
+        s.append(";\r\n");
+    }
+    
+    /**
+     * Build the cache key and the entity key lambda of a cacheable function
+     * @param first the index of the method parameter of the first argument
+     */
+    protected void compileCacheKey(StringBuilder s, Function function, int first)
+    {
+        // optimise for lookup by primary key
+        if (function.isAllArgumentsPrimaryKey())
+        {
+            s.append("\"").append(JavaUtil.escapeString(function.getTable().getName())).append(".\"");
+            boolean ns = false;
+            for (Column column : function.getTable().getPrimaryKey().getColumns())
+            {
+                int idx = 0;
+                for (Argument arg : function.getArguments())
+                {
+                    if (column.equals(arg.getShadowOf()))
+                    {
+                        if (ns) s.append(" + \".\"");
+                        s.append(" + p").append(first + idx);
+                        ns = true;
+                        break;
+                    }
+                    idx++;
+                }
+            }
+            s.append(",\r\n");
+            // the entity key lambda
+            // as we are a looking up by the primary cache key we do not need to xref
+            s.append("null,\r\n");
+        }
+        else
+        {
+            // build the cache key, function_name.arg0[.argN]
+            s.append("\"").append(JavaUtil.escapeString(function.getName())).append(function.getArguments().size() > 0 ? "." : "").append("\"");
+            for (int i = 0; i < function.getArguments().size(); i++)
+            {
+                if (i > 0) s.append(" + \".\"");
+                s.append(" + p" + (first + i));
+            }
+            s.append(",\r\n");
+            // the entity key lambda
+            s.append(DatabaseAdapterCompiler.tableCacheKey(function.getTable())).append(",\r\n");
+        }
+    }
+    
+    /**
+     * Queue the query in the given pipeline, the first parameter, returning 
+     * a future of the result.  The query is only queued upon a cache miss.
+     */
+    protected void compilePipelinedFunctionBinding(DatabaseAdapterCompiler compiler, JavaMethod method, Function function)
+    {
+        StringBuilder s = method.getCode();
+        //
+        String objType = function.getReturnType().getDefaultJavaType().getSimpleName();
+        method.getJavaClass().addImport(function.getReturnType().getDefaultJavaType().getCanonicalName());
+        //
+        s.append("return this.usePipelined");
+        if (function.isCacheable()) s.append("Cached");
+        if (function.isReturnsList()) s.append("List");
+        s.append("(p0,\r\n");
+        // cache stuff, the arguments follow the pipeline
+        if (function.isCacheable())
+        {
+            this.compileCacheKey(s, function, 1);
+            if (! function.isReturnsList()) s.append(function.getNegativeCacheTTL()).append("L,\r\n");
+        }
+        s.append("\"").append(JavaUtil.escapeString(compiler.getDialect().getFunctionCallQuery(function).toString())).append("\", ");
+        s.append(function.getArguments().size()).append(", ");
+        // bind params, after the offset of the query
+        s.append("(stmt, o) -> {\r\n");
+        int idx = 0;
+        for (Argument arg : function.getArguments())
+        {
+            arg.getType().addImports(method.getJavaClass().getImports());
+            s.append("    ").append(arg.getType().setBinding("o + " + (idx + 1), DatabaseAdapterCompiler.applyAdapter(method.getJavaClass(), Util.nullable(arg.getShadowOf(), Column::getAdapter), false, "p" + (idx + 1)))).append(";\r\n");
+            idx++;
+        }
+        s.append("}, ");
+        // bind the result
+        s.append("(rs) -> {\r\n");
+        s.append("    ").append(objType).append(" obj = new ").append(objType).append("();\r\n");
+        idx = 0;
+        for (Column col : function.getTable().getColumns())
+        {
+            col.getType().addImports(method.getJavaClass().getImports());
+            s.append("    obj.").append(JavaUtil.setterName(col.getDefinition())).append("(").append(DatabaseAdapterCompiler.applyAdapter(method.getJavaClass(), col.getAdapter(), true, col.getType().getBinding(idx + 1))).append(");\r\n");
+            idx++;
+        }
+        s.append("    return obj;\r\n");
+        s.append("});\r\n");
+    }
 
 }
@@ -5,6 +5,7 @@ import com.intrbiz.data.db.compiler.DatabaseAdapterCompiler;
 import com.intrbiz.data.db.compiler.model.Argument;
 import com.intrbiz.data.db.compiler.model.Column;
 import com.intrbiz.data.db.compiler.model.Function;
+import com.intrbiz.data.db.util.MultiRowQuery;
 import com.intrbiz.util.compiler.model.JavaField;
 import com.intrbiz.util.compiler.model.JavaMethod;
 import com.intrbiz.util.compiler.util.JavaUtil;
@@ -15,6 +16,11 @@ public class RemoveCompiler implements FunctionCompiler
     @Override
     public void compileFunctionBinding(DatabaseAdapterCompiler compiler, JavaMethod method, Function function)
     {
+        if (function.isBatch())
+        {
+            this.compileBatchFunctionBinding(compiler, method, function);
+            return;
+        }
         StringBuilder s = method.getCode();
         // metrics
         JavaField  metricField = null;
@@ -99,6 +105,60 @@ public class RemoveCompiler implements FunctionCompiler
             s.append("this.getAdapterCache().remove").append(isPrefix ? "Prefix" : "").append("(").append(key).append(");\r\n");
         }
     }
+    
+    /**
+     * Remove by a list of values, sending them to the database in batches, 
+     * in one statement per batch if the dialect can, updating the cache 
+     * once for the whole list
+     */
+    protected void compileBatchFunctionBinding(DatabaseAdapterCompiler compiler, JavaMethod method, Function function)
+    {
+        StringBuilder s = method.getCode();
+        Argument arg = function.getArguments().get(0);
+        method.getJavaClass().addImport(arg.getJavaClass().getCanonicalName());
+        method.getParameters().get(0).setType("List<" + arg.getJavaClass().getSimpleName() + ">");
+        // metrics
+        JavaField  metricField = null;
+        if (compiler.isWithMetrics()) metricField = DatabaseAdapterCompiler.addMetricField(method, function);
+        //
+        s.append("if (p0 == null || p0.isEmpty()) return;\r\n");
+        MultiRowQuery multiRow = compiler.getDialect().getMultiRowFunctionCallQuery(function);
+        if (multiRow != null)
+        {
+            method.getJavaClass().addImport(MultiRowQuery.class.getCanonicalName());
+            JavaField queryField = method.getJavaClass().newUniqueField(MultiRowQuery.class.getSimpleName(), function.getName() + "_query").setValue("new MultiRowQuery(\"" + JavaUtil.escapeString(multiRow.getPrefix()) + "\", \"" + JavaUtil.escapeString(multiRow.getRow()) + "\", \"" + JavaUtil.escapeString(multiRow.getSuffix()) + "\", " + multiRow.getColumns() + ")");
+            s.append("this.");
+            if (compiler.isWithMetrics()) s.append("executeMultiRowTimed(this.").append(metricField.getName()).append(", ");
+            else s.append("executeMultiRow(");
+            s.append("this.").append(queryField.getName()).append(", p0, (stmt, o, e) -> {\r\n");
+        }
+        else
+        {
+            s.append("this.");
+            if (compiler.isWithMetrics()) s.append("executeBatchTimed(this.").append(metricField.getName()).append(", ");
+            else s.append("executeBatch(");
+            s.append("\"").append(JavaUtil.escapeString(compiler.getDialect().getFunctionCallQuery(function).toString())).append("\", p0, (stmt, o, e) -> {\r\n");
+        }
+        // bind the value, after the offset of the row
+        arg.getType().addImports(method.getJavaClass().getImports());
+        s.append("    ").append(arg.getType().setBinding("o + 1", DatabaseAdapterCompiler.applyAdapter(method.getJavaClass(), Util.nullable(arg.getShadowOf(), Column::getAdapter), false, "e"))).append(";\r\n");
+        s.append("});\r\n");
+        // clean up the cache once for the batch
+        if (function.isCacheable())
+        {
+            if (function.isAllArgumentsPrimaryKey())
+            {
+                s.append("this.getAdapterCache().removeAll(p0.stream().map((e) -> \"").append(JavaUtil.escapeString(function.getTable().getName())).append(".\" + e).collect(Collectors.toList()));\r\n");
+            }
+            else
+            {
+                // remove all objects starting with the table prefix
+                s.append("this.getAdapterCache().removePrefix(\"").append(JavaUtil.escapeString(function.getTable().getName())).append(".\");\r\n");
+            }
+        }
+        // invalidate
+        DatabaseAdapterCompiler.compileBatchCacheInvalidation(s, function, "p0", (col) -> col.equals(arg.getName()) ? "e" : null);
+    }
 
     
 }
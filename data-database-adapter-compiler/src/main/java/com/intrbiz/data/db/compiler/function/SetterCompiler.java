@@ -5,6 +5,7 @@ import com.intrbiz.data.db.compiler.DatabaseAdapterCompiler;
 import com.intrbiz.data.db.compiler.model.Argument;
 import com.intrbiz.data.db.compiler.model.Column;
 import com.intrbiz.data.db.compiler.model.Function;
+import com.intrbiz.data.db.util.MultiRowQuery;
 import com.intrbiz.util.compiler.model.JavaField;
 import com.intrbiz.util.compiler.model.JavaMethod;
 import com.intrbiz.util.compiler.util.JavaUtil;
@@ -15,6 +16,11 @@ public class SetterCompiler implements FunctionCompiler
     @Override
     public void compileFunctionBinding(DatabaseAdapterCompiler compiler, JavaMethod method, Function function)
     {
+        if (function.isBatch())
+        {
+            this.compileBatchFunctionBinding(compiler, method, function);
+            return;
+        }
         StringBuilder s = method.getCode();
         // metrics
         JavaField  metricField = null;
@@ -49,6 +55,8 @@ public class SetterCompiler implements FunctionCompiler
         {
             s.append("this.getAdapterCache().put(p0, ").append(DatabaseAdapterCompiler.tableCacheKey(function.getTable())).append(");\r\n");
         }
+        // invalidate negative entries
+        DatabaseAdapterCompiler.compileNegativeCacheInvalidation(s, function, "p0");
         // invalidate
         for (final String invalidate : function.getCacheInvalidate())
         {
@@ -71,6 +79,63 @@ public class SetterCompiler implements FunctionCompiler
         }
     }
     
-    
+    /**
+     * Set a list of entities, sending them to the database in batches, 
+     * in one statement per batch if the dialect can, updating the cache 
+     * once for the whole list
+     */
+    protected void compileBatchFunctionBinding(DatabaseAdapterCompiler compiler, JavaMethod method, Function function)
+    {
+        StringBuilder s = method.getCode();
+        Class<?> entity = function.getTable().getDefinition();
+        method.getJavaClass().addImport(entity.getCanonicalName());
+        method.getParameters().get(0).setType("List<" + entity.getSimpleName() + ">");
+        // metrics
+        JavaField  metricField = null;
+        if (compiler.isWithMetrics()) metricField = DatabaseAdapterCompiler.addMetricField(method, function);
+        //
+        s.append("if (p0 == null || p0.isEmpty()) return;\r\n");
+        MultiRowQuery multiRow = compiler.getDialect().getMultiRowFunctionCallQuery(function);
+        if (multiRow != null)
+        {
+            method.getJavaClass().addImport(MultiRowQuery.class.getCanonicalName());
+            JavaField queryField = method.getJavaClass().newUniqueField(MultiRowQuery.class.getSimpleName(), function.getName() + "_query").setValue("new MultiRowQuery(\"" + JavaUtil.escapeString(multiRow.getPrefix()) + "\", \"" + JavaUtil.escapeString(multiRow.getRow()) + "\", \"" + JavaUtil.escapeString(multiRow.getSuffix()) + "\", " + multiRow.getColumns() + ")");
+            s.append("this.");
+            if (compiler.isWithMetrics()) s.append("executeMultiRowTimed(this.").append(metricField.getName()).append(", ");
+            else s.append("executeMultiRow(");
+            s.append("this.").append(queryField.getName()).append(", p0, (stmt, o, e) -> {\r\n");
+        }
+        else
+        {
+            s.append("this.");
+            if (compiler.isWithMetrics()) s.append("executeBatchTimed(this.").append(metricField.getName()).append(", ");
+            else s.append("executeBatch(");
+            s.append("\"").append(JavaUtil.escapeString(compiler.getDialect().getFunctionCallQuery(function).toString())).append("\", p0, (stmt, o, e) -> {\r\n");
+        }
+        // bind params, after the offset of the row
+        int idx = 0;
+        for (Argument arg : function.getArguments())
+        {
+            arg.getType().addImports(method.getJavaClass().getImports());
+            s.append("    ").append(arg.getType().setBinding("o + " + (idx + 1), DatabaseAdapterCompiler.applyAdapter(method.getJavaClass(), Util.nullable(arg.getShadowOf(), Column::getAdapter), false, "e." + JavaUtil.getterName(arg.getShadowOf().getDefinition()) + "()"))).append(";\r\n");
+            idx++;
+        }
+        s.append("});\r\n");
+        // update the cache once for the batch, the type is explicit as the single value put would also match
+        if (function.isCacheable())
+        {
+            s.append("this.getAdapterCache().<").append(entity.getSimpleName()).append(">put(p0, ").append(DatabaseAdapterCompiler.tableCacheKey(function.getTable())).append(");\r\n");
+        }
+        // invalidate negative entries
+        DatabaseAdapterCompiler.compileNegativeCacheInvalidation(s, function, "p0", true);
+        // invalidate
+        DatabaseAdapterCompiler.compileBatchCacheInvalidation(s, function, "p0", (col) -> {
+            for (Argument arg : function.getArguments())
+            {
+                if (col.equals(arg.getName())) return "e." + JavaUtil.getterName(arg.getShadowOf().getDefinition()) + "()";
+            }
+            return null;
+        });
+    }
 
 }
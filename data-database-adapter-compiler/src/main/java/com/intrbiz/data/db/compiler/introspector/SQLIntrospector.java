@@ -5,15 +5,19 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import com.intrbiz.Util;
 import com.intrbiz.data.cache.CacheInvalidate;
 import com.intrbiz.data.cache.Cacheable;
+import com.intrbiz.data.db.DatabaseCursor;
 import com.intrbiz.data.db.compiler.dialect.SQLDialect;
 import com.intrbiz.data.db.compiler.dialect.type.SQLType;
 import com.intrbiz.data.db.compiler.introspector.function.CustomIntrospector;
@@ -176,7 +180,10 @@ public class SQLIntrospector
                 {
                     Function function = introspector.buildFunction(this, dialect, method, sqlFunction, cls, schema);
                     // cache handling
-                    function.setCacheable(method.getAnnotation(Cacheable.class) != null);
+                    Cacheable cacheable = method.getAnnotation(Cacheable.class);
+                    function.setCacheable(cacheable != null);
+                    if (function.isCacheable() && function.isStreaming()) throw new RuntimeException("The method " + method + " returns a cursor, so cannot be cached.");
+                    function.setNegativeCacheTTL(cacheable == null ? 0 : cacheable.negative());
                     CacheInvalidate inv = method.getAnnotation(CacheInvalidate.class);
                     if (inv != null)
                     {
@@ -557,6 +564,47 @@ public class SQLIntrospector
         return List.class == method.getReturnType();
     }
     
+    public static boolean returnsStream(Method method)
+    {
+        return Stream.class == method.getReturnType() || DatabaseCursor.class == method.getReturnType();
+    }
+    
+    public static boolean returnsFuture(Method method)
+    {
+        return CompletableFuture.class == method.getReturnType();
+    }
+    
+    /**
+     * The type the given method returns a future of, otherwise null
+     */
+    public static Class<?> returnsFutureOf(Method method)
+    {
+        if (! returnsFuture(method)) return null;
+        java.lang.reflect.Type type = method.getGenericReturnType();
+        if (type instanceof ParameterizedType)
+        {
+            java.lang.reflect.Type value = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (value instanceof Class) return (Class<?>) value;
+            if (value instanceof ParameterizedType && ((ParameterizedType) value).getRawType() instanceof Class) return (Class<?>) ((ParameterizedType) value).getRawType();
+        }
+        return null;
+    }
+    
+    /**
+     * The element type of the given parameter if it is a List, otherwise null
+     */
+    public static Class<?> parameterListOf(Method method, int index)
+    {
+        if (List.class != method.getParameterTypes()[index]) return null;
+        java.lang.reflect.Type type = method.getGenericParameterTypes()[index];
+        if (type instanceof ParameterizedType)
+        {
+            java.lang.reflect.Type element = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (element instanceof Class) return (Class<?>) element;
+        }
+        return null;
+    }
+    
     @SuppressWarnings("unchecked")
     public static <T extends Annotation> T getParameterAnnotation(Annotation[] annotations, Class<T> type)
     {
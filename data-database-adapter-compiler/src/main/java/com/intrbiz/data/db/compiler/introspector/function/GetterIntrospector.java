@@ -2,7 +2,9 @@ package com.intrbiz.data.db.compiler.introspector.function;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.List;
 
+import com.intrbiz.data.db.DatabasePipeline;
 import com.intrbiz.data.db.compiler.dialect.SQLDialect;
 import com.intrbiz.data.db.compiler.dialect.type.SQLCompositeType;
 import com.intrbiz.data.db.compiler.dialect.type.SQLType;
@@ -37,9 +39,16 @@ public class GetterIntrospector implements SQLFunctionIntrospector
         function.setIntrospectionInformation(info);
         // return type should be a table type
         if (void.class == method.getReturnType() || method.getReturnType() == null) throw new RuntimeException("The method " + method + " must return something.");
-        function.setReturnsList(SQLIntrospector.returnsList(method));
+        function.setPipelined(SQLIntrospector.returnsFuture(method));
+        function.setReturnsList(function.isPipelined() ? List.class == SQLIntrospector.returnsFutureOf(method) : SQLIntrospector.returnsList(method));
+        function.setStreaming(SQLIntrospector.returnsStream(method));
         // validate return type
-        if ((! function.isReturnsList()) && getter.table() != method.getReturnType()) throw new RuntimeException("The method " + method + " must return " + getter.table().getCanonicalName() + ".");
+        if (function.isPipelined())
+        {
+            if ((! function.isReturnsList()) && getter.table() != SQLIntrospector.returnsFutureOf(method)) throw new RuntimeException("The method " + method + " must return a future of " + getter.table().getCanonicalName() + ".");
+            if (method.getParameterCount() == 0 || DatabasePipeline.class != method.getParameterTypes()[0]) throw new RuntimeException("The method " + method + " returns a future, so its first parameter must be the DatabasePipeline.");
+        }
+        else if ((! function.isReturnsList()) && (! function.isStreaming()) && getter.table() != method.getReturnType()) throw new RuntimeException("The method " + method + " must return " + getter.table().getCanonicalName() + ".");
         // the table type
         Class<?> tableCls = getter.table();
         Type type = introspector.buildType(dialect, tableCls);
@@ -50,7 +59,8 @@ public class GetterIntrospector implements SQLFunctionIntrospector
         Class<?>[] argTypes = method.getParameterTypes();
         Annotation[][] argAnnotations = method.getParameterAnnotations();
         int idx = 0;
-        for (int i = 0; i < argTypes.length; i++)
+        // the pipeline is not an argument of the function
+        for (int i = function.isPipelined() ? 1 : 0; i < argTypes.length; i++)
         {
             SQLParam param = SQLIntrospector.getParameterAnnotation(argAnnotations[i], SQLParam.class);
             SQLOffset offset = SQLIntrospector.getParameterAnnotation(argAnnotations[i], SQLOffset.class);
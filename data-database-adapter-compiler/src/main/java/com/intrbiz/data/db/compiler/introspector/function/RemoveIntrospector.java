@@ -2,6 +2,7 @@ package com.intrbiz.data.db.compiler.introspector.function;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.List;
 
 import com.intrbiz.data.db.compiler.dialect.SQLDialect;
 import com.intrbiz.data.db.compiler.dialect.type.SQLType;
@@ -46,6 +47,13 @@ public class RemoveIntrospector implements SQLFunctionIntrospector
             if (param != null)
             {
                 Class<?> argType = argTypes[i];
+                // a list of values removes in a batch
+                if (List.class == argType)
+                {
+                    argType = SQLIntrospector.parameterListOf(method, i);
+                    if (argType == null || argTypes.length != 1) throw new RuntimeException("The method " + method + " can only remove in a batch by a single parameter of type List<?>.");
+                    function.setBatch(true);
+                }
                 SQLType sqlType = dialect.getType(argType);
                 // find the column
                 Column col = table.findColumn(param.value());
@@ -31,8 +31,9 @@ public class SetterIntrospector implements SQLFunctionIntrospector
         if (void.class != method.getReturnType()) throw new RuntimeException("The method " + method + " must return void.");
         // must be one argument
         if (method.getParameterTypes().length != 1) throw new RuntimeException("The method " + method + " must have a single parameter of type " + setter.table().getCanonicalName() + ".");
-        // check the argument type
-        if (setter.table() != method.getParameterTypes()[0]) throw new RuntimeException("The method " + method + " must have a single parameter of type " + setter.table().getCanonicalName() + ".");
+        // check the argument type, a list of the table type sets in a batch
+        if (setter.table() == SQLIntrospector.parameterListOf(method, 0)) function.setBatch(true);
+        else if (setter.table() != method.getParameterTypes()[0]) throw new RuntimeException("The method " + method + " must have a single parameter of type " + setter.table().getCanonicalName() + " or List<" + setter.table().getSimpleName() + ">.");
         // the table type
         Table table = introspector.buildTable(dialect, setter.table());
         function.setTable(table);
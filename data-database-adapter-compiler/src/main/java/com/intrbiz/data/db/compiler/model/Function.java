@@ -29,9 +29,17 @@ public class Function
 
     private boolean cacheable = false;
 
+    private int negativeCacheTTL = 0;
+
     private List<String> cacheInvalidate = new LinkedList<String>();
 
     private Table table;
+    
+    private boolean batch = false;
+    
+    private boolean streaming = false;
+
+    private boolean pipelined = false;
 
     public Function()
     {
@@ -189,6 +197,24 @@ public class Function
         this.cacheable = cacheable;
     }
 
+    /**
+     * How many seconds a null result is cached for, zero if negative caching is disabled
+     */
+    public int getNegativeCacheTTL()
+    {
+        return negativeCacheTTL;
+    }
+
+    public void setNegativeCacheTTL(int negativeCacheTTL)
+    {
+        this.negativeCacheTTL = negativeCacheTTL;
+    }
+
+    public boolean isNegativeCacheable()
+    {
+        return this.cacheable && this.negativeCacheTTL > 0 && (! this.returnsList);
+    }
+
     public List<String> getCacheInvalidate()
     {
         return cacheInvalidate;
@@ -209,6 +235,49 @@ public class Function
         this.table = table;
     }
 
+    /**
+     * Is this the batch variant of a function, which takes a list of the 
+     * values to call the function for, sharing the database function of 
+     * the single variant
+     */
+    public boolean isBatch()
+    {
+        return batch;
+    }
+
+    public void setBatch(boolean batch)
+    {
+        this.batch = batch;
+    }
+
+    /**
+     * Does this function return a cursor over its results, as a 
+     * Stream or a DatabaseCursor, rather than a list
+     */
+    public boolean isStreaming()
+    {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming)
+    {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Is this the pipelined variant of a function, which queues the 
+     * function in a DatabasePipeline and returns a future of the result
+     */
+    public boolean isPipelined()
+    {
+        return pipelined;
+    }
+
+    public void setPipelined(boolean pipelined)
+    {
+        this.pipelined = pipelined;
+    }
+
     public boolean isAllArgumentsPrimaryKey()
     {
         if (this.getTable() == null) return false;
@@ -35,6 +35,10 @@ public final class DataManager
     
     private ConcurrentMap<String, CacheProvider> caches = new ConcurrentHashMap<String, CacheProvider>();
     
+    // should concurrent cache misses on the same key share a single load
+    
+    private volatile boolean coalesceCacheLoads = false;
+    
     // adapters
     
     private ConcurrentMap<Class<? extends DataAdapter>, DataAdapterFactory<?>> dataAdapters = new ConcurrentHashMap<Class<? extends DataAdapter>, DataAdapterFactory<?>>(); 
@@ -149,6 +153,25 @@ public final class DataManager
         return cp == null ? null : (Cache) cp.getCache(name);
     }
     
+    // cache loading
+    
+    /**
+     * Are concurrent cache misses on the same key coalesced into a single database call
+     */
+    public boolean isCoalesceCacheLoads()
+    {
+        return this.coalesceCacheLoads;
+    }
+    
+    /**
+     * Coalesce concurrent cache misses on the same key into a single database call, 
+     * if the cache provider supports it the load is also coordinated cluster wide
+     */
+    public void setCoalesceCacheLoads(boolean coalesceCacheLoads)
+    {
+        this.coalesceCacheLoads = coalesceCacheLoads;
+    }
+    
     // factories
     
     @FunctionalInterface
@@ -1,10 +1,16 @@
 package com.intrbiz.data.cache;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public interface Cache
 {
@@ -23,16 +29,36 @@ public interface Cache
      */
     <T> T get(String key);
     
+    /**
+     * Get the values of the given keys in the cache, caches 
+     * which can fetch many keys in one go should override this
+     * @param keys
+     * @return a map of the keys which are present in the cache, 
+     * keys which are not cached are absent from the map
+     */
+    default <T> Map<String, T> getAll(Collection<String> keys)
+    {
+        Map<String, T> ret = new HashMap<String, T>();
+        for (String key : keys)
+        {
+            T value = this.get(key);
+            if (value != null) ret.put(key, value);
+        }
+        return ret;
+    }
+    
     /**
      * Get the key and follow the pointer
      * @param key
      * @return
      */
+    @SuppressWarnings("unchecked")
     default <T> T getAndFollow(String key)
     {
-        CachePointer pointer = this.get(key);
-        if (pointer == null) return null;
-        return this.get(pointer.getKey());
+        Object pointer = this.get(key);
+        if (! (pointer instanceof CachePointer)) return null;
+        Object value = this.get(((CachePointer) pointer).getKey());
+        return value instanceof CacheNegative ? null : (T) value;
     }
     
     default <T> List<T> getAndFollowList(String key)
@@ -41,11 +67,13 @@ public interface Cache
         if (pointer == null) return null;
         // process the pointer list
         // failing fast on a cache miss of a referenced key
-        List<T> ret = new LinkedList<T>();
-        for (String pointerKey : pointer.getKeys())
+        List<String> pointerKeys = pointer.getKeys();
+        Map<String, T> elements = this.getAll(pointerKeys);
+        List<T> ret = new ArrayList<T>(pointerKeys.size());
+        for (String pointerKey : pointerKeys)
         {
-            T element = this.get(pointerKey);
-            if (element == null)
+            T element = elements.get(pointerKey);
+            if (element == null || element instanceof CacheNegative)
             {
                 // we have a cache miss for an element 
                 // in the list need to invalidate the list
@@ -71,7 +99,7 @@ public interface Cache
             // recursively follow
             return this.getOrFollow(((CachePointer) value).getKey());
         }
-        return (T) value;
+        return value instanceof CacheNegative ? null : (T) value;
     }
     
     /**
@@ -94,18 +122,25 @@ public interface Cache
             // recursively follow
             // process the pointer list
             // failing fast on a cache miss of a referenced key
-            List<T> ret = new LinkedList<T>();
-            for (String pointerKey : ((CachePointerList) value).getKeys())
+            List<String> pointerKeys = ((CachePointerList) value).getKeys();
+            Map<String, Object> elements = this.getAll(pointerKeys);
+            List<T> ret = new ArrayList<T>(pointerKeys.size());
+            for (String pointerKey : pointerKeys)
             {
-                T element = this.getOrFollow(pointerKey);
-                if (element == null)
+                Object element = elements.get(pointerKey);
+                if (element instanceof CachePointer)
+                {
+                    // recursively follow
+                    element = this.getOrFollow(((CachePointer) element).getKey());
+                }
+                if (element == null || element instanceof CacheNegative)
                 {
                     // we have a cache miss for an element 
                     // in the list need to invalidate the list
                     this.remove(key);
                     return null;
                 }
-                ret.add(element);
+                ret.add((T) element);
             }
             return ret;
         }
@@ -121,6 +156,51 @@ public interface Cache
      */
      <T> void put(String key, T value);
      
+     /**
+      * Put all the given name value pairs into the cache, caches 
+      * which can store many keys in one go should override this
+      * @param entries
+      */
+     default <T> void putAll(Map<String, T> entries)
+     {
+         for (Map.Entry<String, T> entry : entries.entrySet())
+         {
+             this.put(entry.getKey(), entry.getValue());
+         }
+     }
+     
+     /**
+      * Put the given name value pair into the cache, which will 
+      * expire after the given time to live.  Caches which do not 
+      * support expiry will keep the entry until it is removed.
+      * @param key
+      * @param value
+      * @param ttl the time to live, zero or less means never expire
+      * @param unit
+      */
+     default <T> void put(String key, T value, long ttl, TimeUnit unit)
+     {
+         this.put(key, value);
+     }
+     
+     /**
+      * Put the given name value pair into the cache, which will 
+      * expire after the given time to live.  Once the entry is close 
+      * to expiring, the next read will asynchronously reload it using 
+      * the given refresher, so that hot keys do not all miss at once.
+      * Caches which do not support refresh ahead will simply expire 
+      * the entry.
+      * @param key
+      * @param value
+      * @param ttl the time to live, zero or less means never expire
+      * @param unit
+      * @param refresher the loader used to refresh the entry ahead of expiry
+      */
+     default <T> void put(String key, T value, long ttl, TimeUnit unit, CacheLoader<T> refresher)
+     {
+         this.put(key, value, ttl, unit);
+     }
+     
      /**
       * Add an entry to the cache which maps the given key to the given pointer (another key)
       * @param key
@@ -149,7 +229,12 @@ public interface Cache
       */
      default <T> void putPointerList(String key, List<T> values, Function<T, String> pointer)
      {
-         this.put(key, new CachePointerList(values.stream().map(pointer).collect(Collectors.toList())));
+         List<String> pointers = new ArrayList<String>(values.size());
+         for (T value : values)
+         {
+             pointers.add(pointer.apply(value));
+         }
+         this.put(key, new CachePointerList(pointers));
      }
      
      /**
@@ -186,10 +271,46 @@ public interface Cache
       */
      default <T> void put(List<T> values, Function<T, String> key)
      {
+         Map<String, T> entries = new LinkedHashMap<String, T>();
          for (T value : values)
          {
-             this.put(key.apply(value), value);
+             entries.put(key.apply(value), value);
          }
+         this.putAll(entries);
+     }
+     
+     /**
+      * Put a value which has just been loaded after a miss, rather than 
+      * one which has changed.  Other nodes do not hold a stale copy of 
+      * a filled value, so caches which invalidate other nodes upon a put 
+      * need not do so for a fill.  By default this is a put.
+      * @param key
+      * @param value
+      */
+     default <T> void fill(String key, T value)
+     {
+         this.put(key, value);
+     }
+     
+     /**
+      * Fill the given name value pair, which will expire after the given time to live
+      * @param key
+      * @param value
+      * @param ttl the time to live, zero or less means never expire
+      * @param unit
+      */
+     default <T> void fill(String key, T value, long ttl, TimeUnit unit)
+     {
+         this.put(key, value, ttl, unit);
+     }
+     
+     /**
+      * Fill all the given name value pairs
+      * @param entries
+      */
+     default <T> void fillAll(Map<String, T> entries)
+     {
+         this.putAll(entries);
      }
     
     /**
@@ -220,6 +341,19 @@ public interface Cache
      */
     void remove(String key);
     
+    /**
+     * Remove all the given keys, caches which can remove 
+     * many keys in one go should override this
+     * @param keys
+     */
+    default void removeAll(Collection<String> keys)
+    {
+        for (String key : keys)
+        {
+            this.remove(key);
+        }
+    }
+    
     /**
      * Same as remove but using a lambda for the key
      * @param value
@@ -340,6 +474,180 @@ public interface Cache
     {
     }
     
+    /*
+     * Statistics
+     */
+    
+    /**
+     * A snapshot of the statistics of this cache, caches which 
+     * do not record statistics return CacheStats.EMPTY
+     */
+    default CacheStats stats()
+    {
+        return CacheStats.EMPTY;
+    }
+    
+    /*
+     * Asynchronous access
+     */
+    
+    /**
+     * Get the value of the given key without blocking on a remote cache, 
+     * local caches complete immediately with the result of get
+     * @param key
+     * @return a stage which completes with the value, or null if the key is not cached
+     */
+    default <T> CompletionStage<T> getAsync(String key)
+    {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        try
+        {
+            future.complete(this.get(key));
+        }
+        catch (RuntimeException e)
+        {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    /**
+     * Put the given name value pair without blocking on a remote cache, 
+     * local caches complete immediately after calling put
+     * @param key
+     * @param value
+     * @return a stage which completes once the value has been stored
+     */
+    default <T> CompletionStage<Void> putAsync(String key, T value)
+    {
+        CompletableFuture<Void> future = new CompletableFuture<Void>();
+        try
+        {
+            this.put(key, value);
+            future.complete(null);
+        }
+        catch (RuntimeException e)
+        {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    /**
+     * Remove the given key without blocking on a remote cache, 
+     * local caches complete immediately after calling remove
+     * @param key
+     * @return a stage which completes once the key has been removed
+     */
+    default CompletionStage<Void> removeAsync(String key)
+    {
+        CompletableFuture<Void> future = new CompletableFuture<Void>();
+        try
+        {
+            this.remove(key);
+            future.complete(null);
+        }
+        catch (RuntimeException e)
+        {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /*
+     * Tagging
+     */
+
+    /**
+     * Put the given name value pair into the cache, tagged with the given
+     * tags, so that every entry with a tag can be invalidated in one go
+     * with invalidateTag, rather than by removing a key prefix.  Caches
+     * which do not support tags simply put the entry, and must then make 
+     * invalidateTag remove it some other way.
+     * @param key
+     * @param value
+     * @param tags
+     */
+    default <T> void put(String key, T value, String... tags)
+    {
+        this.put(key, value);
+    }
+
+    /**
+     * Read the current generation of the given tags, this should be done 
+     * before loading a value which is then put with those tags, so that a 
+     * tag invalidated during the load makes the entry stale, rather than 
+     * the entry being stamped with the new generation.
+     * @param tags
+     * @return the tags and their generations, without a value
+     */
+    default CacheTagged readTags(String... tags)
+    {
+        return new CacheTagged(null, tags, new long[tags.length]);
+    }
+
+    /**
+     * Put the given name value pair into the cache, tagged with the 
+     * generations of the tags read by readTags before the value was 
+     * loaded.  Caches which do not support tags simply put the entry, 
+     * and must then make invalidateTag remove it some other way.
+     * @param key
+     * @param value
+     * @param tags
+     */
+    default <T> void put(String key, T value, CacheTagged tags)
+    {
+        this.put(key, value);
+    }
+
+    /**
+     * Invalidate every entry which was put with the given tag, caches
+     * which support tags do this in constant time by moving the tag to
+     * a new generation.
+     * 
+     * There is deliberately no default, a cache which does not support 
+     * tags must choose how to honour this, for example by clearing 
+     * itself, knowing that it will then be emptied for every tagged write.
+     * @param tag
+     */
+    void invalidateTag(String tag);
+
+    /*
+     * Load coordination
+     */
+    
+    /**
+     * Lock the given key across every node sharing this cache, 
+     * so that only one node loads the key at a time (Optional)
+     * @param key
+     * @return true if the key was locked and must be unlocked with unlockKey
+     */
+    default boolean lockKey(String key)
+    {
+        return false;
+    }
+    
+    /**
+     * Release a lock taken by lockKey
+     * @param key
+     */
+    default void unlockKey(String key)
+    {
+    }
+    
+    /*
+     * Distribution
+     */
+    
+    /**
+     * Is this cache shared by every node, so that a change made by 
+     * one node is seen by all, rather than being local to this node
+     */
+    default boolean isDistributed()
+    {
+        return false;
+    }
+    
     /*
      * Transaction support 
      */
@@ -15,4 +15,43 @@ public interface CacheListener
      * @param entry the entry which was updated, note this maybe null
      */
     void onPut(String key, Object entry);
+    
+    /**
+     * Should events be delivered to this listener asynchronously, on the 
+     * shared listener executor, rather than on the thread which changed 
+     * the cache.  Events for the same key are still delivered in order.
+     */
+    default boolean isAsynchronous()
+    {
+        return false;
+    }
+    
+    /**
+     * Wrap the given listener so that events are delivered to it 
+     * asynchronously, note it is the returned listener which must 
+     * be removed from the cache
+     */
+    static CacheListener asynchronous(final CacheListener listener)
+    {
+        return new CacheListener()
+        {
+            @Override
+            public void onRemove(String key, Object entry)
+            {
+                listener.onRemove(key, entry);
+            }
+
+            @Override
+            public void onPut(String key, Object entry)
+            {
+                listener.onPut(key, entry);
+            }
+
+            @Override
+            public boolean isAsynchronous()
+            {
+                return true;
+            }
+        };
+    }
 }
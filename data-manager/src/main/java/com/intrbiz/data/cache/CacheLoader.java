@@ -0,0 +1,15 @@
+package com.intrbiz.data.cache;
+
+/**
+ * Load the value of a cache key, used to refresh entries ahead of their expiry
+ */
+@FunctionalInterface
+public interface CacheLoader<T>
+{
+    /**
+     * Load the current value for the given key
+     * @param key the cache key
+     * @return the value or null if there is no longer a value for this key
+     */
+    T load(String key) throws Exception;
+}
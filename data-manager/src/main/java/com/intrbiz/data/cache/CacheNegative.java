@@ -0,0 +1,28 @@
+package com.intrbiz.data.cache;
+
+import java.io.Serializable;
+
+/**
+ * A negative cache entry, recording that a key has no value
+ */
+public final class CacheNegative implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    
+    public static final CacheNegative INSTANCE = new CacheNegative();
+    
+    private CacheNegative()
+    {
+        super();
+    }
+    
+    private Object readResolve()
+    {
+        return INSTANCE;
+    }
+    
+    public String toString()
+    {
+        return "CacheNegative";
+    }
+}
@@ -1,42 +1,257 @@
 package com.intrbiz.data.cache;
 
-import java.io.Serializable;
-import java.util.LinkedList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 /**
+ * <p>
  * A pointer to a list of other cache entries
+ * </p>
+ *
+ * <p>
+ * The keys are stored compactly, as the prefix shared by every key
+ * (up to and including the last '.') and the remaining suffix of
+ * each key.  When every suffix is a UUID, as is the case for entity
+ * keys such as <code>table.&lt;uuid&gt;</code>, the suffixes are
+ * stored as pairs of longs.
+ * </p>
  */
-public class CachePointerList implements Serializable
+public class CachePointerList implements Externalizable
 {
-    private static final long serialVersionUID = 1L;
-    
-    private List<String> keys;
-    
+    private static final long serialVersionUID = 2L;
+
+    private static final byte FORMAT_SUFFIXES = 1;
+
+    private static final byte FORMAT_UUIDS = 2;
+
+    private String prefix;
+
+    private String[] suffixes;
+
+    private long[] uuids;
+
+    private transient List<String> keys;
+
     public CachePointerList()
     {
         super();
-        this.keys = new LinkedList<String>();
+        this.prefix = "";
+        this.suffixes = new String[0];
     }
-    
+
     public CachePointerList(List<String> keys)
     {
         super();
-        this.keys = keys;
+        this.setKeys(keys);
+    }
+
+    /**
+     * Create a list of pointers to keys formed of the given prefix and UUIDs
+     */
+    public CachePointerList(String prefix, List<UUID> ids)
+    {
+        super();
+        this.prefix = prefix;
+        this.uuids = new long[ids.size() * 2];
+        int i = 0;
+        for (UUID id : ids)
+        {
+            this.uuids[i++] = id.getMostSignificantBits();
+            this.uuids[i++] = id.getLeastSignificantBits();
+        }
     }
 
+    /**
+     * The fully qualified keys, materialised on first use
+     */
     public List<String> getKeys()
     {
+        List<String> keys = this.keys;
+        if (keys == null)
+        {
+            keys = new ArrayList<String>(this.size());
+            for (int i = 0; i < this.size(); i++)
+            {
+                keys.add(this.getKey(i));
+            }
+            keys = Collections.unmodifiableList(keys);
+            this.keys = keys;
+        }
         return keys;
     }
 
     public void setKeys(List<String> keys)
     {
-        this.keys = keys;
+        this.prefix = commonPrefix(keys);
+        this.suffixes = null;
+        this.uuids = null;
+        this.keys = null;
+        // try to store the suffixes as UUIDs
+        long[] uuids = new long[keys.size() * 2];
+        int i = 0;
+        for (String key : keys)
+        {
+            UUID id = parseUUID(key, this.prefix.length());
+            if (id == null) break;
+            uuids[i++] = id.getMostSignificantBits();
+            uuids[i++] = id.getLeastSignificantBits();
+        }
+        if (i == uuids.length)
+        {
+            this.uuids = uuids;
+        }
+        else
+        {
+            this.suffixes = new String[keys.size()];
+            i = 0;
+            for (String key : keys)
+            {
+                this.suffixes[i++] = key.substring(this.prefix.length());
+            }
+        }
+    }
+
+    /**
+     * The prefix shared by every key
+     */
+    public String getPrefix()
+    {
+        return this.prefix;
+    }
+
+    public int size()
+    {
+        return this.uuids != null ? this.uuids.length / 2 : this.suffixes.length;
+    }
+
+    /**
+     * Get the fully qualified key at the given index
+     */
+    public String getKey(int index)
+    {
+        if (this.uuids != null) return this.prefix + new UUID(this.uuids[index * 2], this.uuids[(index * 2) + 1]).toString();
+        return this.prefix + this.suffixes[index];
+    }
+
+    /**
+     * Write this list in its compact form
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        out.writeUTF(this.prefix);
+        if (this.uuids != null)
+        {
+            out.writeByte(FORMAT_UUIDS);
+            out.writeInt(this.uuids.length / 2);
+            for (long l : this.uuids)
+            {
+                out.writeLong(l);
+            }
+        }
+        else
+        {
+            out.writeByte(FORMAT_SUFFIXES);
+            out.writeInt(this.suffixes.length);
+            for (String suffix : this.suffixes)
+            {
+                out.writeUTF(suffix);
+            }
+        }
+    }
+
+    /**
+     * Read a list previously written by writeTo
+     */
+    public void readFrom(DataInput in) throws IOException
+    {
+        this.keys = null;
+        this.prefix = in.readUTF();
+        byte format = in.readByte();
+        int size = in.readInt();
+        if (format == FORMAT_UUIDS)
+        {
+            this.suffixes = null;
+            this.uuids = new long[size * 2];
+            for (int i = 0; i < this.uuids.length; i++)
+            {
+                this.uuids[i] = in.readLong();
+            }
+        }
+        else if (format == FORMAT_SUFFIXES)
+        {
+            this.uuids = null;
+            this.suffixes = new String[size];
+            for (int i = 0; i < size; i++)
+            {
+                this.suffixes[i] = in.readUTF();
+            }
+        }
+        else
+        {
+            throw new IOException("Unknown pointer list format: " + format);
+        }
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        this.writeTo(out);
     }
-    
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+    {
+        this.readFrom(in);
+    }
+
+    /**
+     * The longest prefix, ending in a '.', shared by every key
+     */
+    private static String commonPrefix(List<String> keys)
+    {
+        if (keys.isEmpty()) return "";
+        String first = keys.get(0);
+        int length = first.lastIndexOf('.') + 1;
+        for (String key : keys)
+        {
+            while (length > 0 && ! key.regionMatches(0, first, 0, length))
+            {
+                length = first.lastIndexOf('.', length - 2) + 1;
+            }
+            if (length == 0) break;
+        }
+        return first.substring(0, length);
+    }
+
+    /**
+     * Parse the canonical UUID at the given offset, only if
+     * it formats back to exactly the same string
+     */
+    private static UUID parseUUID(String key, int offset)
+    {
+        if (key.length() - offset != 36) return null;
+        String suffix = key.substring(offset);
+        try
+        {
+            UUID id = UUID.fromString(suffix);
+            return id.toString().equals(suffix) ? id : null;
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
     public String toString()
     {
-        return "CachePointerList(" + this.keys + ")";
+        return "CachePointerList(" + this.getKeys() + ")";
     }
 }
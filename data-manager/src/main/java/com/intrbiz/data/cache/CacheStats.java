@@ -0,0 +1,134 @@
+package com.intrbiz.data.cache;
+
+/**
+ * A point in time snapshot of the statistics of a cache,
+ * counts are since the cache was created.
+ */
+public final class CacheStats
+{
+    /**
+     * The statistics of a cache which does not record any
+     */
+    public static final CacheStats EMPTY = new CacheStats(0L, 0L, 0L, 0L, 0L, 0L, -1L);
+
+    private final long hits;
+
+    private final long misses;
+
+    private final long puts;
+
+    private final long removes;
+
+    private final long evictions;
+
+    private final long prefixScans;
+
+    private final long estimatedSize;
+
+    public CacheStats(long hits, long misses, long puts, long removes, long evictions, long prefixScans, long estimatedSize)
+    {
+        super();
+        this.hits = hits;
+        this.misses = misses;
+        this.puts = puts;
+        this.removes = removes;
+        this.evictions = evictions;
+        this.prefixScans = prefixScans;
+        this.estimatedSize = estimatedSize;
+    }
+
+    /**
+     * The number of gets which found an entry
+     */
+    public long getHits()
+    {
+        return this.hits;
+    }
+
+    /**
+     * The number of gets which did not find an entry
+     */
+    public long getMisses()
+    {
+        return this.misses;
+    }
+
+    /**
+     * The total number of gets
+     */
+    public long getRequests()
+    {
+        return this.hits + this.misses;
+    }
+
+    /**
+     * The ratio of hits to gets, 1 when there have been no gets
+     */
+    public double getHitRatio()
+    {
+        long requests = this.getRequests();
+        return requests == 0 ? 1D : ((double) this.hits) / ((double) requests);
+    }
+
+    /**
+     * The number of entries put
+     */
+    public long getPuts()
+    {
+        return this.puts;
+    }
+
+    /**
+     * The number of keys explicitly removed
+     */
+    public long getRemoves()
+    {
+        return this.removes;
+    }
+
+    /**
+     * The number of entries removed by the cache itself, due to size limits, expiry or collection
+     */
+    public long getEvictions()
+    {
+        return this.evictions;
+    }
+
+    /**
+     * The number of key prefix scans
+     */
+    public long getPrefixScans()
+    {
+        return this.prefixScans;
+    }
+
+    /**
+     * The estimated number of entries in the cache, or -1 if not known
+     */
+    public long getEstimatedSize()
+    {
+        return this.estimatedSize;
+    }
+
+    /**
+     * The difference between this snapshot and an earlier snapshot, the estimated size is this snapshot's
+     */
+    public CacheStats minus(CacheStats earlier)
+    {
+        return new CacheStats(
+            this.hits - earlier.hits,
+            this.misses - earlier.misses,
+            this.puts - earlier.puts,
+            this.removes - earlier.removes,
+            this.evictions - earlier.evictions,
+            this.prefixScans - earlier.prefixScans,
+            this.estimatedSize
+        );
+    }
+
+    public String toString()
+    {
+        return "CacheStats(hits: " + this.hits + ", misses: " + this.misses + ", puts: " + this.puts + ", removes: " + this.removes +
+                ", evictions: " + this.evictions + ", prefixScans: " + this.prefixScans + ", estimatedSize: " + this.estimatedSize + ")";
+    }
+}
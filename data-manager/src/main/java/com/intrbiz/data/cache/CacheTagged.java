@@ -0,0 +1,79 @@
+package com.intrbiz.data.cache;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import com.intrbiz.data.cache.util.TagGenerations;
+
+/**
+ * A cache entry which was put with tags, recording the generation
+ * of each tag at the time of the put.  The entry is stale once any
+ * of its tags has been invalidated, moving the tag to a new generation.
+ */
+public final class CacheTagged implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final Object value;
+
+    private final String[] tags;
+
+    private final long[] generations;
+
+    public CacheTagged(Object value, String[] tags, long[] generations)
+    {
+        super();
+        if (tags.length != generations.length) throw new IllegalArgumentException("Every tag must have a generation");
+        this.value = value;
+        this.tags = tags;
+        this.generations = generations;
+    }
+
+    public Object getValue()
+    {
+        return this.value;
+    }
+
+    public String[] getTags()
+    {
+        return this.tags;
+    }
+
+    public long[] getGenerations()
+    {
+        return this.generations;
+    }
+
+    /**
+     * The given value with the tags and generations of this entry
+     */
+    public CacheTagged withValue(Object value)
+    {
+        return new CacheTagged(value, this.tags, this.generations);
+    }
+
+    /**
+     * Are all the tags of this entry still at the generation they were put at
+     */
+    public boolean isCurrent(TagGenerations current)
+    {
+        for (int i = 0; i < this.tags.length; i++)
+        {
+            if (current.generation(this.tags[i]) != this.generations[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the value of a stored entry, unwrapping it should it be tagged, without checking the tags
+     */
+    public static Object unwrap(Object stored)
+    {
+        return stored instanceof CacheTagged ? ((CacheTagged) stored).value : stored;
+    }
+
+    public String toString()
+    {
+        return "CacheTagged(" + this.value + ", " + Arrays.toString(this.tags) + ")";
+    }
+}
@@ -0,0 +1,22 @@
+package com.intrbiz.data.cache;
+
+/**
+ * Estimate the weight (typically the size in bytes) of a cache entry,
+ * used by bounded caches to decide when to evict entries.
+ */
+@FunctionalInterface
+public interface Weigher
+{
+    /**
+     * A weigher which treats every entry as having a weight of one
+     */
+    public static final Weigher SINGLETON = (key, value) -> 1;
+
+    /**
+     * Weigh the given entry
+     * @param key the cache key
+     * @param value the cache value
+     * @return the weight of the entry, must not be negative
+     */
+    int weigh(String key, Object value);
+}
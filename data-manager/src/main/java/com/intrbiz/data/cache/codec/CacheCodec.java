@@ -0,0 +1,26 @@
+package com.intrbiz.data.cache.codec;
+
+import java.io.IOException;
+
+/**
+ * Encode and decode cache values to and from bytes, so that they can be stored
+ * off heap, or copied on read by a local memory cache
+ */
+public interface CacheCodec
+{
+    /**
+     * Encode the given value
+     * @param value the value to encode, never null
+     * @return the encoded bytes
+     * @throws IOException if the value cannot be encoded
+     */
+    byte[] encode(Object value) throws IOException;
+
+    /**
+     * Decode a value previously encoded by this codec
+     * @param data the encoded bytes
+     * @return the decoded value
+     * @throws IOException if the value cannot be decoded
+     */
+    Object decode(byte[] data) throws IOException;
+}
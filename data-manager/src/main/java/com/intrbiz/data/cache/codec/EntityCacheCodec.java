@@ -0,0 +1,92 @@
+package com.intrbiz.data.cache.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Encode values using the codecs from the {@link EntityCodecRegistry}, 
+ * values without a codec are encoded using Java serialization
+ */
+public class EntityCacheCodec implements CacheCodec
+{
+    private static final int JAVA_SERIALIZATION = 0;
+
+    private final EntityCodecRegistry registry;
+
+    public EntityCacheCodec(EntityCodecRegistry registry)
+    {
+        super();
+        this.registry = registry;
+    }
+
+    public EntityCacheCodec()
+    {
+        this(EntityCodecRegistry.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public byte[] encode(Object value) throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(buffer);
+        EntityCodec<Object> codec = (EntityCodec<Object>) this.registry.getCodec(value.getClass());
+        if (codec != null)
+        {
+            out.writeInt(codec.getTypeId());
+            try
+            {
+                codec.write(new EntityOutput(out), value);
+            }
+            catch (UncheckedIOException e)
+            {
+                throw e.getCause();
+            }
+            out.flush();
+        }
+        else
+        {
+            out.writeInt(JAVA_SERIALIZATION);
+            out.flush();
+            try (ObjectOutputStream oos = new ObjectOutputStream(buffer))
+            {
+                oos.writeObject(value);
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int typeId = in.readInt();
+        if (typeId == JAVA_SERIALIZATION)
+        {
+            try (ObjectInputStream ois = new ObjectInputStream(in))
+            {
+                return ois.readObject();
+            }
+            catch (ClassNotFoundException e)
+            {
+                throw new IOException("Failed to decode cache value", e);
+            }
+        }
+        EntityCodec<?> codec = this.registry.getCodec(typeId);
+        if (codec == null) throw new IOException("No entity codec is registered with type id " + typeId);
+        try
+        {
+            return codec.read(new EntityInput(in));
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.intrbiz.data.cache.codec;
+
+/**
+ * <p>
+ * Encode an entity to and from a compact binary form, for caches
+ * which hold entities in serialized form.
+ * </p>
+ *
+ * <p>
+ * Codecs are generated by the database adapter compiler for the
+ * entities of an adapter and registered with the
+ * {@link EntityCodecRegistry}.  A codec must be able to read anything
+ * written by a codec with the same type id, the type id must therefore
+ * change whenever the encoded form changes.
+ * </p>
+ */
+public interface EntityCodec<T>
+{
+    /**
+     * The entity class this codec encodes
+     */
+    Class<T> getType();
+
+    /**
+     * The cluster wide identifier of this codec, which must not be 0
+     */
+    int getTypeId();
+
+    void write(EntityOutput out, T entity);
+
+    T read(EntityInput in);
+}
@@ -0,0 +1,95 @@
+package com.intrbiz.data.cache.codec;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+import com.intrbiz.data.DataException;
+
+/**
+ * <p>
+ * The codecs available to encode entities, keyed by both
+ * entity class and type id.
+ * </p>
+ *
+ * <p>
+ * Codecs may be registered at any time, typically as database
+ * adapters are loaded, so caches must look up the codec for
+ * each entity rather than capturing the codecs at startup.
+ * </p>
+ */
+public final class EntityCodecRegistry
+{
+    private static final class Holder
+    {
+        private static final EntityCodecRegistry INSTANCE = new EntityCodecRegistry();
+    }
+
+    public static EntityCodecRegistry get()
+    {
+        return Holder.INSTANCE;
+    }
+
+    private Logger logger = Logger.getLogger(EntityCodecRegistry.class);
+
+    private final ConcurrentMap<Class<?>, EntityCodec<?>> codecsByType = new ConcurrentHashMap<Class<?>, EntityCodec<?>>();
+
+    private final ConcurrentMap<Integer, EntityCodec<?>> codecsById = new ConcurrentHashMap<Integer, EntityCodec<?>>();
+
+    private EntityCodecRegistry()
+    {
+        super();
+    }
+
+    /**
+     * Register the given codec, registering a codec for an entity
+     * class which already has a codec with the same type id is a no-op
+     * @throws DataException if the type id is already used by a codec for a different entity class
+     */
+    public synchronized EntityCodecRegistry register(EntityCodec<?> codec)
+    {
+        if (codec.getTypeId() == 0) throw new DataException("The codec type id 0 is reserved, for entity " + codec.getType().getName());
+        EntityCodec<?> clash = this.codecsById.get(codec.getTypeId());
+        if (clash != null && clash.getType() != codec.getType()) throw new DataException("The codec type id " + codec.getTypeId() + " for entity " + codec.getType().getName() + " is already used by entity " + clash.getType().getName());
+        EntityCodec<?> existing = this.codecsByType.get(codec.getType());
+        if (existing != null)
+        {
+            if (existing.getTypeId() == codec.getTypeId()) return this;
+            this.codecsById.remove(existing.getTypeId());
+        }
+        this.codecsByType.put(codec.getType(), codec);
+        this.codecsById.put(codec.getTypeId(), codec);
+        if (logger.isDebugEnabled()) logger.debug("Registered codec " + codec.getTypeId() + " for entity " + codec.getType().getName());
+        return this;
+    }
+
+    public synchronized void unregister(EntityCodec<?> codec)
+    {
+        if (this.codecsByType.remove(codec.getType(), codec)) this.codecsById.remove(codec.getTypeId());
+    }
+
+    /**
+     * Get the codec for exactly the given class, or null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> EntityCodec<T> getCodec(Class<T> type)
+    {
+        return (EntityCodec<T>) this.codecsByType.get(type);
+    }
+
+    /**
+     * Get the codec with the given type id, or null
+     */
+    public EntityCodec<?> getCodec(int typeId)
+    {
+        return this.codecsById.get(typeId);
+    }
+
+    public Collection<EntityCodec<?>> getCodecs()
+    {
+        return Collections.unmodifiableCollection(this.codecsByType.values());
+    }
+}
@@ -0,0 +1,207 @@
+package com.intrbiz.data.cache.codec;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Read the fields of an entity written by an {@link EntityOutput}
+ */
+public final class EntityInput
+{
+    private final DataInput in;
+
+    public EntityInput(DataInput in)
+    {
+        super();
+        this.in = in;
+    }
+
+    public DataInput getInput()
+    {
+        return this.in;
+    }
+
+    private boolean readNull()
+    {
+        return ! this.readBoolean();
+    }
+
+    public boolean readBoolean()
+    {
+        try
+        {
+            return this.in.readBoolean();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Boolean readNullableBoolean()
+    {
+        return this.readNull() ? null : Boolean.valueOf(this.readBoolean());
+    }
+
+    public short readShort()
+    {
+        try
+        {
+            return this.in.readShort();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Short readNullableShort()
+    {
+        return this.readNull() ? null : Short.valueOf(this.readShort());
+    }
+
+    public int readInt()
+    {
+        try
+        {
+            return this.in.readInt();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Integer readNullableInt()
+    {
+        return this.readNull() ? null : Integer.valueOf(this.readInt());
+    }
+
+    public long readLong()
+    {
+        try
+        {
+            return this.in.readLong();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Long readNullableLong()
+    {
+        return this.readNull() ? null : Long.valueOf(this.readLong());
+    }
+
+    public float readFloat()
+    {
+        try
+        {
+            return this.in.readFloat();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Float readNullableFloat()
+    {
+        return this.readNull() ? null : Float.valueOf(this.readFloat());
+    }
+
+    public double readDouble()
+    {
+        try
+        {
+            return this.in.readDouble();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Double readNullableDouble()
+    {
+        return this.readNull() ? null : Double.valueOf(this.readDouble());
+    }
+
+    public String readString()
+    {
+        byte[] value = this.readBytes();
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    public byte[] readBytes()
+    {
+        try
+        {
+            int length = this.in.readInt();
+            if (length < 0) return null;
+            byte[] value = new byte[length];
+            this.in.readFully(value);
+            return value;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public UUID readUUID()
+    {
+        return this.readNull() ? null : new UUID(this.readLong(), this.readLong());
+    }
+
+    public Date readDate()
+    {
+        return this.readNull() ? null : new Date(this.readLong());
+    }
+
+    public Timestamp readTimestamp()
+    {
+        if (this.readNull()) return null;
+        Timestamp value = new Timestamp(this.readLong());
+        value.setNanos(this.readInt());
+        return value;
+    }
+
+    public <E extends Enum<E>> E readEnum(Class<E> type)
+    {
+        String name = this.readString();
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+
+    public List<String> readStringList()
+    {
+        if (this.readNull()) return null;
+        int size = this.readInt();
+        List<String> value = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++)
+        {
+            value.add(this.readString());
+        }
+        return value;
+    }
+
+    public List<UUID> readUUIDList()
+    {
+        if (this.readNull()) return null;
+        int size = this.readInt();
+        List<UUID> value = new ArrayList<UUID>(size);
+        for (int i = 0; i < size; i++)
+        {
+            value.add(this.readUUID());
+        }
+        return value;
+    }
+}
@@ -0,0 +1,233 @@
+package com.intrbiz.data.cache.codec;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * <p>
+ * Write the fields of an entity, nullable values are
+ * preceded by a presence flag.
+ * </p>
+ *
+ * <p>
+ * Any IOException is rethrown as an UncheckedIOException,
+ * keeping generated codecs free of exception handling.
+ * </p>
+ */
+public final class EntityOutput
+{
+    private final DataOutput out;
+
+    public EntityOutput(DataOutput out)
+    {
+        super();
+        this.out = out;
+    }
+
+    public DataOutput getOutput()
+    {
+        return this.out;
+    }
+
+    private boolean writeNull(Object value)
+    {
+        try
+        {
+            this.out.writeBoolean(value != null);
+            return value == null;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void writeBoolean(boolean value)
+    {
+        try
+        {
+            this.out.writeBoolean(value);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void writeBoolean(Boolean value)
+    {
+        if (! this.writeNull(value)) this.writeBoolean(value.booleanValue());
+    }
+
+    public void writeShort(short value)
+    {
+        try
+        {
+            this.out.writeShort(value);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void writeShort(Short value)
+    {
+        if (! this.writeNull(value)) this.writeShort(value.shortValue());
+    }
+
+    public void writeInt(int value)
+    {
+        try
+        {
+            this.out.writeInt(value);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void writeInt(Integer value)
+    {
+        if (! this.writeNull(value)) this.writeInt(value.intValue());
+    }
+
+    public void writeLong(long value)
+    {
+        try
+        {
+            this.out.writeLong(value);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void writeLong(Long value)
+    {
+        if (! this.writeNull(value)) this.writeLong(value.longValue());
+    }
+
+    public void writeFloat(float value)
+    {
+        try
+        {
+            this.out.writeFloat(value);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void writeFloat(Float value)
+    {
+        if (! this.writeNull(value)) this.writeFloat(value.floatValue());
+    }
+
+    public void writeDouble(double value)
+    {
+        try
+        {
+            this.out.writeDouble(value);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void writeDouble(Double value)
+    {
+        if (! this.writeNull(value)) this.writeDouble(value.doubleValue());
+    }
+
+    /**
+     * Strings are written as length prefixed UTF-8,
+     * so are not limited in length like writeUTF
+     */
+    public void writeString(String value)
+    {
+        this.writeBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void writeBytes(byte[] value)
+    {
+        try
+        {
+            if (value == null)
+            {
+                this.out.writeInt(-1);
+            }
+            else
+            {
+                this.out.writeInt(value.length);
+                this.out.write(value);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void writeUUID(UUID value)
+    {
+        if (! this.writeNull(value))
+        {
+            this.writeLong(value.getMostSignificantBits());
+            this.writeLong(value.getLeastSignificantBits());
+        }
+    }
+
+    public void writeDate(Date value)
+    {
+        if (! this.writeNull(value)) this.writeLong(value.getTime());
+    }
+
+    public void writeTimestamp(Timestamp value)
+    {
+        if (! this.writeNull(value))
+        {
+            this.writeLong(value.getTime());
+            this.writeInt(value.getNanos());
+        }
+    }
+
+    public void writeEnum(Enum<?> value)
+    {
+        this.writeString(value == null ? null : value.name());
+    }
+
+    public void writeStringList(List<String> value)
+    {
+        if (! this.writeNull(value))
+        {
+            this.writeInt(value.size());
+            for (String s : value)
+            {
+                this.writeString(s);
+            }
+        }
+    }
+
+    public void writeUUIDList(List<UUID> value)
+    {
+        if (! this.writeNull(value))
+        {
+            this.writeInt(value.size());
+            for (UUID id : value)
+            {
+                this.writeUUID(id);
+            }
+        }
+    }
+}
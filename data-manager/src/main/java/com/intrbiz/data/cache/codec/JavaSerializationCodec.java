@@ -0,0 +1,42 @@
+package com.intrbiz.data.cache.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Encode values using Java serialization, values must be Serializable
+ */
+public class JavaSerializationCodec implements CacheCodec
+{
+    public JavaSerializationCodec()
+    {
+        super();
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer))
+        {
+            out.writeObject(value);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data) throws IOException
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data)))
+        {
+            return in.readObject();
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IOException("Failed to decode cache value", e);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.intrbiz.data.cache.invalidation;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Meter;
+import com.intrbiz.data.cache.util.CacheExecutors;
+import com.intrbiz.gerald.source.IntelligenceSource;
+import com.intrbiz.gerald.witchcraft.Witchcraft;
+
+/**
+ * <p>
+ * The batching part of an invalidation bus, transports only need to send
+ * and receive encoded payloads.
+ * </p>
+ *
+ * <p>
+ * Invalidations are collected for up to the batch delay, or until the
+ * maximum batch size is reached, and then sent as one or more payloads
+ * of at most the maximum payload size.
+ * </p>
+ */
+public abstract class AbstractInvalidationBus implements InvalidationBus
+{
+    /**
+     * The default time to collect invalidations for, 10ms
+     */
+    public static final long DEFAULT_BATCH_DELAY = 10L;
+
+    /**
+     * The default number of invalidations to flush immediately at
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    private Logger logger = Logger.getLogger(AbstractInvalidationBus.class);
+
+    protected final String name;
+
+    protected final String nodeId = UUID.randomUUID().toString();
+
+    private final long batchDelay;
+
+    private final int maxBatchSize;
+
+    private final int maxPayloadBytes;
+
+    private final ConcurrentMap<InvalidationListener, Object> listeners = new ConcurrentHashMap<InvalidationListener, Object>();
+
+    private CacheInvalidation pending;
+
+    private boolean flushScheduled = false;
+
+    protected volatile boolean closed = false;
+
+    private final Meter published;
+
+    private final Meter received;
+
+    private final Meter failed;
+
+    /**
+     * @param name the name of this bus, used for metrics
+     * @param batchDelay how long to collect invalidations for in milliseconds
+     * @param maxBatchSize the number of invalidations to flush immediately at
+     * @param maxPayloadBytes the largest payload the transport can send
+     */
+    protected AbstractInvalidationBus(String name, long batchDelay, int maxBatchSize, int maxPayloadBytes)
+    {
+        super();
+        this.name = name;
+        this.batchDelay = batchDelay;
+        this.maxBatchSize = maxBatchSize;
+        this.maxPayloadBytes = maxPayloadBytes;
+        // metrics
+        IntelligenceSource source = Witchcraft.get().source("com.intrbiz.cache.invalidation");
+        this.published = source.getRegistry().meter(Witchcraft.scoped(AbstractInvalidationBus.class, "published", name));
+        this.received = source.getRegistry().meter(Witchcraft.scoped(AbstractInvalidationBus.class, "received", name));
+        this.failed = source.getRegistry().meter(Witchcraft.scoped(AbstractInvalidationBus.class, "failed", name));
+    }
+
+    @Override
+    public String getNodeId()
+    {
+        return this.nodeId;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    @Override
+    public void invalidate(String cache, String key)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Invalidate: " + cache + " " + key);
+        synchronized (this)
+        {
+            this.pending().addKey(cache, key);
+        }
+        this.scheduleFlush();
+    }
+
+    @Override
+    public void invalidatePrefix(String cache, String keyPrefix)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Invalidate prefix: " + cache + " " + keyPrefix);
+        synchronized (this)
+        {
+            this.pending().addPrefix(cache, keyPrefix);
+        }
+        this.scheduleFlush();
+    }
+
+    @Override
+    public void invalidateTag(String cache, String tag)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Invalidate tag: " + cache + " " + tag);
+        synchronized (this)
+        {
+            this.pending().addTag(cache, tag);
+        }
+        this.scheduleFlush();
+    }
+
+    private CacheInvalidation pending()
+    {
+        if (this.pending == null) this.pending = new CacheInvalidation(this.nodeId);
+        return this.pending;
+    }
+
+    private void scheduleFlush()
+    {
+        boolean full;
+        synchronized (this)
+        {
+            full = this.pending != null && this.pending.size() >= this.maxBatchSize;
+            if (this.flushScheduled && (! full)) return;
+            this.flushScheduled = true;
+        }
+        if (full || this.batchDelay <= 0)
+        {
+            CacheExecutors.scheduler().execute(this::flush);
+        }
+        else
+        {
+            CacheExecutors.scheduler().schedule(this::flush, this.batchDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        CacheInvalidation batch;
+        synchronized (this)
+        {
+            batch = this.pending;
+            this.pending = null;
+            this.flushScheduled = false;
+        }
+        if (batch == null || batch.isEmpty() || this.closed) return;
+        for (String payload : batch.encode(this.maxPayloadBytes))
+        {
+            try
+            {
+                this.send(payload);
+                this.published.mark();
+            }
+            catch (Exception e)
+            {
+                // other nodes will only recover from this once their entries expire
+                this.failed.mark();
+                logger.error("Failed to publish cache invalidations on bus " + this.name, e);
+            }
+        }
+    }
+
+    /**
+     * Send the given payload to every node
+     */
+    protected abstract void send(String payload) throws Exception;
+
+    /**
+     * Transports must invoke this for every payload they receive
+     */
+    protected void receive(String payload)
+    {
+        CacheInvalidation invalidation;
+        try
+        {
+            invalidation = CacheInvalidation.decode(payload);
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Ignoring malformed cache invalidation on bus " + this.name, e);
+            return;
+        }
+        // ignore our own invalidations
+        if (this.nodeId.equals(invalidation.getOrigin())) return;
+        if (logger.isTraceEnabled()) logger.trace("Received: " + invalidation);
+        this.received.mark();
+        for (InvalidationListener listener : this.listeners.keySet())
+        {
+            try
+            {
+                listener.onInvalidation(invalidation);
+            }
+            catch (Exception e)
+            {
+                logger.error("Error applying cache invalidation", e);
+            }
+        }
+    }
+
+    @Override
+    public void addListener(InvalidationListener listener)
+    {
+        this.listeners.put(listener, this);
+    }
+
+    @Override
+    public void removeListener(InvalidationListener listener)
+    {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Flush any pending invalidations and stop
+     */
+    @Override
+    public void close()
+    {
+        if (! this.closed)
+        {
+            this.flush();
+            this.closed = true;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.intrbiz.data.cache.invalidation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * A batch of key, prefix and tag invalidations, across any number of caches,
+ * published by a single node.
+ * </p>
+ *
+ * <p>
+ * Batches are encoded as compact text, so that they can be carried by
+ * transports which only support text payloads:
+ * </p>
+ *
+ * <pre>
+ * &lt;origin&gt;
+ * C&lt;cache&gt;
+ * K&lt;key&gt;
+ * P&lt;prefix&gt;
+ * T&lt;tag&gt;
+ * </pre>
+ *
+ * <p>
+ * Each record is a line, a C record sets the cache which following K (key),
+ * P (prefix) and T (tag) records apply to.  Backslash, newline and carriage
+ * return are escaped.
+ * </p>
+ */
+public class CacheInvalidation
+{
+    private final String origin;
+
+    private final Map<String, Set<String>> keys = new LinkedHashMap<String, Set<String>>();
+
+    private final Map<String, Set<String>> prefixes = new LinkedHashMap<String, Set<String>>();
+
+    private final Map<String, Set<String>> tags = new LinkedHashMap<String, Set<String>>();
+
+    public CacheInvalidation(String origin)
+    {
+        super();
+        this.origin = origin;
+    }
+
+    /**
+     * The id of the node which published this batch
+     */
+    public String getOrigin()
+    {
+        return this.origin;
+    }
+
+    public void addKey(String cache, String key)
+    {
+        this.keys.computeIfAbsent(cache, (k) -> new LinkedHashSet<String>()).add(key);
+    }
+
+    public void addPrefix(String cache, String prefix)
+    {
+        this.prefixes.computeIfAbsent(cache, (k) -> new LinkedHashSet<String>()).add(prefix);
+    }
+
+    public void addTag(String cache, String tag)
+    {
+        this.tags.computeIfAbsent(cache, (k) -> new LinkedHashSet<String>()).add(tag);
+    }
+
+    /**
+     * The names of the caches which have invalidations in this batch
+     */
+    public Set<String> getCaches()
+    {
+        Set<String> caches = new LinkedHashSet<String>(this.keys.keySet());
+        caches.addAll(this.prefixes.keySet());
+        caches.addAll(this.tags.keySet());
+        return caches;
+    }
+
+    /**
+     * The keys invalidated in the given cache
+     */
+    public Set<String> getKeys(String cache)
+    {
+        Set<String> keys = this.keys.get(cache);
+        return keys == null ? Collections.emptySet() : Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * The key prefixes invalidated in the given cache
+     */
+    public Set<String> getPrefixes(String cache)
+    {
+        Set<String> prefixes = this.prefixes.get(cache);
+        return prefixes == null ? Collections.emptySet() : Collections.unmodifiableSet(prefixes);
+    }
+
+    /**
+     * The tags invalidated in the given cache
+     */
+    public Set<String> getTags(String cache)
+    {
+        Set<String> tags = this.tags.get(cache);
+        return tags == null ? Collections.emptySet() : Collections.unmodifiableSet(tags);
+    }
+
+    /**
+     * The total number of key, prefix and tag invalidations in this batch
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Set<String> keys : this.keys.values()) size += keys.size();
+        for (Set<String> prefixes : this.prefixes.values()) size += prefixes.size();
+        for (Set<String> tags : this.tags.values()) size += tags.size();
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.keys.isEmpty() && this.prefixes.isEmpty() && this.tags.isEmpty();
+    }
+
+    /**
+     * Encode this batch, splitting it into as many payloads
+     * as needed to keep each payload within the given number of
+     * UTF-8 encoded bytes
+     * @param maxPayloadBytes the maximum size of each payload
+     * @return the encoded payloads
+     */
+    public List<String> encode(int maxPayloadBytes)
+    {
+        Encoder encoder = new Encoder(maxPayloadBytes);
+        for (String cache : this.getCaches())
+        {
+            for (String key : this.getKeys(cache))
+            {
+                encoder.add(cache, 'K', key);
+            }
+            for (String prefix : this.getPrefixes(cache))
+            {
+                encoder.add(cache, 'P', prefix);
+            }
+            for (String tag : this.getTags(cache))
+            {
+                encoder.add(cache, 'T', tag);
+            }
+        }
+        return encoder.finish();
+    }
+
+    /**
+     * Decode a batch which was encoded by {@link #encode(int)}
+     * @throws IllegalArgumentException if the payload is malformed
+     */
+    public static CacheInvalidation decode(String payload)
+    {
+        String[] records = payload.split("\n", -1);
+        CacheInvalidation invalidation = new CacheInvalidation(unescape(records[0]));
+        String cache = null;
+        for (int i = 1; i < records.length; i++)
+        {
+            String record = records[i];
+            if (record.isEmpty()) continue;
+            String value = unescape(record.substring(1));
+            switch (record.charAt(0))
+            {
+                case 'C':
+                    cache = value;
+                    break;
+                case 'K':
+                    if (cache == null) throw new IllegalArgumentException("Key invalidation before any cache");
+                    invalidation.addKey(cache, value);
+                    break;
+                case 'P':
+                    if (cache == null) throw new IllegalArgumentException("Prefix invalidation before any cache");
+                    invalidation.addPrefix(cache, value);
+                    break;
+                case 'T':
+                    if (cache == null) throw new IllegalArgumentException("Tag invalidation before any cache");
+                    invalidation.addTag(cache, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown invalidation record: " + record.charAt(0));
+            }
+        }
+        return invalidation;
+    }
+
+    private static String escape(String value)
+    {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            String replacement = c == '\\' ? "\\\\" : (c == '\n' ? "\\n" : (c == '\r' ? "\\r" : null));
+            if (replacement != null && sb == null) sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+            if (sb != null)
+            {
+                if (replacement != null) sb.append(replacement);
+                else sb.append(c);
+            }
+        }
+        return sb == null ? value : sb.toString();
+    }
+
+    private static String unescape(String value)
+    {
+        if (value.indexOf('\\') < 0) return value;
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length())
+            {
+                char n = value.charAt(++i);
+                sb.append(n == 'n' ? '\n' : (n == 'r' ? '\r' : n));
+            }
+            else
+            {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int utf8Length(String value)
+    {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c < 0x80) length += 1;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c)) { length += 4; i++; }
+            else length += 3;
+        }
+        return length;
+    }
+
+    public String toString()
+    {
+        return "CacheInvalidation from " + this.origin + " keys: " + this.keys + " prefixes: " + this.prefixes + " tags: " + this.tags;
+    }
+
+    /**
+     * Builds size limited payloads
+     */
+    private final class Encoder
+    {
+        private final int maxPayloadBytes;
+
+        private final String header = escape(origin);
+
+        private final List<String> payloads = new ArrayList<String>();
+
+        private StringBuilder payload;
+
+        private int payloadBytes;
+
+        private String payloadCache;
+
+        private Encoder(int maxPayloadBytes)
+        {
+            this.maxPayloadBytes = maxPayloadBytes;
+        }
+
+        private void add(String cache, char type, String value)
+        {
+            String cacheRecord = "\nC" + escape(cache);
+            String record = "\n" + type + escape(value);
+            int recordBytes = utf8Length(record) + (cache.equals(this.payloadCache) ? 0 : utf8Length(cacheRecord));
+            // start a new payload if this record will not fit, a record which
+            // is too big on its own is still sent in a payload of its own
+            if (this.payload != null && this.payloadBytes + recordBytes > this.maxPayloadBytes)
+            {
+                this.payloads.add(this.payload.toString());
+                this.payload = null;
+            }
+            if (this.payload == null)
+            {
+                this.payload = new StringBuilder(this.header);
+                this.payloadBytes = utf8Length(this.header);
+                this.payloadCache = null;
+            }
+            if (! cache.equals(this.payloadCache))
+            {
+                this.payload.append(cacheRecord);
+                this.payloadBytes += utf8Length(cacheRecord);
+                this.payloadCache = cache;
+            }
+            this.payload.append(record);
+            this.payloadBytes += utf8Length(record);
+        }
+
+        private List<String> finish()
+        {
+            if (this.payload != null) this.payloads.add(this.payload.toString());
+            return this.payloads;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.intrbiz.data.cache.invalidation;
+
+import java.util.Collection;
+
+/**
+ * <p>
+ * Broadcast cache invalidations between nodes, so that caches which are 
+ * local to a node can be kept coherent without a distributed cache.
+ * </p>
+ * 
+ * <p>
+ * Invalidations are batched by the bus and delivered to the listeners of 
+ * every other node, invalidations are never delivered back to the node 
+ * which published them.  Delivery is best effort, caches kept coherent 
+ * by a bus should still use a TTL to bound staleness should an 
+ * invalidation be lost.
+ * </p>
+ */
+public interface InvalidationBus extends AutoCloseable
+{
+    /**
+     * The unique id of this node on the bus
+     */
+    String getNodeId();
+    
+    /**
+     * Invalidate the given key of the given cache on every other node
+     */
+    void invalidate(String cache, String key);
+    
+    /**
+     * Invalidate the given keys of the given cache on every other node
+     */
+    default void invalidateAll(String cache, Collection<String> keys)
+    {
+        for (String key : keys)
+        {
+            this.invalidate(cache, key);
+        }
+    }
+    
+    /**
+     * Invalidate all keys of the given cache which start with the given prefix on every other node
+     */
+    void invalidatePrefix(String cache, String keyPrefix);
+    
+    /**
+     * Invalidate all keys of the given cache which were put with the given tag on every other node
+     */
+    void invalidateTag(String cache, String tag);
+    
+    /**
+     * Publish any pending invalidations now
+     */
+    void flush();
+    
+    void addListener(InvalidationListener listener);
+    
+    void removeListener(InvalidationListener listener);
+    
+    @Override
+    void close();
+}
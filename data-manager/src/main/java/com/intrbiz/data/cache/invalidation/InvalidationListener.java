@@ -0,0 +1,10 @@
+package com.intrbiz.data.cache.invalidation;
+
+/**
+ * Receive invalidations published by other nodes
+ */
+@FunctionalInterface
+public interface InvalidationListener
+{
+    void onInvalidation(CacheInvalidation invalidation);
+}
@@ -0,0 +1,159 @@
+package com.intrbiz.data.cache.invalidation.pgsql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import org.apache.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import com.intrbiz.data.DataException;
+import com.intrbiz.data.cache.invalidation.AbstractInvalidationBus;
+import com.intrbiz.util.pool.database.DatabasePool;
+
+/**
+ * <p>
+ * An invalidation bus using PostgreSQL LISTEN / NOTIFY, so that a cluster
+ * which shares a PostgreSQL database needs no other infrastructure to keep
+ * its local caches coherent.
+ * </p>
+ *
+ * <p>
+ * One pooled connection is held for the life of the bus to listen on, it
+ * is replaced should it fail.  Invalidations are published using
+ * <code>pg_notify</code> on short lived pooled connections, each payload is
+ * kept within the 8000 byte NOTIFY limit.
+ * </p>
+ */
+public class PGSQLInvalidationBus extends AbstractInvalidationBus
+{
+    public static final String DEFAULT_CHANNEL = "cache_invalidation";
+
+    /**
+     * NOTIFY payloads must be shorter than 8000 bytes
+     */
+    public static final int MAX_PAYLOAD_BYTES = 7999;
+
+    /**
+     * How long to wait for notifications before checking if we are closed
+     */
+    private static final int POLL_TIMEOUT = 1_000;
+
+    /**
+     * How long to wait before reconnecting after a failure
+     */
+    private static final long RECONNECT_DELAY = 5_000L;
+
+    private Logger logger = Logger.getLogger(PGSQLInvalidationBus.class);
+
+    private final DatabasePool pool;
+
+    private final String channel;
+
+    private final Thread listener;
+
+    public PGSQLInvalidationBus(DatabasePool pool, String channel, long batchDelay, int maxBatchSize)
+    {
+        super(channel, batchDelay, maxBatchSize, MAX_PAYLOAD_BYTES);
+        // LISTEN cannot take a parameter, so the channel must be a plain identifier
+        if (channel == null || (! channel.matches("[a-z_][a-z0-9_]*"))) throw new IllegalArgumentException("Invalid channel name: " + channel);
+        this.pool = pool;
+        this.channel = channel;
+        this.listener = new Thread(this::listen, "CacheInvalidation-" + channel);
+        this.listener.setDaemon(true);
+        this.listener.start();
+    }
+
+    public PGSQLInvalidationBus(DatabasePool pool, String channel)
+    {
+        this(pool, channel, DEFAULT_BATCH_DELAY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public PGSQLInvalidationBus(DatabasePool pool)
+    {
+        this(pool, DEFAULT_CHANNEL);
+    }
+
+    public String getChannel()
+    {
+        return this.channel;
+    }
+
+    @Override
+    protected void send(String payload) throws Exception
+    {
+        try (Connection con = this.pool.connect())
+        {
+            try (PreparedStatement stmt = con.prepareStatement("SELECT pg_notify(?::TEXT, ?::TEXT)"))
+            {
+                stmt.setString(1, this.channel);
+                stmt.setString(2, payload);
+                stmt.execute();
+            }
+            // notifications are only delivered once committed
+            if (! con.getAutoCommit()) con.commit();
+        }
+    }
+
+    private void listen()
+    {
+        while (! this.closed)
+        {
+            try (Connection con = this.pool.connect())
+            {
+                con.setAutoCommit(true);
+                try (Statement stmt = con.createStatement())
+                {
+                    stmt.execute("LISTEN " + this.channel);
+                }
+                logger.info("Listening for cache invalidations on channel " + this.channel);
+                PGConnection pg = con.unwrap(PGConnection.class);
+                while (! this.closed)
+                {
+                    PGNotification[] notifications = pg.getNotifications(POLL_TIMEOUT);
+                    if (notifications != null)
+                    {
+                        for (PGNotification notification : notifications)
+                        {
+                            this.receive(notification.getParameter());
+                        }
+                    }
+                }
+                try (Statement stmt = con.createStatement())
+                {
+                    stmt.execute("UNLISTEN " + this.channel);
+                }
+            }
+            catch (Exception e)
+            {
+                if (this.closed) break;
+                // invalidations published while we reconnect are lost, cache TTLs bound the staleness
+                logger.error("Error listening for cache invalidations on channel " + this.channel + ", reconnecting", e);
+                try
+                {
+                    Thread.sleep(RECONNECT_DELAY);
+                }
+                catch (InterruptedException ie)
+                {
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+        this.listener.interrupt();
+        try
+        {
+            this.listener.join(POLL_TIMEOUT * 2);
+        }
+        catch (InterruptedException e)
+        {
+            throw new DataException("Interrupted waiting for invalidation listener to stop", e);
+        }
+    }
+}
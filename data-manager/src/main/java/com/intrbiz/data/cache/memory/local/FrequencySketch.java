@@ -0,0 +1,146 @@
+package com.intrbiz.data.cache.memory.local;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A count-min sketch used to estimate how often keys have been accessed,
+ * this is the frequency filter used by the TinyLFU admission policy.
+ * </p>
+ *
+ * <p>
+ * Counters are 4 bits wide, packed 16 to a long, each key maps to
+ * 4 counters.  Once the number of increments reaches the sample size
+ * all counters are halved, so that the sketch ages and adapts to changes
+ * in the access pattern.
+ * </p>
+ *
+ * <p>
+ * This class is NOT thread safe, callers must provide their own locking.
+ * </p>
+ */
+public class FrequencySketch
+{
+    private static final long[] SEEDS = { 0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private long[] table;
+
+    private int tableMask;
+
+    private int sampleSize;
+
+    private int size;
+
+    public FrequencySketch(long expectedSize)
+    {
+        super();
+        this.ensureCapacity(expectedSize);
+    }
+
+    /**
+     * Grow the sketch so that it can accurately track the given number of keys,
+     * note growing the sketch will discard the current frequency information
+     */
+    public void ensureCapacity(long expectedSize)
+    {
+        int maximum = (int) Math.min(Math.max(expectedSize, 1L), Integer.MAX_VALUE >>> 1);
+        if (this.table != null && this.table.length >= maximum) return;
+        this.table = new long[ceilingPowerOfTwo(maximum)];
+        this.tableMask = this.table.length - 1;
+        this.sampleSize = (maximum > (Integer.MAX_VALUE / 10)) ? Integer.MAX_VALUE : 10 * maximum;
+        this.size = 0;
+    }
+
+    /**
+     * Get the estimated number of times the given key has been accessed, capped at 15
+     */
+    public int frequency(String key)
+    {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++)
+        {
+            int index = this.indexOf(hash, i);
+            int count = (int) ((this.table[index] >>> ((start + i) << 2)) & 0xFL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Record an access of the given key
+     */
+    public void increment(String key)
+    {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++)
+        {
+            added |= this.incrementAt(this.indexOf(hash, i), start + i);
+        }
+        if (added && (++this.size == this.sampleSize))
+        {
+            this.reset();
+        }
+    }
+
+    /**
+     * Forget everything
+     */
+    public void clear()
+    {
+        Arrays.fill(this.table, 0L);
+        this.size = 0;
+    }
+
+    private boolean incrementAt(int index, int counter)
+    {
+        int offset = counter << 2;
+        long mask = 0xFL << offset;
+        if ((this.table[index] & mask) != mask)
+        {
+            this.table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Age the sketch by halving every counter
+     */
+    private void reset()
+    {
+        int odd = 0;
+        for (int i = 0; i < this.table.length; i++)
+        {
+            odd += Long.bitCount(this.table[i] & ONE_MASK);
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.size = (this.size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i)
+    {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += (h >>> 32);
+        return ((int) h) & this.tableMask;
+    }
+
+    private static int spread(int x)
+    {
+        x = ((x >>> 16) ^ x) * 0x45D9F3B;
+        x = ((x >>> 16) ^ x) * 0x45D9F3B;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x)
+    {
+        return 1 << (32 - Integer.numberOfLeadingZeros(x - 1));
+    }
+}
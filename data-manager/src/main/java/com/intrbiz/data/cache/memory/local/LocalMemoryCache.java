@@ -1,17 +1,45 @@
 package com.intrbiz.data.cache.memory.local;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
 import com.intrbiz.data.cache.Cache;
 import com.intrbiz.data.cache.CacheListener;
+import com.intrbiz.data.cache.CacheLoader;
+import com.intrbiz.data.cache.CacheStats;
+import com.intrbiz.data.cache.CacheTagged;
+import com.intrbiz.data.cache.Weigher;
+import com.intrbiz.data.cache.codec.CacheCodec;
+import com.intrbiz.data.cache.util.CacheExecutors;
+import com.intrbiz.data.cache.util.CacheListenerDispatcher;
+import com.intrbiz.data.cache.util.CacheStatsCounter;
+import com.intrbiz.data.cache.util.CopyOnRead;
+import com.intrbiz.data.cache.util.Expiry;
+import com.intrbiz.data.cache.util.LocalTagGenerations;
+import com.intrbiz.data.cache.util.PrefixIndexedMap;
+import com.intrbiz.data.cache.util.TagGenerations;
 
 /**
- * A non-shared Level 1 cache
+ * A non-shared Level 1 cache, which is optionally bounded by entry 
+ * count or estimated weight using a W-TinyLFU eviction policy.
+ * 
+ * Entries may be given a time to live, expiry is driven by the shared 
+ * timer wheel, and optionally refreshed ahead of expiry.  The timer 
+ * wheel must not block, so expired entries are removed, and listeners 
+ * told, on the refresh executor.
+ * 
+ * Entries may also be tagged, tag generations are local to this cache.
+ * 
+ * The eviction policy is updated while the key being changed is locked, 
+ * so that the policy always tracks exactly the keys in the cache.
+ * 
+ * By default the same instance of a value is handed to every caller, 
+ * optionally values can be stored as immutable snapshots, encoded by a 
+ * codec, with every get materializing a private copy of the value.
  */
 public class LocalMemoryCache implements Cache
 {
@@ -19,26 +47,144 @@ public class LocalMemoryCache implements Cache
     
     private final String name;
 
-    private final ConcurrentMap<String, Object> cache = new ConcurrentHashMap<String, Object>();
+    private final PrefixIndexedMap<Object> cache = new PrefixIndexedMap<Object>();
 
-    private final ConcurrentMap<CacheListener, Object> listeners = new ConcurrentHashMap<CacheListener, Object>();
+    private final CacheListenerDispatcher listeners;
+    
+    private final TinyLFUPolicy policy;
+    
+    private final Weigher weigher;
+    
+    private final CacheStatsCounter stats;
+    
+    private final TagGenerations tags = new LocalTagGenerations();
+    
+    private final CopyOnRead copyOnRead;
 
+    /**
+     * Create an unbounded cache
+     */
     public LocalMemoryCache(String name)
+    {
+        this(name, -1L, null, null);
+    }
+    
+    /**
+     * Create a cache bounded to the given number of entries
+     */
+    public LocalMemoryCache(String name, long maximumSize)
+    {
+        this(name, maximumSize, null, null);
+    }
+    
+    /**
+     * Create a cache bounded to the given total weight of entries, as estimated by the given weigher
+     */
+    public LocalMemoryCache(String name, long maximumWeight, Weigher weigher)
+    {
+        this(name, maximumWeight, weigher, null);
+    }
+    
+    /**
+     * Create a cache
+     * @param name the cache name
+     * @param maximum the maximum number of entries, or total weight when a weigher is given, unbounded if not positive
+     * @param weigher the weigher to estimate the weight of entries, or null to bound by entry count
+     * @param snapshotCodec the codec to store values as immutable snapshots with, or null to store values as is
+     */
+    public LocalMemoryCache(String name, long maximum, Weigher weigher, CacheCodec snapshotCodec)
     {
         super();
         this.name = name;
+        this.policy = maximum <= 0 ? null : new TinyLFUPolicy(maximum, weigher != null);
+        this.weigher = maximum <= 0 ? null : (weigher == null ? Weigher.SINGLETON : weigher);
+        this.copyOnRead = snapshotCodec == null ? null : new CopyOnRead(snapshotCodec, "com.intrbiz.cache.memory", LocalMemoryCache.class, name);
+        this.stats = new CacheStatsCounter("com.intrbiz.cache.memory", LocalMemoryCache.class, name, this.cache::size);
+        this.listeners = new CacheListenerDispatcher("com.intrbiz.cache.memory", LocalMemoryCache.class, name);
     }
 
     public String name()
     {
         return this.name;
     }
+    
+    /**
+     * Is this cache bounded
+     */
+    public boolean isBounded()
+    {
+        return this.policy != null;
+    }
+    
+    /**
+     * The maximum size or weight of this cache, or -1 if unbounded
+     */
+    public long getMaximum()
+    {
+        return this.policy == null ? -1L : this.policy.getMaximum();
+    }
+    
+    /**
+     * The current weighted size of this cache, for an unbounded cache this is the entry count
+     */
+    public long getWeightedSize()
+    {
+        return this.policy == null ? this.cache.size() : this.policy.getWeightedSize();
+    }
+    
+    /**
+     * The number of entries in this cache
+     */
+    public int size()
+    {
+        return this.cache.size();
+    }
+    
+    /**
+     * The number of keys tracked by the eviction policy, or -1 if unbounded
+     */
+    int trackedSize()
+    {
+        return this.policy == null ? -1 : this.policy.size();
+    }
+    
+    /**
+     * Are values stored as snapshots, such that every get returns a copy
+     */
+    public boolean isCopyOnRead()
+    {
+        return this.copyOnRead != null;
+    }
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> T get(String key)
     {
-        T entry = (T) this.cache.get(key);
+        Object stored = this.cache.get(key);
+        T entry = null;
+        if (stored instanceof ExpiringEntry)
+        {
+            ExpiringEntry expiring = (ExpiringEntry) stored;
+            if (expiring.expiry.isExpired())
+            {
+                this.expire(key, expiring);
+            }
+            else
+            {
+                entry = (T) this.materialize(expiring.value);
+                if (expiring.expiry.isRefreshDue()) this.refresh(key, expiring);
+            }
+        }
+        else if (this.tags.isStale(stored))
+        {
+            this.removeStale(key, stored);
+        }
+        else
+        {
+            entry = (T) this.materialize(CacheTagged.unwrap(stored));
+        }
+        if (entry != null && this.policy != null) this.policy.recordAccess(key);
+        this.stats.get(entry);
         if (logger.isTraceEnabled()) logger.trace("Get: " + key + " => " + entry);
         return entry;
     }
@@ -47,70 +193,286 @@ public class LocalMemoryCache implements Cache
     public <T> void put(String key, T entry)
     {
         if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry);
-        this.cache.put(key, entry);
+        this.store(key, entry, this.snapshot(entry));
+    }
+    
+    @Override
+    public <T> void put(String key, T entry, String... tags)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry + " tags " + String.join(", ", tags));
+        this.store(key, entry, this.tags.tag(this.snapshot(entry), tags));
+    }
+    
+    @Override
+    public CacheTagged readTags(String... tags)
+    {
+        return this.tags.tag(null, tags);
+    }
+    
+    @Override
+    public <T> void put(String key, T entry, CacheTagged tags)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry + " tags " + String.join(", ", tags.getTags()));
+        this.store(key, entry, tags.withValue(this.snapshot(entry)));
+    }
+    
+    @Override
+    public void invalidateTag(String tag)
+    {
+        if (logger.isTraceEnabled()) logger.trace("InvalidateTag: " + tag);
+        this.tags.invalidate(tag);
+    }
+    
+    @Override
+    public <T> void put(String key, T entry, long ttl, TimeUnit unit)
+    {
+        this.put(key, entry, ttl, unit, null);
+    }
+
+    @Override
+    public <T> void put(String key, T entry, long ttl, TimeUnit unit, CacheLoader<T> refresher)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry + " ttl " + ttl + " " + unit);
+        if (ttl <= 0)
+        {
+            this.store(key, entry, this.snapshot(entry));
+        }
+        else
+        {
+            this.store(key, entry, new ExpiringEntry(this.snapshot(entry), new Expiry(ttl, unit, refresher)));
+        }
+    }
+    
+    private void store(String key, Object entry, Object stored)
+    {
+        if (this.policy == null)
+        {
+            cancelExpiry(this.cache.put(key, stored));
+        }
+        else
+        {
+            final int weight = this.weigher.weigh(key, entry);
+            final List<List<String>> evictions = new ArrayList<List<String>>(1);
+            cancelExpiry(this.cache.put(key, stored, () -> evictions.add(this.policy.recordPut(key, weight))));
+            this.evict(evictions.get(0));
+        }
+        if (stored instanceof ExpiringEntry) this.scheduleExpiry(key, (ExpiringEntry) stored);
+        this.stats.put();
         this.firePut(key, entry);
     }
+    
+    /**
+     * Record the removal of a key in the eviction policy, while the key is locked
+     */
+    private Runnable recordRemoval(String key)
+    {
+        return this.policy == null ? null : () -> this.policy.recordRemoval(key);
+    }
+    
+    private void scheduleExpiry(final String key, final ExpiringEntry expiring)
+    {
+        expiring.expiry.schedule(() -> CacheExecutors.refresh().execute(() -> this.expire(key, expiring)));
+    }
+    
+    /**
+     * Remove the given entry if it is still current
+     */
+    private void expire(String key, ExpiringEntry expiring)
+    {
+        if (this.cache.remove(key, expiring, this.recordRemoval(key)))
+        {
+            if (logger.isTraceEnabled()) logger.trace("Expired: " + key);
+            expiring.expiry.cancel();
+            this.stats.eviction();
+            this.fireRemoval(key, this.materialize(expiring.value));
+        }
+    }
+    
+    /**
+     * Remove the given entry, whose tags are stale, if it is still current
+     */
+    private void removeStale(String key, Object stored)
+    {
+        if (this.cache.remove(key, stored, this.recordRemoval(key)))
+        {
+            if (logger.isTraceEnabled()) logger.trace("Stale: " + key);
+            this.stats.remove();
+            this.fireRemoval(key, unwrap(stored));
+        }
+    }
+    
+    /**
+     * Asynchronously reload the given entry, replacing it only if it is still current
+     */
+    private void refresh(final String key, final ExpiringEntry expiring)
+    {
+        if (! expiring.expiry.beginRefresh()) return;
+        CacheExecutors.refresh().execute(() -> {
+            try
+            {
+                if (logger.isTraceEnabled()) logger.trace("Refreshing: " + key);
+                Object value = expiring.expiry.getLoader().load(key);
+                if (value == null)
+                {
+                    // the value no longer exists
+                    this.expire(key, expiring);
+                }
+                else
+                {
+                    ExpiringEntry refreshed = new ExpiringEntry(this.snapshot(value), expiring.expiry.renew());
+                    final int weight = this.policy == null ? 0 : this.weigher.weigh(key, value);
+                    final List<List<String>> evictions = new ArrayList<List<String>>(1);
+                    if (this.cache.replace(key, expiring, refreshed, this.policy == null ? null : () -> evictions.add(this.policy.recordPut(key, weight))))
+                    {
+                        expiring.expiry.cancel();
+                        this.scheduleExpiry(key, refreshed);
+                        this.firePut(key, value);
+                        if (! evictions.isEmpty()) this.evict(evictions.get(0));
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                logger.warn("Failed to refresh cache key " + key + ", it will expire", e);
+            }
+        });
+    }
+    
+    private static void cancelExpiry(Object stored)
+    {
+        if (stored instanceof ExpiringEntry) ((ExpiringEntry) stored).expiry.cancel();
+    }
+    
+    private Object unwrap(Object stored)
+    {
+        return this.materialize(stored instanceof ExpiringEntry ? ((ExpiringEntry) stored).value : CacheTagged.unwrap(stored));
+    }
+    
+    private Object snapshot(Object value)
+    {
+        return this.copyOnRead == null ? value : this.copyOnRead.snapshot(value);
+    }
+    
+    private Object materialize(Object value)
+    {
+        return this.copyOnRead == null ? value : this.copyOnRead.materialize(value);
+    }
+    
+    /**
+     * Evict the given keys as chosen by the eviction policy, unless 
+     * a key has been put again since, which the policy then tracks
+     */
+    protected void evict(List<String> keys)
+    {
+        for (String key : keys)
+        {
+            if (logger.isTraceEnabled()) logger.trace("Evicting: " + key);
+            Object stored = this.cache.removeIf(key, (current) -> ! this.policy.contains(key));
+            if (stored != null)
+            {
+                cancelExpiry(stored);
+                this.stats.eviction();
+                this.fireRemoval(key, unwrap(stored));
+            }
+        }
+    }
 
     @Override
     public void remove(String key)
     {
         if (logger.isTraceEnabled()) logger.trace("Remove: " + key);
-        Object entry = this.cache.remove(key);
-        this.fireRemoval(key, entry);
+        Object stored = this.cache.remove(key, this.recordRemoval(key));
+        cancelExpiry(stored);
+        this.stats.remove();
+        this.fireRemoval(key, unwrap(stored));
     }
     
     @Override
     public boolean contains(String key)
     {
-        return this.cache.containsKey(key);
+        Object stored = this.cache.get(key);
+        if (stored instanceof ExpiringEntry) return ! ((ExpiringEntry) stored).expiry.isExpired();
+        return stored != null && (! this.tags.isStale(stored));
     }
 
     @Override
     public Set<String> keySet(String keyPrefix)
     {
-        return this.cache.keySet().stream().filter((k) -> {
-            return k.startsWith(keyPrefix);
-        }).collect(Collectors.toSet());
+        this.stats.prefixScan();
+        return this.cache.keySet(keyPrefix);
+    }
+    
+    @Override
+    public CacheStats stats()
+    {
+        return this.stats.snapshot();
     }
 
     @Override
     public void close()
     {
+        this.cancelAllExpiry();
         this.cache.clear();
+        if (this.policy != null) this.policy.clear();
         this.listeners.clear();
+        this.stats.close();
     }
     
     @Override
     public void clear()
     {
-        this.cache.clear();
+        this.cancelAllExpiry();
+        this.cache.clear(this.policy == null ? null : this.policy::recordRemoval);
+    }
+
+    private void cancelAllExpiry()
+    {
+        for (Object stored : this.cache.values())
+        {
+            cancelExpiry(stored);
+        }
     }
 
     @Override
     public void addListener(CacheListener listener)
     {
-        this.listeners.put(listener, this);
+        this.listeners.addListener(listener);
     }
     
     @Override
     public void removeListener(CacheListener listener)
     {
-        this.listeners.remove(listener);
+        this.listeners.removeListener(listener);
     }
     
     protected void fireRemoval(String key, Object entry)
     {
-        for (CacheListener listener : this.listeners.keySet())
-        {
-            listener.onRemove(key, entry);
-        }
+        this.listeners.fireRemoval(key, entry);
     }
     
     protected void firePut(String key, Object entry)
     {
-        for (CacheListener listener : this.listeners.keySet())
+        this.listeners.firePut(key, entry);
+    }
+    
+    /**
+     * An entry which has a time to live
+     */
+    private static final class ExpiringEntry
+    {
+        private final Object value;
+        
+        private final Expiry expiry;
+        
+        private ExpiringEntry(Object value, Expiry expiry)
+        {
+            this.value = value;
+            this.expiry = expiry;
+        }
+        
+        public String toString()
         {
-            listener.onPut(key, entry);
+            return "ExpiringEntry(" + this.value + ")";
         }
     }
 }
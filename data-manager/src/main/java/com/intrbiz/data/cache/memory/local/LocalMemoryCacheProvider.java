@@ -2,17 +2,67 @@ package com.intrbiz.data.cache.memory.local;
 
 import com.intrbiz.data.DataManager.CacheProvider;
 import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.Weigher;
+import com.intrbiz.data.cache.codec.CacheCodec;
 
 public class LocalMemoryCacheProvider implements CacheProvider
-{    
+{
+    private final long maximum;
+    
+    private final Weigher weigher;
+    
+    private CacheCodec copyOnRead;
+    
+    /**
+     * Provide unbounded local caches
+     */
     public LocalMemoryCacheProvider()
     {
         super();
+        this.maximum = -1L;
+        this.weigher = null;
+    }
+    
+    /**
+     * Provide local caches which are bounded to the given number of entries
+     */
+    public LocalMemoryCacheProvider(long maximumSize)
+    {
+        super();
+        this.maximum = maximumSize;
+        this.weigher = null;
+    }
+    
+    /**
+     * Provide local caches which are bounded to the given total weight of entries
+     */
+    public LocalMemoryCacheProvider(long maximumWeight, Weigher weigher)
+    {
+        super();
+        this.maximum = maximumWeight;
+        this.weigher = weigher;
+    }
+
+    public CacheCodec getCopyOnRead()
+    {
+        return this.copyOnRead;
+    }
+
+    /**
+     * Store values as immutable snapshots encoded with the given codec, 
+     * so that every get returns a private copy, rather than the same 
+     * instance being shared by every caller
+     * @param codec the codec, such as an {@link com.intrbiz.data.cache.codec.EntityCacheCodec}, or null to store values as is
+     */
+    public LocalMemoryCacheProvider setCopyOnRead(CacheCodec codec)
+    {
+        this.copyOnRead = codec;
+        return this;
     }
 
     @Override
     public Cache getCache(String name)
     {
-        return new LocalMemoryCache(name);
+        return new LocalMemoryCache(name, this.maximum, this.weigher, this.copyOnRead);
     }
 }
@@ -0,0 +1,352 @@
+package com.intrbiz.data.cache.memory.local;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A W-TinyLFU eviction policy, which decides which keys should be
+ * evicted from a bounded cache.
+ * </p>
+ *
+ * <p>
+ * New keys enter a small LRU admission window, keys evicted from the
+ * window compete with the least recently used key of the main space for
+ * admission, the key with the higher estimated access frequency wins.
+ * The main space is a segmented LRU split into probation and protected
+ * segments, keys are promoted into the protected segment when they are
+ * accessed again.
+ * </p>
+ *
+ * <p>
+ * The policy only tracks keys and weights, it does not hold values.  Reads
+ * are recorded on a best effort basis: if the policy is busy an access
+ * is simply dropped rather than blocking the reader.
+ * </p>
+ */
+public class TinyLFUPolicy
+{
+    private static final double WINDOW_RATIO = 0.01D;
+
+    private static final double PROTECTED_RATIO = 0.80D;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final long maximum;
+
+    private final long windowMaximum;
+
+    private final long protectedMaximum;
+
+    private final boolean weighted;
+
+    private final FrequencySketch sketch;
+
+    private final LinkedHashMap<String, Integer> window = new LinkedHashMap<String, Integer>(16, 0.75F, true);
+
+    private final LinkedHashMap<String, Integer> probation = new LinkedHashMap<String, Integer>(16, 0.75F, true);
+
+    private final LinkedHashMap<String, Integer> protect = new LinkedHashMap<String, Integer>(16, 0.75F, true);
+
+    private long windowWeight = 0;
+
+    private long probationWeight = 0;
+
+    private long protectedWeight = 0;
+
+    /**
+     * @param maximum the maximum total weight of entries
+     * @param weighted are entries weighted or is the maximum an entry count
+     */
+    public TinyLFUPolicy(long maximum, boolean weighted)
+    {
+        super();
+        if (maximum <= 0) throw new IllegalArgumentException("The maximum size of a bounded cache must be positive");
+        this.maximum = maximum;
+        this.weighted = weighted;
+        this.windowMaximum = Math.max(1L, (long) (maximum * WINDOW_RATIO));
+        this.protectedMaximum = (long) ((maximum - this.windowMaximum) * PROTECTED_RATIO);
+        // when weighted we don't know the entry count up front, so the sketch grows as needed
+        this.sketch = new FrequencySketch(weighted ? 1024 : maximum);
+    }
+
+    public long getMaximum()
+    {
+        return this.maximum;
+    }
+
+    public boolean isWeighted()
+    {
+        return this.weighted;
+    }
+
+    /**
+     * The current total weight of all tracked keys
+     */
+    public long getWeightedSize()
+    {
+        this.lock.lock();
+        try
+        {
+            return this.windowWeight + this.probationWeight + this.protectedWeight;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * The current number of tracked keys
+     */
+    public int size()
+    {
+        this.lock.lock();
+        try
+        {
+            return this.window.size() + this.probation.size() + this.protect.size();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Is the given key tracked
+     */
+    public boolean contains(String key)
+    {
+        this.lock.lock();
+        try
+        {
+            return this.window.containsKey(key) || this.probation.containsKey(key) || this.protect.containsKey(key);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Record a read of the given key, this is best effort and will not block
+     */
+    public void recordAccess(String key)
+    {
+        if (this.lock.tryLock())
+        {
+            try
+            {
+                this.sketch.increment(key);
+                this.onAccess(key);
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Record the put of the given key
+     * @return the keys which must be evicted from the cache
+     */
+    public List<String> recordPut(String key, int weight)
+    {
+        if (weight < 0) throw new IllegalArgumentException("Cache entry weights must not be negative");
+        List<String> evicted = new LinkedList<String>();
+        this.lock.lock();
+        try
+        {
+            this.sketch.increment(key);
+            if (! this.onUpdate(key, weight))
+            {
+                // a new key, which always enters via the window
+                this.window.put(key, weight);
+                this.windowWeight += weight;
+                if (this.weighted) this.sketch.ensureCapacity(this.window.size() + this.probation.size() + this.protect.size());
+            }
+            this.evict(evicted);
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+        return evicted;
+    }
+
+    /**
+     * Record the removal of the given key
+     */
+    public void recordRemoval(String key)
+    {
+        this.lock.lock();
+        try
+        {
+            Integer weight;
+            if ((weight = this.window.remove(key)) != null) this.windowWeight -= weight;
+            else if ((weight = this.probation.remove(key)) != null) this.probationWeight -= weight;
+            else if ((weight = this.protect.remove(key)) != null) this.protectedWeight -= weight;
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Forget all keys
+     */
+    public void clear()
+    {
+        this.lock.lock();
+        try
+        {
+            this.window.clear();
+            this.probation.clear();
+            this.protect.clear();
+            this.windowWeight = 0;
+            this.probationWeight = 0;
+            this.protectedWeight = 0;
+            this.sketch.clear();
+        }
+        finally
+        {
+            this.lock.unlock();
+        }
+    }
+
+    private void onAccess(String key)
+    {
+        if (this.window.get(key) != null)
+        {
+            // the get has moved the key to the most recent position
+            return;
+        }
+        Integer weight = this.probation.remove(key);
+        if (weight != null)
+        {
+            // promote to the protected segment
+            this.probationWeight -= weight;
+            this.protect.put(key, weight);
+            this.protectedWeight += weight;
+            this.demoteProtected();
+            return;
+        }
+        this.protect.get(key);
+    }
+
+    private boolean onUpdate(String key, int weight)
+    {
+        Integer previous;
+        if ((previous = this.window.get(key)) != null)
+        {
+            this.window.put(key, weight);
+            this.windowWeight += weight - previous;
+            return true;
+        }
+        else if ((previous = this.probation.remove(key)) != null)
+        {
+            this.probationWeight -= previous;
+            this.protect.put(key, weight);
+            this.protectedWeight += weight;
+            this.demoteProtected();
+            return true;
+        }
+        else if ((previous = this.protect.get(key)) != null)
+        {
+            this.protect.put(key, weight);
+            this.protectedWeight += weight - previous;
+            this.demoteProtected();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Move the least recently used protected keys into probation while the protected segment is over size
+     */
+    private void demoteProtected()
+    {
+        while (this.protectedWeight > this.protectedMaximum && this.protect.size() > 1)
+        {
+            Map.Entry<String, Integer> eldest = eldest(this.protect);
+            this.protect.remove(eldest.getKey());
+            this.protectedWeight -= eldest.getValue();
+            this.probation.put(eldest.getKey(), eldest.getValue());
+            this.probationWeight += eldest.getValue();
+        }
+    }
+
+    private void evict(List<String> evicted)
+    {
+        // move keys out of the window, each one competes for admission to the main space
+        while (this.windowWeight > this.windowMaximum && ! this.window.isEmpty())
+        {
+            Map.Entry<String, Integer> candidate = eldest(this.window);
+            this.window.remove(candidate.getKey());
+            this.windowWeight -= candidate.getValue();
+            this.admit(candidate.getKey(), candidate.getValue(), evicted);
+        }
+        // handle any overflow caused by an overly heavy entry
+        while (this.windowWeight + this.probationWeight + this.protectedWeight > this.maximum)
+        {
+            LinkedHashMap<String, Integer> segment = ! this.probation.isEmpty() ? this.probation : (! this.window.isEmpty() ? this.window : this.protect);
+            if (segment.isEmpty()) break;
+            Map.Entry<String, Integer> victim = eldest(segment);
+            this.removeFrom(segment, victim);
+            evicted.add(victim.getKey());
+        }
+    }
+
+    private void admit(String candidate, int weight, List<String> evicted)
+    {
+        long mainMaximum = this.maximum - this.windowMaximum;
+        while (this.probationWeight + this.protectedWeight + weight > mainMaximum)
+        {
+            LinkedHashMap<String, Integer> segment = ! this.probation.isEmpty() ? this.probation : this.protect;
+            if (segment.isEmpty())
+            {
+                // the candidate can never fit
+                evicted.add(candidate);
+                return;
+            }
+            Map.Entry<String, Integer> victim = eldest(segment);
+            if (this.sketch.frequency(candidate) > this.sketch.frequency(victim.getKey()))
+            {
+                // the candidate is more popular, evict the victim
+                this.removeFrom(segment, victim);
+                evicted.add(victim.getKey());
+            }
+            else
+            {
+                // the victim wins, reject the candidate
+                evicted.add(candidate);
+                return;
+            }
+        }
+        this.probation.put(candidate, weight);
+        this.probationWeight += weight;
+    }
+
+    private void removeFrom(LinkedHashMap<String, Integer> segment, Map.Entry<String, Integer> entry)
+    {
+        segment.remove(entry.getKey());
+        if (segment == this.window) this.windowWeight -= entry.getValue();
+        else if (segment == this.probation) this.probationWeight -= entry.getValue();
+        else this.protectedWeight -= entry.getValue();
+    }
+
+    private static Map.Entry<String, Integer> eldest(LinkedHashMap<String, Integer> segment)
+    {
+        Iterator<Map.Entry<String, Integer>> i = segment.entrySet().iterator();
+        Map.Entry<String, Integer> eldest = i.next();
+        // copy the entry, as it is invalidated once removed
+        return new AbstractMap.SimpleImmutableEntry<String, Integer>(eldest.getKey(), eldest.getValue());
+    }
+}
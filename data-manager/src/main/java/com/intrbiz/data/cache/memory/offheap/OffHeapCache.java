@@ -0,0 +1,502 @@
+package com.intrbiz.data.cache.memory.offheap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Meter;
+import com.intrbiz.data.DataException;
+import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.CacheListener;
+import com.intrbiz.data.cache.CacheStats;
+import com.intrbiz.data.cache.CacheTagged;
+import com.intrbiz.data.cache.codec.CacheCodec;
+import com.intrbiz.data.cache.codec.JavaSerializationCodec;
+import com.intrbiz.data.cache.util.CacheListenerDispatcher;
+import com.intrbiz.data.cache.util.CacheStatsCounter;
+import com.intrbiz.data.cache.util.LocalTagGenerations;
+import com.intrbiz.data.cache.util.PrefixIndexedMap;
+import com.intrbiz.data.cache.util.TagGenerations;
+import com.intrbiz.gerald.source.IntelligenceSource;
+import com.intrbiz.gerald.witchcraft.Witchcraft;
+
+/**
+ * <p>
+ * A cache which stores serialized values off heap, intended to be used as
+ * the level 2 cache of a TieredCache so that the hot working set stays on
+ * heap while the long tail does not add to garbage collection pressure.
+ * </p>
+ *
+ * <p>
+ * Values are encoded with a pluggable codec and appended to fixed size
+ * slabs, which are allocated off heap either as direct buffers or as memory
+ * mapped files.  Once every slab is allocated, the least recently read slab
+ * is evicted in its entirety and reused.  Space used by removed or replaced
+ * values is reclaimed when its slab is evicted.
+ * </p>
+ *
+ * <p>
+ * Slab evictions are capacity management not invalidation, so they are not
+ * reported to listeners, otherwise a tiered cache would drop the hot copy of
+ * an evicted key from its level 1 cache.
+ * </p>
+ *
+ * <p>
+ * The tags of an entry are held on heap with its location, so that stale 
+ * entries are dropped without decoding them.
+ * </p>
+ */
+public class OffHeapCache implements Cache
+{
+    /**
+     * The default slab size, 4MiB
+     */
+    public static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+    private Logger logger = Logger.getLogger(OffHeapCache.class);
+
+    private final String name;
+
+    private final int slabSize;
+
+    private final int maximumSlabs;
+
+    private final CacheCodec codec;
+
+    private final SlabAllocator allocator;
+
+    private final PrefixIndexedMap<Location> index = new PrefixIndexedMap<Location>();
+
+    private final List<Slab> slabs = new ArrayList<Slab>();
+
+    private final CacheListenerDispatcher listeners;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private Slab active;
+
+    private final Meter evicted;
+
+    private final CacheStatsCounter stats;
+
+    private final TagGenerations tags = new LocalTagGenerations();
+
+    /**
+     * Create an off heap cache using direct buffers and Java serialization
+     * @param capacity the maximum number of bytes to use
+     */
+    public OffHeapCache(String name, long capacity)
+    {
+        this(name, DEFAULT_SLAB_SIZE, (int) Math.max(2L, capacity / DEFAULT_SLAB_SIZE), new JavaSerializationCodec(), SlabAllocator.direct());
+    }
+
+    /**
+     * Create an off heap cache
+     * @param slabSize the size of each slab in bytes, which is also the largest value which can be stored
+     * @param maximumSlabs the maximum number of slabs to allocate, at least 2
+     * @param codec how values are encoded
+     * @param allocator how slabs are allocated
+     */
+    public OffHeapCache(String name, int slabSize, int maximumSlabs, CacheCodec codec, SlabAllocator allocator)
+    {
+        super();
+        if (slabSize <= 0) throw new IllegalArgumentException("The slab size must be positive");
+        if (maximumSlabs < 2) throw new IllegalArgumentException("At least 2 slabs are required");
+        this.name = name;
+        this.slabSize = slabSize;
+        this.maximumSlabs = maximumSlabs;
+        this.codec = codec;
+        this.allocator = allocator;
+        // metrics
+        IntelligenceSource source = Witchcraft.get().source("com.intrbiz.cache.memory");
+        this.evicted = source.getRegistry().meter(Witchcraft.scoped(OffHeapCache.class, "evicted", name));
+        this.stats = new CacheStatsCounter("com.intrbiz.cache.memory", OffHeapCache.class, name, this.index::size);
+        this.listeners = new CacheListenerDispatcher("com.intrbiz.cache.memory", OffHeapCache.class, name);
+    }
+
+    @Override
+    public String name()
+    {
+        return this.name;
+    }
+
+    public int getSlabSize()
+    {
+        return this.slabSize;
+    }
+
+    public int getMaximumSlabs()
+    {
+        return this.maximumSlabs;
+    }
+
+    /**
+     * The number of slabs currently allocated
+     */
+    public int getAllocatedSlabs()
+    {
+        this.lock.readLock().lock();
+        try
+        {
+            return this.slabs.size();
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The number of entries in this cache
+     */
+    public int size()
+    {
+        return this.index.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key)
+    {
+        Location location;
+        byte[] data;
+        this.lock.readLock().lock();
+        try
+        {
+            location = this.index.get(key);
+            if (location == null || location.isExpired() || this.tags.isStale(location.tags))
+            {
+                data = null;
+            }
+            else
+            {
+                data = new byte[location.length];
+                ByteBuffer buffer = location.slab.buffer.duplicate();
+                buffer.position(location.offset);
+                buffer.get(data);
+                location.slab.accessed = this.clock.incrementAndGet();
+            }
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+        T entry = null;
+        if (data != null)
+        {
+            try
+            {
+                entry = (T) this.codec.decode(data);
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to decode cache key " + key + ", removing it", e);
+                this.remove(key, location);
+            }
+        }
+        else if (location != null)
+        {
+            if (logger.isTraceEnabled()) logger.trace("Expired or stale: " + key);
+            this.remove(key, location);
+        }
+        this.stats.get(entry);
+        if (logger.isTraceEnabled()) logger.trace("Get: " + key + " => " + entry);
+        return entry;
+    }
+
+    @Override
+    public <T> void put(String key, T entry)
+    {
+        this.put(key, entry, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public <T> void put(String key, T entry, String... tags)
+    {
+        this.store(key, entry, 0L, TimeUnit.MILLISECONDS, this.tags.tag(null, tags));
+    }
+
+    @Override
+    public CacheTagged readTags(String... tags)
+    {
+        return this.tags.tag(null, tags);
+    }
+
+    @Override
+    public <T> void put(String key, T entry, CacheTagged tags)
+    {
+        this.store(key, entry, 0L, TimeUnit.MILLISECONDS, tags);
+    }
+
+    @Override
+    public void invalidateTag(String tag)
+    {
+        if (logger.isTraceEnabled()) logger.trace("InvalidateTag: " + tag);
+        this.tags.invalidate(tag);
+    }
+
+    @Override
+    public <T> void put(String key, T entry, long ttl, TimeUnit unit)
+    {
+        this.store(key, entry, ttl, unit, null);
+    }
+
+    private void store(String key, Object entry, long ttl, TimeUnit unit, CacheTagged tags)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry);
+        if (entry == null)
+        {
+            this.remove(key);
+            return;
+        }
+        byte[] data;
+        try
+        {
+            data = this.codec.encode(entry);
+        }
+        catch (IOException e)
+        {
+            throw new DataException("Failed to encode cache key " + key, e);
+        }
+        if (data.length > this.slabSize)
+        {
+            // too big to cache, ensure we do not keep a stale value
+            if (logger.isDebugEnabled()) logger.debug("Not caching key " + key + ", " + data.length + " bytes is larger than the slab size");
+            this.remove(key);
+            return;
+        }
+        this.lock.writeLock().lock();
+        try
+        {
+            if (this.active == null || this.active.position + data.length > this.slabSize) this.nextSlab();
+            Slab slab = this.active;
+            ByteBuffer buffer = slab.buffer.duplicate();
+            buffer.position(slab.position);
+            buffer.put(data);
+            this.index.put(key, new Location(slab, slab.position, data.length, ttl <= 0 ? 0L : System.nanoTime() + unit.toNanos(ttl), tags));
+            slab.position += data.length;
+            slab.keys.add(key);
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+        this.stats.put();
+        this.firePut(key, entry);
+    }
+
+    /**
+     * Move to the next slab to write to, allocating a new slab
+     * or evicting the least recently read slab
+     */
+    private void nextSlab()
+    {
+        if (this.slabs.size() < this.maximumSlabs)
+        {
+            try
+            {
+                Slab slab = new Slab(this.allocator.allocate(this.name, this.slabs.size(), this.slabSize));
+                this.slabs.add(slab);
+                this.active = slab;
+                if (logger.isDebugEnabled()) logger.debug("Allocated slab " + this.slabs.size() + " of " + this.maximumSlabs + " for cache " + this.name);
+            }
+            catch (IOException e)
+            {
+                throw new DataException("Failed to allocate slab for cache " + this.name, e);
+            }
+        }
+        else
+        {
+            Slab victim = null;
+            for (Slab slab : this.slabs)
+            {
+                if (slab != this.active && (victim == null || slab.accessed < victim.accessed)) victim = slab;
+            }
+            this.evict(victim);
+            this.active = victim;
+        }
+        this.active.accessed = this.clock.incrementAndGet();
+    }
+
+    /**
+     * Remove every entry which is stored in the given slab, and reset it
+     */
+    private void evict(Slab slab)
+    {
+        int count = 0;
+        for (String key : slab.keys)
+        {
+            Location location = this.index.get(key);
+            if (location != null && location.slab == slab && this.index.remove(key, location)) count++;
+        }
+        if (logger.isDebugEnabled()) logger.debug("Evicted slab with " + count + " live entries from cache " + this.name);
+        this.evicted.mark(count);
+        this.stats.eviction(count);
+        slab.keys.clear();
+        slab.position = 0;
+    }
+
+    @Override
+    public void remove(String key)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Remove: " + key);
+        this.lock.writeLock().lock();
+        try
+        {
+            this.index.remove(key);
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+        this.stats.remove();
+        this.fireRemoval(key, null);
+    }
+
+    /**
+     * Remove the given key, only if it is still stored at the given location
+     */
+    private void remove(String key, Location location)
+    {
+        boolean removed;
+        this.lock.writeLock().lock();
+        try
+        {
+            removed = this.index.remove(key, location);
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+        if (removed)
+        {
+            this.stats.eviction();
+            this.fireRemoval(key, null);
+        }
+    }
+
+    @Override
+    public boolean contains(String key)
+    {
+        Location location = this.index.get(key);
+        return location != null && (! location.isExpired()) && (! this.tags.isStale(location.tags));
+    }
+
+    @Override
+    public Set<String> keySet(String keyPrefix)
+    {
+        this.stats.prefixScan();
+        return this.index.keySet(keyPrefix);
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        return this.stats.snapshot();
+    }
+
+    @Override
+    public void close()
+    {
+        // this cache is shared, do not close it
+    }
+
+    @Override
+    public void clear()
+    {
+        this.lock.writeLock().lock();
+        try
+        {
+            this.index.clear();
+            for (Slab slab : this.slabs)
+            {
+                slab.keys.clear();
+                slab.position = 0;
+            }
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addListener(CacheListener listener)
+    {
+        this.listeners.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(CacheListener listener)
+    {
+        this.listeners.removeListener(listener);
+    }
+
+    protected void fireRemoval(String key, Object entry)
+    {
+        this.listeners.fireRemoval(key, entry);
+    }
+
+    protected void firePut(String key, Object entry)
+    {
+        this.listeners.firePut(key, entry);
+    }
+
+    /**
+     * A slab of off heap memory which values are appended to
+     */
+    private static final class Slab
+    {
+        private final ByteBuffer buffer;
+
+        private final List<String> keys = new ArrayList<String>();
+
+        private int position = 0;
+
+        private volatile long accessed;
+
+        private Slab(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Where a value is stored
+     */
+    private static final class Location
+    {
+        private final Slab slab;
+
+        private final int offset;
+
+        private final int length;
+
+        private final long expiresAt;
+
+        private final CacheTagged tags;
+
+        private Location(Slab slab, int offset, int length, long expiresAt, CacheTagged tags)
+        {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+            this.tags = tags;
+        }
+
+        private boolean isExpired()
+        {
+            return this.expiresAt != 0L && System.nanoTime() - this.expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.intrbiz.data.cache.memory.offheap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.intrbiz.data.DataManager.CacheProvider;
+import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.codec.CacheCodec;
+import com.intrbiz.data.cache.codec.JavaSerializationCodec;
+
+/**
+ * Provide off heap caches, typically as the level 2 of a tiered cache:
+ *
+ * <pre>
+ * <code>
+ *   new TieredCacheProvider(new LocalMemoryCacheProvider(10_000), new OffHeapCacheProvider(1024L * 1024L * 1024L))
+ * </code>
+ * </pre>
+ */
+public class OffHeapCacheProvider implements CacheProvider
+{
+    private final int slabSize;
+
+    private final int maximumSlabs;
+
+    private final CacheCodec codec;
+
+    private final SlabAllocator allocator;
+
+    private final ConcurrentMap<String, OffHeapCache> caches = new ConcurrentHashMap<String, OffHeapCache>();
+
+    /**
+     * Provide caches which each use up to the given number of bytes of direct memory
+     */
+    public OffHeapCacheProvider(long capacity)
+    {
+        this(OffHeapCache.DEFAULT_SLAB_SIZE, (int) Math.max(2L, capacity / OffHeapCache.DEFAULT_SLAB_SIZE), new JavaSerializationCodec(), SlabAllocator.direct());
+    }
+
+    public OffHeapCacheProvider(int slabSize, int maximumSlabs, CacheCodec codec, SlabAllocator allocator)
+    {
+        super();
+        this.slabSize = slabSize;
+        this.maximumSlabs = maximumSlabs;
+        this.codec = codec;
+        this.allocator = allocator;
+    }
+
+    @Override
+    public Cache getCache(String name)
+    {
+        synchronized (this)
+        {
+            OffHeapCache cache = this.caches.get(name);
+            if (cache == null)
+            {
+                cache = new OffHeapCache(name, this.slabSize, this.maximumSlabs, this.codec, this.allocator);
+                this.caches.put(name, cache);
+            }
+            return cache;
+        }
+    }
+}
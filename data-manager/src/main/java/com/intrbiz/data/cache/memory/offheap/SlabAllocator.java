@@ -0,0 +1,51 @@
+package com.intrbiz.data.cache.memory.offheap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Allocate the off heap slabs which cache values are stored in
+ */
+@FunctionalInterface
+public interface SlabAllocator
+{
+    /**
+     * Allocate a slab
+     * @param cacheName the name of the cache the slab is for
+     * @param slab the index of the slab within the cache
+     * @param size the size of the slab in bytes
+     * @return the slab buffer
+     * @throws IOException if the slab could not be allocated
+     */
+    ByteBuffer allocate(String cacheName, int slab, int size) throws IOException;
+
+    /**
+     * Allocate slabs as direct buffers
+     */
+    static SlabAllocator direct()
+    {
+        return (cacheName, slab, size) -> ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Allocate slabs as memory mapped files in the given directory,
+     * allowing the operating system to page out cold slabs
+     */
+    static SlabAllocator mapped(File directory)
+    {
+        return (cacheName, slab, size) -> {
+            directory.mkdirs();
+            File file = new File(directory, cacheName + "." + slab + ".slab");
+            file.deleteOnExit();
+            // the mapping remains valid once the file is closed
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+            {
+                raf.setLength(size);
+                return raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+            }
+        };
+    }
+}
@@ -1,65 +1,76 @@
 package com.intrbiz.data.cache.memory.shared;
 
-import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
+import com.codahale.metrics.Meter;
+
 import com.intrbiz.data.cache.Cache;
 import com.intrbiz.data.cache.CacheListener;
+import com.intrbiz.data.cache.CacheLoader;
+import com.intrbiz.data.cache.CacheStats;
+import com.intrbiz.data.cache.CacheTagged;
+import com.intrbiz.data.cache.util.CacheExecutors;
+import com.intrbiz.data.cache.util.CacheListenerDispatcher;
+import com.intrbiz.data.cache.util.CacheStatsCounter;
+import com.intrbiz.data.cache.util.Expiry;
+import com.intrbiz.data.cache.util.LocalTagGenerations;
+import com.intrbiz.data.cache.util.PrefixIndexedMap;
+import com.intrbiz.data.cache.util.ReferenceReaper;
+import com.intrbiz.data.cache.util.TagGenerations;
+import com.intrbiz.gerald.source.IntelligenceSource;
+import com.intrbiz.gerald.witchcraft.Witchcraft;
 
 /**
- * A shared in memory cache suitable for Level 1 or Level 2 use
+ * A shared in memory cache suitable for Level 1 or Level 2 use.
+ * 
+ * Entries are held by weak or soft reference, entries whose value has 
+ * been collected are removed by the shared reference reaper.  The tags 
+ * of an entry are held alongside the reference, not by the value.
  */
 public class SharedMemoryCache implements Cache
 {
+    /**
+     * How entries are referenced: weak entries are collected as soon as their value is 
+     * no longer used elsewhere, soft entries only once the JVM is running low on memory
+     */
+    public enum ReferenceType { WEAK, SOFT }
+    
     private Logger logger = Logger.getLogger(SharedMemoryCache.class);
     
     private final String name;
     
-    private final ConcurrentMap<String, WeakEntry> cache = new ConcurrentHashMap<String, WeakEntry>();
+    private final ReferenceType referenceType;
     
-    private final ConcurrentMap<CacheListener, Object> listeners = new ConcurrentHashMap<CacheListener, Object>();
-
-    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private final PrefixIndexedMap<CacheEntry> cache = new PrefixIndexedMap<CacheEntry>();
+    
+    private final CacheListenerDispatcher listeners;
+    
+    private final Meter collected;
     
-    private volatile boolean processQueue = true;
+    private final CacheStatsCounter stats;
     
-    private final Thread thread;
+    private final TagGenerations tags = new LocalTagGenerations();
     
     public SharedMemoryCache(String name)
     {
-        super();
-        this.name = name;
-        this.thread = new Thread(() -> {
-            WeakEntry e;
-            while (this.processQueue)
-            {
-                try
-                {
-                    while ((e = (WeakEntry) this.queue.remove(1000)) != null)
-                    {
-                        if (logger.isTraceEnabled()) logger.trace("Evicting key " + e.getKey() + " due to weak reference being collected.");
-                        this.remove(e.getKey());
-                    }
-                }
-                catch (InterruptedException ex)
-                {
-                }
-            }
-        }, "ReferenceCleaner::" + name);
-        this.thread.setDaemon(true);
-        this.thread.start();
+        this(name, ReferenceType.WEAK);
     }
     
-    @Override
-    public void finalize()
+    public SharedMemoryCache(String name, ReferenceType referenceType)
     {
-        this.processQueue = false;
+        super();
+        this.name = name;
+        this.referenceType = referenceType;
+        // metrics
+        IntelligenceSource source = Witchcraft.get().source("com.intrbiz.cache.memory");
+        this.collected = source.getRegistry().meter(Witchcraft.scoped(SharedMemoryCache.class, "collected", name));
+        this.stats = new CacheStatsCounter("com.intrbiz.cache.memory", SharedMemoryCache.class, name, this.cache::size);
+        this.listeners = new CacheListenerDispatcher("com.intrbiz.cache.memory", SharedMemoryCache.class, name);
     }
     
     public String name()
@@ -67,12 +78,36 @@ public class SharedMemoryCache implements Cache
         return this.name;
     }
     
+    public ReferenceType getReferenceType()
+    {
+        return this.referenceType;
+    }
+    
     @Override
     @SuppressWarnings("unchecked")
     public <T> T get(String key)
     {
-        WeakEntry weak = this.cache.get(key);
-        T entry = (T) (weak == null ? null : weak.get());
+        CacheEntry ref = this.cache.get(key);
+        T entry = (T) (ref == null ? null : ref.get());
+        if (ref != null && this.tags.isStale(ref.getTags()))
+        {
+            if (logger.isTraceEnabled()) logger.trace("Stale: " + key);
+            this.remove(key, ref);
+            entry = null;
+        }
+        else if (ref != null && ref.getExpiry() != null)
+        {
+            if (ref.getExpiry().isExpired())
+            {
+                this.expire(ref);
+                entry = null;
+            }
+            else if (entry != null && ref.getExpiry().isRefreshDue())
+            {
+                this.refresh(ref);
+            }
+        }
+        this.stats.get(entry);
         if (logger.isTraceEnabled()) logger.trace("Get: " + key + " => " + entry);
         return entry;
     }
@@ -81,72 +116,230 @@ public class SharedMemoryCache implements Cache
     public <T> void put(String key, T entry)
     {
         if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry);
-        this.cache.put(key, new WeakEntry(key, entry));
-        this.firePut(key, entry);
+        this.store(this.newEntry(key, entry, null, null));
+    }
+    
+    @Override
+    public <T> void put(String key, T entry, String... tags)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry + " tags " + String.join(", ", tags));
+        this.store(this.newEntry(key, entry, null, this.tags.tag(null, tags)));
+    }
+    
+    @Override
+    public CacheTagged readTags(String... tags)
+    {
+        return this.tags.tag(null, tags);
+    }
+    
+    @Override
+    public <T> void put(String key, T entry, CacheTagged tags)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry + " tags " + String.join(", ", tags.getTags()));
+        this.store(this.newEntry(key, entry, null, tags));
+    }
+    
+    @Override
+    public void invalidateTag(String tag)
+    {
+        if (logger.isTraceEnabled()) logger.trace("InvalidateTag: " + tag);
+        this.tags.invalidate(tag);
+    }
+    
+    @Override
+    public <T> void put(String key, T entry, long ttl, TimeUnit unit)
+    {
+        this.put(key, entry, ttl, unit, null);
+    }
+
+    @Override
+    public <T> void put(String key, T entry, long ttl, TimeUnit unit, CacheLoader<T> refresher)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry + " ttl " + ttl + " " + unit);
+        this.store(this.newEntry(key, entry, ttl <= 0 ? null : new Expiry(ttl, unit, refresher), null));
+    }
+    
+    private void store(CacheEntry ref)
+    {
+        CacheEntry previous = this.cache.put(ref.getKey(), ref);
+        if (previous != null && previous.getExpiry() != null) previous.getExpiry().cancel();
+        if (ref.getExpiry() != null) ref.getExpiry().schedule(() -> this.expire(ref));
+        this.stats.put();
+        this.firePut(ref.getKey(), ref.get());
+    }
+    
+    /**
+     * Remove the given entry if it is still current
+     */
+    private void expire(CacheEntry ref)
+    {
+        if (this.cache.remove(ref.getKey(), ref))
+        {
+            if (logger.isTraceEnabled()) logger.trace("Expired: " + ref.getKey());
+            ref.getExpiry().cancel();
+            this.stats.eviction();
+            this.fireRemoval(ref.getKey(), ref.get());
+        }
+    }
+    
+    /**
+     * Asynchronously reload the given entry, replacing it only if it is still current
+     */
+    private void refresh(final CacheEntry ref)
+    {
+        if (! ref.getExpiry().beginRefresh()) return;
+        CacheExecutors.refresh().execute(() -> {
+            try
+            {
+                if (logger.isTraceEnabled()) logger.trace("Refreshing: " + ref.getKey());
+                Object value = ref.getExpiry().getLoader().load(ref.getKey());
+                if (value == null)
+                {
+                    // the value no longer exists
+                    this.expire(ref);
+                }
+                else
+                {
+                    CacheEntry refreshed = this.newEntry(ref.getKey(), value, ref.getExpiry().renew(), ref.getTags());
+                    if (this.cache.replace(ref.getKey(), ref, refreshed))
+                    {
+                        ref.getExpiry().cancel();
+                        refreshed.getExpiry().schedule(() -> this.expire(refreshed));
+                        this.firePut(ref.getKey(), value);
+                    }
+                }
+            }
+            catch (Exception e)
+            {
+                logger.warn("Failed to refresh cache key " + ref.getKey() + ", it will expire", e);
+            }
+        });
     }
 
     @Override
     public void remove(String key)
     {
         if (logger.isTraceEnabled()) logger.trace("Remove: " + key);
-        WeakEntry weak = this.cache.remove(key);
-        this.fireRemoval(key, weak == null ? null : weak.get());
+        CacheEntry ref = this.cache.remove(key);
+        if (ref != null && ref.getExpiry() != null) ref.getExpiry().cancel();
+        this.stats.remove();
+        this.fireRemoval(key, ref == null ? null : ref.get());
+    }
+    
+    /**
+     * Remove the given entry, whose tags are stale, if it is still current
+     */
+    private void remove(String key, CacheEntry ref)
+    {
+        if (this.cache.remove(key, ref))
+        {
+            if (ref.getExpiry() != null) ref.getExpiry().cancel();
+            this.stats.remove();
+            this.fireRemoval(key, ref.get());
+        }
     }
     
     @Override
     public boolean contains(String key)
     {
-        return this.cache.containsKey(key);
+        CacheEntry ref = this.cache.get(key);
+        return ref != null && (ref.getExpiry() == null || ! ref.getExpiry().isExpired()) && (! this.tags.isStale(ref.getTags()));
     }
 
     @Override
     public Set<String> keySet(String keyPrefix)
     {
-        return this.cache.keySet().stream().filter((k) -> {return k.startsWith(keyPrefix);}).collect(Collectors.toSet());
+        this.stats.prefixScan();
+        return this.cache.keySet(keyPrefix);
+    }
+    
+    @Override
+    public CacheStats stats()
+    {
+        return this.stats.snapshot();
     }
 
     @Override
     public void addListener(CacheListener listener)
     {
-        this.listeners.put(listener, this);
+        this.listeners.addListener(listener);
     }
     
     @Override
     public void removeListener(CacheListener listener)
     {
-        this.listeners.remove(listener);
+        this.listeners.removeListener(listener);
     }
     
     @Override
     public void clear()
     {
+        for (CacheEntry ref : this.cache.values())
+        {
+            if (ref.getExpiry() != null) ref.getExpiry().cancel();
+        }
         this.cache.clear();
     }
     
     protected void fireRemoval(String key, Object entry)
     {
-        for (CacheListener listener : this.listeners.keySet())
-        {
-            listener.onRemove(key, entry);
-        }
+        this.listeners.fireRemoval(key, entry);
     }
     
     protected void firePut(String key, Object entry)
     {
-        for (CacheListener listener : this.listeners.keySet())
+        this.listeners.firePut(key, entry);
+    }
+    
+    private CacheEntry newEntry(String key, Object value, Expiry expiry, CacheTagged tags)
+    {
+        if (this.referenceType == ReferenceType.SOFT) return new SoftEntry(key, value, expiry, tags);
+        return new WeakEntry(key, value, expiry, tags);
+    }
+    
+    /**
+     * Remove the given entry, whose value has been collected, if it is still current
+     */
+    private void reap(CacheEntry ref)
+    {
+        if (this.cache.remove(ref.getKey(), ref))
         {
-            listener.onPut(key, entry);
+            if (logger.isTraceEnabled()) logger.trace("Evicting key " + ref.getKey() + " due to " + this.referenceType + " reference being collected.");
+            if (ref.getExpiry() != null) ref.getExpiry().cancel();
+            this.collected.mark();
+            this.stats.eviction();
+            this.fireRemoval(ref.getKey(), null);
         }
     }
     
-    protected class WeakEntry extends WeakReference<Object>
+    protected interface CacheEntry extends ReferenceReaper.Reapable
+    {
+        String getKey();
+        
+        Object get();
+        
+        Expiry getExpiry();
+        
+        /**
+         * The generations of the tags of this entry, or null if the entry is not tagged
+         */
+        CacheTagged getTags();
+    }
+    
+    protected class WeakEntry extends WeakReference<Object> implements CacheEntry
     {
         private final String key;
+        
+        private final Expiry expiry;
+        
+        private final CacheTagged tags;
 
-        public WeakEntry(String key, Object value)
+        public WeakEntry(String key, Object value, Expiry expiry, CacheTagged tags)
         {
-            super(value, queue);
+            super(value, ReferenceReaper.shared().queue());
             this.key = key;
+            this.expiry = expiry;
+            this.tags = tags;
         }
 
         public String getKey()
@@ -154,9 +347,66 @@ public class SharedMemoryCache implements Cache
             return key;
         }
         
+        public Expiry getExpiry()
+        {
+            return expiry;
+        }
+        
+        public CacheTagged getTags()
+        {
+            return tags;
+        }
+        
+        public void reap()
+        {
+            SharedMemoryCache.this.reap(this);
+        }
+        
         public String toString()
         {
             return "WeakEntry(" + this.get() + ")";
         }
     }
+    
+    protected class SoftEntry extends SoftReference<Object> implements CacheEntry
+    {
+        private final String key;
+        
+        private final Expiry expiry;
+        
+        private final CacheTagged tags;
+
+        public SoftEntry(String key, Object value, Expiry expiry, CacheTagged tags)
+        {
+            super(value, ReferenceReaper.shared().queue());
+            this.key = key;
+            this.expiry = expiry;
+            this.tags = tags;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+        
+        public Expiry getExpiry()
+        {
+            return expiry;
+        }
+        
+        public CacheTagged getTags()
+        {
+            return tags;
+        }
+        
+        public void reap()
+        {
+            SharedMemoryCache.this.reap(this);
+        }
+        
+        public String toString()
+        {
+            return "SoftEntry(" + this.get() + ")";
+        }
+    }
 }
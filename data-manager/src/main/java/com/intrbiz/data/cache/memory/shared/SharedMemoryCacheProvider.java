@@ -5,14 +5,23 @@ import java.util.concurrent.ConcurrentMap;
 
 import com.intrbiz.data.DataManager.CacheProvider;
 import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.memory.shared.SharedMemoryCache.ReferenceType;
 
 public class SharedMemoryCacheProvider implements CacheProvider
 {
     private final ConcurrentMap<String, SharedMemoryCache> caches = new ConcurrentHashMap<String, SharedMemoryCache>();
     
+    private final ReferenceType referenceType;
+    
     public SharedMemoryCacheProvider()
+    {
+        this(ReferenceType.WEAK);
+    }
+    
+    public SharedMemoryCacheProvider(ReferenceType referenceType)
     {
         super();
+        this.referenceType = referenceType;
     }
 
     @Override
@@ -23,7 +32,7 @@ public class SharedMemoryCacheProvider implements CacheProvider
             SharedMemoryCache cache = this.caches.get(name);
             if (cache == null)
             {
-                cache = new SharedMemoryCache(name);
+                cache = new SharedMemoryCache(name, this.referenceType);
                 this.caches.put(name, cache);
             }
             return cache;
@@ -1,17 +1,53 @@
 package com.intrbiz.data.cache.tiered;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.apache.log4j.Logger;
 
 import com.intrbiz.data.cache.Cache;
 import com.intrbiz.data.cache.CacheListener;
+import com.intrbiz.data.cache.CacheLoader;
+import com.intrbiz.data.cache.CacheStats;
+import com.intrbiz.data.cache.CacheTagged;
+import com.intrbiz.data.cache.invalidation.CacheInvalidation;
+import com.intrbiz.data.cache.invalidation.InvalidationBus;
+import com.intrbiz.data.cache.invalidation.InvalidationListener;
+import com.intrbiz.data.cache.util.CacheListenerDispatcher;
+import com.intrbiz.data.cache.util.CacheStatsCounter;
 
 /**
+ * <p>
  * A tiered cache which will pull from a level 1 cache and resort to a level 2 cache if needed, with optional promotion on get.
+ * </p>
+ * 
+ * <p>
+ * Level 1 is kept coherent by listening to the level 2 cache, which works when level 2 
+ * is distributed.  When both levels are local to the node, an invalidation bus can be 
+ * given instead: writes are published to the bus and invalidations published by other 
+ * nodes are removed from both levels.  Fills, values loaded after a miss, are not 
+ * published, as the copies held by other nodes are not stale.  Should level 2 be 
+ * distributed as well, invalidations from the bus are only removed from level 1, the 
+ * publishing node has already changed level 2.
+ * </p>
+ * 
+ * <p>
+ * Tagged entries are only held by level 2, which tracks the tags.  The keys this 
+ * cache has put with tags are remembered and never promoted, so invalidating a 
+ * tag does not need to touch level 1.  Without an invalidation bus, tagged entries 
+ * put by other nodes into a shared level 2 cannot be told apart, so tags should 
+ * only be used without promotion in that case.
+ * </p>
  */
 public class TieredCache implements Cache
 {
@@ -25,17 +61,46 @@ public class TieredCache implements Cache
 
     private final boolean promote;
 
-    private final ConcurrentMap<CacheListener, Object> listeners = new ConcurrentHashMap<CacheListener, Object>();
+    private final CacheListenerDispatcher listeners;
 
     private CacheListener listener;
+    
+    private final InvalidationBus bus;
+    
+    private InvalidationListener busListener;
+    
+    private final CacheStatsCounter stats;
+    
+    /**
+     * The number of writes through to level 2 of each key whose level 2 put event 
+     * has not yet been seen, level 2 may deliver events on another thread
+     */
+    private final ConcurrentMap<String, Integer> pendingWrites = new ConcurrentHashMap<String, Integer>();
+    
+    /**
+     * The keys which have been put into level 2 with tags, which must not be promoted
+     */
+    private final Set<String> taggedKeys = ConcurrentHashMap.newKeySet();
 
     public TieredCache(String name, Cache level1, Cache level2, boolean promote)
+    {
+        this(name, level1, level2, promote, null);
+    }
+    
+    /**
+     * @param bus the invalidation bus to keep this cache coherent with other nodes, or null
+     */
+    public TieredCache(String name, Cache level1, Cache level2, boolean promote, InvalidationBus bus)
     {
         super();
         this.name = name;
         this.level1 = level1;
         this.level2 = level2;
         this.promote = promote;
+        this.bus = bus;
+        // each level reports its own statistics, we report the combined hits and misses
+        this.stats = new CacheStatsCounter("com.intrbiz.cache.tiered", TieredCache.class, name, null);
+        this.listeners = new CacheListenerDispatcher("com.intrbiz.cache.tiered", TieredCache.class, name);
         // setup listener on the second level cache
         this.listener = new CacheListener()
         {
@@ -45,6 +110,8 @@ public class TieredCache implements Cache
                 // remove the entry from the level 1 cache
                 if (logger.isTraceEnabled()) logger.trace("Key " + key + " has been removed in the level 2 cache, removing from level 1");
                 level1.remove(key);
+                taggedKeys.remove(key);
+                pendingWrites.remove(key);
                 // fire our listeners
                 fireRemoval(key, entry);
             }
@@ -53,7 +120,11 @@ public class TieredCache implements Cache
             public void onPut(String key, Object entry)
             {
                 // promote the key to level1 or remove the key from level 1
-                if (promote && entry != null && level1.contains(key))
+                if (consumePendingWrite(key))
+                {
+                    // this is our own write, level 1 has already been written
+                }
+                else if (promote && entry != null && (! taggedKeys.contains(key)) && level1.contains(key))
                 {
                     if (logger.isTraceEnabled()) logger.trace("Key " + key + " has been updated in the level 2 cache, promoting to level 1");
                     level1.put(key, entry);
@@ -68,6 +139,44 @@ public class TieredCache implements Cache
             }
         };
         this.level2.addListener(this.listener);
+        // setup listener on the invalidation bus
+        if (this.bus != null)
+        {
+            this.busListener = new InvalidationListener()
+            {
+                @Override
+                public void onInvalidation(CacheInvalidation invalidation)
+                {
+                    Set<String> keys = invalidation.getKeys(name);
+                    if (! keys.isEmpty())
+                    {
+                        if (logger.isTraceEnabled()) logger.trace("Keys " + keys + " have been invalidated by node " + invalidation.getOrigin() + ", removing");
+                        level1.removeAll(keys);
+                        if (! level2.isDistributed()) level2.removeAll(keys);
+                    }
+                    for (String prefix : invalidation.getPrefixes(name))
+                    {
+                        if (logger.isTraceEnabled()) logger.trace("Prefix " + prefix + " has been invalidated by node " + invalidation.getOrigin() + ", removing");
+                        level1.removePrefix(prefix);
+                        if (! level2.isDistributed()) level2.removePrefix(prefix);
+                    }
+                    Set<String> tags = invalidation.getTags(name);
+                    if (! tags.isEmpty())
+                    {
+                        // tagged entries are never promoted, so level 1 holds none
+                        if (logger.isTraceEnabled()) logger.trace("Tags " + tags + " have been invalidated by node " + invalidation.getOrigin() + ", invalidating");
+                        if (! level2.isDistributed())
+                        {
+                            for (String tag : tags)
+                            {
+                                level2.invalidateTag(tag);
+                            }
+                        }
+                    }
+                }
+            };
+            this.bus.addListener(this.busListener);
+        }
     }
 
     @Override
@@ -80,6 +189,80 @@ public class TieredCache implements Cache
     {
         return promote;
     }
+    
+    public Cache getLevel1()
+    {
+        return this.level1;
+    }
+    
+    public Cache getLevel2()
+    {
+        return this.level2;
+    }
+    
+    public InvalidationBus getBus()
+    {
+        return this.bus;
+    }
+    
+    /**
+     * Level 2 decides whether this cache is shared with other nodes
+     */
+    @Override
+    public boolean isDistributed()
+    {
+        return this.level2.isDistributed();
+    }
+    
+    private void publish(String key)
+    {
+        if (this.bus != null) this.bus.invalidate(this.name, key);
+    }
+    
+    /**
+     * Can the given key be promoted from level 2, entries put with tags are only held by level 2
+     */
+    private boolean isPromotable(String key)
+    {
+        return this.promote && (! this.taggedKeys.contains(key));
+    }
+    
+    /**
+     * Write the key to level 2 after it has been written to level 1, 
+     * without our level 2 listener replacing or removing the level 1 
+     * entry, which would lose its time to live and refresher.
+     * 
+     * Level 2 delivers the events for a key in order, so the pending 
+     * write is matched with the next put event of the key.  Should 
+     * another node have put the key just before us, its event is the 
+     * one skipped, which is safe as our level 1 entry is newer.
+     */
+    private void writeThrough(String key, Runnable write)
+    {
+        this.pendingWrites.merge(key, 1, Integer::sum);
+        try
+        {
+            write.run();
+        }
+        catch (RuntimeException e)
+        {
+            this.consumePendingWrite(key);
+            throw e;
+        }
+    }
+    
+    /**
+     * Is a put event of the given key one of our own writes through to level 2, consuming the pending write
+     */
+    private boolean consumePendingWrite(String key)
+    {
+        boolean[] pending = new boolean[1];
+        this.pendingWrites.computeIfPresent(key, (k, writes) -> {
+            pending[0] = true;
+            return writes > 1 ? writes - 1 : null;
+        });
+        return pending[0];
+    }
 
     @Override
     public <T> T get(String key)
@@ -90,22 +273,174 @@ public class TieredCache implements Cache
             if (logger.isTraceEnabled()) logger.trace("Cache miss in level 1, trying level 2");
             entry = this.level2.get(key);
             // promote?
-            if (entry != null && this.promote)
+            if (entry != null && this.isPromotable(key))
             {
                 if (logger.isTraceEnabled()) logger.trace("Promoting key " + key + " from level 2 cache into level 1 cache");
                 this.level1.put(key, entry);
             }
         }
+        this.stats.get(entry);
         if (logger.isTraceEnabled()) logger.trace("Get: " + key + " => " + entry);
         return entry;
     }
 
+    /**
+     * Fetch from level 1, only fetching the level 1 misses from level 2
+     */
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys)
+    {
+        Map<String, T> entries = new HashMap<String, T>(this.level1.getAll(keys));
+        if (entries.size() < keys.size())
+        {
+            List<String> misses = keys.stream().filter((k) -> ! entries.containsKey(k)).collect(Collectors.toList());
+            if (logger.isTraceEnabled()) logger.trace("Cache miss in level 1 for " + misses.size() + " keys, trying level 2");
+            Map<String, T> level2Entries = this.level2.getAll(misses);
+            // promote?
+            if (this.promote && (! level2Entries.isEmpty()))
+            {
+                Map<String, T> promotions = level2Entries;
+                if (! this.taggedKeys.isEmpty())
+                {
+                    promotions = level2Entries.entrySet().stream()
+                            .filter((e) -> ! this.taggedKeys.contains(e.getKey()))
+                            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+                }
+                if (logger.isTraceEnabled()) logger.trace("Promoting " + promotions.size() + " keys from level 2 cache into level 1 cache");
+                this.level1.putAll(promotions);
+            }
+            entries.putAll(level2Entries);
+        }
+        this.stats.getAll(keys.size(), entries.size());
+        if (logger.isTraceEnabled()) logger.trace("GetAll: " + keys + " => " + entries);
+        return entries;
+    }
+
     @Override
     public <T> void put(String key, T entry)
     {
-        if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry);
+        this.fill(key, entry);
+        this.publish(key);
+    }
+
+    @Override
+    public <T> void put(String key, T entry, long ttl, TimeUnit unit)
+    {
+        this.fill(key, entry, ttl, unit);
+        this.publish(key);
+    }
+
+    /**
+     * Put into both levels without invalidating other nodes, whose copies are not stale
+     */
+    @Override
+    public <T> void fill(String key, T entry)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Fill: " + key + " => " + entry);
+        this.taggedKeys.remove(key);
         this.level1.put(key, entry);
         this.level2.put(key, entry);
+        this.stats.put();
+    }
+
+    /**
+     * Put into both levels without invalidating other nodes, whose copies are not stale
+     */
+    @Override
+    public <T> void fill(String key, T entry, long ttl, TimeUnit unit)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Fill: " + key + " => " + entry + " ttl " + ttl + " " + unit);
+        this.taggedKeys.remove(key);
+        this.level1.put(key, entry, ttl, unit);
+        this.writeThrough(key, () -> this.level2.put(key, entry, ttl, unit));
+        this.stats.put();
+    }
+
+    @Override
+    public <T> void put(String key, T entry, String... tags)
+    {
+        this.put(key, entry, this.readTags(tags));
+    }
+
+    /**
+     * The tags are tracked by level 2
+     */
+    @Override
+    public CacheTagged readTags(String... tags)
+    {
+        return this.level2.readTags(tags);
+    }
+
+    /**
+     * Tagged entries are only put into level 2, as that is where the tags are tracked
+     */
+    @Override
+    public <T> void put(String key, T entry, CacheTagged tags)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry + " tags " + String.join(", ", tags.getTags()));
+        // remember the key is tagged before level 2 has it, so that it is never promoted
+        this.taggedKeys.add(key);
+        this.level1.remove(key);
+        this.level2.put(key, entry, tags);
+        this.stats.put();
+        this.publish(key);
+    }
+
+    /**
+     * Invalidate the tag in level 2, level 1 never holds tagged entries
+     */
+    @Override
+    public void invalidateTag(String tag)
+    {
+        if (logger.isTraceEnabled()) logger.trace("InvalidateTag: " + tag);
+        this.level2.invalidateTag(tag);
+        if (this.bus != null) this.bus.invalidateTag(this.name, tag);
+    }
+
+    /**
+     * The refresh is performed by level 1, the refreshed value is also 
+     * written through to level 2, so that only one load happens per node
+     */
+    @Override
+    public <T> void put(String key, T entry, long ttl, TimeUnit unit, CacheLoader<T> refresher)
+    {
+        if (logger.isTraceEnabled()) logger.trace("Put: " + key + " => " + entry + " ttl " + ttl + " " + unit);
+        this.taggedKeys.remove(key);
+        this.level1.put(key, entry, ttl, unit, refresher == null ? null : (k) -> {
+            T value = refresher.load(k);
+            if (value != null)
+            {
+                this.writeThrough(k, () -> this.level2.put(k, value, ttl, unit));
+            }
+            else
+            {
+                this.level2.remove(k);
+            }
+            return value;
+        });
+        this.writeThrough(key, () -> this.level2.put(key, entry, ttl, unit));
+        this.stats.put();
+        this.publish(key);
+    }
+
+    @Override
+    public <T> void putAll(Map<String, T> entries)
+    {
+        this.fillAll(entries);
+        if (this.bus != null) this.bus.invalidateAll(this.name, entries.keySet());
+    }
+
+    /**
+     * Put into both levels without invalidating other nodes, whose copies are not stale
+     */
+    @Override
+    public <T> void fillAll(Map<String, T> entries)
+    {
+        if (logger.isTraceEnabled()) logger.trace("FillAll: " + entries);
+        this.taggedKeys.removeAll(entries.keySet());
+        this.level1.putAll(entries);
+        this.level2.putAll(entries);
+        this.stats.put(entries.size());
     }
 
     @Override
@@ -114,6 +449,88 @@ public class TieredCache implements Cache
         if (logger.isTraceEnabled()) logger.trace("Remove: " + key);
         this.level1.remove(key);
         this.level2.remove(key);
+        this.taggedKeys.remove(key);
+        this.stats.remove();
+        this.publish(key);
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys)
+    {
+        if (logger.isTraceEnabled()) logger.trace("RemoveAll: " + keys);
+        this.level1.removeAll(keys);
+        this.level2.removeAll(keys);
+        this.taggedKeys.removeAll(keys);
+        this.stats.remove(keys.size());
+        if (this.bus != null) this.bus.invalidateAll(this.name, keys);
+    }
+
+    /**
+     * Remove the prefix from both levels, publishing a single prefix invalidation
+     */
+    @Override
+    public void removePrefix(String keyPrefix)
+    {
+        if (logger.isTraceEnabled()) logger.trace("RemovePrefix: " + keyPrefix);
+        this.level1.removePrefix(keyPrefix);
+        this.level2.removePrefix(keyPrefix);
+        this.taggedKeys.removeIf((key) -> key.startsWith(keyPrefix));
+        if (this.bus != null) this.bus.invalidatePrefix(this.name, keyPrefix);
+    }
+
+    /**
+     * Level 1 is read directly, so a hit completes immediately without 
+     * composing any stages, only a miss waits upon level 2
+     */
+    @Override
+    public <T> CompletionStage<T> getAsync(String key)
+    {
+        T entry = this.level1.get(key);
+        if (entry != null)
+        {
+            this.stats.hit();
+            if (logger.isTraceEnabled()) logger.trace("GetAsync: " + key + " => " + entry);
+            return CompletableFuture.completedFuture(entry);
+        }
+        if (logger.isTraceEnabled()) logger.trace("Cache miss in level 1, trying level 2 asynchronously");
+        return this.level2.<T>getAsync(key).thenApply((value) -> {
+            // promote?
+            if (value != null && this.isPromotable(key))
+            {
+                if (logger.isTraceEnabled()) logger.trace("Promoting key " + key + " from level 2 cache into level 1 cache");
+                this.level1.put(key, value);
+            }
+            this.stats.get(value);
+            return value;
+        });
+    }
+
+    /**
+     * Level 1 is written directly, the stage completes once level 2 has been written
+     */
+    @Override
+    public <T> CompletionStage<Void> putAsync(String key, T entry)
+    {
+        if (logger.isTraceEnabled()) logger.trace("PutAsync: " + key + " => " + entry);
+        this.taggedKeys.remove(key);
+        this.level1.put(key, entry);
+        this.stats.put();
+        CompletionStage<Void> level2Put = this.level2.putAsync(key, entry);
+        return this.bus == null ? level2Put : level2Put.thenRun(() -> this.publish(key));
+    }
+
+    /**
+     * Level 1 is removed directly, the stage completes once level 2 has been removed
+     */
+    @Override
+    public CompletionStage<Void> removeAsync(String key)
+    {
+        if (logger.isTraceEnabled()) logger.trace("RemoveAsync: " + key);
+        this.level1.remove(key);
+        this.taggedKeys.remove(key);
+        this.stats.remove();
+        CompletionStage<Void> level2Remove = this.level2.removeAsync(key);
+        return this.bus == null ? level2Remove : level2Remove.thenRun(() -> this.publish(key));
     }
 
     @Override
@@ -125,12 +542,38 @@ public class TieredCache implements Cache
     @Override
     public Set<String> keySet(String keyPrefix)
     {
+        this.stats.prefixScan();
         Set<String> keys = new HashSet<String>();
         keys.addAll(this.level1.keySet(keyPrefix));
         keys.addAll(this.level2.keySet(keyPrefix));
         return keys;
     }
 
+    /**
+     * The combined statistics of both levels, the statistics of 
+     * each level are available from that level
+     */
+    @Override
+    public CacheStats stats()
+    {
+        return this.stats.snapshot();
+    }
+
+    /**
+     * Loads are coordinated by the shared level 2 cache
+     */
+    @Override
+    public boolean lockKey(String key)
+    {
+        return this.level2.lockKey(key);
+    }
+
+    @Override
+    public void unlockKey(String key)
+    {
+        this.level2.unlockKey(key);
+    }
+
     @Override
     public void close()
     {
@@ -141,33 +584,30 @@ public class TieredCache implements Cache
     {
         this.level1.clear();
         this.level2.clear();
+        this.taggedKeys.clear();
+        // every key starts with the empty prefix
+        if (this.bus != null) this.bus.invalidatePrefix(this.name, "");
     }
 
     @Override
     public void addListener(CacheListener listener)
     {
-        this.listeners.put(listener, this);
+        this.listeners.addListener(listener);
     }
 
     @Override
     public void removeListener(CacheListener listener)
     {
-        this.listeners.remove(listener);
+        this.listeners.removeListener(listener);
     }
 
     protected void fireRemoval(String key, Object entry)
     {
-        for (CacheListener listener : this.listeners.keySet())
-        {
-            listener.onRemove(key, entry);
-        }
+        this.listeners.fireRemoval(key, entry);
     }
 
     protected void firePut(String key, Object entry)
     {
-        for (CacheListener listener : this.listeners.keySet())
-        {
-            listener.onPut(key, entry);
-        }
+        this.listeners.firePut(key, entry);
     }
 }
@@ -5,8 +5,21 @@ import java.util.concurrent.ConcurrentMap;
 
 import com.intrbiz.data.DataManager.CacheProvider;
 import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.invalidation.InvalidationBus;
 import com.intrbiz.data.cache.memory.shared.SharedMemoryCacheProvider;
 
+/**
+ * Provide tiered caches, optionally kept coherent between nodes by an invalidation bus:
+ *
+ * <pre>
+ * <code>
+ *   new TieredCacheProvider(new LocalMemoryCacheProvider(10_000), new OffHeapCacheProvider(1024L * 1024L * 1024L), true, new PGSQLInvalidationBus(pool))
+ * </code>
+ * </pre>
+ * 
+ * Only use an invalidation bus when the level 2 cache is local to the node,
+ * invalidations are removed from both levels.
+ */
 public class TieredCacheProvider implements CacheProvider
 {
     private final CacheProvider level1;
@@ -15,14 +28,22 @@ public class TieredCacheProvider implements CacheProvider
     
     private final boolean promote;
     
+    private final InvalidationBus bus;
+    
     private final ConcurrentMap<String, TieredCache> caches = new ConcurrentHashMap<String, TieredCache>();
     
-    public TieredCacheProvider(CacheProvider level1, CacheProvider level2, boolean promote)
+    public TieredCacheProvider(CacheProvider level1, CacheProvider level2, boolean promote, InvalidationBus bus)
     {
         super();
         this.level1 = level1;
         this.level2 = level2;
         this.promote = promote;
+        this.bus = bus;
+    }
+    
+    public TieredCacheProvider(CacheProvider level1, CacheProvider level2, boolean promote)
+    {
+        this(level1, level2, promote, null);
     }
     
     public TieredCacheProvider(CacheProvider level1, CacheProvider level2)
@@ -48,7 +69,7 @@ public class TieredCacheProvider implements CacheProvider
             TieredCache cache = this.caches.get(name);
             if (cache == null)
             {
-                cache = new TieredCache(name, this.level1.getCache(name), this.level2.getCache(name), this.promote);
+                cache = new TieredCache(name, this.level1.getCache(name), this.level2.getCache(name), this.promote, this.bus);
                 this.caches.put(name, cache);
             }
             return cache;
@@ -0,0 +1,91 @@
+package com.intrbiz.data.cache.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors shared by all caches, so that caches do not need their own threads
+ */
+public final class CacheExecutors
+{
+    private static final class Refresh
+    {
+        private static final ExecutorService INSTANCE = newPool("CacheRefresh", Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+    }
+    
+    private static final class Listeners
+    {
+        private static final ExecutorService INSTANCE = newPool("CacheListener", Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+    }
+    
+    private static final class Scheduler
+    {
+        private static final ScheduledExecutorService INSTANCE = newScheduler("CacheScheduler");
+    }
+    
+    private CacheExecutors()
+    {
+        super();
+    }
+    
+    /**
+     * The executor used to asynchronously reload cache entries, and for 
+     * other blocking background work, such as closing leaked database cursors
+     */
+    public static ExecutorService refresh()
+    {
+        return Refresh.INSTANCE;
+    }
+    
+    /**
+     * The executor used to deliver events to asynchronous cache listeners
+     */
+    public static ExecutorService listeners()
+    {
+        return Listeners.INSTANCE;
+    }
+    
+    /**
+     * The executor used to run small periodic or delayed cache tasks, 
+     * such as flushing batched invalidations
+     */
+    public static ScheduledExecutorService scheduler()
+    {
+        return Scheduler.INSTANCE;
+    }
+    
+    private static ScheduledExecutorService newScheduler(final String name)
+    {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, (r) -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+    
+    private static ExecutorService newPool(final String name, int threads)
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() 
+        {
+            private final AtomicInteger count = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
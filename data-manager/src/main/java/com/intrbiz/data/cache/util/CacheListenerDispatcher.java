@@ -0,0 +1,260 @@
+package com.intrbiz.data.cache.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.intrbiz.data.cache.CacheListener;
+import com.intrbiz.gerald.source.IntelligenceSource;
+import com.intrbiz.gerald.witchcraft.Witchcraft;
+
+/**
+ * <p>
+ * Deliver the events of a cache to its listeners.
+ * </p>
+ *
+ * <p>
+ * Synchronous listeners are invoked on the thread which changed the cache.
+ * Events for asynchronous listeners are queued onto one of a number of
+ * stripes, chosen by key, each stripe is drained in batches on the shared
+ * listener executor by at most one thread at a time, so events for a key
+ * are delivered in order without any locking.
+ * </p>
+ *
+ * <p>
+ * Stripes are bounded, should a stripe fill the thread changing the cache
+ * is blocked until there is space, which is recorded as backpressure.  A
+ * listener thread which fills a stripe delivers the event itself instead,
+ * as blocking it could deadlock the executor.
+ * </p>
+ */
+public final class CacheListenerDispatcher
+{
+    /**
+     * The number of stripes, must be a power of 2
+     */
+    public static final int STRIPES = 16;
+
+    /**
+     * The number of events each stripe can queue
+     */
+    public static final int STRIPE_CAPACITY = 1024;
+
+    /**
+     * The most events to deliver in one go, before yielding the executor
+     */
+    public static final int BATCH_SIZE = 256;
+
+    private static final ThreadLocal<Boolean> dispatching = new ThreadLocal<Boolean>();
+
+    private Logger logger = Logger.getLogger(CacheListenerDispatcher.class);
+
+    private final ConcurrentMap<CacheListener, Object> listeners = new ConcurrentHashMap<CacheListener, Object>();
+
+    private final ConcurrentMap<CacheListener, Object> asyncListeners = new ConcurrentHashMap<CacheListener, Object>();
+
+    private final String source;
+
+    private final Class<?> type;
+
+    private final String name;
+
+    private volatile Stripe[] stripes;
+
+    private Counter pending;
+
+    private Meter dispatched;
+
+    private Meter backpressure;
+
+    /**
+     * @param source the intelligence source to register metrics on
+     * @param type the cache implementation
+     * @param name the cache name
+     */
+    public CacheListenerDispatcher(String source, Class<?> type, String name)
+    {
+        super();
+        this.source = source;
+        this.type = type;
+        this.name = name;
+    }
+
+    public void addListener(CacheListener listener)
+    {
+        if (listener.isAsynchronous())
+        {
+            this.initStripes();
+            this.asyncListeners.put(listener, this);
+        }
+        else
+        {
+            this.listeners.put(listener, this);
+        }
+    }
+
+    public void removeListener(CacheListener listener)
+    {
+        this.listeners.remove(listener);
+        this.asyncListeners.remove(listener);
+    }
+
+    public void clear()
+    {
+        this.listeners.clear();
+        this.asyncListeners.clear();
+    }
+
+    /**
+     * The number of events queued for asynchronous listeners
+     */
+    public long getPending()
+    {
+        return this.pending == null ? 0L : this.pending.getCount();
+    }
+
+    public void fireRemoval(String key, Object entry)
+    {
+        for (CacheListener listener : this.listeners.keySet())
+        {
+            listener.onRemove(key, entry);
+        }
+        if (! this.asyncListeners.isEmpty()) this.enqueue(new Event(key, entry, true));
+    }
+
+    public void firePut(String key, Object entry)
+    {
+        for (CacheListener listener : this.listeners.keySet())
+        {
+            listener.onPut(key, entry);
+        }
+        if (! this.asyncListeners.isEmpty()) this.enqueue(new Event(key, entry, false));
+    }
+
+    /**
+     * Stripes are only allocated once an asynchronous listener is added
+     */
+    private void initStripes()
+    {
+        if (this.stripes != null) return;
+        synchronized (this)
+        {
+            if (this.stripes != null) return;
+            IntelligenceSource intelligence = Witchcraft.get().source(this.source);
+            this.pending      = intelligence.getRegistry().counter(Witchcraft.scoped(this.type, "listener_pending",      this.name));
+            this.dispatched   = intelligence.getRegistry().meter(Witchcraft.scoped(this.type,   "listener_dispatched",   this.name));
+            this.backpressure = intelligence.getRegistry().meter(Witchcraft.scoped(this.type,   "listener_backpressure", this.name));
+            Stripe[] stripes = new Stripe[STRIPES];
+            for (int i = 0; i < stripes.length; i++)
+            {
+                stripes[i] = new Stripe();
+            }
+            this.stripes = stripes;
+        }
+    }
+
+    private void enqueue(Event event)
+    {
+        int hash = event.key == null ? 0 : event.key.hashCode();
+        this.stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)].enqueue(event);
+    }
+
+    private void deliver(Event event)
+    {
+        for (CacheListener listener : this.asyncListeners.keySet())
+        {
+            try
+            {
+                if (event.removal) listener.onRemove(event.key, event.entry);
+                else listener.onPut(event.key, event.entry);
+            }
+            catch (Exception e)
+            {
+                logger.error("Error delivering cache event for key " + event.key + " to listener", e);
+            }
+        }
+        this.dispatched.mark();
+    }
+
+    private final class Stripe implements Runnable
+    {
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<Event>(STRIPE_CAPACITY);
+
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private void enqueue(Event event)
+        {
+            if (! this.queue.offer(event))
+            {
+                backpressure.mark();
+                if (dispatching.get() != null)
+                {
+                    deliver(event);
+                    return;
+                }
+                try
+                {
+                    this.queue.put(event);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    deliver(event);
+                    return;
+                }
+            }
+            pending.inc();
+            this.schedule();
+        }
+
+        private void schedule()
+        {
+            if (this.scheduled.compareAndSet(false, true)) CacheExecutors.listeners().execute(this);
+        }
+
+        @Override
+        public void run()
+        {
+            dispatching.set(Boolean.TRUE);
+            try
+            {
+                for (int i = 0; i < BATCH_SIZE; i++)
+                {
+                    Event event = this.queue.poll();
+                    if (event == null) break;
+                    pending.dec();
+                    deliver(event);
+                }
+            }
+            finally
+            {
+                dispatching.remove();
+                this.scheduled.set(false);
+                // events may have been queued after we stopped draining
+                if (! this.queue.isEmpty()) this.schedule();
+            }
+        }
+    }
+
+    private static final class Event
+    {
+        private final String key;
+
+        private final Object entry;
+
+        private final boolean removal;
+
+        private Event(String key, Object entry, boolean removal)
+        {
+            this.key = key;
+            this.entry = entry;
+            this.removal = removal;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.intrbiz.data.cache.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.intrbiz.data.cache.CacheStats;
+import com.intrbiz.gerald.source.IntelligenceSource;
+import com.intrbiz.gerald.witchcraft.Witchcraft;
+
+/**
+ * <p>
+ * Record the statistics of a cache instance, so that every cache,
+ * and every tier of a tiered cache, reports on its own.
+ * </p>
+ *
+ * <p>
+ * The statistics are also recorded as meters on the given intelligence
+ * source, scoped by the cache type and name, which aggregate every
+ * instance of a cache with that name.  The estimated size metric is
+ * the sum of the sizes of the live instances, counting instances of
+ * the same shared store once.
+ * </p>
+ */
+public final class CacheStatsCounter
+{
+    /**
+     * The estimated size metrics, registered once per metric name
+     */
+    private static final ConcurrentMap<String, EstimatedSize> estimatedSizes = new ConcurrentHashMap<String, EstimatedSize>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder puts = new LongAdder();
+
+    private final LongAdder removes = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder prefixScans = new LongAdder();
+
+    private final Meter hitsMeter;
+
+    private final Meter missesMeter;
+
+    private final Meter putsMeter;
+
+    private final Meter removesMeter;
+
+    private final Meter evictionsMeter;
+
+    private final Meter prefixScansMeter;
+
+    private final LongSupplier estimatedSize;
+
+    private final EstimatedSize estimatedSizeMetric;
+
+    private final Object store;
+
+    private final Reference<CacheStatsCounter> self = new WeakReference<CacheStatsCounter>(this);
+
+    /**
+     * @param source the intelligence source to register on
+     * @param type the cache implementation
+     * @param name the cache name
+     * @param estimatedSize supplies the estimated number of entries of this instance, or null if not known
+     */
+    public CacheStatsCounter(String source, Class<?> type, String name, LongSupplier estimatedSize)
+    {
+        this(source, type, name, null, estimatedSize);
+    }
+
+    /**
+     * @param source the intelligence source to register on
+     * @param type the cache implementation
+     * @param name the cache name
+     * @param store identifies the store shared by instances, which all supply the same estimated size, or null if the instance has its own store
+     * @param estimatedSize supplies the estimated number of entries of the store, or null if not known
+     */
+    public CacheStatsCounter(String source, Class<?> type, String name, Object store, LongSupplier estimatedSize)
+    {
+        super();
+        this.estimatedSize = estimatedSize;
+        this.store = store == null ? this.self : store;
+        IntelligenceSource intelligence = Witchcraft.get().source(source);
+        MetricRegistry registry = intelligence.getRegistry();
+        this.hitsMeter        = registry.meter(Witchcraft.scoped(type, "hits",         name));
+        this.missesMeter      = registry.meter(Witchcraft.scoped(type, "misses",       name));
+        this.putsMeter        = registry.meter(Witchcraft.scoped(type, "puts",         name));
+        this.removesMeter     = registry.meter(Witchcraft.scoped(type, "removes",      name));
+        this.evictionsMeter   = registry.meter(Witchcraft.scoped(type, "evictions",    name));
+        this.prefixScansMeter = registry.meter(Witchcraft.scoped(type, "prefix_scans", name));
+        if (estimatedSize != null)
+        {
+            String sizeName = Witchcraft.scoped(type, "estimated_size", name);
+            this.estimatedSizeMetric = estimatedSizes.computeIfAbsent(source + ":" + sizeName, (key) -> {
+                EstimatedSize metric = new EstimatedSize();
+                registry.remove(sizeName);
+                registry.register(sizeName, metric);
+                return metric;
+            });
+            this.estimatedSizeMetric.add(this.store, this.self);
+        }
+        else
+        {
+            this.estimatedSizeMetric = null;
+        }
+    }
+
+    public void hit()
+    {
+        this.hits.increment();
+        this.hitsMeter.mark();
+    }
+
+    public void miss()
+    {
+        this.misses.increment();
+        this.missesMeter.mark();
+    }
+
+    /**
+     * Record a hit or miss for the given entry
+     */
+    public void get(Object entry)
+    {
+        if (entry != null) this.hit();
+        else this.miss();
+    }
+
+    /**
+     * Record the hits and misses of a bulk get
+     */
+    public void getAll(int requested, int found)
+    {
+        if (found > 0)
+        {
+            this.hits.add(found);
+            this.hitsMeter.mark(found);
+        }
+        if (requested > found)
+        {
+            this.misses.add(requested - found);
+            this.missesMeter.mark(requested - found);
+        }
+    }
+
+    public void put()
+    {
+        this.puts.increment();
+        this.putsMeter.mark();
+    }
+
+    public void put(int count)
+    {
+        this.puts.add(count);
+        this.putsMeter.mark(count);
+    }
+
+    public void remove()
+    {
+        this.removes.increment();
+        this.removesMeter.mark();
+    }
+
+    public void remove(int count)
+    {
+        this.removes.add(count);
+        this.removesMeter.mark(count);
+    }
+
+    public void eviction()
+    {
+        this.evictions.increment();
+        this.evictionsMeter.mark();
+    }
+
+    public void eviction(int count)
+    {
+        this.evictions.add(count);
+        this.evictionsMeter.mark(count);
+    }
+
+    public void prefixScan()
+    {
+        this.prefixScans.increment();
+        this.prefixScansMeter.mark();
+    }
+
+    /**
+     * The statistics of this instance
+     */
+    public CacheStats snapshot()
+    {
+        return new CacheStats(
+            this.hits.sum(),
+            this.misses.sum(),
+            this.puts.sum(),
+            this.removes.sum(),
+            this.evictions.sum(),
+            this.prefixScans.sum(),
+            this.estimatedSize == null ? -1L : this.estimatedSize.getAsLong()
+        );
+    }
+
+    /**
+     * Stop reporting the size of this instance, once the cache has been closed
+     */
+    public void close()
+    {
+        if (this.estimatedSizeMetric != null) this.estimatedSizeMetric.remove(this.store, this.self);
+    }
+
+    /**
+     * The sum of the estimated sizes of the live instances of a cache, instances
+     * are weakly referenced so that the metric does not keep them reachable
+     */
+    private static final class EstimatedSize implements Gauge<Long>
+    {
+        private final ConcurrentMap<Object, Set<Reference<CacheStatsCounter>>> stores = new ConcurrentHashMap<Object, Set<Reference<CacheStatsCounter>>>();
+
+        private void add(Object store, Reference<CacheStatsCounter> instance)
+        {
+            this.stores.compute(store, (key, instances) -> {
+                if (instances == null) instances = ConcurrentHashMap.newKeySet();
+                instances.add(instance);
+                return instances;
+            });
+        }
+
+        private void remove(Object store, Reference<CacheStatsCounter> instance)
+        {
+            this.stores.computeIfPresent(store, (key, instances) -> {
+                instances.remove(instance);
+                return instances.isEmpty() ? null : instances;
+            });
+        }
+
+        @Override
+        public Long getValue()
+        {
+            long size = 0;
+            for (Map.Entry<Object, Set<Reference<CacheStatsCounter>>> store : this.stores.entrySet())
+            {
+                // every instance of a store supplies the same size, use the first which is still live
+                for (Iterator<Reference<CacheStatsCounter>> i = store.getValue().iterator(); i.hasNext(); )
+                {
+                    Reference<CacheStatsCounter> instance = i.next();
+                    CacheStatsCounter counter = instance.get();
+                    if (counter == null)
+                    {
+                        this.remove(store.getKey(), instance);
+                    }
+                    else
+                    {
+                        size += counter.estimatedSize.getAsLong();
+                        break;
+                    }
+                }
+            }
+            return size;
+        }
+    }
+}
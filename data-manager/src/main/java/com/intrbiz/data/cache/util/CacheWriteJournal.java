@@ -0,0 +1,195 @@
+package com.intrbiz.data.cache.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The writes made to a cache during a transaction, which are buffered
+ * locally until the transaction commits, rather than using the
+ * transactions of the cache itself.
+ * </p>
+ *
+ * <p>
+ * Only the last write of a key is kept, and a prefix removal discards
+ * any earlier writes of matching keys.  Reads made by the transaction
+ * should be answered from the journal first, so that the transaction
+ * sees its own writes.  On commit the cache applies the removed prefixes,
+ * then the writes, on rollback the journal is simply reset.
+ * </p>
+ *
+ * <p>
+ * A journal belongs to one transaction and is not thread safe.
+ * </p>
+ */
+public final class CacheWriteJournal
+{
+    private final Map<String, Write> writes = new LinkedHashMap<String, Write>();
+
+    private final Set<String> removedPrefixes = new LinkedHashSet<String>();
+
+    public CacheWriteJournal()
+    {
+        super();
+    }
+
+    public void put(String key, Object value)
+    {
+        this.writes.put(key, new Write(key, value, 0, null));
+    }
+
+    public void put(String key, Object value, long ttl, TimeUnit unit)
+    {
+        this.writes.put(key, new Write(key, value, ttl, unit));
+    }
+
+    public void remove(String key)
+    {
+        this.writes.put(key, new Write(key, null, 0, null));
+    }
+
+    public void removePrefix(String keyPrefix)
+    {
+        this.writes.keySet().removeIf((key) -> key.startsWith(keyPrefix));
+        this.removedPrefixes.add(keyPrefix);
+    }
+
+    /**
+     * Has the given key been written by this journal, in which case
+     * the value from the journal must be used rather than the cache
+     */
+    public boolean isWritten(String key)
+    {
+        if (this.writes.containsKey(key)) return true;
+        for (String prefix : this.removedPrefixes)
+        {
+            if (key.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The value of a key written by this journal, null if it has been removed
+     */
+    public Object get(String key)
+    {
+        Write write = this.writes.get(key);
+        return write == null ? null : write.getValue();
+    }
+
+    /**
+     * Merge the given keys read from the cache with the writes of this journal
+     */
+    public Set<String> keySet(String keyPrefix, Set<String> cachedKeys)
+    {
+        Set<String> keys = new HashSet<String>();
+        for (String key : cachedKeys)
+        {
+            if (! this.isWritten(key)) keys.add(key);
+        }
+        for (Write write : this.writes.values())
+        {
+            if ((! write.isRemoval()) && write.getKey().startsWith(keyPrefix)) keys.add(write.getKey());
+        }
+        return keys;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.writes.isEmpty() && this.removedPrefixes.isEmpty();
+    }
+
+    /**
+     * The prefixes removed, to be applied before the writes
+     */
+    public Collection<String> getRemovedPrefixes()
+    {
+        return Collections.unmodifiableSet(this.removedPrefixes);
+    }
+
+    /**
+     * The writes, in the order the keys were first written
+     */
+    public Collection<Write> getWrites()
+    {
+        return Collections.unmodifiableCollection(this.writes.values());
+    }
+
+    /**
+     * Discard everything in this journal
+     */
+    public void reset()
+    {
+        this.writes.clear();
+        this.removedPrefixes.clear();
+    }
+
+    public String toString()
+    {
+        return "CacheWriteJournal(writes: " + this.writes.size() + ", removedPrefixes: " + this.removedPrefixes + ")";
+    }
+
+    /**
+     * The last write of a key, either a put or a removal
+     */
+    public static final class Write
+    {
+        private final String key;
+
+        private final Object value;
+
+        private final long ttl;
+
+        private final TimeUnit unit;
+
+        private Write(String key, Object value, long ttl, TimeUnit unit)
+        {
+            this.key = key;
+            this.value = value;
+            this.ttl = ttl;
+            this.unit = unit;
+        }
+
+        public String getKey()
+        {
+            return this.key;
+        }
+
+        /**
+         * The value put, null for a removal
+         */
+        public Object getValue()
+        {
+            return this.value;
+        }
+
+        public boolean isRemoval()
+        {
+            return this.value == null;
+        }
+
+        /**
+         * The time to live of the value, or 0 if the value does not expire
+         */
+        public long getTtl()
+        {
+            return this.ttl;
+        }
+
+        public TimeUnit getUnit()
+        {
+            return this.unit;
+        }
+
+        public boolean isExpiring()
+        {
+            return this.ttl > 0;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.intrbiz.data.cache.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.intrbiz.data.DataException;
+import com.intrbiz.data.cache.CacheNegative;
+import com.intrbiz.data.cache.codec.CacheCodec;
+import com.intrbiz.gerald.source.IntelligenceSource;
+import com.intrbiz.gerald.witchcraft.Witchcraft;
+
+/**
+ * <p>
+ * Protect the values of an in process cache from being mutated by callers, 
+ * by storing an immutable encoded snapshot of each value and decoding a 
+ * fresh copy on every read.
+ * </p>
+ *
+ * <p>
+ * Values which are already immutable are stored as is.  The cost of taking 
+ * and materializing snapshots is recorded as timers, along with the size 
+ * of the snapshots, scoped by the cache type and name.  Encoding with the 
+ * entity codecs generated by the database adapter compiler is much cheaper 
+ * than Java serialization.
+ * </p>
+ */
+public final class CopyOnRead
+{
+    private final CacheCodec codec;
+
+    private final Timer snapshotTimer;
+
+    private final Timer materializeTimer;
+
+    private final Histogram snapshotSize;
+
+    /**
+     * @param codec the codec to encode snapshots with
+     * @param source the intelligence source to register on
+     * @param type the cache implementation
+     * @param name the cache name
+     */
+    public CopyOnRead(CacheCodec codec, String source, Class<?> type, String name)
+    {
+        super();
+        this.codec = codec;
+        IntelligenceSource intelligence = Witchcraft.get().source(source);
+        this.snapshotTimer    = intelligence.getRegistry().timer(Witchcraft.scoped(type, "snapshot",       name));
+        this.materializeTimer = intelligence.getRegistry().timer(Witchcraft.scoped(type, "materialize",    name));
+        this.snapshotSize     = intelligence.getRegistry().histogram(Witchcraft.scoped(type, "snapshot_bytes", name));
+    }
+
+    public CacheCodec getCodec()
+    {
+        return this.codec;
+    }
+
+    /**
+     * Take a snapshot of the given value, unless it is immutable
+     * @throws DataException if the value cannot be encoded
+     */
+    public Object snapshot(Object value)
+    {
+        if (isImmutable(value)) return value;
+        Timer.Context tctx = this.snapshotTimer.time();
+        try
+        {
+            byte[] data = this.codec.encode(value);
+            this.snapshotSize.update(data.length);
+            return new Snapshot(data);
+        }
+        catch (IOException e)
+        {
+            throw new DataException("Failed to snapshot cache value of type " + value.getClass().getName(), e);
+        }
+        finally
+        {
+            tctx.stop();
+        }
+    }
+
+    /**
+     * Get a copy of the value of the given stored snapshot, values which were immutable are returned as is
+     * @throws DataException if the snapshot cannot be decoded
+     */
+    public Object materialize(Object stored)
+    {
+        if (! (stored instanceof Snapshot)) return stored;
+        Timer.Context tctx = this.materializeTimer.time();
+        try
+        {
+            return this.codec.decode(((Snapshot) stored).data);
+        }
+        catch (IOException e)
+        {
+            throw new DataException("Failed to materialize cache value", e);
+        }
+        finally
+        {
+            tctx.stop();
+        }
+    }
+
+    /**
+     * Is the given value immutable, and so does not need a snapshot
+     */
+    public static boolean isImmutable(Object value)
+    {
+        return value == null ||
+               value instanceof String ||
+               value instanceof Number ||
+               value instanceof Boolean ||
+               value instanceof Character ||
+               value instanceof UUID ||
+               value instanceof Enum ||
+               value instanceof CacheNegative;
+    }
+
+    /**
+     * The encoded form of a value
+     */
+    private static final class Snapshot
+    {
+        private final byte[] data;
+
+        private Snapshot(byte[] data)
+        {
+            this.data = data;
+        }
+
+        public boolean equals(Object o)
+        {
+            return o instanceof Snapshot && Arrays.equals(this.data, ((Snapshot) o).data);
+        }
+
+        public int hashCode()
+        {
+            return Arrays.hashCode(this.data);
+        }
+
+        public String toString()
+        {
+            return "Snapshot(" + this.data.length + " bytes)";
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.intrbiz.data.cache.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.intrbiz.data.cache.CacheLoader;
+
+/**
+ * <p>
+ * The expiry state of a single cache entry.
+ * </p>
+ *
+ * <p>
+ * An entry expires once its time to live has elapsed.  If the entry has a
+ * loader, then once {@link #REFRESH_AHEAD_FACTOR} of its time to live has
+ * elapsed it is due to be refreshed: the next read should asynchronously
+ * reload it so that a hot key is replaced before it expires.
+ * </p>
+ */
+public final class Expiry
+{
+    /**
+     * How far through the time to live an entry is refreshed
+     */
+    public static final double REFRESH_AHEAD_FACTOR = 0.8D;
+
+    private final long ttl;
+
+    private final long expiresAt;
+
+    private final long refreshAt;
+
+    private final CacheLoader<?> loader;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private volatile TimerWheel.Timeout timeout;
+
+    public Expiry(long ttl, TimeUnit unit, CacheLoader<?> loader)
+    {
+        super();
+        long now = System.nanoTime();
+        this.ttl = unit.toNanos(ttl);
+        this.expiresAt = now + this.ttl;
+        this.refreshAt = now + (long) (this.ttl * REFRESH_AHEAD_FACTOR);
+        this.loader = loader;
+    }
+
+    /**
+     * The time to live in nanoseconds
+     */
+    public long getTTL()
+    {
+        return this.ttl;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> CacheLoader<T> getLoader()
+    {
+        return (CacheLoader<T>) this.loader;
+    }
+
+    public boolean isExpired()
+    {
+        return System.nanoTime() - this.expiresAt >= 0;
+    }
+
+    /**
+     * Is this entry due to be refreshed, and not already being refreshed
+     */
+    public boolean isRefreshDue()
+    {
+        return this.loader != null && (System.nanoTime() - this.refreshAt >= 0) && (! this.refreshing.get());
+    }
+
+    /**
+     * Claim the right to refresh this entry, only one caller will succeed
+     */
+    public boolean beginRefresh()
+    {
+        return this.loader != null && this.refreshing.compareAndSet(false, true);
+    }
+
+    /**
+     * Create the expiry for a refreshed entry, with the same time to live and loader
+     */
+    public Expiry renew()
+    {
+        return new Expiry(this.ttl, TimeUnit.NANOSECONDS, this.loader);
+    }
+
+    /**
+     * Schedule the given task to run when this entry expires
+     */
+    public void schedule(Runnable onExpire)
+    {
+        this.timeout = TimerWheel.shared().schedule(onExpire, this.ttl, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancel any scheduled expiry
+     */
+    public void cancel()
+    {
+        TimerWheel.Timeout timeout = this.timeout;
+        if (timeout != null) timeout.cancel();
+    }
+}
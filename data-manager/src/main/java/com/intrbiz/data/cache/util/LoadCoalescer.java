@@ -0,0 +1,104 @@
+package com.intrbiz.data.cache.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.apache.log4j.Logger;
+
+import com.codahale.metrics.Meter;
+
+/**
+ * <p>
+ * Coalesce concurrent loads of the same cache key, so that when a hot key
+ * is invalidated only one thread runs the load and every other thread
+ * which misses on the key at the same time waits for, and shares, its
+ * result.
+ * </p>
+ *
+ * <p>
+ * A load is only shared with the callers which arrive while it is in
+ * flight, once it completes the next miss will start a new load.
+ * </p>
+ */
+public final class LoadCoalescer
+{
+    private static final Logger logger = Logger.getLogger(LoadCoalescer.class);
+
+    private static final class Shared
+    {
+        private static final LoadCoalescer INSTANCE = new LoadCoalescer();
+    }
+
+    /**
+     * The coalescer shared by all caches, keys must be qualified by the cache name
+     */
+    public static LoadCoalescer shared()
+    {
+        return Shared.INSTANCE;
+    }
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inflight = new ConcurrentHashMap<String, CompletableFuture<Object>>();
+
+    public LoadCoalescer()
+    {
+        super();
+    }
+
+    /**
+     * Load the given key, sharing the load with any other concurrent callers
+     * @param key the key being loaded
+     * @param coalesced marked for each caller which waited for another load, may be null
+     * @param loader the loader to invoke if no load for this key is in flight
+     * @return the loaded value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String key, Meter coalesced, Supplier<T> loader)
+    {
+        CompletableFuture<Object> ours = new CompletableFuture<Object>();
+        CompletableFuture<Object> theirs = this.inflight.putIfAbsent(key, ours);
+        if (theirs != null)
+        {
+            // another thread is loading this key, wait for it
+            if (logger.isTraceEnabled()) logger.trace("Coalescing load of " + key);
+            if (coalesced != null) coalesced.mark();
+            try
+            {
+                return (T) theirs.join();
+            }
+            catch (CompletionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw e;
+            }
+        }
+        // we are the loader
+        try
+        {
+            T value = loader.get();
+            ours.complete(value);
+            return value;
+        }
+        catch (RuntimeException | Error e)
+        {
+            ours.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            this.inflight.remove(key, ours);
+        }
+    }
+
+    /**
+     * The number of loads currently in flight
+     */
+    public int getInflight()
+    {
+        return this.inflight.size();
+    }
+}
@@ -0,0 +1,36 @@
+package com.intrbiz.data.cache.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tag generations which are local to a single cache instance
+ */
+public final class LocalTagGenerations implements TagGenerations
+{
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+
+    public LocalTagGenerations()
+    {
+        super();
+    }
+
+    @Override
+    public long generation(String tag)
+    {
+        AtomicLong generation = this.generations.get(tag);
+        return generation == null ? 0L : generation.get();
+    }
+
+    @Override
+    public long invalidate(String tag)
+    {
+        return this.generations.computeIfAbsent(tag, (k) -> new AtomicLong()).incrementAndGet();
+    }
+
+    public String toString()
+    {
+        return "LocalTagGenerations(" + this.generations + ")";
+    }
+}
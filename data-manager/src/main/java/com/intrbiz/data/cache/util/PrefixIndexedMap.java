@@ -0,0 +1,258 @@
+package com.intrbiz.data.cache.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ * A concurrent map of cache keys which maintains an index of keys by their
+ * namespace, so that prefix lookups do not need to scan every key.
+ * </p>
+ *
+ * <p>
+ * Cache keys are dotted, eg: <code>table.id</code> or <code>function.arg0.arg1</code>,
+ * the namespace of a key is the text before the first dot.  A prefix which
+ * contains a dot only needs to consider keys in a single namespace, so the cost
+ * of a lookup scales with the size of that namespace rather than the size of the
+ * cache.  A prefix without a dot considers each namespace which starts with it.
+ * </p>
+ *
+ * <p>
+ * The index is updated atomically with the key it indexes, such that a key
+ * present in the map is always present in the index.
+ * </p>
+ *
+ * <p>
+ * Changes may be given an action which is run while the key is locked, so
+ * that state kept alongside the map, such as an eviction policy, is updated
+ * atomically with the key.  Such actions must not change other keys.
+ * </p>
+ */
+public class PrefixIndexedMap<V>
+{
+    private final ConcurrentMap<String, V> map = new ConcurrentHashMap<String, V>();
+
+    private final ConcurrentMap<String, Set<String>> index = new ConcurrentHashMap<String, Set<String>>();
+
+    public PrefixIndexedMap()
+    {
+        super();
+    }
+
+    public V get(String key)
+    {
+        return this.map.get(key);
+    }
+
+    public boolean containsKey(String key)
+    {
+        return this.map.containsKey(key);
+    }
+
+    public int size()
+    {
+        return this.map.size();
+    }
+
+    public Collection<V> values()
+    {
+        return this.map.values();
+    }
+
+    /**
+     * Put the given value, returning the previous value
+     */
+    public V put(String key, V value)
+    {
+        return this.put(key, value, null);
+    }
+
+    /**
+     * Put the given value, returning the previous value
+     * @param whileLocked run once the value is put, before the key is unlocked, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(String key, V value, Runnable whileLocked)
+    {
+        final Object[] previous = new Object[1];
+        this.map.compute(key, (k, v) -> {
+            previous[0] = v;
+            if (v == null) this.index(k);
+            if (whileLocked != null) whileLocked.run();
+            return value;
+        });
+        return (V) previous[0];
+    }
+
+    /**
+     * Remove the given key, returning the previous value
+     */
+    public V remove(String key)
+    {
+        return this.remove(key, (Runnable) null);
+    }
+
+    /**
+     * Remove the given key, returning the previous value
+     * @param whileLocked run should the key be removed, before the key is unlocked, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(String key, Runnable whileLocked)
+    {
+        final Object[] previous = new Object[1];
+        this.map.computeIfPresent(key, (k, v) -> {
+            previous[0] = v;
+            this.unindex(k);
+            if (whileLocked != null) whileLocked.run();
+            return null;
+        });
+        return (V) previous[0];
+    }
+
+    /**
+     * Remove the given key should the given condition, checked while the key is locked, hold
+     * @return the removed value, or null if the key was not removed
+     */
+    @SuppressWarnings("unchecked")
+    public V removeIf(String key, Predicate<V> condition)
+    {
+        final Object[] previous = new Object[1];
+        this.map.computeIfPresent(key, (k, v) -> {
+            if (! condition.test(v)) return v;
+            previous[0] = v;
+            this.unindex(k);
+            return null;
+        });
+        return (V) previous[0];
+    }
+
+    /**
+     * Remove the given key only if it currently maps to the given value
+     */
+    public boolean remove(String key, V value)
+    {
+        return this.remove(key, value, null);
+    }
+
+    /**
+     * Remove the given key only if it currently maps to the given value
+     * @param whileLocked run should the key be removed, before the key is unlocked, or null
+     */
+    public boolean remove(String key, V value, Runnable whileLocked)
+    {
+        final boolean[] removed = new boolean[1];
+        this.map.computeIfPresent(key, (k, v) -> {
+            if (v != value) return v;
+            removed[0] = true;
+            this.unindex(k);
+            if (whileLocked != null) whileLocked.run();
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Replace the given key only if it currently maps to the given value
+     */
+    public boolean replace(String key, V oldValue, V newValue)
+    {
+        return this.replace(key, oldValue, newValue, null);
+    }
+
+    /**
+     * Replace the given key only if it currently maps to the given value
+     * @param whileLocked run should the key be replaced, before the key is unlocked, or null
+     */
+    public boolean replace(String key, V oldValue, V newValue, Runnable whileLocked)
+    {
+        final boolean[] replaced = new boolean[1];
+        this.map.computeIfPresent(key, (k, v) -> {
+            if (v != oldValue) return v;
+            replaced[0] = true;
+            if (whileLocked != null) whileLocked.run();
+            return newValue;
+        });
+        return replaced[0];
+    }
+
+    /**
+     * Remove all keys
+     */
+    public void clear()
+    {
+        this.clear(null);
+    }
+
+    /**
+     * Remove all keys
+     * @param whileLocked run with each key removed, before the key is unlocked, or null
+     */
+    public void clear(Consumer<String> whileLocked)
+    {
+        // remove key by key, to keep the index consistent with concurrent puts
+        for (String key : this.map.keySet())
+        {
+            this.remove(key, whileLocked == null ? null : () -> whileLocked.accept(key));
+        }
+    }
+
+    /**
+     * Get all keys which start with the given prefix
+     */
+    public Set<String> keySet(String prefix)
+    {
+        Set<String> keys = new HashSet<String>();
+        int dot = prefix.indexOf('.');
+        if (dot >= 0)
+        {
+            // only one namespace can match
+            Set<String> namespace = this.index.get(prefix.substring(0, dot));
+            if (namespace != null)
+            {
+                for (String key : namespace)
+                {
+                    if (key.startsWith(prefix)) keys.add(key);
+                }
+            }
+        }
+        else
+        {
+            // every key in a namespace which starts with the prefix matches
+            for (Map.Entry<String, Set<String>> namespace : this.index.entrySet())
+            {
+                if (namespace.getKey().startsWith(prefix)) keys.addAll(namespace.getValue());
+            }
+        }
+        return keys;
+    }
+
+    private void index(String key)
+    {
+        this.index.compute(namespace(key), (ns, keys) -> {
+            if (keys == null) keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            keys.add(key);
+            return keys;
+        });
+    }
+
+    private void unindex(String key)
+    {
+        this.index.computeIfPresent(namespace(key), (ns, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static String namespace(String key)
+    {
+        int dot = key.indexOf('.');
+        return dot < 0 ? key : key.substring(0, dot);
+    }
+}
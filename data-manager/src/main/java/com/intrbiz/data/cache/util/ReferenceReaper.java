@@ -0,0 +1,125 @@
+package com.intrbiz.data.cache.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * Reaps cache entries whose referent has been collected by the garbage
+ * collector.
+ * </p>
+ *
+ * <p>
+ * A single reaper, with a single daemon thread, is shared by every cache
+ * which holds its entries by soft or weak reference, rather than each
+ * cache running its own reference cleaner thread.  The reaper is also
+ * used to detect database cursors which were never closed.  The thread is started
+ * lazily when the first reference is created.
+ * </p>
+ *
+ * <p>
+ * References registered with the reaper must implement {@link Reapable},
+ * the reaper invokes {@link Reapable#reap()} on its thread once the
+ * reference has been cleared, so reaping must be short and must not block.
+ * </p>
+ */
+public final class ReferenceReaper
+{
+    private static final Logger logger = Logger.getLogger(ReferenceReaper.class);
+
+    private static final class Shared
+    {
+        private static final ReferenceReaper INSTANCE = new ReferenceReaper("CacheReferenceReaper");
+    }
+
+    /**
+     * The reaper shared by all caches
+     */
+    public static ReferenceReaper shared()
+    {
+        return Shared.INSTANCE;
+    }
+
+    private final String name;
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    private final AtomicLong reaped = new AtomicLong();
+
+    private volatile Thread worker;
+
+    public ReferenceReaper(String name)
+    {
+        super();
+        this.name = name;
+    }
+
+    /**
+     * The queue which references must be registered with, using this starts the reaper
+     */
+    public ReferenceQueue<Object> queue()
+    {
+        this.start();
+        return this.queue;
+    }
+
+    /**
+     * The total number of references reaped
+     */
+    public long getReaped()
+    {
+        return this.reaped.get();
+    }
+
+    private void start()
+    {
+        if (this.worker == null)
+        {
+            synchronized (this)
+            {
+                if (this.worker == null)
+                {
+                    Thread thread = new Thread(this::run, this.name);
+                    thread.setDaemon(true);
+                    thread.start();
+                    this.worker = thread;
+                }
+            }
+        }
+    }
+
+    private void run()
+    {
+        while (true)
+        {
+            try
+            {
+                Reference<?> reference = this.queue.remove();
+                if (reference instanceof Reapable)
+                {
+                    ((Reapable) reference).reap();
+                    this.reaped.incrementAndGet();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // ignore, we are a daemon
+            }
+            catch (Exception e)
+            {
+                logger.warn("Error reaping collected cache entry", e);
+            }
+        }
+    }
+
+    /**
+     * A reference which should be reaped once its referent is collected
+     */
+    public static interface Reapable
+    {
+        void reap();
+    }
+}
@@ -0,0 +1,50 @@
+package com.intrbiz.data.cache.util;
+
+import com.intrbiz.data.cache.CacheTagged;
+
+/**
+ * <p>
+ * The current generation of each tag of a cache.
+ * </p>
+ *
+ * <p>
+ * Tagged entries record the generation of their tags when they are put,
+ * invalidating a tag simply moves it to the next generation, making every
+ * entry with that tag stale without having to find them.  Stale entries
+ * are treated as a miss and removed when they are next read.
+ * </p>
+ */
+public interface TagGenerations
+{
+    /**
+     * The current generation of the given tag
+     */
+    long generation(String tag);
+
+    /**
+     * Move the given tag to the next generation
+     * @return the new generation of the tag
+     */
+    long invalidate(String tag);
+
+    /**
+     * Wrap the given value with the current generation of the given tags
+     */
+    default CacheTagged tag(Object value, String[] tags)
+    {
+        long[] generations = new long[tags.length];
+        for (int i = 0; i < tags.length; i++)
+        {
+            generations[i] = this.generation(tags[i]);
+        }
+        return new CacheTagged(value, tags, generations);
+    }
+
+    /**
+     * Is the given stored entry tagged and one of its tags has been invalidated since it was put
+     */
+    default boolean isStale(Object stored)
+    {
+        return stored instanceof CacheTagged && (! ((CacheTagged) stored).isCurrent(this));
+    }
+}
@@ -0,0 +1,268 @@
+package com.intrbiz.data.cache.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * <p>
+ * A hashed timer wheel, used to expire cache entries without needing a
+ * thread per cache.
+ * </p>
+ *
+ * <p>
+ * Timeouts are placed into one of a fixed number of buckets, a single
+ * worker thread visits one bucket per tick running any timeouts which
+ * are due.  This trades timing precision (timeouts run up to one tick
+ * late) for very cheap scheduling and cancellation.
+ * </p>
+ *
+ * <p>
+ * Tasks are executed on the worker thread, so must be short and must
+ * not block.
+ * </p>
+ */
+public final class TimerWheel
+{
+    private static final Logger logger = Logger.getLogger(TimerWheel.class);
+
+    private static final class Shared
+    {
+        private static final TimerWheel INSTANCE = new TimerWheel("CacheTimerWheel", 100, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * The timer wheel shared by all caches
+     */
+    public static TimerWheel shared()
+    {
+        return Shared.INSTANCE;
+    }
+
+    private final String name;
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+
+    private final long startTime = System.nanoTime();
+
+    private volatile Thread worker;
+
+    private long tick = 0;
+
+    public TimerWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel)
+    {
+        super();
+        if (tickDuration <= 0) throw new IllegalArgumentException("The tick duration must be positive");
+        if (ticksPerWheel <= 0) throw new IllegalArgumentException("The ticks per wheel must be positive");
+        this.name = name;
+        this.tickNanos = unit.toNanos(tickDuration);
+        // round the wheel size to a power of two
+        int size = 1;
+        while (size < ticksPerWheel) size <<= 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+        {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedule the given task to run after the given delay
+     * @return the timeout, which can be used to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit)
+    {
+        Timeout timeout = new Timeout(this, task, (System.nanoTime() - this.startTime) + unit.toNanos(Math.max(delay, 0)));
+        this.scheduled.add(timeout);
+        this.start();
+        return timeout;
+    }
+
+    private void start()
+    {
+        if (this.worker == null)
+        {
+            synchronized (this)
+            {
+                if (this.worker == null)
+                {
+                    Thread thread = new Thread(this::run, this.name);
+                    thread.setDaemon(true);
+                    thread.start();
+                    this.worker = thread;
+                }
+            }
+        }
+    }
+
+    private void run()
+    {
+        while (true)
+        {
+            // wait for the next tick
+            long deadline = this.tickNanos * (this.tick + 1);
+            long sleep;
+            while ((sleep = deadline - (System.nanoTime() - this.startTime)) > 0)
+            {
+                try
+                {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+                catch (InterruptedException e)
+                {
+                    // ignore, we are a daemon
+                }
+            }
+            // process the bucket for this tick
+            this.processCancelled();
+            this.transferScheduled();
+            this.wheel[(int) (this.tick & this.mask)].expire(deadline);
+            this.tick++;
+        }
+    }
+
+    private void processCancelled()
+    {
+        Timeout timeout;
+        while ((timeout = this.cancelled.poll()) != null)
+        {
+            if (timeout.bucket != null) timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void transferScheduled()
+    {
+        Timeout timeout;
+        while ((timeout = this.scheduled.poll()) != null)
+        {
+            if (timeout.cancelled) continue;
+            long ticks = timeout.deadline / this.tickNanos;
+            // never schedule into the past
+            long target = Math.max(ticks, this.tick);
+            timeout.rounds = (target - this.tick) / this.wheel.length;
+            this.wheel[(int) (target & this.mask)].add(timeout);
+        }
+    }
+
+    /**
+     * A scheduled task
+     */
+    public static final class Timeout
+    {
+        private final TimerWheel timer;
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private long rounds;
+
+        private volatile boolean cancelled = false;
+
+        private Bucket bucket;
+
+        private Timeout next;
+
+        private Timeout prev;
+
+        private Timeout(TimerWheel timer, Runnable task, long deadline)
+        {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancel this timeout, it is safe to cancel a timeout which has already run
+         */
+        public void cancel()
+        {
+            if (! this.cancelled)
+            {
+                this.cancelled = true;
+                this.timer.cancelled.add(this);
+            }
+        }
+
+        public boolean isCancelled()
+        {
+            return this.cancelled;
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts, only accessed by the worker thread
+     */
+    private static final class Bucket
+    {
+        private Timeout head;
+
+        private Timeout tail;
+
+        void add(Timeout timeout)
+        {
+            timeout.bucket = this;
+            if (this.head == null)
+            {
+                this.head = this.tail = timeout;
+            }
+            else
+            {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout)
+        {
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            if (timeout == this.head) this.head = timeout.next;
+            if (timeout == this.tail) this.tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expire(long deadline)
+        {
+            Timeout timeout = this.head;
+            while (timeout != null)
+            {
+                Timeout next = timeout.next;
+                if (timeout.cancelled)
+                {
+                    this.remove(timeout);
+                }
+                else if (timeout.rounds <= 0 && timeout.deadline <= deadline)
+                {
+                    this.remove(timeout);
+                    try
+                    {
+                        timeout.task.run();
+                    }
+                    catch (Exception e)
+                    {
+                        logger.warn("Error running timer task", e);
+                    }
+                }
+                else
+                {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -1,34 +1,70 @@
 package com.intrbiz.data.cache.wrapper;
 
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import com.intrbiz.data.cache.Cache;
 import com.intrbiz.data.cache.CacheListener;
+import com.intrbiz.data.cache.CacheLoader;
+import com.intrbiz.data.cache.CacheStats;
+import com.intrbiz.data.cache.CacheTagged;
 
+/**
+ * <p>
+ * Wrap a cache so that it can be switched on and off, or made read 
+ * only or write only, at runtime.
+ * </p>
+ * 
+ * <p>
+ * Each state is precomputed as a route, holding the cache which reads 
+ * should be sent to, the cache which writes should be sent to and the 
+ * cache which removals and invalidations should be sent to, either the 
+ * wrapped cache or a cache which holds nothing.  Changing the state 
+ * swaps the route atomically, so every operation is a single volatile 
+ * read and a call, never seeing a half applied state.
+ * </p>
+ * 
+ * <p>
+ * Only puts are gated by the READ_ONLY state, removals and invalidations 
+ * still reach the wrapped cache whenever it is read from or written to, 
+ * otherwise a read only cache would keep serving entries which have 
+ * since been changed.  Everything is discarded in the OFF state.
+ * </p>
+ */
 public class CacheWrapper implements Cache
 {
-    private Cache cache;
+    private final Cache cache;
 
-    private CacheState state = CacheState.ON;
+    private final Route[] routes;
+
+    private volatile Route route;
 
     public CacheWrapper(Cache cache)
     {
         this.cache = cache;
+        this.routes = new Route[CacheState.values().length];
+        for (CacheState state : CacheState.values())
+        {
+            this.routes[state.ordinal()] = new Route(state, cache);
+        }
+        this.route = this.routes[CacheState.ON.ordinal()];
     }
     
     @Override
     public CacheState state()
     {
-        return this.state;
+        return this.route.state;
     }
     
     @Override
     public void state(CacheState state)
     {
-        this.state = state;
+        this.route = this.routes[state.ordinal()];
     }
 
     @Override
@@ -40,142 +76,279 @@ public class CacheWrapper implements Cache
     @Override
     public <T> T get(String key)
     {
-        if (this.cache == null || this.state == CacheState.OFF || this.state == CacheState.WRITE_ONLY) return null;
-        return cache.get(key);
+        return this.route.reader.get(key);
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys)
+    {
+        return this.route.reader.getAll(keys);
     }
 
     @Override
     public <T> T getAndFollow(String key)
     {
-        if (this.cache == null || this.state == CacheState.OFF || this.state == CacheState.WRITE_ONLY) return null;
-        return cache.getAndFollow(key);
+        return this.route.reader.getAndFollow(key);
     }
 
     @Override
     public <T> List<T> getAndFollowList(String key)
     {
-        if (this.cache == null || this.state == CacheState.OFF || this.state == CacheState.WRITE_ONLY) return null;
-        return cache.getAndFollowList(key);
+        return this.route.reader.getAndFollowList(key);
     }
 
     @Override
     public <T> T getOrFollow(String key)
     {
-        if (this.cache == null || this.state == CacheState.OFF || this.state == CacheState.WRITE_ONLY) return null;
-        return cache.getOrFollow(key);
+        return this.route.reader.getOrFollow(key);
     }
 
     @Override
     public <T> List<T> getList(String key)
     {
-        if (this.cache == null || this.state == CacheState.OFF || this.state == CacheState.WRITE_ONLY) return null;
-        return cache.getList(key);
+        return this.route.reader.getList(key);
     }
 
     @Override
     public <T> List<T> getOrFollowList(String key)
     {
-        if (this.cache == null || this.state == CacheState.OFF || this.state == CacheState.WRITE_ONLY) return null;
-        return cache.getOrFollowList(key);
+        return this.route.reader.getOrFollowList(key);
     }
     
     @Override
     public <T> void put(String key, T value)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.put(key, value);
+        this.route.writer.put(key, value);
+    }
+
+    @Override
+    public <T> void putAll(Map<String, T> entries)
+    {
+        this.route.writer.putAll(entries);
+    }
+
+    @Override
+    public <T> void put(String key, T value, long ttl, TimeUnit unit)
+    {
+        this.route.writer.put(key, value, ttl, unit);
+    }
+
+    @Override
+    public <T> void put(String key, T value, long ttl, TimeUnit unit, CacheLoader<T> refresher)
+    {
+        this.route.writer.put(key, value, ttl, unit, refresher);
     }
 
     @Override
     public void putPointer(String key, String pointer)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.putPointer(key, pointer);
+        this.route.writer.putPointer(key, pointer);
     }
 
     @Override
     public void putPointerList(String key, List<String> pointers)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.putPointerList(key, pointers);
+        this.route.writer.putPointerList(key, pointers);
     }
 
     @Override
     public <T> void putPointerList(String key, List<T> values, Function<T, String> pointer)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.putPointerList(key, values, pointer);
+        this.route.writer.putPointerList(key, values, pointer);
     }
 
     @Override
     public <T> void putPointer(String key, T value, Function<T, String> pointer)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.putPointer(key, value, pointer);
+        this.route.writer.putPointer(key, value, pointer);
     }
 
     @Override
     public <T> void put(T value, Function<T, String> key)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.put(value, key);
+        this.route.writer.put(value, key);
     }
 
     @Override
     public <T> void put(List<T> values, Function<T, String> key)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.put(values, key);
+        this.route.writer.put(values, key);
+    }
+
+    @Override
+    public <T> void fill(String key, T value)
+    {
+        this.route.writer.fill(key, value);
+    }
+
+    @Override
+    public <T> void fill(String key, T value, long ttl, TimeUnit unit)
+    {
+        this.route.writer.fill(key, value, ttl, unit);
+    }
+
+    @Override
+    public <T> void fillAll(Map<String, T> entries)
+    {
+        this.route.writer.fillAll(entries);
+    }
+
+    @Override
+    public <T> void put(String key, T value, String... tags)
+    {
+        this.route.writer.put(key, value, tags);
+    }
+
+    @Override
+    public CacheTagged readTags(String... tags)
+    {
+        return this.route.writer.readTags(tags);
+    }
+
+    @Override
+    public <T> void put(String key, T value, CacheTagged tags)
+    {
+        this.route.writer.put(key, value, tags);
     }
 
     @Override
     public boolean contains(String key)
     {
-        if (this.cache == null || this.state == CacheState.OFF || this.state == CacheState.WRITE_ONLY) return false;
-        return cache.contains(key);
+        return this.route.reader.contains(key);
     }
     
     @Override
     public <T> boolean contains(T value, Function<T, String> key)
     {
-        if (this.cache == null || this.state == CacheState.OFF || this.state == CacheState.WRITE_ONLY) return false;
-        return cache.contains(value, key);
+        return this.route.reader.contains(value, key);
     }
 
     @Override
     public void remove(String key)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.remove(key);
+        this.route.invalidator.remove(key);
+    }
+    
+    @Override
+    public void removeAll(Collection<String> keys)
+    {
+        this.route.invalidator.removeAll(keys);
     }
     
     @Override
     public <T> void remove(T value, Function<T, String> key)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.remove(value, key);
+        this.route.invalidator.remove(value, key);
     }
 
     @Override
     public void removePrefix(String keyPrefix)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.removePrefix(keyPrefix);
+        this.route.invalidator.removePrefix(keyPrefix);
     }
 
     @Override
     public <T> void removePrefix(T value, Function<T, String> keyPrefix)
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.removePrefix(value, keyPrefix);
+        this.route.invalidator.removePrefix(value, keyPrefix);
+    }
+
+    @Override
+    public void invalidateTag(String tag)
+    {
+        this.route.invalidator.invalidateTag(tag);
     }
 
     @Override
     public Set<String> keySet(String keyPrefix)
     {
-        if (this.cache == null || this.state == CacheState.OFF || this.state == CacheState.WRITE_ONLY) return new HashSet<String>();
-        return cache.keySet(keyPrefix);
+        return this.route.reader.keySet(keyPrefix);
+    }
+
+    @Override
+    public CacheStats stats()
+    {
+        if (this.cache == null) return CacheStats.EMPTY;
+        return this.cache.stats();
+    }
+
+    @Override
+    public <T> CompletionStage<T> getAsync(String key)
+    {
+        return this.route.reader.getAsync(key);
+    }
+
+    @Override
+    public <T> CompletionStage<Void> putAsync(String key, T value)
+    {
+        return this.route.writer.putAsync(key, value);
+    }
+
+    @Override
+    public CompletionStage<Void> removeAsync(String key)
+    {
+        return this.route.invalidator.removeAsync(key);
+    }
+
+    @Override
+    public boolean lockKey(String key)
+    {
+        if (this.cache == null) return false;
+        return cache.lockKey(key);
+    }
+
+    @Override
+    public void unlockKey(String key)
+    {
+        if (this.cache != null) cache.unlockKey(key);
+    }
+
+    @Override
+    public boolean isDistributed()
+    {
+        return this.cache != null && cache.isDistributed();
+    }
+
+    @Override
+    public boolean isTransactional()
+    {
+        return this.cache != null && cache.isTransactional();
+    }
+
+    @Override
+    public void begin()
+    {
+        if (this.cache != null) cache.begin();
+    }
+
+    @Override
+    public void commit()
+    {
+        if (this.cache != null) cache.commit();
+    }
+
+    @Override
+    public void rollback()
+    {
+        if (this.cache != null) cache.rollback();
+    }
+
+    @Override
+    public void end()
+    {
+        if (this.cache != null) cache.end();
     }
 
     @Override
     public void close()
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.close();
+        if (this.cache != null) cache.close();
     }
 
     @Override
     public void clear()
     {
-        if (this.cache != null && this.state == CacheState.ON && this.state == CacheState.WRITE_ONLY) cache.clear();
+        this.route.invalidator.clear();
     }
 
     @Override
@@ -189,5 +362,26 @@ public class CacheWrapper implements Cache
     {
         if (this.cache != null) cache.removeListener(listener);
     }
-
+    
+    /**
+     * Where reads, writes and removals are sent in a given state
+     */
+    private static final class Route
+    {
+        private final CacheState state;
+        
+        private final Cache reader;
+        
+        private final Cache writer;
+        
+        private final Cache invalidator;
+        
+        private Route(CacheState state, Cache cache)
+        {
+            this.state = state;
+            this.reader = (cache != null && (state == CacheState.ON || state == CacheState.READ_ONLY))  ? cache : NullCache.INSTANCE;
+            this.writer = (cache != null && (state == CacheState.ON || state == CacheState.WRITE_ONLY)) ? cache : NullCache.INSTANCE;
+            this.invalidator = (cache != null && state != CacheState.OFF) ? cache : NullCache.INSTANCE;
+        }
+    }
 }
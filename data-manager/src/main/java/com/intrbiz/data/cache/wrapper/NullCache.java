@@ -0,0 +1,225 @@
+package com.intrbiz.data.cache.wrapper;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.CacheLoader;
+import com.intrbiz.data.cache.CacheTagged;
+
+/**
+ * A cache which holds nothing, reads always miss and writes are 
+ * discarded, used by the CacheWrapper in place of the wrapped cache 
+ * for the operations which the current state does not permit
+ */
+final class NullCache implements Cache
+{
+    public static final NullCache INSTANCE = new NullCache();
+
+    private NullCache()
+    {
+        super();
+    }
+
+    @Override
+    public String name()
+    {
+        return "null";
+    }
+
+    @Override
+    public <T> T get(String key)
+    {
+        return null;
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(Collection<String> keys)
+    {
+        return new HashMap<String, T>();
+    }
+
+    @Override
+    public <T> T getAndFollow(String key)
+    {
+        return null;
+    }
+
+    @Override
+    public <T> List<T> getAndFollowList(String key)
+    {
+        return null;
+    }
+
+    @Override
+    public <T> T getOrFollow(String key)
+    {
+        return null;
+    }
+
+    @Override
+    public <T> List<T> getList(String key)
+    {
+        return null;
+    }
+
+    @Override
+    public <T> List<T> getOrFollowList(String key)
+    {
+        return null;
+    }
+
+    @Override
+    public <T> void put(String key, T value)
+    {
+    }
+
+    @Override
+    public <T> void putAll(Map<String, T> entries)
+    {
+    }
+
+    @Override
+    public <T> void put(String key, T value, long ttl, TimeUnit unit)
+    {
+    }
+
+    @Override
+    public <T> void put(String key, T value, long ttl, TimeUnit unit, CacheLoader<T> refresher)
+    {
+    }
+
+    @Override
+    public void putPointer(String key, String pointer)
+    {
+    }
+
+    @Override
+    public void putPointerList(String key, List<String> pointers)
+    {
+    }
+
+    @Override
+    public <T> void putPointerList(String key, List<T> values, Function<T, String> pointer)
+    {
+    }
+
+    @Override
+    public <T> void putPointer(String key, T value, Function<T, String> pointer)
+    {
+    }
+
+    @Override
+    public <T> void put(T value, Function<T, String> key)
+    {
+    }
+
+    @Override
+    public <T> void put(List<T> values, Function<T, String> key)
+    {
+    }
+
+    @Override
+    public <T> void fill(String key, T value)
+    {
+    }
+
+    @Override
+    public <T> void fill(String key, T value, long ttl, TimeUnit unit)
+    {
+    }
+
+    @Override
+    public <T> void fillAll(Map<String, T> entries)
+    {
+    }
+
+    @Override
+    public <T> void put(String key, T value, String... tags)
+    {
+    }
+
+    @Override
+    public <T> void put(String key, T value, CacheTagged tags)
+    {
+    }
+
+    @Override
+    public boolean contains(String key)
+    {
+        return false;
+    }
+
+    @Override
+    public <T> boolean contains(T value, Function<T, String> key)
+    {
+        return false;
+    }
+
+    @Override
+    public void remove(String key)
+    {
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys)
+    {
+    }
+
+    @Override
+    public <T> void remove(T value, Function<T, String> key)
+    {
+    }
+
+    @Override
+    public void removePrefix(String keyPrefix)
+    {
+    }
+
+    @Override
+    public <T> void removePrefix(T value, Function<T, String> keyPrefix)
+    {
+    }
+
+    @Override
+    public void invalidateTag(String tag)
+    {
+    }
+
+    @Override
+    public Set<String> keySet(String keyPrefix)
+    {
+        return new HashSet<String>();
+    }
+
+    @Override
+    public <T> CompletionStage<T> getAsync(String key)
+    {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public <T> CompletionStage<Void> putAsync(String key, T value)
+    {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletionStage<Void> removeAsync(String key)
+    {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void clear()
+    {
+    }
+}
@@ -1,8 +1,17 @@
 package com.intrbiz.data.db;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
 
@@ -10,10 +19,22 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.intrbiz.data.DataAdapter;
 import com.intrbiz.data.DataException;
+import com.intrbiz.data.DataManager;
 import com.intrbiz.data.Transaction;
 import com.intrbiz.data.cache.Cache;
 import com.intrbiz.data.cache.Cache.CacheState;
+import com.intrbiz.data.cache.CacheNegative;
+import com.intrbiz.data.cache.CachePointer;
+import com.intrbiz.data.cache.CachePointerList;
+import com.intrbiz.data.cache.util.LoadCoalescer;
+import com.intrbiz.data.db.DatabaseConnection.BatchBinder;
+import com.intrbiz.data.db.DatabaseConnection.CopyBinder;
 import com.intrbiz.data.db.DatabaseConnection.DatabaseCall;
+import com.intrbiz.data.db.DatabaseConnection.ParameterBinder;
+import com.intrbiz.data.db.DatabaseConnection.RowMapper;
+import com.intrbiz.data.db.DatabaseConnection.StatementBinder;
+import com.intrbiz.data.db.util.CopyQuery;
+import com.intrbiz.data.db.util.MultiRowQuery;
 
 /**
  * <p>
@@ -293,6 +314,157 @@ public abstract class DatabaseAdapter implements DataAdapter
         }
     }
 
+    // batching
+    
+    /**
+     * Execute the given statement once for every value, using JDBC batching, in a single transaction
+     */
+    public <T> void executeBatch(String sql, Collection<? extends T> values, BatchBinder<T> binder) throws DataException
+    {
+        connection.executeBatch(sql, values, binder);
+    }
+    
+    public <T> void executeBatchTimed(Timer timer, String sql, Collection<? extends T> values, BatchBinder<T> binder) throws DataException
+    {
+        Timer.Context tCtx = timer.time();
+        try
+        {
+            connection.executeBatch(sql, values, binder);
+        }
+        finally
+        {
+            tCtx.stop();
+        }
+    }
+    
+    /**
+     * Execute the given multi row query for all the values, in a single transaction
+     */
+    public <T> void executeMultiRow(MultiRowQuery query, Collection<? extends T> values, BatchBinder<T> binder) throws DataException
+    {
+        connection.executeMultiRow(query, values, binder);
+    }
+    
+    public <T> void executeMultiRowTimed(Timer timer, MultiRowQuery query, Collection<? extends T> values, BatchBinder<T> binder) throws DataException
+    {
+        Timer.Context tCtx = timer.time();
+        try
+        {
+            connection.executeMultiRow(query, values, binder);
+        }
+        finally
+        {
+            tCtx.stop();
+        }
+    }
+    
+    // cursors
+    
+    /**
+     * Open a cursor over the results of the given query, which must be closed
+     */
+    public <T> DatabaseCursor<T> useCursor(String sql, StatementBinder binder, RowMapper<T> mapper) throws DataException
+    {
+        return connection.openCursor(sql, binder, mapper);
+    }
+    
+    /**
+     * Open a cursor over the results of the given query, timing the execution of the query
+     */
+    public <T> DatabaseCursor<T> useCursorTimed(Timer timer, String sql, StatementBinder binder, RowMapper<T> mapper) throws DataException
+    {
+        Timer.Context tCtx = timer.time();
+        try
+        {
+            return connection.openCursor(sql, binder, mapper);
+        }
+        finally
+        {
+            tCtx.stop();
+        }
+    }
+    
+    // pipelining
+    
+    /**
+     * Create a pipeline, which queues independent queries to be sent to 
+     * the database together, the futures of the queries are completed once 
+     * the pipeline is executed
+     */
+    public DatabasePipeline pipeline()
+    {
+        return connection.pipeline();
+    }
+    
+    /**
+     * Queue the given query in the pipeline, the future is completed with the first row or null
+     */
+    public <T> CompletableFuture<T> usePipelined(DatabasePipeline pipeline, String sql, int parameters, ParameterBinder binder, RowMapper<T> mapper) throws DataException
+    {
+        return pipeline.add(sql, parameters, binder, mapper);
+    }
+    
+    /**
+     * Queue the given query in the pipeline, the future is completed with all the rows
+     */
+    public <T> CompletableFuture<List<T>> usePipelinedList(DatabasePipeline pipeline, String sql, int parameters, ParameterBinder binder, RowMapper<T> mapper) throws DataException
+    {
+        return pipeline.addList(sql, parameters, binder, mapper);
+    }
+    
+    /**
+     * Use the cache, only queuing the given query in the pipeline upon a cache miss
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> usePipelinedCached(DatabasePipeline pipeline, String key, Function<T, String> entityKey, long negativeTTL, String sql, int parameters, ParameterBinder binder, RowMapper<T> mapper) throws DataException
+    {
+        Object cached = this.lookupCached(key, entityKey);
+        if (cached instanceof CacheNegative && negativeTTL > 0) return CompletableFuture.completedFuture(null);
+        if (cached != null && (! (cached instanceof CacheNegative))) return CompletableFuture.completedFuture((T) cached);
+        if (logger.isTraceEnabled()) logger.trace("Cache miss");
+        return pipeline.add(sql, parameters, binder, mapper).thenApply((value) -> {
+            this.putCached(key, entityKey, negativeTTL, value);
+            return value;
+        });
+    }
+    
+    /**
+     * Use the cache, only queuing the given query in the pipeline upon a cache miss
+     */
+    public <T> CompletableFuture<List<T>> usePipelinedCachedList(DatabasePipeline pipeline, String key, Function<T, String> entityKey, String sql, int parameters, ParameterBinder binder, RowMapper<T> mapper) throws DataException
+    {
+        List<T> cached = this.adapterCache.getAndFollowList(key);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        if (logger.isTraceEnabled()) logger.trace("Cache miss");
+        return pipeline.addList(sql, parameters, binder, mapper).thenApply((value) -> {
+            if (value != null) this.putCachedList(key, entityKey, value);
+            return value;
+        });
+    }
+    
+    // copying
+    
+    /**
+     * Bulk load the given values using a binary copy, in a single transaction
+     */
+    public <T> long copy(CopyQuery query, Stream<? extends T> values, CopyBinder<T> binder) throws DataException
+    {
+        return connection.copy(query, values, binder);
+    }
+    
+    public <T> long copyTimed(Timer timer, CopyQuery query, Stream<? extends T> values, CopyBinder<T> binder) throws DataException
+    {
+        Timer.Context tCtx = timer.time();
+        try
+        {
+            return connection.copy(query, values, binder);
+        }
+        finally
+        {
+            tCtx.stop();
+        }
+    }
+
     // caching
     
     public void cacheClear()
@@ -332,60 +504,60 @@ public abstract class DatabaseAdapter implements DataAdapter
 
     public <T> T useCached(String key, Function<T, String> entityKey, DatabaseCall<T> call) throws DataException
     {
-        T ret = entityKey == null ? this.adapterCache.get(key) : this.adapterCache.getAndFollow(key);
+        return this.useCached(key, entityKey, 0L, call);
+    }
+
+    /**
+     * Use the cache, also caching a null result for the given number of seconds
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T useCached(String key, Function<T, String> entityKey, long negativeTTL, DatabaseCall<T> call) throws DataException
+    {
+        Object cached = this.lookupCached(key, entityKey);
+        if (cached instanceof CacheNegative && negativeTTL > 0) return null;
+        T ret = cached instanceof CacheNegative ? null : (T) cached;
         if (ret == null)
         {
-            // invoke the db call
-            ret = this.use(call);
-            // cache it
-            if (ret != null)
-            {
-                if (entityKey == null)
-                {
-                    // put a direct mapping of our key -> result
-                    this.adapterCache.put(key, ret);
-                }
-                else
-                {
-                    // put a pointer from our key -> pointer
-                    this.adapterCache.putPointer(key, ret, entityKey);
-                    // put the real value
-                    this.adapterCache.put(ret, entityKey);
-                }
-            }
+            // invoke the db call and cache it
+            ret = this.loadCached(key, null, () -> this.getCached(key, entityKey), call, (value) -> this.putCached(key, entityKey, negativeTTL, value));
         }
-        return null;
+        return ret;
     }
 
     public <T> T useTimedCached(Timer timer, Meter cacheMiss, String key, Function<T, String> entityKey, DatabaseCall<T> call) throws DataException
+    {
+        return this.useTimedCached(timer, cacheMiss, null, null, key, entityKey, 0L, call);
+    }
+
+    public <T> T useTimedCached(Timer timer, Meter cacheMiss, Meter cacheCoalesced, String key, Function<T, String> entityKey, DatabaseCall<T> call) throws DataException
+    {
+        return this.useTimedCached(timer, cacheMiss, cacheCoalesced, null, key, entityKey, 0L, call);
+    }
+
+    /**
+     * Use the cache, also caching a null result for the given number of seconds
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T useTimedCached(Timer timer, Meter cacheMiss, Meter cacheCoalesced, Meter cacheNegativeHit, String key, Function<T, String> entityKey, long negativeTTL, DatabaseCall<T> call) throws DataException
     {
         Timer.Context tCtx = timer.time();
         try
         {
             // check cache
-            T ret = entityKey == null ? this.adapterCache.get(key) : this.adapterCache.getAndFollow(key);
+            Object cached = this.lookupCached(key, entityKey);
+            if (cached instanceof CacheNegative && negativeTTL > 0)
+            {
+                if (logger.isTraceEnabled()) logger.trace("Negative cache hit");
+                if (cacheNegativeHit != null) cacheNegativeHit.mark();
+                return null;
+            }
+            T ret = cached instanceof CacheNegative ? null : (T) cached;
             if (ret == null)
             {
                 if (logger.isTraceEnabled()) logger.trace("Cache miss");
                 cacheMiss.mark();
-                // invoke the db call
-                ret = this.use(call);
-                // cache it
-                if (ret != null)
-                {
-                    if (entityKey == null)
-                    {
-                        // put a direct mapping of our key -> result
-                        this.adapterCache.put(key, ret);
-                    }
-                    else
-                    {
-                        // put a pointer from our key -> pointer
-                        this.adapterCache.putPointer(key, ret, entityKey);
-                        // put the real value
-                        this.adapterCache.put(ret, entityKey);
-                    }
-                }
+                // invoke the db call and cache it
+                ret = this.loadCached(key, cacheCoalesced, () -> this.getCached(key, entityKey), call, (value) -> this.putCached(key, entityKey, negativeTTL, value));
             }
             return ret;
         }
@@ -400,21 +572,18 @@ public abstract class DatabaseAdapter implements DataAdapter
         List<T> ret = this.adapterCache.getAndFollowList(key);
         if (ret == null)
         {
-            // invoke the db call
-            ret = this.use(call);
-            // cache it
-            if (ret != null)
-            {
-                // put a pointer from our key -> pointer
-                this.adapterCache.putPointerList(key, ret, entityKey);
-                // put the real values
-                this.adapterCache.put(ret, entityKey);
-            }
+            // invoke the db call and cache it
+            ret = this.loadCached(key, null, () -> this.adapterCache.getAndFollowList(key), call, (value) -> { if (value != null) this.putCachedList(key, entityKey, value); });
         }
         return ret;
     }
     
     public <T> List<T> useTimedCachedList(Timer timer, Meter cacheMiss, String key, Function<T, String> entityKey, DatabaseCall<List<T>> call) throws DataException
+    {
+        return this.useTimedCachedList(timer, cacheMiss, null, key, entityKey, call);
+    }
+    
+    public <T> List<T> useTimedCachedList(Timer timer, Meter cacheMiss, Meter cacheCoalesced, String key, Function<T, String> entityKey, DatabaseCall<List<T>> call) throws DataException
     {
         Timer.Context tCtx = timer.time();
         try
@@ -425,16 +594,8 @@ public abstract class DatabaseAdapter implements DataAdapter
             {
                 if (logger.isTraceEnabled()) logger.trace("Cache miss");
                 cacheMiss.mark();
-                // invoke the db call
-                ret = this.use(call);
-                // cache it
-                if (ret != null)
-                {
-                    // put a pointer from our key -> pointer
-                    this.adapterCache.putPointerList(key, ret, entityKey);
-                    // put the real values
-                    this.adapterCache.put(ret, entityKey);
-                }
+                // invoke the db call and cache it
+                ret = this.loadCached(key, cacheCoalesced, () -> this.adapterCache.getAndFollowList(key), call, (value) -> { if (value != null) this.putCachedList(key, entityKey, value); });
             }
             return ret;
         }
@@ -443,4 +604,107 @@ public abstract class DatabaseAdapter implements DataAdapter
             tCtx.stop();
         }
     }
+    
+    /**
+     * Invoke the given database call and cache the result.
+     * 
+     * If enabled, concurrent misses on the same key share a single 
+     * database call, and if the cache supports it the load is 
+     * coordinated with other nodes by locking the key.
+     * 
+     * @param key the cache key being loaded
+     * @param cacheCoalesced marked for each miss which waited for another load, may be null
+     * @param cached lookup the key in the cache
+     * @param call the database call to load the key
+     * @param store cache the loaded value, which may be null
+     */
+    protected <T> T loadCached(String key, Meter cacheCoalesced, Supplier<T> cached, DatabaseCall<T> call, Consumer<T> store) throws DataException
+    {
+        // a load inside a transaction might see uncommitted changes, so it must not be shared
+        if (! DataManager.get().isCoalesceCacheLoads() || this.isInTransaction()) return this.load(call, store);
+        return LoadCoalescer.shared().load(this.adapterCache.name() + ":" + key, cacheCoalesced, () -> {
+            boolean locked = this.adapterCache.lockKey(key);
+            try
+            {
+                if (locked)
+                {
+                    // another node may have loaded the key while we waited for the lock
+                    T ret = cached.get();
+                    if (ret != null) return ret;
+                }
+                return this.load(call, store);
+            }
+            finally
+            {
+                if (locked) this.adapterCache.unlockKey(key);
+            }
+        });
+    }
+    
+    private <T> T load(DatabaseCall<T> call, Consumer<T> store) throws DataException
+    {
+        T ret = this.use(call);
+        store.accept(ret);
+        return ret;
+    }
+    
+    /**
+     * Lookup the given key, following the pointer to the entity if needed
+     * @return the cached value, a negative entry or null
+     */
+    private Object lookupCached(String key, Function<?, String> entityKey)
+    {
+        Object value = this.adapterCache.get(key);
+        if (entityKey != null && value instanceof CachePointer) return this.adapterCache.get(((CachePointer) value).getKey());
+        if (entityKey != null && (! (value instanceof CacheNegative))) return null;
+        return value;
+    }
+    
+    @SuppressWarnings("unchecked")
+    private <T> T getCached(String key, Function<T, String> entityKey)
+    {
+        Object value = this.lookupCached(key, entityKey);
+        return value instanceof CacheNegative ? null : (T) value;
+    }
+    
+    /**
+     * Fill the cache with a value loaded after a miss, fills do not invalidate other nodes
+     */
+    private <T> void putCached(String key, Function<T, String> entityKey, long negativeTTL, T value)
+    {
+        if (value == null)
+        {
+            // record that the key has no value
+            if (negativeTTL > 0) this.adapterCache.fill(key, CacheNegative.INSTANCE, negativeTTL, TimeUnit.SECONDS);
+        }
+        else if (entityKey == null)
+        {
+            // put a direct mapping of our key -> result
+            this.adapterCache.fill(key, value);
+        }
+        else
+        {
+            // put a pointer from our key -> pointer
+            String pointer = entityKey.apply(value);
+            this.adapterCache.fill(key, new CachePointer(pointer));
+            // put the real value
+            this.adapterCache.fill(pointer, value);
+        }
+    }
+    
+    private <T> void putCachedList(String key, Function<T, String> entityKey, List<T> values)
+    {
+        List<String> pointers = new ArrayList<String>(values.size());
+        Map<String, T> entries = new LinkedHashMap<String, T>();
+        for (T value : values)
+        {
+            String pointer = entityKey.apply(value);
+            pointers.add(pointer);
+            entries.put(pointer, value);
+        }
+        // put a pointer from our key -> pointer
+        this.adapterCache.fill(key, new CachePointerList(pointers));
+        // put the real values
+        this.adapterCache.fillAll(entries);
+    }
 }
@@ -4,17 +4,50 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 import com.codahale.metrics.Timer;
 import com.intrbiz.data.DataException;
 import com.intrbiz.data.Transaction;
+import com.intrbiz.data.db.util.CopyQuery;
+import com.intrbiz.data.db.util.MultiRowQuery;
+import com.intrbiz.data.db.util.pgsql.PGSQLCopyWriter;
 import com.intrbiz.util.pool.database.DatabasePool;
 
 public class DatabaseConnection implements AutoCloseable
 {
+    /**
+     * The default number of rows to send to the database in one go when batching
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    
+    /**
+     * The most parameters a single statement may have
+     */
+    public static final int MAX_PARAMETERS = 32767;
+    
+    /**
+     * The default number of bytes to buffer before sending them to the database when copying
+     */
+    public static final int DEFAULT_COPY_FLUSH_SIZE = 256 * 1024;
+    
+    /**
+     * The default number of rows a cursor fetches from the database in one go
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+    
     protected final DatabasePool pool;
 
     protected Connection transaction;
+    
+    protected int batchSize = DEFAULT_BATCH_SIZE;
+    
+    protected int copyFlushSize = DEFAULT_COPY_FLUSH_SIZE;
+    
+    protected int fetchSize = DEFAULT_FETCH_SIZE;
 
     public DatabaseConnection(DatabasePool pool)
     {
@@ -293,6 +326,288 @@ public class DatabaseConnection implements AutoCloseable
         }
     }
 
+    /* Batching */
+    
+    /**
+     * The number of rows which are sent to the database in one go when batching
+     */
+    public int getBatchSize()
+    {
+        return this.batchSize;
+    }
+    
+    public void setBatchSize(int batchSize)
+    {
+        if (batchSize <= 0) throw new IllegalArgumentException("The batch size must be positive");
+        this.batchSize = batchSize;
+    }
+    
+    /**
+     * Execute the given statement once for every value, the statements 
+     * are sent to the database in batches using JDBC batching.
+     * 
+     * The values are written in a single transaction, either the current 
+     * transaction or one started for the batch.
+     * 
+     * @param sql the statement to execute
+     * @param values the values to execute the statement for
+     * @param binder bind the parameters of the statement for a value, parameters start at an offset of 0
+     * @throws DataException
+     */
+    public <T> void executeBatch(final String sql, final Collection<? extends T> values, final BatchBinder<T> binder) throws DataException
+    {
+        if (values.isEmpty()) return;
+        this.useInTransaction((with) -> {
+            try (PreparedStatement stmt = with.prepareStatement(sql))
+            {
+                int pending = 0;
+                for (T value : values)
+                {
+                    binder.bind(stmt, 0, value);
+                    stmt.addBatch();
+                    if (++pending == this.batchSize)
+                    {
+                        stmt.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) stmt.executeBatch();
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * Execute the given multi row query for all the values, binding as 
+     * many values as the batch size permits into each statement.
+     * 
+     * The values are written in a single transaction, either the current 
+     * transaction or one started for the batch.
+     * 
+     * @param query the query to execute
+     * @param values the values to execute the query for
+     * @param binder bind the parameters of one row of the query for a value, starting after the given offset
+     * @throws DataException
+     */
+    public <T> void executeMultiRow(final MultiRowQuery query, final Collection<? extends T> values, final BatchBinder<T> binder) throws DataException
+    {
+        if (values.isEmpty()) return;
+        final int rows = Math.max(1, Math.min(this.batchSize, MAX_PARAMETERS / query.getColumns()));
+        this.useInTransaction((with) -> {
+            Iterator<? extends T> it = values.iterator();
+            int remaining = values.size();
+            // the statement for a full batch is reused
+            PreparedStatement full = null;
+            try
+            {
+                while (remaining > 0)
+                {
+                    int count = Math.min(rows, remaining);
+                    if (count == rows)
+                    {
+                        if (full == null) full = with.prepareStatement(query.toSQL(rows));
+                        executeRows(full, query, it, count, binder);
+                    }
+                    else
+                    {
+                        try (PreparedStatement stmt = with.prepareStatement(query.toSQL(count)))
+                        {
+                            executeRows(stmt, query, it, count, binder);
+                        }
+                    }
+                    remaining -= count;
+                }
+            }
+            finally
+            {
+                if (full != null) full.close();
+            }
+            return null;
+        });
+    }
+    
+    private static <T> void executeRows(PreparedStatement stmt, MultiRowQuery query, Iterator<? extends T> values, int count, BatchBinder<T> binder) throws SQLException
+    {
+        for (int i = 0; i < count; i++)
+        {
+            binder.bind(stmt, i * query.getColumns(), values.next());
+        }
+        stmt.execute();
+    }
+    
+    /* Copying */
+    
+    /**
+     * The number of bytes which are buffered before sending them to the database when copying
+     */
+    public int getCopyFlushSize()
+    {
+        return this.copyFlushSize;
+    }
+    
+    public void setCopyFlushSize(int copyFlushSize)
+    {
+        if (copyFlushSize <= 0) throw new IllegalArgumentException("The copy flush size must be positive");
+        this.copyFlushSize = copyFlushSize;
+    }
+    
+    /**
+     * Bulk load the given values using a binary copy, this requires a 
+     * PostgreSQL database.
+     * 
+     * The statements before the copy, the copy and the statements after 
+     * the copy are executed in a single transaction, either the current 
+     * transaction or one started for the copy.  The stream is consumed 
+     * as the rows are sent to the database, it is not closed.
+     * 
+     * @param query the copy to execute
+     * @param values the values to copy
+     * @param binder write the columns of a row for a value
+     * @return the number of rows copied
+     * @throws DataException
+     */
+    public <T> long copy(final CopyQuery query, final Stream<? extends T> values, final CopyBinder<T> binder) throws DataException
+    {
+        return this.useInTransaction((with) -> {
+            executeAll(with, query.getBefore());
+            long rows;
+            PGSQLCopyWriter out = PGSQLCopyWriter.open(with, query.getCopy(), this.copyFlushSize);
+            try
+            {
+                Iterator<? extends T> it = values.iterator();
+                while (it.hasNext())
+                {
+                    out.startRow(query.getColumns());
+                    binder.bind(out, it.next());
+                }
+                rows = out.finish();
+            }
+            finally
+            {
+                out.cancel();
+            }
+            executeAll(with, query.getAfter());
+            return rows;
+        });
+    }
+    
+    private static void executeAll(Connection with, String[] sqls) throws SQLException
+    {
+        for (String sql : sqls)
+        {
+            try (Statement stmt = with.createStatement())
+            {
+                stmt.execute(sql);
+            }
+        }
+    }
+    
+    /* Cursors */
+    
+    /**
+     * The number of rows a cursor fetches from the database in one go
+     */
+    public int getFetchSize()
+    {
+        return this.fetchSize;
+    }
+    
+    public void setFetchSize(int fetchSize)
+    {
+        if (fetchSize <= 0) throw new IllegalArgumentException("The fetch size must be positive");
+        this.fetchSize = fetchSize;
+    }
+    
+    /**
+     * Open a cursor over the results of the given query, fetching the 
+     * rows from the database in batches of the fetch size as the cursor 
+     * is read, rather than reading all the rows at once.
+     * 
+     * Outside of a transaction the cursor borrows a connection of its own, 
+     * in a transaction of its own, which it holds until it is closed.  In a 
+     * transaction the cursor uses the connection of the transaction and must 
+     * be closed before the transaction ends.
+     * 
+     * @param sql the query
+     * @param binder bind the parameters of the query
+     * @param mapper read a row of the results
+     * @return the cursor, which must be closed
+     * @throws DataException
+     */
+    public <T> DatabaseCursor<T> openCursor(final String sql, final StatementBinder binder, final RowMapper<T> mapper) throws DataException
+    {
+        final boolean ownsConnection = this.transaction == null;
+        Connection con = this.borrowConnection();
+        PreparedStatement stmt = null;
+        try
+        {
+            // the driver only uses a server side cursor when not in auto commit mode
+            if (ownsConnection) con.setAutoCommit(false);
+            stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(this.fetchSize);
+            binder.bind(stmt);
+            return new DatabaseCursor<T>(con, ownsConnection, stmt, stmt.executeQuery(), mapper);
+        }
+        catch (SQLException e)
+        {
+            if (stmt != null)
+            {
+                try
+                {
+                    stmt.close();
+                }
+                catch (SQLException ce)
+                {
+                    // eat
+                }
+            }
+            if (ownsConnection)
+            {
+                try
+                {
+                    con.rollback();
+                    con.setAutoCommit(true);
+                }
+                catch (SQLException ce)
+                {
+                    // eat
+                }
+                this.relinquishConnection(con);
+            }
+            throw new DataException(e);
+        }
+    }
+    
+    /* Pipelines */
+    
+    /**
+     * Create a pipeline, which queues independent queries to be sent to the 
+     * database together, in one round trip
+     */
+    public DatabasePipeline pipeline()
+    {
+        return new DatabasePipeline(this);
+    }
+    
+    /**
+     * Execute the given call in the current transaction, or in a transaction of its own
+     */
+    protected <T> T useInTransaction(final DatabaseCall<T> call) throws DataException
+    {
+        if (this.isInTransaction()) return this.use(call);
+        this.begin();
+        try
+        {
+            T result = this.use(call);
+            this.commit();
+            return result;
+        }
+        finally
+        {
+            this.end();
+        }
+    }
+
     /**
      * Internal helper, nothing to see here
      */
@@ -365,4 +680,64 @@ public class DatabaseConnection implements AutoCloseable
     {
         public T run(final Connection with) throws SQLException, DataException;
     }
+    
+    /**
+     * Bind the parameters of a statement for one value of a batch
+     * 
+     * @param <T>
+     */
+    @FunctionalInterface()
+    public static interface BatchBinder<T>
+    {
+        /**
+         * @param stmt the statement to bind
+         * @param offset the number of parameters before those of this value
+         * @param value the value to bind
+         */
+        public void bind(final PreparedStatement stmt, final int offset, final T value) throws SQLException;
+    }
+    
+    /**
+     * Bind the parameters of a statement
+     */
+    @FunctionalInterface()
+    public static interface StatementBinder
+    {
+        public void bind(final PreparedStatement stmt) throws SQLException;
+    }
+    
+    /**
+     * Bind the parameters of one query of a statement of many queries
+     */
+    @FunctionalInterface()
+    public static interface ParameterBinder
+    {
+        /**
+         * @param stmt the statement to bind
+         * @param offset the number of parameters before those of this query
+         */
+        public void bind(final PreparedStatement stmt, final int offset) throws SQLException;
+    }
+    
+    /**
+     * Read the current row of a result set
+     * 
+     * @param <T>
+     */
+    @FunctionalInterface()
+    public static interface RowMapper<T>
+    {
+        public T map(final ResultSet rs) throws SQLException;
+    }
+    
+    /**
+     * Write the columns of one row of a copy for a value
+     * 
+     * @param <T>
+     */
+    @FunctionalInterface()
+    public static interface CopyBinder<T>
+    {
+        public void bind(final PGSQLCopyWriter out, final T value) throws SQLException;
+    }
 }
@@ -0,0 +1,260 @@
+package com.intrbiz.data.db;
+
+import java.lang.ref.PhantomReference;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.log4j.Logger;
+
+import com.intrbiz.data.DataException;
+import com.intrbiz.data.cache.util.CacheExecutors;
+import com.intrbiz.data.cache.util.ReferenceReaper;
+import com.intrbiz.data.db.DatabaseConnection.RowMapper;
+
+/**
+ * <p>
+ * Iterate the rows of a query as they are fetched from the database,
+ * rather than reading the whole result into memory.
+ * </p>
+ *
+ * <p>
+ * A cursor holds its connection, statement and result set until it is
+ * closed, it is closed automatically once the last row has been read.
+ * A cursor which is not read to the end must be closed, ideally using
+ * try with resources.  Cursors which are garbage collected without being
+ * closed are detected by the shared reference reaper, logged and closed,
+ * but the connection will have been held for far longer than needed.
+ * </p>
+ *
+ * <p>
+ * A cursor is not thread safe.
+ * </p>
+ */
+public final class DatabaseCursor<T> implements Iterator<T>, AutoCloseable
+{
+    private static final Logger logger = Logger.getLogger(DatabaseCursor.class);
+
+    /**
+     * The leak detectors of open cursors, which must stay reachable until the cursor is closed
+     */
+    private static final Set<LeakDetector> open = ConcurrentHashMap.newKeySet();
+
+    private static final AtomicLong leaked = new AtomicLong();
+
+    private final Resources resources;
+
+    private final LeakDetector detector;
+
+    private final RowMapper<T> mapper;
+
+    private boolean fetched = false;
+
+    private boolean hasRow = false;
+
+    DatabaseCursor(Connection connection, boolean ownsConnection, PreparedStatement statement, ResultSet resultSet, RowMapper<T> mapper)
+    {
+        super();
+        this.resources = new Resources(connection, ownsConnection, statement, resultSet);
+        this.mapper = mapper;
+        this.detector = new LeakDetector(this, this.resources);
+        open.add(this.detector);
+    }
+
+    /**
+     * The number of cursors which were garbage collected without being closed
+     */
+    public static long getLeaked()
+    {
+        return leaked.get();
+    }
+
+    /**
+     * The number of cursors which are currently open
+     */
+    public static int getOpen()
+    {
+        return open.size();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (this.resources.closed) return false;
+        if (! this.fetched)
+        {
+            try
+            {
+                this.hasRow = this.resources.resultSet.next();
+                this.fetched = true;
+            }
+            catch (SQLException e)
+            {
+                this.close();
+                throw new DataException("Failed to fetch the next row", e);
+            }
+            // release everything as soon as we have read the last row
+            if (! this.hasRow) this.close();
+        }
+        return this.hasRow;
+    }
+
+    @Override
+    public T next()
+    {
+        if (! this.hasNext()) throw new NoSuchElementException();
+        this.fetched = false;
+        try
+        {
+            return this.mapper.map(this.resources.resultSet);
+        }
+        catch (SQLException e)
+        {
+            this.close();
+            throw new DataException("Failed to read row", e);
+        }
+    }
+
+    public boolean isClosed()
+    {
+        return this.resources.closed;
+    }
+
+    @Override
+    public void close()
+    {
+        open.remove(this.detector);
+        this.detector.clear();
+        this.resources.close();
+    }
+
+    /**
+     * A sequential stream of the remaining rows, closing the stream closes this cursor
+     */
+    public Stream<T> stream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false).onClose(this::close);
+    }
+
+    public String toString()
+    {
+        return "DatabaseCursor(closed: " + this.resources.closed + ")";
+    }
+
+    /**
+     * The database resources of a cursor, separate from the cursor so that they can be closed once the cursor has been collected
+     */
+    private static final class Resources
+    {
+        private final Connection connection;
+
+        private final boolean ownsConnection;
+
+        private final PreparedStatement statement;
+
+        private final ResultSet resultSet;
+
+        /**
+         * Where the cursor was opened, only captured when tracing
+         */
+        private final Throwable openedAt;
+
+        private volatile boolean closed = false;
+
+        private Resources(Connection connection, boolean ownsConnection, PreparedStatement statement, ResultSet resultSet)
+        {
+            this.connection = connection;
+            this.ownsConnection = ownsConnection;
+            this.statement = statement;
+            this.resultSet = resultSet;
+            this.openedAt = logger.isTraceEnabled() ? new Throwable("Cursor opened here") : null;
+        }
+
+        private synchronized void close()
+        {
+            if (this.closed) return;
+            this.closed = true;
+            try
+            {
+                this.resultSet.close();
+            }
+            catch (SQLException e)
+            {
+                // eat
+            }
+            try
+            {
+                this.statement.close();
+            }
+            catch (SQLException e)
+            {
+                // eat
+            }
+            // a connection we borrowed for the cursor goes back to the pool
+            if (this.ownsConnection)
+            {
+                try
+                {
+                    this.connection.commit();
+                }
+                catch (SQLException e)
+                {
+                    // eat
+                }
+                try
+                {
+                    this.connection.setAutoCommit(true);
+                }
+                catch (SQLException e)
+                {
+                    // eat
+                }
+                try
+                {
+                    this.connection.close();
+                }
+                catch (SQLException e)
+                {
+                    // eat
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the resources of a cursor which was collected without being closed, 
+     * closing the connection blocks, so it is done off of the reaper thread
+     */
+    private static final class LeakDetector extends PhantomReference<DatabaseCursor<?>> implements ReferenceReaper.Reapable
+    {
+        private final Resources resources;
+
+        private LeakDetector(DatabaseCursor<?> cursor, Resources resources)
+        {
+            super(cursor, ReferenceReaper.shared().queue());
+            this.resources = resources;
+        }
+
+        @Override
+        public void reap()
+        {
+            if (open.remove(this) && (! this.resources.closed))
+            {
+                leaked.incrementAndGet();
+                if (this.resources.openedAt != null) logger.warn("A database cursor was not closed, it has been closed now it was garbage collected", this.resources.openedAt);
+                else logger.warn("A database cursor was not closed, it has been closed now it was garbage collected, enable trace logging of " + DatabaseCursor.class.getName() + " to see where it was opened");
+                CacheExecutors.refresh().execute(this.resources::close);
+            }
+        }
+    }
+}
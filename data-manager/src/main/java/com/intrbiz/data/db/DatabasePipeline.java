@@ -0,0 +1,210 @@
+package com.intrbiz.data.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.intrbiz.data.DataException;
+import com.intrbiz.data.db.DatabaseConnection.ParameterBinder;
+import com.intrbiz.data.db.DatabaseConnection.RowMapper;
+
+/**
+ * <p>
+ * Queue a number of independent queries, which are then sent to the
+ * database together in a single statement, saving a round trip per
+ * query.  Each query gets a future, which is completed with its result
+ * once the pipeline is executed.
+ * </p>
+ *
+ * <p>
+ * The queries are joined into one statement of many queries, which the
+ * PostgreSQL driver sends in one go, reading back a result set per query.
+ * Every query must return a single result set.  Should the queries have
+ * more than {@link DatabaseConnection#MAX_PARAMETERS} parameters between
+ * them, they are split into as few statements as needed.
+ * </p>
+ *
+ * <p>
+ * Each combination of queries is a statement which will rarely be seen
+ * again, so pipelined statements are not kept in the prepared statement
+ * cache of the connection.
+ * </p>
+ *
+ * <p>
+ * A pipeline can be reused once executed.  A pipeline is not thread safe.
+ * </p>
+ */
+public final class DatabasePipeline
+{
+    private final DatabaseConnection connection;
+
+    private final List<Call<?>> calls = new ArrayList<Call<?>>();
+
+    DatabasePipeline(DatabaseConnection connection)
+    {
+        super();
+        this.connection = connection;
+    }
+
+    /**
+     * Queue a query which returns its first row, or null
+     * @param sql the query
+     * @param parameters the number of parameters of the query
+     * @param binder bind the parameters of the query, after the given offset
+     * @param mapper read a row
+     */
+    public <T> CompletableFuture<T> add(String sql, int parameters, ParameterBinder binder, RowMapper<T> mapper)
+    {
+        Call<T> call = new Call<T>(sql, parameters, binder, (rs) -> rs.next() ? mapper.map(rs) : null);
+        this.calls.add(call);
+        return call.result;
+    }
+
+    /**
+     * Queue a query which returns all its rows
+     * @param sql the query
+     * @param parameters the number of parameters of the query
+     * @param binder bind the parameters of the query, after the given offset
+     * @param mapper read a row
+     */
+    public <T> CompletableFuture<List<T>> addList(String sql, int parameters, ParameterBinder binder, RowMapper<T> mapper)
+    {
+        Call<List<T>> call = new Call<List<T>>(sql, parameters, binder, (rs) -> {
+            List<T> ret = new LinkedList<T>();
+            while (rs.next())
+            {
+                ret.add(mapper.map(rs));
+            }
+            return ret;
+        });
+        this.calls.add(call);
+        return call.result;
+    }
+
+    /**
+     * The number of queries waiting to be executed
+     */
+    public int size()
+    {
+        return this.calls.size();
+    }
+
+    /**
+     * Send all the queued queries to the database, completing their futures.
+     *
+     * Should a statement fail every future which has not been completed
+     * is completed exceptionally, and the error is thrown.
+     */
+    public void execute() throws DataException
+    {
+        if (this.calls.isEmpty()) return;
+        final List<Call<?>> calls = new ArrayList<Call<?>>(this.calls);
+        this.calls.clear();
+        try
+        {
+            this.connection.use((with) -> {
+                // split the queries into batches within the parameter limit
+                int start = 0;
+                int parameters = 0;
+                for (int i = 0; i < calls.size(); i++)
+                {
+                    int next = calls.get(i).parameters;
+                    if (i > start && parameters + next > DatabaseConnection.MAX_PARAMETERS)
+                    {
+                        executeBatch(with, calls.subList(start, i));
+                        start = i;
+                        parameters = 0;
+                    }
+                    parameters += next;
+                }
+                executeBatch(with, calls.subList(start, calls.size()));
+                return null;
+            });
+        }
+        catch (DataException e)
+        {
+            for (Call<?> call : calls)
+            {
+                call.result.completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    private static void executeBatch(Connection with, List<Call<?>> batch) throws SQLException
+    {
+        // join the queries
+        StringBuilder sql = new StringBuilder();
+        for (Call<?> call : batch)
+        {
+            if (sql.length() > 0) sql.append(";\n");
+            sql.append(call.sql);
+        }
+        // keep out of the statement cache, which only holds statements prepared from the SQL alone, or with a result set type and concurrency
+        try (PreparedStatement stmt = with.prepareStatement(sql.toString(), Statement.NO_GENERATED_KEYS))
+        {
+            int offset = 0;
+            for (Call<?> call : batch)
+            {
+                call.binder.bind(stmt, offset);
+                offset += call.parameters;
+            }
+            stmt.execute();
+            for (Call<?> call : batch)
+            {
+                try (ResultSet rs = stmt.getResultSet())
+                {
+                    if (rs == null) throw new SQLException("The query did not return a result set: " + call.sql);
+                    call.complete(rs);
+                }
+                stmt.getMoreResults();
+            }
+        }
+    }
+
+    public String toString()
+    {
+        return "DatabasePipeline(queued: " + this.calls.size() + ")";
+    }
+
+    /**
+     * Read the whole result of a query
+     */
+    @FunctionalInterface
+    private static interface ResultReader<T>
+    {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    private static final class Call<T>
+    {
+        private final String sql;
+
+        private final int parameters;
+
+        private final ParameterBinder binder;
+
+        private final ResultReader<T> reader;
+
+        private final CompletableFuture<T> result = new CompletableFuture<T>();
+
+        private Call(String sql, int parameters, ParameterBinder binder, ResultReader<T> reader)
+        {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.binder = binder;
+            this.reader = reader;
+        }
+
+        private void complete(ResultSet rs) throws SQLException
+        {
+            this.result.complete(this.reader.read(rs));
+        }
+    }
+}
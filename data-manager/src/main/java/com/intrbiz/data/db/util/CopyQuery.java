@@ -0,0 +1,75 @@
+package com.intrbiz.data.db.util;
+
+import java.util.Arrays;
+
+/**
+ * A bulk load of rows using <code>COPY ... FROM STDIN</code>, with
+ * the statements to run before the copy, for example to create a
+ * staging table, and after the copy, for example to merge the
+ * staging table into the target table.
+ */
+public final class CopyQuery
+{
+    private static final String[] NONE = new String[0];
+
+    private final String[] before;
+
+    private final String copy;
+
+    private final String[] after;
+
+    private final int columns;
+
+    /**
+     * @param copy the copy statement
+     * @param columns the number of columns of one row
+     */
+    public CopyQuery(String copy, int columns)
+    {
+        this(NONE, copy, NONE, columns);
+    }
+
+    /**
+     * @param before the statements to run before the copy
+     * @param copy the copy statement
+     * @param after the statements to run after the copy
+     * @param columns the number of columns of one row
+     */
+    public CopyQuery(String[] before, String copy, String[] after, int columns)
+    {
+        super();
+        if (columns <= 0) throw new IllegalArgumentException("A row must have at least one column");
+        this.before = before;
+        this.copy = copy;
+        this.after = after;
+        this.columns = columns;
+    }
+
+    public String[] getBefore()
+    {
+        return this.before;
+    }
+
+    public String getCopy()
+    {
+        return this.copy;
+    }
+
+    public String[] getAfter()
+    {
+        return this.after;
+    }
+
+    /**
+     * The number of columns of one row
+     */
+    public int getColumns()
+    {
+        return this.columns;
+    }
+
+    public String toString()
+    {
+        return "CopyQuery(" + Arrays.toString(this.before) + ", " + this.copy + ", " + Arrays.toString(this.after) + ")";
+    }
+}
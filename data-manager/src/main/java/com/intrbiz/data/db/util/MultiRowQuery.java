@@ -0,0 +1,78 @@
+package com.intrbiz.data.db.util;
+
+/**
+ * A query which processes many rows in one statement, for example 
+ * calling a function once for every row of a VALUES list.  The 
+ * query is built from a prefix, the placeholders of a single row, 
+ * repeated for every row, and a suffix.
+ */
+public final class MultiRowQuery
+{
+    private final String prefix;
+
+    private final String row;
+
+    private final String suffix;
+
+    private final int columns;
+
+    /**
+     * @param prefix the SQL before the rows
+     * @param row the placeholders of one row
+     * @param suffix the SQL after the rows
+     * @param columns the number of parameters of one row
+     */
+    public MultiRowQuery(String prefix, String row, String suffix, int columns)
+    {
+        super();
+        if (columns <= 0) throw new IllegalArgumentException("A row must have at least one column");
+        this.prefix = prefix;
+        this.row = row;
+        this.suffix = suffix;
+        this.columns = columns;
+    }
+
+    public String getPrefix()
+    {
+        return this.prefix;
+    }
+
+    public String getRow()
+    {
+        return this.row;
+    }
+
+    public String getSuffix()
+    {
+        return this.suffix;
+    }
+
+    /**
+     * The number of parameters of one row
+     */
+    public int getColumns()
+    {
+        return this.columns;
+    }
+
+    /**
+     * Build the SQL for the given number of rows
+     */
+    public String toSQL(int rows)
+    {
+        StringBuilder sb = new StringBuilder(this.prefix.length() + this.suffix.length() + ((this.row.length() + 2) * rows));
+        sb.append(this.prefix);
+        for (int i = 0; i < rows; i++)
+        {
+            if (i > 0) sb.append(", ");
+            sb.append(this.row);
+        }
+        sb.append(this.suffix);
+        return sb.toString();
+    }
+
+    public String toString()
+    {
+        return this.toSQL(1);
+    }
+}
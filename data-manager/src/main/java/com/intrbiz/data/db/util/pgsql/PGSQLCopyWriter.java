@@ -0,0 +1,444 @@
+package com.intrbiz.data.db.util.pgsql;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.UUID;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * <p>
+ * Write rows to a <code>COPY ... FROM STDIN (FORMAT binary)</code>
+ * in the PostgreSQL binary copy format.
+ * </p>
+ *
+ * <p>
+ * Rows are encoded into a local buffer, which is sent to the server
+ * once it has grown past the flush size.  Every row must start with
+ * a call to <code>startRow</code>, followed by a write for every column
+ * of the copy, in the order of the column list of the copy.
+ * </p>
+ */
+public final class PGSQLCopyWriter
+{
+    private static final byte[] SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+
+    /**
+     * The PostgreSQL epoch (2000-01-01) in microseconds since the Unix epoch
+     */
+    private static final long PG_EPOCH_MICROS = 946_684_800_000_000L;
+
+    /**
+     * The PostgreSQL epoch (2000-01-01) in days since the Unix epoch
+     */
+    private static final long PG_EPOCH_DAYS = 10_957L;
+
+    private static final int TEXT_OID = 25;
+
+    private static final int UUID_OID = 2950;
+
+    private static final byte AF_INET = 2;
+
+    private static final byte AF_INET6 = 3;
+
+    private final CopyIn copy;
+
+    private final int flushSize;
+
+    private byte[] buffer;
+
+    private int length = 0;
+
+    private long rows = 0;
+
+    public PGSQLCopyWriter(CopyIn copy, int flushSize)
+    {
+        super();
+        this.copy = copy;
+        this.flushSize = flushSize;
+        this.buffer = new byte[Math.min(flushSize, 1024 * 1024) + 4096];
+        // header: signature, flags and header extension length
+        this.put(SIGNATURE);
+        this.putInt(0);
+        this.putInt(0);
+    }
+
+    /**
+     * Start a binary copy using the given connection, which must be a PostgreSQL connection
+     * @param with the connection
+     * @param sql the <code>COPY ... FROM STDIN (FORMAT binary)</code> statement
+     * @param flushSize the number of bytes to buffer before sending them to the server
+     */
+    public static PGSQLCopyWriter open(Connection with, String sql, int flushSize) throws SQLException
+    {
+        return new PGSQLCopyWriter(with.unwrap(PGConnection.class).getCopyAPI().copyIn(sql), flushSize);
+    }
+
+    /**
+     * The number of rows written so far
+     */
+    public long getRows()
+    {
+        return this.rows;
+    }
+
+    /**
+     * Start a new row which has the given number of columns
+     */
+    public void startRow(int columns) throws SQLException
+    {
+        if (this.length >= this.flushSize) this.flush();
+        this.putShort(columns);
+        this.rows++;
+    }
+
+    public void writeNull()
+    {
+        this.putInt(-1);
+    }
+
+    public void writeString(String value)
+    {
+        if (value == null) this.writeNull();
+        else this.writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void writeInt(int value)
+    {
+        this.putInt(4);
+        this.putInt(value);
+    }
+
+    public void writeInt(Integer value)
+    {
+        if (value == null) this.writeNull();
+        else this.writeInt(value.intValue());
+    }
+
+    public void writeLong(long value)
+    {
+        this.putInt(8);
+        this.putLong(value);
+    }
+
+    public void writeLong(Long value)
+    {
+        if (value == null) this.writeNull();
+        else this.writeLong(value.longValue());
+    }
+
+    public void writeFloat(float value)
+    {
+        this.putInt(4);
+        this.putInt(Float.floatToIntBits(value));
+    }
+
+    public void writeFloat(Float value)
+    {
+        if (value == null) this.writeNull();
+        else this.writeFloat(value.floatValue());
+    }
+
+    public void writeDouble(double value)
+    {
+        this.putInt(8);
+        this.putLong(Double.doubleToLongBits(value));
+    }
+
+    public void writeDouble(Double value)
+    {
+        if (value == null) this.writeNull();
+        else this.writeDouble(value.doubleValue());
+    }
+
+    public void writeBoolean(boolean value)
+    {
+        this.putInt(1);
+        this.putByte(value ? 1 : 0);
+    }
+
+    public void writeBoolean(Boolean value)
+    {
+        if (value == null) this.writeNull();
+        else this.writeBoolean(value.booleanValue());
+    }
+
+    public void writeDate(Date value)
+    {
+        if (value == null)
+        {
+            this.writeNull();
+            return;
+        }
+        this.putInt(4);
+        this.putInt((int) (value.toLocalDate().toEpochDay() - PG_EPOCH_DAYS));
+    }
+
+    public void writeTimestamp(Timestamp value)
+    {
+        if (value == null)
+        {
+            this.writeNull();
+            return;
+        }
+        long micros = (Math.floorDiv(value.getTime(), 1000L) * 1_000_000L) + (value.getNanos() / 1000);
+        this.putInt(8);
+        this.putLong(micros - PG_EPOCH_MICROS);
+    }
+
+    public void writeUUID(UUID value)
+    {
+        if (value == null)
+        {
+            this.writeNull();
+            return;
+        }
+        this.putInt(16);
+        this.putLong(value.getMostSignificantBits());
+        this.putLong(value.getLeastSignificantBits());
+    }
+
+    public void writeBytes(byte[] value)
+    {
+        if (value == null)
+        {
+            this.writeNull();
+            return;
+        }
+        this.putInt(value.length);
+        this.put(value);
+    }
+
+    /**
+     * Write an enum as its ordinal, a null enum is written as -1, the same as <code>DBUtil.setEnum</code>
+     */
+    public void writeEnum(Enum<?> value)
+    {
+        this.writeInt(value == null ? -1 : value.ordinal());
+    }
+
+    public void writeJSONB(String value)
+    {
+        if (value == null)
+        {
+            this.writeNull();
+            return;
+        }
+        byte[] json = value.getBytes(StandardCharsets.UTF_8);
+        this.putInt(json.length + 1);
+        this.putByte(1 /* jsonb version */);
+        this.put(json);
+    }
+
+    public void writeMacAddr(String value)
+    {
+        if (value == null)
+        {
+            this.writeNull();
+            return;
+        }
+        String hex = value.replaceAll("[:\\-.]", "");
+        if (hex.length() != 12) throw new IllegalArgumentException("Invalid MAC address: " + value);
+        this.putInt(6);
+        for (int i = 0; i < 12; i += 2)
+        {
+            this.putByte(Integer.parseInt(hex.substring(i, i + 2), 16));
+        }
+    }
+
+    public void writeInet(String value)
+    {
+        this.writeInet(value, false);
+    }
+
+    public void writeCidr(String value)
+    {
+        this.writeInet(value, true);
+    }
+
+    private void writeInet(String value, boolean cidr)
+    {
+        if (value == null)
+        {
+            this.writeNull();
+            return;
+        }
+        int slash = value.indexOf('/');
+        byte[] address;
+        try
+        {
+            // only literal addresses are accepted, so no name lookup will happen
+            String literal = slash == -1 ? value : value.substring(0, slash);
+            if (literal.indexOf(':') == -1 && (! literal.matches("\\d{1,3}(\\.\\d{1,3}){3}"))) throw new IllegalArgumentException("Invalid network address: " + value);
+            address = InetAddress.getByName(literal).getAddress();
+        }
+        catch (UnknownHostException e)
+        {
+            throw new IllegalArgumentException("Invalid network address: " + value, e);
+        }
+        int bits = slash == -1 ? address.length * 8 : Integer.parseInt(value.substring(slash + 1));
+        this.putInt(4 + address.length);
+        this.putByte(address.length == 4 ? AF_INET : AF_INET6);
+        this.putByte(bits);
+        this.putByte(cidr ? 1 : 0);
+        this.putByte(address.length);
+        this.put(address);
+    }
+
+    public void writeStringArray(Collection<String> values)
+    {
+        if (values == null)
+        {
+            this.writeNull();
+            return;
+        }
+        byte[][] elements = new byte[values.size()][];
+        int size = 0, i = 0;
+        for (String value : values)
+        {
+            elements[i] = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+            size += 4 + (elements[i] == null ? 0 : elements[i].length);
+            i++;
+        }
+        this.startArray(TEXT_OID, elements.length, size, values.contains(null));
+        for (byte[] element : elements)
+        {
+            this.writeBytes(element);
+        }
+    }
+
+    public void writeUUIDArray(Collection<UUID> values)
+    {
+        if (values == null)
+        {
+            this.writeNull();
+            return;
+        }
+        int nulls = 0;
+        for (UUID value : values)
+        {
+            if (value == null) nulls++;
+        }
+        this.startArray(UUID_OID, values.size(), (values.size() * 4) + ((values.size() - nulls) * 16), nulls > 0);
+        for (UUID value : values)
+        {
+            this.writeUUID(value);
+        }
+    }
+
+    /**
+     * Write the header of a one dimensional array, the elements must follow
+     */
+    private void startArray(int elementOid, int count, int elementsSize, boolean hasNulls)
+    {
+        if (count == 0)
+        {
+            this.putInt(12);
+            this.putInt(0);
+            this.putInt(0);
+            this.putInt(elementOid);
+            return;
+        }
+        this.putInt(20 + elementsSize);
+        this.putInt(1 /* dimensions */);
+        this.putInt(hasNulls ? 1 : 0);
+        this.putInt(elementOid);
+        this.putInt(count);
+        this.putInt(1 /* lower bound */);
+    }
+
+    /**
+     * Send any buffered rows to the server
+     */
+    public void flush() throws SQLException
+    {
+        if (this.length > 0)
+        {
+            this.copy.writeToCopy(this.buffer, 0, this.length);
+            this.length = 0;
+        }
+    }
+
+    /**
+     * Finish the copy, sending any buffered rows to the server
+     * @return the number of rows the server copied
+     */
+    public long finish() throws SQLException
+    {
+        this.putShort(-1);
+        this.flush();
+        return this.copy.endCopy();
+    }
+
+    /**
+     * Abandon the copy, should it not have finished
+     */
+    public void cancel()
+    {
+        if (this.copy.isActive())
+        {
+            try
+            {
+                this.copy.cancelCopy();
+            }
+            catch (SQLException e)
+            {
+                // eat
+            }
+        }
+    }
+
+    // encoding
+
+    private void ensure(int bytes)
+    {
+        if (this.length + bytes > this.buffer.length)
+        {
+            byte[] expanded = new byte[Math.max(this.buffer.length * 2, this.length + bytes)];
+            System.arraycopy(this.buffer, 0, expanded, 0, this.length);
+            this.buffer = expanded;
+        }
+    }
+
+    private void put(byte[] bytes)
+    {
+        this.ensure(bytes.length);
+        System.arraycopy(bytes, 0, this.buffer, this.length, bytes.length);
+        this.length += bytes.length;
+    }
+
+    private void putByte(int value)
+    {
+        this.ensure(1);
+        this.buffer[this.length++] = (byte) value;
+    }
+
+    private void putShort(int value)
+    {
+        this.ensure(2);
+        this.buffer[this.length++] = (byte) (value >>> 8);
+        this.buffer[this.length++] = (byte) value;
+    }
+
+    private void putInt(int value)
+    {
+        this.ensure(4);
+        this.buffer[this.length++] = (byte) (value >>> 24);
+        this.buffer[this.length++] = (byte) (value >>> 16);
+        this.buffer[this.length++] = (byte) (value >>> 8);
+        this.buffer[this.length++] = (byte) value;
+    }
+
+    private void putLong(long value)
+    {
+        this.putInt((int) (value >>> 32));
+        this.putInt((int) value);
+    }
+}
@@ -0,0 +1,68 @@
+package com.intrbiz.data.cache;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class CachePointerListTest
+{
+    @Test
+    public void testUUIDKeys() throws Exception
+    {
+        List<String> keys = new LinkedList<String>();
+        for (int i = 0; i < 100; i++)
+        {
+            keys.add("table." + UUID.randomUUID());
+        }
+        CachePointerList list = new CachePointerList(keys);
+        assertThat(list.getPrefix(), is(equalTo("table.")));
+        assertThat(list.getKeys(), is(equalTo(keys)));
+        assertThat(roundTrip(list).getKeys(), is(equalTo(keys)));
+    }
+
+    @Test
+    public void testSuffixKeys() throws Exception
+    {
+        List<String> keys = Arrays.asList("get_user.1", "get_user.2", "get_user.3");
+        CachePointerList list = new CachePointerList(keys);
+        assertThat(list.getPrefix(), is(equalTo("get_user.")));
+        assertThat(list.size(), is(equalTo(3)));
+        assertThat(list.getKey(1), is(equalTo("get_user.2")));
+        assertThat(roundTrip(list).getKeys(), is(equalTo(keys)));
+    }
+
+    @Test
+    public void testMixedKeys() throws Exception
+    {
+        List<String> keys = Arrays.asList("a.b.1", "a.c.2", "b.3", "nodot", "a.b." + UUID.randomUUID().toString().toUpperCase());
+        CachePointerList list = new CachePointerList(keys);
+        assertThat(list.getPrefix(), is(equalTo("")));
+        assertThat(roundTrip(list).getKeys(), is(equalTo(keys)));
+        List<String> nested = Arrays.asList("a.b.1", "a.c.2");
+        assertThat(new CachePointerList(nested).getPrefix(), is(equalTo("a.")));
+        assertThat(new CachePointerList(new LinkedList<String>()).getKeys().isEmpty(), is(true));
+    }
+
+    private static CachePointerList roundTrip(CachePointerList list) throws Exception
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer))
+        {
+            out.writeObject(list);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer.toByteArray())))
+        {
+            return (CachePointerList) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.intrbiz.data.cache.codec;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.intrbiz.data.DataException;
+
+public class EntityCodecRegistryTest
+{
+    @Test
+    public void testFieldsRoundTrip() throws Exception
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        EntityOutput out = new EntityOutput(new DataOutputStream(buffer));
+        UUID id = UUID.randomUUID();
+        Timestamp at = new Timestamp(1234567890123L);
+        at.setNanos(123456789);
+        out.writeUUID(id);
+        out.writeUUID(null);
+        out.writeString("h\u00e9llo");
+        out.writeString(null);
+        out.writeInt(42);
+        out.writeInt((Integer) null);
+        out.writeLong(Long.valueOf(7L));
+        out.writeTimestamp(at);
+        out.writeEnum(Thread.State.BLOCKED);
+        out.writeStringList(Arrays.asList("a", null, "c"));
+        EntityInput in = new EntityInput(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+        assertThat(in.readUUID(), is(equalTo(id)));
+        assertThat(in.readUUID(), is(nullValue()));
+        assertThat(in.readString(), is(equalTo("h\u00e9llo")));
+        assertThat(in.readString(), is(nullValue()));
+        assertThat(in.readInt(), is(equalTo(42)));
+        assertThat(in.readNullableInt(), is(nullValue()));
+        assertThat(in.readNullableLong(), is(equalTo(7L)));
+        assertThat(in.readTimestamp(), is(equalTo(at)));
+        assertThat(in.readEnum(Thread.State.class), is(equalTo(Thread.State.BLOCKED)));
+        assertThat(in.readStringList(), is(equalTo(Arrays.asList("a", null, "c"))));
+    }
+
+    @Test
+    public void testRegister()
+    {
+        EntityCodec<StringBuilder> codec = new TestCodec(StringBuilder.class, 0x5EED);
+        EntityCodecRegistry.get().register(codec);
+        try
+        {
+            assertThat(EntityCodecRegistry.get().getCodec(StringBuilder.class), is(sameInstance(codec)));
+            assertThat(EntityCodecRegistry.get().getCodec(0x5EED), is(sameInstance((Object) codec)));
+            // registering again is a no-op
+            EntityCodecRegistry.get().register(new TestCodec(StringBuilder.class, 0x5EED));
+            assertThat(EntityCodecRegistry.get().getCodec(StringBuilder.class), is(sameInstance(codec)));
+            // a clashing type id is rejected
+            try
+            {
+                EntityCodecRegistry.get().register(new TestCodec(StringBuffer.class, 0x5EED));
+                fail("Expected the clashing type id to be rejected");
+            }
+            catch (DataException e)
+            {
+            }
+        }
+        finally
+        {
+            EntityCodecRegistry.get().unregister(codec);
+        }
+        assertThat(EntityCodecRegistry.get().getCodec(StringBuilder.class), is(nullValue()));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static class TestCodec implements EntityCodec
+    {
+        private final Class type;
+
+        private final int typeId;
+
+        public TestCodec(Class type, int typeId)
+        {
+            this.type = type;
+            this.typeId = typeId;
+        }
+
+        public Class getType()
+        {
+            return this.type;
+        }
+
+        public int getTypeId()
+        {
+            return this.typeId;
+        }
+
+        public void write(EntityOutput out, Object entity)
+        {
+            out.writeString(entity.toString());
+        }
+
+        public Object read(EntityInput in)
+        {
+            return new StringBuilder(in.readString());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.intrbiz.data.cache.invalidation;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.intrbiz.data.cache.memory.local.LocalMemoryCache;
+import com.intrbiz.data.cache.tiered.TieredCache;
+
+public class InvalidationBusTest
+{
+    @Test
+    public void testEncodeDecode()
+    {
+        CacheInvalidation invalidation = new CacheInvalidation("node-1");
+        invalidation.addKey("cache_a", "get_user.1");
+        invalidation.addKey("cache_a", "odd\nkey\\with\rescapes");
+        invalidation.addPrefix("cache_a", "get_users.");
+        invalidation.addPrefix("cache_b", "");
+        invalidation.addTag("cache_b", "users");
+        List<String> payloads = invalidation.encode(8000);
+        assertThat(payloads.size(), is(equalTo(1)));
+        CacheInvalidation decoded = CacheInvalidation.decode(payloads.get(0));
+        assertThat(decoded.getOrigin(), is(equalTo("node-1")));
+        assertThat(decoded.getKeys("cache_a"), is(equalTo(invalidation.getKeys("cache_a"))));
+        assertThat(decoded.getPrefixes("cache_a"), is(equalTo(invalidation.getPrefixes("cache_a"))));
+        assertThat(decoded.getPrefixes("cache_b").contains(""), is(true));
+        assertThat(decoded.getKeys("cache_b").isEmpty(), is(true));
+        assertThat(decoded.getTags("cache_b").contains("users"), is(true));
+        assertThat(decoded.getTags("cache_a").isEmpty(), is(true));
+    }
+
+    @Test
+    public void testEncodeSplitsPayloads()
+    {
+        CacheInvalidation invalidation = new CacheInvalidation("node-1");
+        for (int i = 0; i < 1000; i++)
+        {
+            invalidation.addKey("cache_a", "get_user." + i);
+        }
+        List<String> payloads = invalidation.encode(200);
+        assertThat(payloads.size() > 1, is(true));
+        int keys = 0;
+        for (String payload : payloads)
+        {
+            assertThat(payload.length() <= 200, is(true));
+            keys += CacheInvalidation.decode(payload).getKeys("cache_a").size();
+        }
+        assertThat(keys, is(equalTo(1000)));
+    }
+
+    @Test
+    public void testTieredCachesStayCoherent() throws Exception
+    {
+        List<TestBus> network = new CopyOnWriteArrayList<TestBus>();
+        TestBus busA = new TestBus(network);
+        TestBus busB = new TestBus(network);
+        TieredCache nodeA = new TieredCache("test", new LocalMemoryCache("test-a1"), new LocalMemoryCache("test-a2"), true, busA);
+        TieredCache nodeB = new TieredCache("test", new LocalMemoryCache("test-b1"), new LocalMemoryCache("test-b2"), true, busB);
+        nodeA.put("get_user.1", "old");
+        nodeB.put("get_user.1", "old");
+        nodeB.put("get_user.2", "old");
+        nodeB.put("get_users.all", "old");
+        busA.flush();
+        busB.flush();
+        // a write on node A invalidates node B
+        nodeA.put("get_user.1", "new");
+        busA.flush();
+        assertThat(nodeB.get("get_user.1"), is(nullValue()));
+        assertThat(nodeB.get("get_user.2"), is(equalTo("old")));
+        // but not node A itself
+        assertThat(nodeA.get("get_user.1"), is(equalTo("new")));
+        // prefix invalidation
+        nodeA.removePrefix("get_user");
+        busA.flush();
+        assertThat(nodeB.get("get_user.2"), is(nullValue()));
+        assertThat(nodeB.get("get_users.all"), is(nullValue()));
+        busA.close();
+        busB.close();
+    }
+
+    @Test
+    public void testFillDoesNotEvictPeer() throws Exception
+    {
+        List<TestBus> network = new CopyOnWriteArrayList<TestBus>();
+        TestBus busA = new TestBus(network);
+        TestBus busB = new TestBus(network);
+        TieredCache nodeA = new TieredCache("test", new LocalMemoryCache("test-fill-a1"), new LocalMemoryCache("test-fill-a2"), true, busA);
+        TieredCache nodeB = new TieredCache("test", new LocalMemoryCache("test-fill-b1"), new LocalMemoryCache("test-fill-b2"), true, busB);
+        // both nodes read the key after a miss
+        nodeB.fill("get_user.1", "user_1");
+        busB.flush();
+        nodeA.fill("get_user.1", "user_1");
+        busA.flush();
+        // neither evicts the other
+        assertThat(nodeB.getLevel1().get("get_user.1"), is(equalTo("user_1")));
+        assertThat(nodeB.getLevel2().get("get_user.1"), is(equalTo("user_1")));
+        assertThat(nodeA.getLevel1().get("get_user.1"), is(equalTo("user_1")));
+        // a write still does
+        nodeA.put("get_user.1", "user_1_changed");
+        busA.flush();
+        assertThat(nodeB.get("get_user.1"), is(nullValue()));
+        busA.close();
+        busB.close();
+    }
+
+    /**
+     * A bus which delivers directly to every bus on the same network
+     */
+    private static class TestBus extends AbstractInvalidationBus
+    {
+        private final List<TestBus> network;
+
+        public TestBus(List<TestBus> network)
+        {
+            super("test", 60_000L, DEFAULT_MAX_BATCH_SIZE, 8000);
+            this.network = network;
+            this.network.add(this);
+        }
+
+        @Override
+        protected void send(String payload) throws Exception
+        {
+            for (TestBus bus : this.network)
+            {
+                bus.receive(payload);
+            }
+        }
+    }
+}
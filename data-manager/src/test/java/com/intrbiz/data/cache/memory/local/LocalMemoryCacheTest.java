@@ -0,0 +1,399 @@
+package com.intrbiz.data.cache.memory.local;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.CacheListener;
+import com.intrbiz.data.cache.CacheStats;
+import com.intrbiz.data.cache.codec.EntityCacheCodec;
+import com.intrbiz.data.cache.tiered.TieredCache;
+
+public class LocalMemoryCacheTest
+{
+    @Test
+    public void testUnbounded()
+    {
+        LocalMemoryCache cache = new LocalMemoryCache("test");
+        for (int i = 0; i < 10_000; i++)
+        {
+            cache.put("key_" + i, "value_" + i);
+        }
+        assertThat(cache.isBounded(), is(equalTo(false)));
+        assertThat(cache.getWeightedSize(), is(equalTo(10_000L)));
+        assertThat(cache.get("key_0"), is(equalTo("value_0")));
+    }
+
+    @Test
+    public void testBoundedBySize()
+    {
+        LocalMemoryCache cache = new LocalMemoryCache("test", 100);
+        for (int i = 0; i < 10_000; i++)
+        {
+            cache.put("key_" + i, "value_" + i);
+        }
+        assertThat(cache.isBounded(), is(equalTo(true)));
+        assertThat(cache.getWeightedSize() <= 100L, is(equalTo(true)));
+        assertThat(cache.keySet("key_").size() <= 100, is(equalTo(true)));
+    }
+
+    @Test
+    public void testBoundedByWeight()
+    {
+        LocalMemoryCache cache = new LocalMemoryCache("test", 1_000, (key, value) -> ((String) value).length());
+        for (int i = 0; i < 10_000; i++)
+        {
+            cache.put("key_" + i, "0123456789");
+        }
+        assertThat(cache.getWeightedSize() <= 1_000L, is(equalTo(true)));
+        assertThat(cache.keySet("key_").size() <= 100, is(equalTo(true)));
+    }
+
+    @Test
+    public void testFrequentKeysRetained()
+    {
+        LocalMemoryCache cache = new LocalMemoryCache("test", 100);
+        // a small hot set which is read often
+        for (int i = 0; i < 10; i++)
+        {
+            cache.put("hot_" + i, "value_" + i);
+        }
+        for (int j = 0; j < 10; j++)
+        {
+            for (int i = 0; i < 10; i++)
+            {
+                cache.get("hot_" + i);
+            }
+        }
+        // a scan of one hit wonders, while the hot set is still in use
+        for (int i = 0; i < 10_000; i++)
+        {
+            cache.put("cold_" + i, "value_" + i);
+            if (i % 100 == 0) cache.get("hot_" + ((i / 100) % 10));
+        }
+        for (int i = 0; i < 10; i++)
+        {
+            assertThat(cache.get("hot_" + i), is(equalTo("value_" + i)));
+        }
+    }
+
+    @Test
+    public void testEvictionFiresListeners()
+    {
+        final List<String> removed = new LinkedList<String>();
+        Cache cache = new LocalMemoryCache("test", 10);
+        cache.addListener(new CacheListener()
+        {
+            @Override
+            public void onRemove(String key, Object entry)
+            {
+                removed.add(key);
+            }
+
+            @Override
+            public void onPut(String key, Object entry)
+            {
+            }
+        });
+        for (int i = 0; i < 20; i++)
+        {
+            cache.put("key_" + i, "value_" + i);
+        }
+        assertThat(removed.size(), is(equalTo(10)));
+        for (String key : removed)
+        {
+            assertThat(cache.contains(key), is(equalTo(false)));
+        }
+    }
+
+    @Test
+    public void testRemoveAndClear()
+    {
+        LocalMemoryCache cache = new LocalMemoryCache("test", 10);
+        cache.put("key_1", "value_1");
+        cache.put("key_2", "value_2");
+        cache.remove("key_1");
+        assertThat(cache.get("key_1"), is(nullValue()));
+        assertThat(cache.getWeightedSize(), is(equalTo(1L)));
+        cache.clear();
+        assertThat(cache.getWeightedSize(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void testConcurrentPutAndRemove() throws Exception
+    {
+        LocalMemoryCache cache = new LocalMemoryCache("test", 10);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++)
+        {
+            final int seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 100_000; i++)
+                {
+                    String key = "key_" + random.nextInt(20);
+                    if (random.nextInt(2) == 0) cache.remove(key);
+                    else cache.put(key, "value_" + i);
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        // the map and the policy must agree on what is cached
+        assertThat(cache.size() <= 10, is(equalTo(true)));
+        assertThat(cache.size(), is(equalTo(cache.trackedSize())));
+        assertThat(cache.keySet("key_").size(), is(equalTo(cache.size())));
+    }
+
+    @Test
+    public void testExpiry() throws Exception
+    {
+        final List<String> removed = new LinkedList<String>();
+        Cache cache = new LocalMemoryCache("test");
+        cache.addListener(new CacheListener()
+        {
+            @Override
+            public void onRemove(String key, Object entry)
+            {
+                synchronized (removed)
+                {
+                    removed.add(key);
+                }
+            }
+
+            @Override
+            public void onPut(String key, Object entry)
+            {
+            }
+        });
+        cache.put("key_1", "value_1", 200, TimeUnit.MILLISECONDS);
+        cache.put("key_2", "value_2");
+        assertThat(cache.get("key_1"), is(equalTo("value_1")));
+        // expired by the timer wheel
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (cache.contains("key_1") && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertThat(cache.contains("key_1"), is(equalTo(false)));
+        while (System.currentTimeMillis() < deadline)
+        {
+            synchronized (removed)
+            {
+                if (removed.contains("key_1")) break;
+            }
+            Thread.sleep(10);
+        }
+        synchronized (removed)
+        {
+            assertThat(removed.contains("key_1"), is(equalTo(true)));
+        }
+        assertThat(cache.get("key_1"), is(nullValue()));
+        assertThat(cache.get("key_2"), is(equalTo("value_2")));
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception
+    {
+        final AtomicInteger loads = new AtomicInteger();
+        Cache cache = new LocalMemoryCache("test");
+        long put = System.currentTimeMillis();
+        cache.put("key_1", "value_0", 1000, TimeUnit.MILLISECONDS, (key) -> "value_" + loads.incrementAndGet());
+        // until the refresh window, and then until the reload completes, the stale value is returned
+        long deadline = put + 5_000L;
+        while (loads.get() == 0 && System.currentTimeMillis() < deadline)
+        {
+            // never a miss, the reload may complete at any point
+            Object value = cache.get("key_1");
+            assertThat("value_0".equals(value) || "value_1".equals(value), is(equalTo(true)));
+            Thread.sleep(10);
+        }
+        while (! "value_1".equals(cache.get("key_1")) && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertThat(loads.get(), is(equalTo(1)));
+        assertThat(cache.get("key_1"), is(equalTo("value_1")));
+        // the refreshed entry has a new time to live, outliving the original
+        while (System.currentTimeMillis() < put + 1_200L)
+        {
+            Thread.sleep(10);
+        }
+        assertThat(cache.get("key_1"), is(equalTo("value_1")));
+    }
+
+    @Test
+    public void testKeySetPrefix()
+    {
+        Cache cache = new LocalMemoryCache("test");
+        cache.put("table.1", "a");
+        cache.put("table.2", "b");
+        cache.put("tables.1", "c");
+        cache.put("table", "d");
+        cache.put("other.1", "e");
+        assertThat(cache.keySet("table.").size(), is(equalTo(2)));
+        assertThat(cache.keySet("table.1").size(), is(equalTo(1)));
+        assertThat(cache.keySet("table").size(), is(equalTo(4)));
+        assertThat(cache.keySet("").size(), is(equalTo(5)));
+        cache.removePrefix("table.");
+        assertThat(cache.contains("table.1"), is(equalTo(false)));
+        assertThat(cache.contains("tables.1"), is(equalTo(true)));
+        assertThat(cache.keySet("table").size(), is(equalTo(2)));
+        cache.clear();
+        assertThat(cache.keySet("").size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void testStats()
+    {
+        LocalMemoryCache cache = new LocalMemoryCache("test-stats", 10);
+        for (int i = 0; i < 20; i++)
+        {
+            cache.put("key." + i, "value_" + i);
+        }
+        cache.get("key.19");
+        cache.get("missing");
+        cache.remove("key.19");
+        cache.keySet("key.");
+        CacheStats stats = cache.stats();
+        assertThat(stats.getPuts(), is(equalTo(20L)));
+        assertThat(stats.getHits(), is(equalTo(1L)));
+        assertThat(stats.getMisses(), is(equalTo(1L)));
+        assertThat(stats.getRemoves(), is(equalTo(1L)));
+        assertThat(stats.getEvictions(), is(equalTo(10L)));
+        assertThat(stats.getPrefixScans(), is(equalTo(1L)));
+        assertThat(stats.getEstimatedSize(), is(equalTo(9L)));
+    }
+
+    @Test
+    public void testStatsPerInstance()
+    {
+        LocalMemoryCache first = new LocalMemoryCache("test-stats-instance");
+        LocalMemoryCache second = new LocalMemoryCache("test-stats-instance");
+        first.put("key.1", "value_1");
+        first.get("key.1");
+        second.get("key.1");
+        assertThat(first.stats().getPuts(), is(equalTo(1L)));
+        assertThat(first.stats().getHits(), is(equalTo(1L)));
+        assertThat(first.stats().getMisses(), is(equalTo(0L)));
+        assertThat(second.stats().getPuts(), is(equalTo(0L)));
+        assertThat(second.stats().getMisses(), is(equalTo(1L)));
+        assertThat(second.stats().getEstimatedSize(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void testTieredStats()
+    {
+        LocalMemoryCache level1 = new LocalMemoryCache("test-tiered-stats-1");
+        LocalMemoryCache level2 = new LocalMemoryCache("test-tiered-stats-2");
+        TieredCache cache = new TieredCache("test-tiered-stats", level1, level2, false);
+        level2.put("key.1", "value_1");
+        cache.get("key.1");
+        cache.get("key.2");
+        assertThat(cache.stats().getHits(), is(equalTo(1L)));
+        assertThat(cache.stats().getMisses(), is(equalTo(1L)));
+        assertThat(level1.stats().getHits(), is(equalTo(0L)));
+        assertThat(level1.stats().getMisses(), is(equalTo(2L)));
+        assertThat(level2.stats().getHits(), is(equalTo(1L)));
+        assertThat(level2.stats().getMisses(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void testTieredAsync() throws Exception
+    {
+        LocalMemoryCache level1 = new LocalMemoryCache("test-tiered-async-1");
+        LocalMemoryCache level2 = new LocalMemoryCache("test-tiered-async-2");
+        TieredCache cache = new TieredCache("test-tiered-async", level1, level2, true);
+        level2.put("key.1", "value_1");
+        assertThat(cache.<String>getAsync("key.1").toCompletableFuture().get(), is(equalTo("value_1")));
+        // promoted into level 1
+        assertThat(level1.get("key.1"), is(equalTo("value_1")));
+        assertThat(cache.<String>getAsync("key.2").toCompletableFuture().get(), is(nullValue()));
+        cache.putAsync("key.2", "value_2").toCompletableFuture().get();
+        assertThat(level1.get("key.2"), is(equalTo("value_2")));
+        assertThat(level2.get("key.2"), is(equalTo("value_2")));
+        cache.removeAsync("key.1").toCompletableFuture().get();
+        assertThat(level1.get("key.1"), is(nullValue()));
+        assertThat(level2.get("key.1"), is(nullValue()));
+        assertThat(cache.stats().getHits(), is(equalTo(1L)));
+        assertThat(cache.stats().getMisses(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void testTags()
+    {
+        LocalMemoryCache cache = new LocalMemoryCache("test-tags");
+        cache.put("get_user.1", "user_1", "users", "user.1");
+        cache.put("get_user.2", "user_2", "users", "user.2");
+        cache.put("get_group.1", "group_1", "groups");
+        assertThat(cache.get("get_user.1"), is(equalTo("user_1")));
+        cache.invalidateTag("user.1");
+        assertThat(cache.get("get_user.1"), is(nullValue()));
+        assertThat(cache.contains("get_user.1"), is(false));
+        assertThat(cache.get("get_user.2"), is(equalTo("user_2")));
+        // entries put after the invalidation are current
+        cache.put("get_user.1", "user_1_new", "users", "user.1");
+        assertThat(cache.get("get_user.1"), is(equalTo("user_1_new")));
+        cache.invalidateTag("users");
+        assertThat(cache.get("get_user.1"), is(nullValue()));
+        assertThat(cache.get("get_user.2"), is(nullValue()));
+        assertThat(cache.get("get_group.1"), is(equalTo("group_1")));
+    }
+
+    @Test
+    public void testTieredTags()
+    {
+        LocalMemoryCache level1 = new LocalMemoryCache("test-tiered-tags-1");
+        LocalMemoryCache level2 = new LocalMemoryCache("test-tiered-tags-2");
+        TieredCache cache = new TieredCache("test-tiered-tags", level1, level2, true);
+        cache.put("get_user.1", "user_1", "users");
+        cache.put("get_group.1", "group_1");
+        // tagged entries are not promoted into level 1
+        assertThat(cache.get("get_user.1"), is(equalTo("user_1")));
+        assertThat(cache.get("get_group.1"), is(equalTo("group_1")));
+        assertThat(level1.contains("get_user.1"), is(equalTo(false)));
+        assertThat(level1.contains("get_group.1"), is(equalTo(true)));
+        cache.invalidateTag("users");
+        assertThat(cache.get("get_user.1"), is(nullValue()));
+        // level 1 is not cleared
+        assertThat(level1.get("get_group.1"), is(equalTo("group_1")));
+    }
+
+    @Test
+    public void testCopyOnRead()
+    {
+        LocalMemoryCache cache = new LocalMemoryCache("test-copy-on-read", -1L, null, new EntityCacheCodec());
+        assertThat(cache.isCopyOnRead(), is(true));
+        List<String> value = new ArrayList<String>();
+        value.add("a");
+        cache.put("list", value);
+        cache.put("expiring", value, 1, TimeUnit.MINUTES);
+        cache.put("tagged", value, "lists");
+        cache.put("string", "immutable");
+        // mutating the value put does not change the cache
+        value.add("b");
+        for (String key : new String[] { "list", "expiring", "tagged" })
+        {
+            List<String> read = cache.get(key);
+            assertThat(read, is(equalTo(Arrays.asList("a"))));
+            // nor does mutating a value read
+            read.add("c");
+            assertThat(cache.get(key), is(not(sameInstance((Object) read))));
+            assertThat(cache.<List<String>>get(key).size(), is(equalTo(1)));
+        }
+        // immutable values are not copied
+        assertThat(cache.get("string"), is(equalTo("immutable")));
+        cache.invalidateTag("lists");
+        assertThat(cache.get("tagged"), is(nullValue()));
+    }
+}
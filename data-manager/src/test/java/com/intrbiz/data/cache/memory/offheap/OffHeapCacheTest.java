@@ -0,0 +1,75 @@
+package com.intrbiz.data.cache.memory.offheap;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.intrbiz.data.cache.codec.JavaSerializationCodec;
+import com.intrbiz.data.cache.memory.local.LocalMemoryCache;
+import com.intrbiz.data.cache.tiered.TieredCache;
+
+public class OffHeapCacheTest
+{
+    @Test
+    public void testPutGetRemove()
+    {
+        OffHeapCache cache = new OffHeapCache("test", 4096, 4, new JavaSerializationCodec(), SlabAllocator.direct());
+        cache.put("key_1", "value_1");
+        cache.put("key_2", "value_2");
+        cache.put("key_1", "value_3");
+        assertThat(cache.get("key_1"), is(equalTo("value_3")));
+        assertThat(cache.get("key_2"), is(equalTo("value_2")));
+        cache.remove("key_2");
+        assertThat(cache.get("key_2"), is(nullValue()));
+        assertThat(cache.contains("key_2"), is(equalTo(false)));
+        assertThat(cache.keySet("key_").size(), is(equalTo(1)));
+    }
+
+    @Test
+    public void testLeastRecentlyReadSlabEvicted()
+    {
+        OffHeapCache cache = new OffHeapCache("test", 4096, 4, new JavaSerializationCodec(), SlabAllocator.direct());
+        cache.put("hot", "value");
+        for (int i = 0; i < 10_000; i++)
+        {
+            cache.put("key_" + i, "value_" + i);
+            if (i % 10 == 0) assertThat(cache.get("hot"), is(equalTo("value")));
+        }
+        assertThat(cache.getAllocatedSlabs(), is(equalTo(4)));
+        assertThat(cache.size() < 10_000, is(equalTo(true)));
+        // the most recent writes and the slab holding the hot key are retained
+        assertThat(cache.get("key_9999"), is(equalTo("value_9999")));
+        assertThat(cache.get("hot"), is(equalTo("value")));
+        assertThat(cache.get("key_5000"), is(nullValue()));
+    }
+
+    @Test
+    public void testExpiry() throws Exception
+    {
+        OffHeapCache cache = new OffHeapCache("test", 4096, 2, new JavaSerializationCodec(), SlabAllocator.direct());
+        cache.put("key_1", "value_1", 100, TimeUnit.MILLISECONDS);
+        assertThat(cache.get("key_1"), is(equalTo("value_1")));
+        Thread.sleep(200);
+        assertThat(cache.contains("key_1"), is(equalTo(false)));
+        assertThat(cache.get("key_1"), is(nullValue()));
+    }
+
+    @Test
+    public void testAsLevel2()
+    {
+        LocalMemoryCache level1 = new LocalMemoryCache("test", 10);
+        OffHeapCache level2 = new OffHeapCache("test", 4096, 16, new JavaSerializationCodec(), SlabAllocator.direct());
+        TieredCache cache = new TieredCache("test", level1, level2, true);
+        for (int i = 0; i < 100; i++)
+        {
+            cache.put("key_" + i, "value_" + i);
+        }
+        // the long tail is served from off heap
+        assertThat(level1.getWeightedSize() <= 10L, is(equalTo(true)));
+        assertThat(cache.get("key_0"), is(equalTo("value_0")));
+        assertThat(level1.contains("key_0"), is(equalTo(true)));
+    }
+}
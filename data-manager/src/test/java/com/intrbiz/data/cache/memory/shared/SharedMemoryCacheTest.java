@@ -0,0 +1,41 @@
+package com.intrbiz.data.cache.memory.shared;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.intrbiz.data.cache.memory.shared.SharedMemoryCache.ReferenceType;
+
+public class SharedMemoryCacheTest
+{
+    @Test
+    public void testWeakEntriesReaped() throws Exception
+    {
+        SharedMemoryCache cache = new SharedMemoryCache("test-weak", ReferenceType.WEAK);
+        for (int i = 0; i < 100; i++)
+        {
+            cache.put("key_" + i, new StringBuilder("value_" + i));
+        }
+        String held = "held";
+        cache.put("held", held);
+        // the collected entries are removed by the reaper
+        for (int i = 0; i < 50 && cache.keySet("key_").size() > 0; i++)
+        {
+            System.gc();
+            Thread.sleep(100);
+        }
+        assertThat(cache.keySet("key_").size(), is(equalTo(0)));
+        assertThat(cache.get("held"), is(equalTo(held)));
+    }
+
+    @Test
+    public void testSoftEntriesRetained() throws Exception
+    {
+        SharedMemoryCache cache = new SharedMemoryCache("test-soft", ReferenceType.SOFT);
+        cache.put("key_1", new StringBuilder("value_1"));
+        System.gc();
+        Thread.sleep(100);
+        assertThat(cache.get("key_1").toString(), is(equalTo("value_1")));
+    }
+}
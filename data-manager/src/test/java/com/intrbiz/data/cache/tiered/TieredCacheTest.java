@@ -0,0 +1,107 @@
+package com.intrbiz.data.cache.tiered;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.intrbiz.data.cache.CacheListener;
+import com.intrbiz.data.cache.CacheTagged;
+import com.intrbiz.data.cache.memory.local.LocalMemoryCache;
+
+public class TieredCacheTest
+{
+    @Test
+    public void testLevel1Expiry() throws Exception
+    {
+        LocalMemoryCache level1 = new LocalMemoryCache("test-tiered-expiry-1");
+        // a level 2 which holds entries for longer than level 1
+        LocalMemoryCache level2 = new LocalMemoryCache("test-tiered-expiry-2")
+        {
+            @Override
+            public <T> void put(String key, T entry, long ttl, TimeUnit unit)
+            {
+                this.put(key, entry);
+            }
+        };
+        TieredCache cache = new TieredCache("test-tiered-expiry", level1, level2, true);
+        cache.put("key_1", "value_1", 200, TimeUnit.MILLISECONDS);
+        assertThat(level1.get("key_1"), is(equalTo("value_1")));
+        Thread.sleep(500);
+        // the level 1 entry kept its time to live
+        assertThat(level1.contains("key_1"), is(equalTo(false)));
+        assertThat(level2.contains("key_1"), is(equalTo(true)));
+    }
+
+    @Test
+    public void testLevel1ExpiryWithAsynchronousEvents() throws Exception
+    {
+        LocalMemoryCache level1 = new LocalMemoryCache("test-tiered-async-expiry-1");
+        // a level 2 which delivers its events on another thread
+        LocalMemoryCache level2 = new LocalMemoryCache("test-tiered-async-expiry-2")
+        {
+            @Override
+            public <T> void put(String key, T entry, long ttl, TimeUnit unit)
+            {
+                this.put(key, entry);
+            }
+
+            @Override
+            public void addListener(CacheListener listener)
+            {
+                super.addListener(CacheListener.asynchronous(listener));
+            }
+        };
+        TieredCache cache = new TieredCache("test-tiered-async-expiry", level1, level2, true);
+        cache.put("key_1", "value_1", 200, TimeUnit.MILLISECONDS);
+        // the level 1 entry kept its time to live
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (level1.contains("key_1") && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertThat(level1.contains("key_1"), is(equalTo(false)));
+        assertThat(level2.contains("key_1"), is(equalTo(true)));
+    }
+
+    @Test
+    public void testLevel1RefreshAhead() throws Exception
+    {
+        final AtomicInteger loads = new AtomicInteger();
+        LocalMemoryCache level1 = new LocalMemoryCache("test-tiered-refresh-1");
+        LocalMemoryCache level2 = new LocalMemoryCache("test-tiered-refresh-2");
+        TieredCache cache = new TieredCache("test-tiered-refresh", level1, level2, true);
+        cache.put("key_1", "value_0", 1000, TimeUnit.MILLISECONDS, (key) -> "value_" + loads.incrementAndGet());
+        // within the refresh window, the stale value is returned and a reload is triggered
+        Thread.sleep(850);
+        assertThat(cache.get("key_1"), is(equalTo("value_0")));
+        for (int i = 0; i < 10 && ! "value_1".equals(level1.get("key_1")); i++)
+        {
+            Thread.sleep(10);
+        }
+        assertThat(loads.get(), is(equalTo(1)));
+        // refreshed in level 1 and written through to level 2
+        assertThat(cache.get("key_1"), is(equalTo("value_1")));
+        assertThat(level2.get("key_1"), is(equalTo("value_1")));
+    }
+
+    @Test
+    public void testTagInvalidatedDuringLoad() throws Exception
+    {
+        LocalMemoryCache level1 = new LocalMemoryCache("test-tiered-load-1");
+        LocalMemoryCache level2 = new LocalMemoryCache("test-tiered-load-2");
+        TieredCache cache = new TieredCache("test-tiered-load", level1, level2, true);
+        // the tags are read before the load, which races with an invalidation
+        CacheTagged tags = cache.readTags("users");
+        cache.invalidateTag("users");
+        cache.put("get_user.1", "user_1", tags);
+        assertThat(cache.get("get_user.1"), is(nullValue()));
+        // a load which started after the invalidation is current
+        cache.put("get_user.1", "user_1", cache.readTags("users"));
+        assertThat(cache.get("get_user.1"), is(equalTo("user_1")));
+        assertThat(level1.contains("get_user.1"), is(equalTo(false)));
+    }
+}
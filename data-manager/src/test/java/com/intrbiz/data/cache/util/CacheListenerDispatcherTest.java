@@ -0,0 +1,88 @@
+package com.intrbiz.data.cache.util;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.intrbiz.data.cache.CacheListener;
+import com.intrbiz.data.cache.memory.local.LocalMemoryCache;
+
+public class CacheListenerDispatcherTest
+{
+    @Test
+    public void testAsynchronousEventsAreOrderedPerKey() throws Exception
+    {
+        final int keys = 50;
+        final int updates = 200;
+        final CountDownLatch latch = new CountDownLatch(keys * updates);
+        final Map<String, List<Object>> received = new ConcurrentHashMap<String, List<Object>>();
+        final Thread caller = Thread.currentThread();
+        final List<Thread> deliveredOn = new CopyOnWriteArrayList<Thread>();
+        LocalMemoryCache cache = new LocalMemoryCache("test-async-listener");
+        cache.addListener(CacheListener.asynchronous(new CacheListener()
+        {
+            @Override
+            public void onRemove(String key, Object entry)
+            {
+            }
+
+            @Override
+            public void onPut(String key, Object entry)
+            {
+                received.computeIfAbsent(key, (k) -> new CopyOnWriteArrayList<Object>()).add(entry);
+                if (Thread.currentThread() == caller) deliveredOn.add(caller);
+                latch.countDown();
+            }
+        }));
+        for (int i = 0; i < updates; i++)
+        {
+            for (int k = 0; k < keys; k++)
+            {
+                cache.put("key." + k, i);
+            }
+        }
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(deliveredOn.isEmpty(), is(true));
+        for (List<Object> values : received.values())
+        {
+            for (int i = 0; i < updates; i++)
+            {
+                assertThat(values.get(i), is(equalTo((Object) i)));
+            }
+        }
+    }
+
+    @Test
+    public void testSynchronousListenersAreInline()
+    {
+        final List<String> received = new CopyOnWriteArrayList<String>();
+        LocalMemoryCache cache = new LocalMemoryCache("test-sync-listener");
+        cache.addListener(new CacheListener()
+        {
+            @Override
+            public void onRemove(String key, Object entry)
+            {
+                received.add("remove " + key);
+            }
+
+            @Override
+            public void onPut(String key, Object entry)
+            {
+                received.add("put " + key);
+            }
+        });
+        cache.put("key.1", "value");
+        cache.remove("key.1");
+        assertThat(received.size(), is(equalTo(2)));
+        assertThat(received.get(0), is(equalTo("put key.1")));
+        assertThat(received.get(1), is(equalTo("remove key.1")));
+    }
+}
@@ -0,0 +1,48 @@
+package com.intrbiz.data.cache.util;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CacheWriteJournalTest
+{
+    @Test
+    public void testLastWriteWins()
+    {
+        CacheWriteJournal journal = new CacheWriteJournal();
+        assertThat(journal.isEmpty(), is(true));
+        journal.put("key.1", "value_1");
+        journal.remove("key.1");
+        journal.put("key.2", "value_2", 10, TimeUnit.SECONDS);
+        assertThat(journal.isWritten("key.1"), is(true));
+        assertThat(journal.get("key.1"), is(nullValue()));
+        assertThat(journal.get("key.2"), is(equalTo((Object) "value_2")));
+        assertThat(journal.isWritten("key.3"), is(false));
+        assertThat(journal.getWrites().size(), is(equalTo(2)));
+        journal.reset();
+        assertThat(journal.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testRemovePrefix()
+    {
+        CacheWriteJournal journal = new CacheWriteJournal();
+        journal.put("a.1", "value_1");
+        journal.put("b.1", "value_1");
+        journal.removePrefix("a.");
+        journal.put("a.2", "value_2");
+        assertThat(journal.isWritten("a.1"), is(true));
+        assertThat(journal.get("a.1"), is(nullValue()));
+        assertThat(journal.get("a.2"), is(equalTo((Object) "value_2")));
+        assertThat(journal.getWrites().size(), is(equalTo(2)));
+        assertThat(journal.getRemovedPrefixes().contains("a."), is(true));
+        // cached keys under the removed prefix are hidden, journaled puts are added
+        assertThat(journal.keySet("a.", new HashSet<String>(Arrays.asList("a.1", "a.3"))), is(equalTo(new HashSet<String>(Arrays.asList("a.2")))));
+        assertThat(journal.keySet("b.", new HashSet<String>(Arrays.asList("b.2"))), is(equalTo(new HashSet<String>(Arrays.asList("b.1", "b.2")))));
+    }
+}
@@ -0,0 +1,96 @@
+package com.intrbiz.data.cache.util;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class LoadCoalescerTest
+{
+    @Test
+    public void testConcurrentLoadsCoalesced() throws Exception
+    {
+        final LoadCoalescer coalescer = new LoadCoalescer();
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Object> results = new LinkedList<Object>();
+        // the first thread starts a slow load
+        Thread loader = new Thread(() -> {
+            Object value = coalescer.load("key_1", null, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                }
+                return "value_1";
+            });
+            synchronized (results)
+            {
+                results.add(value);
+            }
+        });
+        loader.start();
+        loading.await();
+        // other threads miss while the load is in flight
+        List<Thread> waiters = new LinkedList<Thread>();
+        for (int i = 0; i < 5; i++)
+        {
+            Thread waiter = new Thread(() -> {
+                Object value = coalescer.load("key_1", null, () -> {
+                    loads.incrementAndGet();
+                    return "value_2";
+                });
+                synchronized (results)
+                {
+                    results.add(value);
+                }
+            });
+            waiter.start();
+            waiters.add(waiter);
+        }
+        Thread.sleep(100);
+        release.countDown();
+        loader.join();
+        for (Thread waiter : waiters)
+        {
+            waiter.join();
+        }
+        assertThat(loads.get(), is(equalTo(1)));
+        assertThat(results.size(), is(equalTo(6)));
+        for (Object result : results)
+        {
+            assertThat(result, is(equalTo("value_1")));
+        }
+        assertThat(coalescer.getInflight(), is(equalTo(0)));
+        // once complete the next load runs again
+        assertThat(coalescer.load("key_1", null, () -> "value_3"), is(equalTo("value_3")));
+    }
+
+    @Test
+    public void testFailureShared()
+    {
+        LoadCoalescer coalescer = new LoadCoalescer();
+        try
+        {
+            coalescer.load("key_1", null, () -> {
+                throw new IllegalStateException("failed");
+            });
+            fail("Expected the load to fail");
+        }
+        catch (IllegalStateException e)
+        {
+            assertThat(e.getMessage(), is(equalTo("failed")));
+        }
+        assertThat(coalescer.getInflight(), is(equalTo(0)));
+    }
+}
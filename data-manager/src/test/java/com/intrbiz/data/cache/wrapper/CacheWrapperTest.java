@@ -0,0 +1,259 @@
+package com.intrbiz.data.cache.wrapper;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.intrbiz.data.cache.Cache;
+import com.intrbiz.data.cache.Cache.CacheState;
+import com.intrbiz.data.cache.memory.local.LocalMemoryCache;
+
+public class CacheWrapperTest
+{
+    private static boolean isReadable(CacheState state)
+    {
+        return state == CacheState.ON || state == CacheState.READ_ONLY;
+    }
+    
+    private static boolean isWritable(CacheState state)
+    {
+        return state == CacheState.ON || state == CacheState.WRITE_ONLY;
+    }
+    
+    private static boolean isInvalidated(CacheState state)
+    {
+        return state != CacheState.OFF;
+    }
+    
+    @Test
+    public void testStates()
+    {
+        for (CacheState state : CacheState.values())
+        {
+            LocalMemoryCache cache = new LocalMemoryCache("test-wrapper");
+            CacheWrapper wrapper = new CacheWrapper(cache);
+            cache.put("existing", "value");
+            cache.put("prefix.existing", "value");
+            wrapper.state(state);
+            assertThat(wrapper.state(), is(equalTo(state)));
+            // reads
+            assertThat(wrapper.get("existing"), is(isReadable(state) ? equalTo((Object) "value") : nullValue()));
+            assertThat(wrapper.contains("existing"), is(equalTo(isReadable(state))));
+            assertThat(wrapper.keySet("prefix.").size(), is(equalTo(isReadable(state) ? 1 : 0)));
+            assertThat(wrapper.getAll(Collections.singleton("existing")).size(), is(equalTo(isReadable(state) ? 1 : 0)));
+            // writes
+            wrapper.put("new", "value");
+            assertThat(cache.contains("new"), is(equalTo(isWritable(state))));
+            wrapper.put("tagged", "value", "tag");
+            assertThat(cache.contains("tagged"), is(equalTo(isWritable(state))));
+            // removals and invalidations, which must reach a cache that is still read from
+            cache.put("tagged", "value", "tag");
+            wrapper.invalidateTag("tag");
+            assertThat(cache.contains("tagged"), is(equalTo(! isInvalidated(state))));
+            wrapper.remove("existing");
+            assertThat(cache.contains("existing"), is(equalTo(! isInvalidated(state))));
+            wrapper.removePrefix("prefix.");
+            assertThat(cache.contains("prefix.existing"), is(equalTo(! isInvalidated(state))));
+            cache.put("existing", "value");
+            wrapper.clear();
+            assertThat(cache.contains("existing"), is(equalTo(! isInvalidated(state))));
+        }
+    }
+    
+    @Test
+    public void testTransitions()
+    {
+        for (CacheState from : CacheState.values())
+        {
+            for (CacheState to : CacheState.values())
+            {
+                LocalMemoryCache cache = new LocalMemoryCache("test-wrapper");
+                CacheWrapper wrapper = new CacheWrapper(cache);
+                wrapper.state(from);
+                wrapper.put("from", "value");
+                assertThat(cache.contains("from"), is(equalTo(isWritable(from))));
+                wrapper.state(to);
+                assertThat(from + " -> " + to, wrapper.state(), is(equalTo(to)));
+                wrapper.put("to", "value");
+                assertThat(from + " -> " + to, cache.contains("to"), is(equalTo(isWritable(to))));
+                assertThat(from + " -> " + to, wrapper.contains("from"), is(equalTo(isWritable(from) && isReadable(to))));
+            }
+        }
+    }
+    
+    @Test
+    public void testNoCache()
+    {
+        CacheWrapper wrapper = new CacheWrapper(null);
+        wrapper.put("key", "value");
+        assertThat(wrapper.get("key"), is(nullValue()));
+        assertThat(wrapper.keySet("").isEmpty(), is(true));
+        wrapper.remove("key");
+        wrapper.clear();
+    }
+    
+    /**
+     * Switch through every state transition while other threads read and write, 
+     * checking that once a state is set no operation reaches the wrapped cache 
+     * which that state does not permit
+     */
+    @Test
+    public void testConcurrentTransitions() throws Exception
+    {
+        final CountingCache cache = new CountingCache();
+        final CacheWrapper wrapper = new CacheWrapper(cache);
+        final int threads = 4;
+        final AtomicLongArray iterations = new AtomicLongArray(threads);
+        final AtomicBoolean run = new AtomicBoolean(true);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final CountDownLatch finished = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++)
+        {
+            final int thread = i;
+            new Thread(() -> {
+                try
+                {
+                    while (run.get())
+                    {
+                        String key = "key_" + (iterations.get(thread) % 16);
+                        wrapper.get(key);
+                        wrapper.put(key, "value");
+                        wrapper.contains(key);
+                        wrapper.remove(key);
+                        iterations.incrementAndGet(thread);
+                    }
+                }
+                catch (Throwable t)
+                {
+                    error.set(t);
+                }
+                finally
+                {
+                    finished.countDown();
+                }
+            }).start();
+        }
+        try
+        {
+            CacheState previous = wrapper.state();
+            for (int round = 0; round < 10; round++)
+            {
+                for (CacheState from : CacheState.values())
+                {
+                    for (CacheState to : CacheState.values())
+                    {
+                        for (CacheState state : new CacheState[] { from, to })
+                        {
+                            wrapper.state(state);
+                            assertThat(previous + " -> " + state, wrapper.state(), is(equalTo(state)));
+                            // wait for any operation started under the previous state to complete
+                            awaitIterations(iterations, 2);
+                            long reads = cache.reads.get();
+                            long writes = cache.writes.get();
+                            long removals = cache.removals.get();
+                            awaitIterations(iterations, 2);
+                            assertThat(previous + " -> " + state + " reads", cache.reads.get() > reads, is(equalTo(isReadable(state))));
+                            assertThat(previous + " -> " + state + " writes", cache.writes.get() > writes, is(equalTo(isWritable(state))));
+                            assertThat(previous + " -> " + state + " removals", cache.removals.get() > removals, is(equalTo(isInvalidated(state))));
+                            previous = state;
+                        }
+                    }
+                }
+            }
+        }
+        finally
+        {
+            run.set(false);
+            finished.await();
+        }
+        if (error.get() != null) throw new AssertionError("Worker failed", error.get());
+    }
+    
+    private static void awaitIterations(AtomicLongArray iterations, int count) throws InterruptedException
+    {
+        long[] start = new long[iterations.length()];
+        for (int i = 0; i < start.length; i++)
+        {
+            start[i] = iterations.get(i);
+        }
+        for (int i = 0; i < start.length; i++)
+        {
+            while (iterations.get(i) < start[i] + count)
+            {
+                Thread.sleep(0, 100_000);
+            }
+        }
+    }
+    
+    /**
+     * A cache which just counts the reads, writes and removals it is asked to make
+     */
+    private static class CountingCache implements Cache
+    {
+        private final AtomicLong reads = new AtomicLong();
+        
+        private final AtomicLong writes = new AtomicLong();
+        
+        private final AtomicLong removals = new AtomicLong();
+        
+        @Override
+        public String name()
+        {
+            return "counting";
+        }
+
+        @Override
+        public <T> T get(String key)
+        {
+            this.reads.incrementAndGet();
+            return null;
+        }
+
+        @Override
+        public <T> void put(String key, T value)
+        {
+            this.writes.incrementAndGet();
+        }
+
+        @Override
+        public boolean contains(String key)
+        {
+            this.reads.incrementAndGet();
+            return false;
+        }
+
+        @Override
+        public void remove(String key)
+        {
+            this.removals.incrementAndGet();
+        }
+
+        @Override
+        public Set<String> keySet(String keyPrefix)
+        {
+            this.reads.incrementAndGet();
+            return Collections.emptySet();
+        }
+
+        @Override
+        public void invalidateTag(String tag)
+        {
+            this.removals.incrementAndGet();
+        }
+
+        @Override
+        public void clear()
+        {
+            this.removals.incrementAndGet();
+        }
+    }
+}
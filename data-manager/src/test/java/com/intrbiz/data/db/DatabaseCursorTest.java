@@ -0,0 +1,105 @@
+package com.intrbiz.data.db;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class DatabaseCursorTest
+{
+    @Test
+    public void testReadToEndCloses()
+    {
+        Resources res = new Resources(3);
+        DatabaseCursor<Integer> cursor = res.cursor(true);
+        int count = 0;
+        while (cursor.hasNext())
+        {
+            assertThat(cursor.next(), is(equalTo(++count)));
+        }
+        assertThat(count, is(equalTo(3)));
+        assertThat(cursor.isClosed(), is(true));
+        assertThat(res.closed, is(equalTo(new HashSet<String>(Arrays.asList("ResultSet", "PreparedStatement", "Connection")))));
+        assertThat(res.committed, is(true));
+    }
+
+    @Test
+    public void testStreamCloseCloses()
+    {
+        Resources res = new Resources(100);
+        List<Integer> first;
+        try (Stream<Integer> stream = res.cursor(true).stream())
+        {
+            first = stream.limit(2).collect(Collectors.toList());
+        }
+        assertThat(first, is(equalTo(Arrays.asList(1, 2))));
+        assertThat(res.closed.contains("Connection"), is(true));
+    }
+
+    @Test
+    public void testTransactionConnectionNotClosed()
+    {
+        Resources res = new Resources(1);
+        DatabaseCursor<Integer> cursor = res.cursor(false);
+        cursor.close();
+        assertThat(res.closed.contains("ResultSet"), is(true));
+        assertThat(res.closed.contains("Connection"), is(false));
+        assertThat(res.committed, is(false));
+    }
+
+    /**
+     * Record what the cursor does with the database resources
+     */
+    private static class Resources
+    {
+        private final int rows;
+
+        private int row = 0;
+
+        private final Set<String> closed = new HashSet<String>();
+
+        private boolean committed = false;
+
+        private Resources(int rows)
+        {
+            this.rows = rows;
+        }
+
+        private DatabaseCursor<Integer> cursor(boolean ownsConnection)
+        {
+            return new DatabaseCursor<Integer>(this.proxy(Connection.class), ownsConnection, this.proxy(PreparedStatement.class), this.proxy(ResultSet.class), (rs) -> rs.getInt(1));
+        }
+
+        private <T> T proxy(Class<T> type)
+        {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+                switch (method.getName())
+                {
+                    case "close":
+                        this.closed.add(type.getSimpleName());
+                        return null;
+                    case "commit":
+                        this.committed = true;
+                        return null;
+                    case "next":
+                        return ++this.row <= this.rows;
+                    case "getInt":
+                        return this.row;
+                    default:
+                        return null;
+                }
+            }));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.intrbiz.data.db;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import com.intrbiz.data.DataException;
+import com.intrbiz.util.pool.database.DatabasePool;
+
+public class DatabasePipelineTest
+{
+    @Test
+    public void testOneRoundTrip()
+    {
+        Database db = new Database(false);
+        DatabasePipeline pipeline = new DatabaseConnection(db.proxy(DatabasePool.class)).pipeline();
+        CompletableFuture<Integer> first = pipeline.add("SELECT a(?)", 1, (stmt, o) -> stmt.setInt(o + 1, 10), (rs) -> rs.getInt(1));
+        CompletableFuture<List<Integer>> second = pipeline.addList("SELECT b(?, ?)", 2, (stmt, o) -> { stmt.setInt(o + 1, 20); stmt.setInt(o + 2, 21); }, (rs) -> rs.getInt(1));
+        assertThat(first.isDone(), is(false));
+        assertThat(pipeline.size(), is(equalTo(2)));
+        pipeline.execute();
+        // one statement, with the parameters of each query after those of the previous
+        assertThat(db.sql, is(equalTo(Arrays.asList("SELECT a(?);\nSELECT b(?, ?)"))));
+        assertThat(db.bound, is(equalTo(Arrays.asList("1=10", "2=20", "3=21"))));
+        assertThat(first.join(), is(equalTo(1)));
+        assertThat(second.join(), is(equalTo(Arrays.asList(1, 2))));
+        assertThat(pipeline.size(), is(equalTo(0)));
+        // not prepared in a way the statement cache holds
+        assertThat(db.uncached, is(equalTo(true)));
+    }
+
+    @Test
+    public void testParameterLimit()
+    {
+        Database db = new Database(false);
+        DatabasePipeline pipeline = new DatabaseConnection(db.proxy(DatabasePool.class)).pipeline();
+        CompletableFuture<Integer> first = pipeline.add("SELECT a(?)", 20000, (stmt, o) -> stmt.setInt(o + 1, 10), (rs) -> rs.getInt(1));
+        CompletableFuture<Integer> second = pipeline.add("SELECT b(?)", 12767, (stmt, o) -> stmt.setInt(o + 1, 20), (rs) -> rs.getInt(1));
+        CompletableFuture<Integer> third = pipeline.add("SELECT c(?)", 1, (stmt, o) -> stmt.setInt(o + 1, 30), (rs) -> rs.getInt(1));
+        pipeline.execute();
+        // the first two fill a statement, the third goes in the next
+        assertThat(db.sql, is(equalTo(Arrays.asList("SELECT a(?);\nSELECT b(?)", "SELECT c(?)"))));
+        assertThat(db.bound, is(equalTo(Arrays.asList("1=10", "20001=20", "1=30"))));
+        assertThat(first.join(), is(equalTo(1)));
+        assertThat(second.join(), is(equalTo(1)));
+        assertThat(third.join(), is(equalTo(1)));
+    }
+
+    @Test
+    public void testFailureCompletesFutures()
+    {
+        Database db = new Database(true);
+        DatabasePipeline pipeline = new DatabaseConnection(db.proxy(DatabasePool.class)).pipeline();
+        CompletableFuture<Integer> first = pipeline.add("SELECT a()", 0, (stmt, o) -> {}, (rs) -> rs.getInt(1));
+        try
+        {
+            pipeline.execute();
+            fail("The pipeline should have failed");
+        }
+        catch (DataException e)
+        {
+            // expected
+        }
+        assertThat(first.isCompletedExceptionally(), is(true));
+    }
+
+    /**
+     * A database which returns result sets of the rows 1 and 2
+     */
+    private static class Database
+    {
+        private final boolean fail;
+
+        private final List<String> sql = new LinkedList<String>();
+
+        private final List<String> bound = new LinkedList<String>();
+
+        private int row = 0;
+
+        private boolean uncached = true;
+
+        private Database(boolean fail)
+        {
+            this.fail = fail;
+        }
+
+        private <T> T proxy(Class<T> type)
+        {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+                switch (method.getName())
+                {
+                    case "connect":
+                        return this.proxy(Connection.class);
+                    case "prepareStatement":
+                        this.sql.add((String) args[0]);
+                        if (args.length == 1 || (args.length == 3 && args[1] instanceof Integer && args[2] instanceof Integer)) this.uncached = false;
+                        return this.proxy(PreparedStatement.class);
+                    case "setInt":
+                        this.bound.add(args[0] + "=" + args[1]);
+                        return null;
+                    case "execute":
+                        if (this.fail) throw new SQLException("Failed");
+                        return true;
+                    case "getResultSet":
+                        this.row = 0;
+                        return this.proxy(ResultSet.class);
+                    case "next":
+                        return ++this.row <= 2;
+                    case "getInt":
+                        return this.row;
+                    case "getMoreResults":
+                        return true;
+                    default:
+                        return null;
+                }
+            }));
+        }
+    }
+}
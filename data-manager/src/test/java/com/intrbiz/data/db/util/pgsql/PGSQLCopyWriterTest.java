@@ -0,0 +1,147 @@
+package com.intrbiz.data.db.util.pgsql;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.postgresql.copy.CopyIn;
+
+public class PGSQLCopyWriterTest
+{
+    @Test
+    public void testBinaryFormat() throws Exception
+    {
+        BufferCopyIn copy = new BufferCopyIn();
+        PGSQLCopyWriter out = new PGSQLCopyWriter(copy.proxy(), 1024);
+        UUID id = UUID.randomUUID();
+        out.startRow(6);
+        out.writeUUID(id);
+        out.writeString("h\u00e9llo");
+        out.writeInt((Integer) null);
+        out.writeTimestamp(Timestamp.valueOf("2000-01-01 00:00:00.000001"));
+        out.writeDate(Date.valueOf("2000-01-02"));
+        out.writeStringArray(Arrays.asList("a", null));
+        assertThat(out.finish(), is(equalTo(1L)));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(copy.data.toByteArray()));
+        // header
+        byte[] signature = new byte[11];
+        in.readFully(signature);
+        assertThat(new String(signature, 0, 6, "US-ASCII"), is(equalTo("PGCOPY")));
+        assertThat(in.readInt(), is(equalTo(0)));
+        assertThat(in.readInt(), is(equalTo(0)));
+        // row
+        assertThat((int) in.readShort(), is(equalTo(6)));
+        assertThat(in.readInt(), is(equalTo(16)));
+        assertThat(new UUID(in.readLong(), in.readLong()), is(equalTo(id)));
+        assertThat(in.readInt(), is(equalTo(6)));
+        in.skipBytes(6);
+        assertThat(in.readInt(), is(equalTo(-1)));
+        assertThat(in.readInt(), is(equalTo(8)));
+        long micros = in.readLong();
+        // local time, offset from the PostgreSQL epoch by the time zone
+        assertThat(Math.floorMod(micros, 1_000_000L), is(equalTo(1L)));
+        assertThat(in.readInt(), is(equalTo(4)));
+        assertThat(in.readInt(), is(equalTo(1)));
+        // array: dimensions, has nulls, element type, size, lower bound, elements
+        assertThat(in.readInt(), is(equalTo(20 + 5 + 4)));
+        assertThat(in.readInt(), is(equalTo(1)));
+        assertThat(in.readInt(), is(equalTo(1)));
+        assertThat(in.readInt(), is(equalTo(25)));
+        assertThat(in.readInt(), is(equalTo(2)));
+        assertThat(in.readInt(), is(equalTo(1)));
+        assertThat(in.readInt(), is(equalTo(1)));
+        assertThat((char) in.readByte(), is(equalTo('a')));
+        assertThat(in.readInt(), is(equalTo(-1)));
+        // trailer
+        assertThat((int) in.readShort(), is(equalTo(-1)));
+        assertThat(in.available(), is(equalTo(0)));
+    }
+
+    @Test
+    public void testFlushSize() throws Exception
+    {
+        BufferCopyIn copy = new BufferCopyIn();
+        PGSQLCopyWriter out = new PGSQLCopyWriter(copy.proxy(), 64);
+        for (int i = 0; i < 100; i++)
+        {
+            out.startRow(1);
+            out.writeLong(i);
+        }
+        // rows are sent once the buffer passes the flush size, not all at the end
+        assertThat(copy.writes > 1, is(true));
+        assertThat(out.finish(), is(equalTo(100L)));
+        assertThat(copy.data.size(), is(equalTo(19 + (100 * 14) + 2)));
+    }
+
+    /**
+     * Capture the copy data, proxied as the copy interface differs between driver versions
+     */
+    private static class BufferCopyIn implements InvocationHandler
+    {
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private int writes = 0;
+
+        private boolean active = true;
+
+        private CopyIn proxy()
+        {
+            return (CopyIn) Proxy.newProxyInstance(CopyIn.class.getClassLoader(), new Class<?>[] { CopyIn.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName())
+            {
+                case "writeToCopy":
+                    this.data.write((byte[]) args[0], (Integer) args[1], (Integer) args[2]);
+                    this.writes++;
+                    return null;
+                case "endCopy":
+                    this.active = false;
+                    return this.countRows();
+                case "cancelCopy":
+                    this.active = false;
+                    return null;
+                case "isActive":
+                    return this.active;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Count the rows like the server would
+         */
+        private long countRows()
+        {
+            byte[] bytes = this.data.toByteArray();
+            long rows = 0;
+            int idx = 19;
+            while (true)
+            {
+                int fields = (short) (((bytes[idx] & 0xFF) << 8) | (bytes[idx + 1] & 0xFF));
+                idx += 2;
+                if (fields == -1) return rows;
+                for (int i = 0; i < fields; i++)
+                {
+                    int len = ((bytes[idx] & 0xFF) << 24) | ((bytes[idx + 1] & 0xFF) << 16) | ((bytes[idx + 2] & 0xFF) << 8) | (bytes[idx + 3] & 0xFF);
+                    idx += 4 + Math.max(len, 0);
+                }
+                rows++;
+            }
+        }
+    }
+}
@@ -3,11 +3,11 @@ package com.intrbiz.util.pool.database;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 import org.apache.commons.dbcp.ConnectionFactory;
 import org.apache.commons.dbcp.PoolableConnectionFactory;
 import org.apache.commons.pool.KeyedObjectPoolFactory;
-import org.apache.commons.pool.impl.GenericKeyedObjectPoolFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
 import org.apache.log4j.Logger;
 
@@ -37,6 +37,10 @@ public class DBCPPool implements DatabasePool
     
     protected Gauge<Integer> idleConnections;
     
+    protected Counter statementCacheHits;
+    
+    protected Counter statementCacheMisses;
+    
     private Logger logger = Logger.getLogger(DBCPPool.class);
 
     @Override
@@ -79,7 +83,12 @@ public class DBCPPool implements DatabasePool
             public Connection createConnection() throws SQLException
             {
                 logger.trace("Creating new database connection to: " + cfg.getUrl());
-                return DriverManager.getConnection(cfg.getUrl(), cfg.getUsername(), cfg.getPassword());
+                Properties info = new Properties();
+                info.setProperty("user", cfg.getUsername());
+                if (cfg.getPassword() != null) info.setProperty("password", cfg.getPassword());
+                // the same prepare threshold for every connection, settings in the URL take precedence
+                if (cfg.getUrl().startsWith("jdbc:postgresql:")) info.setProperty("prepareThreshold", String.valueOf(cfg.getPrepareThreshold()));
+                return DriverManager.getConnection(cfg.getUrl(), info);
             }
         }; 
         // create an object pool
@@ -95,16 +104,18 @@ public class DBCPPool implements DatabasePool
         this.connectionPool.setTestWhileIdle(this.cfg.isTestWhileIdle());
         // Set the maximum of connections allowed active at any one time to unlimited
         this.connectionPool.setMaxActive(this.cfg.getMaxActive());
-        // create the statement pool
-        this.statementPool = new GenericKeyedObjectPoolFactory(null);
-        // connections tested before use with 'SELECT 1';
-        this.poolableConnectionFactory = new PoolableConnectionFactory(this.connectionFactory, this.connectionPool, this.statementPool, this.cfg.getValidationSql(), false, true);
         // metrics
         String scope = this.cfg.getUsername() + "@" + this.cfg.getUrl();
         // the source to register on
         IntelligenceSource source = Witchcraft.get().source("com.intrbiz.util");
         // setup the metrics
         this.borrowedConnections = source.getRegistry().counter(Witchcraft.scoped(DatabasePool.class, "borrowed-connections", scope));
+        this.statementCacheHits = source.getRegistry().counter(Witchcraft.scoped(DatabasePool.class, "statement-cache-hits", scope));
+        this.statementCacheMisses = source.getRegistry().counter(Witchcraft.scoped(DatabasePool.class, "statement-cache-misses", scope));
+        // create the statement pool, bounded per connection
+        if (this.cfg.getStatementCacheSize() > 0) this.statementPool = new StatementPoolFactory(this.cfg.getStatementCacheSize(), this.statementCacheHits, this.statementCacheMisses);
+        // connections tested before use with 'SELECT 1';
+        this.poolableConnectionFactory = new PoolableConnectionFactory(this.connectionFactory, this.connectionPool, this.statementPool, this.cfg.getValidationSql(), false, true);
         this.activeConnections = source.getRegistry().register(Witchcraft.scoped(DatabasePool.class, "active-connections", scope), new Gauge<Integer>()
         {
             @Override
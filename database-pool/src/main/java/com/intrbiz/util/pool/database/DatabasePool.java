@@ -96,6 +96,18 @@ public interface DatabasePool extends Configurable<DatabasePoolConfiguration>
             return this;
         }
 
+        public Default statementCacheSize(int statementCacheSize)
+        {
+            this.config.setStatementCacheSize(statementCacheSize);
+            return this;
+        }
+
+        public Default prepareThreshold(int prepareThreshold)
+        {
+            this.config.setPrepareThreshold(prepareThreshold);
+            return this;
+        }
+
         public Default postgresql()
         {
             this.config.setDriver(Driver.POSTGRESQL);
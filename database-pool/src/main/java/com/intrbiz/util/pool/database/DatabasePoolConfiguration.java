@@ -37,6 +37,10 @@ public class DatabasePoolConfiguration extends Configuration
     
     private String validationSql = "SELECT 1";
     
+    private int statementCacheSize = 100;
+    
+    private int prepareThreshold = 5;
+    
     public DatabasePoolConfiguration()
     {
         super();
@@ -173,4 +177,35 @@ public class DatabasePoolConfiguration extends Configuration
     {
         this.validationSql = validationSql;
     }
+
+    /**
+     * The maximum number of prepared statements cached by each connection, 
+     * zero to not cache statements
+     */
+    @XmlAttribute(name="statement-cache-size")
+    public int getStatementCacheSize()
+    {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize)
+    {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * The number of executions of a prepared statement after which the 
+     * PostgreSQL driver uses a server side prepared statement, applied to 
+     * every PostgreSQL connection unless given in the URL
+     */
+    @XmlAttribute(name="prepare-threshold")
+    public int getPrepareThreshold()
+    {
+        return prepareThreshold;
+    }
+
+    public void setPrepareThreshold(int prepareThreshold)
+    {
+        this.prepareThreshold = prepareThreshold;
+    }
 }
@@ -0,0 +1,133 @@
+package com.intrbiz.util.pool.database;
+
+import org.apache.commons.pool.KeyedObjectPool;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
+import org.apache.commons.pool.KeyedPoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * <p>
+ * Create the prepared statement cache of each pooled connection.
+ * </p>
+ *
+ * <p>
+ * Statements are cached per connection, keyed by their SQL, so the
+ * statement of a generated adapter method is prepared once per connection
+ * and then reused, letting the driver switch to a server side prepared
+ * statement.  The cache of a connection holds at most the given number
+ * of idle statements, evicting the oldest once full.
+ * </p>
+ *
+ * <p>
+ * At most one idle statement is kept per SQL, this is fixed rather than
+ * configurable.  A connection is used by one thread at a time, so the
+ * same statement is only open twice when it is prepared again before the
+ * first is closed, such an extra statement is closed once it is returned.
+ * </p>
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class StatementPoolFactory implements KeyedObjectPoolFactory
+{
+    private final int size;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    /**
+     * @param size the maximum number of statements cached by a connection
+     * @param hits counted when a statement is reused, may be null
+     * @param misses counted when a statement is prepared, may be null
+     */
+    public StatementPoolFactory(int size, Counter hits, Counter misses)
+    {
+        super();
+        if (size <= 0) throw new IllegalArgumentException("The statement cache size must be positive");
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    @Override
+    public KeyedObjectPool createPool() throws IllegalStateException
+    {
+        StatementPool pool = new StatementPool();
+        // the same statement is rarely in use twice at once, so only keep one of each idle, see above
+        pool.setMaxActive(-1);
+        pool.setWhenExhaustedAction(GenericKeyedObjectPool.WHEN_EXHAUSTED_GROW);
+        pool.setMaxIdle(1);
+        // once full the oldest idle statements are closed
+        pool.setMaxTotal(this.size);
+        return pool;
+    }
+
+    /**
+     * The statement cache of a connection, a connection is only used by one
+     * thread at a time, so a hit is any borrow which did not prepare a statement
+     */
+    private class StatementPool extends GenericKeyedObjectPool
+    {
+        private long prepared = 0;
+
+        @Override
+        public Object borrowObject(Object key) throws Exception
+        {
+            long before = this.prepared;
+            Object statement = super.borrowObject(key);
+            if (before == this.prepared)
+            {
+                if (hits != null) hits.inc();
+            }
+            else
+            {
+                if (misses != null) misses.inc();
+            }
+            return statement;
+        }
+
+        @Override
+        public void setFactory(final KeyedPoolableObjectFactory factory) throws IllegalStateException
+        {
+            super.setFactory(new KeyedPoolableObjectFactory()
+            {
+                @Override
+                public Object makeObject(Object key) throws Exception
+                {
+                    prepared++;
+                    return factory.makeObject(key);
+                }
+
+                @Override
+                public void destroyObject(Object key, Object obj) throws Exception
+                {
+                    factory.destroyObject(key, obj);
+                }
+
+                @Override
+                public boolean validateObject(Object key, Object obj)
+                {
+                    return factory.validateObject(key, obj);
+                }
+
+                @Override
+                public void activateObject(Object key, Object obj) throws Exception
+                {
+                    factory.activateObject(key, obj);
+                }
+
+                @Override
+                public void passivateObject(Object key, Object obj) throws Exception
+                {
+                    factory.passivateObject(key, obj);
+                }
+            });
+        }
+    }
+}
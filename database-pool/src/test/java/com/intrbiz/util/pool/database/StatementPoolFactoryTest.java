@@ -0,0 +1,91 @@
+package com.intrbiz.util.pool.database;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.pool.KeyedObjectPool;
+import org.apache.commons.pool.KeyedPoolableObjectFactory;
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class StatementPoolFactoryTest
+{
+    @Test
+    public void testEvictionAndHits() throws Exception
+    {
+        Counter hits = new Counter();
+        Counter misses = new Counter();
+        Statements statements = new Statements();
+        KeyedObjectPool pool = new StatementPoolFactory(2, hits, misses).createPool();
+        pool.setFactory(statements);
+        // fill the cache
+        use(pool, "SELECT a()");
+        use(pool, "SELECT b()");
+        use(pool, "SELECT a()");
+        assertThat(hits.getCount(), is(equalTo(1L)));
+        assertThat(misses.getCount(), is(equalTo(2L)));
+        assertThat(statements.destroyed.isEmpty(), is(true));
+        // a third statement evicts the oldest
+        use(pool, "SELECT c()");
+        assertThat(statements.destroyed, is(equalTo(Arrays.asList("SELECT b()"))));
+        use(pool, "SELECT a()");
+        use(pool, "SELECT b()");
+        assertThat(hits.getCount(), is(equalTo(2L)));
+        assertThat(misses.getCount(), is(equalTo(4L)));
+        assertThat(statements.prepared, is(equalTo(4)));
+        pool.close();
+    }
+
+    private static void use(KeyedObjectPool pool, String sql) throws Exception
+    {
+        Object statement = pool.borrowObject(sql);
+        pool.returnObject(sql, statement);
+        // idle statements are aged by the millisecond they were returned
+        Thread.sleep(5);
+    }
+
+    /**
+     * Prepares a new statement for each make, recording those which are closed
+     */
+    private static class Statements implements KeyedPoolableObjectFactory
+    {
+        private int prepared = 0;
+
+        private final List<String> destroyed = new LinkedList<String>();
+
+        @Override
+        public Object makeObject(Object key) throws Exception
+        {
+            this.prepared++;
+            return new Object();
+        }
+
+        @Override
+        public void destroyObject(Object key, Object obj) throws Exception
+        {
+            this.destroyed.add((String) key);
+        }
+
+        @Override
+        public boolean validateObject(Object key, Object obj)
+        {
+            return true;
+        }
+
+        @Override
+        public void activateObject(Object key, Object obj) throws Exception
+        {
+        }
+
+        @Override
+        public void passivateObject(Object key, Object obj) throws Exception
+        {
+        }
+    }
+}
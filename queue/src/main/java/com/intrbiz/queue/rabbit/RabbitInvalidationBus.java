@@ -0,0 +1,116 @@
+package com.intrbiz.queue.rabbit;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.log4j.Logger;
+
+import com.intrbiz.data.cache.invalidation.AbstractInvalidationBus;
+import com.intrbiz.queue.QueueBrokerPool;
+import com.intrbiz.queue.QueueException;
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+
+/**
+ * <p>
+ * An invalidation bus using a RabbitMQ fanout exchange.
+ * </p>
+ *
+ * <p>
+ * Each node consumes from its own exclusive, auto delete queue bound to
+ * the exchange.  Invalidations are transient, a node which is not connected
+ * when an invalidation is published will not receive it, cache TTLs bound
+ * the staleness this causes.
+ * </p>
+ *
+ * <p>
+ * The dependency of the queue module upon data-manager is optional, 
+ * applications using this bus must depend upon data-manager themselves.
+ * </p>
+ */
+public class RabbitInvalidationBus extends AbstractInvalidationBus
+{
+    public static final String DEFAULT_EXCHANGE = "cache.invalidation";
+
+    /**
+     * Keep payloads small, so that a single invalidation batch does not hog the broker
+     */
+    public static final int MAX_PAYLOAD_BYTES = 64 * 1024;
+
+    private Logger logger = Logger.getLogger(RabbitInvalidationBus.class);
+
+    private final String exchange;
+
+    private final Channel channel;
+
+    private final String queue;
+
+    private final BasicProperties properties = new BasicProperties.Builder().contentType("text/plain").deliveryMode(1).build();
+
+    public RabbitInvalidationBus(QueueBrokerPool<Channel> broker, String exchange, long batchDelay, int maxBatchSize)
+    {
+        super(exchange, batchDelay, maxBatchSize, MAX_PAYLOAD_BYTES);
+        this.exchange = exchange;
+        try
+        {
+            this.channel = broker.connect();
+            this.channel.exchangeDeclare(this.exchange, "fanout", false);
+            // a server named, exclusive, auto delete queue for this node
+            this.queue = this.channel.queueDeclare().getQueue();
+            this.channel.queueBind(this.queue, this.exchange, "");
+            this.channel.basicConsume(this.queue, true, new DefaultConsumer(this.channel)
+            {
+                @Override
+                public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties, byte[] body) throws IOException
+                {
+                    receive(new String(body, StandardCharsets.UTF_8));
+                }
+            });
+            logger.info("Listening for cache invalidations on exchange " + this.exchange);
+        }
+        catch (IOException e)
+        {
+            throw new QueueException("Failed to setup cache invalidation exchange", e);
+        }
+    }
+
+    public RabbitInvalidationBus(QueueBrokerPool<Channel> broker, String exchange)
+    {
+        this(broker, exchange, DEFAULT_BATCH_DELAY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public RabbitInvalidationBus(QueueBrokerPool<Channel> broker)
+    {
+        this(broker, DEFAULT_EXCHANGE);
+    }
+
+    public String getExchange()
+    {
+        return this.exchange;
+    }
+
+    @Override
+    protected void send(String payload) throws Exception
+    {
+        // channels must not be published to concurrently
+        synchronized (this.channel)
+        {
+            this.channel.basicPublish(this.exchange, "", this.properties, payload.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+        try
+        {
+            this.channel.close();
+        }
+        catch (Exception e)
+        {
+        }
+    }
+}